@@ -0,0 +1,135 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.schildbach.pte.util.DateTimes;
+
+/**
+ * Parsing the date and time formats of a HAFAS client interface trip search, with a regular expression into a
+ * calendar versus directly into milliseconds, and of ISO 8601 timestamps with offset, with a date format versus
+ * directly.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DateTimesBenchmark {
+    private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("CET");
+    private static final Pattern P_ISO_DATE = Pattern.compile("(\\d{4})-?(\\d{2})-?(\\d{2})");
+    private static final Pattern P_JSON_TIME = Pattern.compile("(\\d{2})?(\\d{2})(\\d{2})(\\d{2})");
+
+    private final String[] dates = new String[100];
+    private final String[] times = new String[100];
+    private final String[] isoDateTimes = new String[100];
+    private final Calendar calendar = new GregorianCalendar(TIME_ZONE);
+    private final SimpleDateFormat isoDateTimeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX");
+    private final DateTimes dateTimes = new DateTimes(TIME_ZONE);
+
+    @Setup
+    public void setup() {
+        isoDateTimeFormat.setTimeZone(TIME_ZONE);
+        for (int i = 0; i < times.length; i++) {
+            final int day = 17 + i / 40;
+            final int minuteOfDay = 5 * 60 + i * 23;
+            dates[i] = String.format("202610%02d", day);
+            times[i] = String.format(minuteOfDay >= 24 * 60 ? "01%02d%02d00" : "%02d%02d00",
+                    minuteOfDay / 60 % 24, minuteOfDay % 60);
+            isoDateTimes[i] = String.format("2026-10-%02dT%02d:%02d:00+02:00", day, minuteOfDay / 60 % 24,
+                    minuteOfDay % 60);
+        }
+    }
+
+    @Benchmark
+    public long calendar() {
+        long sum = 0;
+        for (int i = 0; i < times.length; i++) {
+            calendar.clear();
+            final Matcher mDate = P_ISO_DATE.matcher(dates[i]);
+            if (!mDate.matches())
+                throw new IllegalStateException();
+            calendar.set(Calendar.YEAR, Integer.parseInt(mDate.group(1)));
+            calendar.set(Calendar.MONTH, Integer.parseInt(mDate.group(2)) - 1);
+            calendar.set(Calendar.DAY_OF_MONTH, Integer.parseInt(mDate.group(3)));
+            final long baseDate = calendar.getTimeInMillis();
+
+            final Matcher mTime = P_JSON_TIME.matcher(times[i]);
+            if (!mTime.matches())
+                throw new IllegalStateException();
+            calendar.setTimeInMillis(baseDate);
+            if (mTime.group(1) != null)
+                calendar.add(Calendar.DAY_OF_YEAR, Integer.parseInt(mTime.group(1)));
+            calendar.set(Calendar.HOUR_OF_DAY, Integer.parseInt(mTime.group(2)));
+            calendar.set(Calendar.MINUTE, Integer.parseInt(mTime.group(3)));
+            calendar.set(Calendar.SECOND, Integer.parseInt(mTime.group(4)));
+            sum += calendar.getTimeInMillis();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long dateTimes() {
+        long sum = 0;
+        for (int i = 0; i < times.length; i++) {
+            final int baseDay = DateTimes.parseIsoDate(dates[i]);
+            final String time = times[i];
+            final int p = time.length() - 6;
+            final int day = p > 0 ? baseDay + DateTimes.digits(time, 0, p) : baseDay;
+            sum += dateTimes.time(day, DateTimes.digits(time, p, p + 2), DateTimes.digits(time, p + 2, p + 4),
+                    DateTimes.digits(time, p + 4, p + 6));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long isoDateFormat() throws ParseException {
+        long sum = 0;
+        for (final String isoDateTime : isoDateTimes)
+            sum += isoDateTimeFormat.parse(isoDateTime).getTime();
+        return sum;
+    }
+
+    @Benchmark
+    public long isoDateTimes() {
+        long sum = 0;
+        for (final String isoDateTime : isoDateTimes)
+            sum += DateTimes.parseIsoDateTimeWithOffset(isoDateTime);
+        return sum;
+    }
+}
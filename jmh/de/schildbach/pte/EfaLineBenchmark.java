@@ -0,0 +1,76 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Classifying the lines of a large departure board, a mix of long distance, regional and local lines, using
+ * {@link VrrProvider}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EfaLineBenchmark {
+    // mot, symbol, name, longName, trainType, trainNum, trainName
+    private static final String[][] LINES = { //
+            { "0", "ICE 925", "ICE 925", "Intercity-Express", "ICE", "925", "ICE" }, //
+            { "0", "IC 2013", "IC 2013", "InterCity", "IC", "2013", "InterCity" }, //
+            { "0", "RE 1", "RE 1", "Regional-Express", "RE", "1", "Regional-Express" }, //
+            { "0", "RE11", "RE11", "Regionalzug", null, "RE11", null }, //
+            { "0", "RB 33", "RB 33", "Regionalbahn", "RB", "33", "Regionalbahn" }, //
+            { "0", "RB40", "RB40", null, null, "RB40", null }, //
+            { "0", "S 1", "S 1", "S-Bahn", "S", "1", "S-Bahn" }, //
+            { "0", "ERB 10521", "ERB", "eurobahn", "ERB", "10521", "eurobahn" }, //
+            { "0", "NWB 75", "NWB", "NordWestBahn", "NWB", "75", "NordWestBahn" }, //
+            { "0", "VIA 20345", "VIA", "VIAS GmbH", "VIA", "20345", "VIAS GmbH" }, //
+            { "0", "ABR 31", "ABR", "ABELLIO Rail NRW GmbH", "ABR", "31", "ABELLIO Rail NRW GmbH" }, //
+            { "0", "FLX 1247", "FLX", "FlixTrain", "FLX", "1247", "FlixTrain" }, //
+            { "0", "SEV", "SEV", "Schienenersatzverkehr", null, "SEV", "Schienenersatzverkehr" }, //
+            { "0", "12", "12", null, null, null, null }, //
+            { "1", "S1", "S1", "S-Bahn", null, null, null }, //
+            { "2", "U47", "U47", "U-Bahn", null, null, null }, //
+            { "4", "709", "709", "Straßenbahn", null, null, null }, //
+            { "5", "SB19", "SB19", "Schnellbus", null, null, null }, //
+            { "6", "NE3", "NE3", "Nachtexpress", null, null, null }, //
+            { "11", "Schwebebahn", "60", "Schwebebahn", null, null, "Schwebebahn" }, //
+            { null, null, "707", null, null, null, "Straßenbahn" }, //
+            { null, null, "SB66", null, null, null, "Regionalbus" } };
+
+    final VrrProvider provider = new VrrProvider();
+
+    @Benchmark
+    public void parseLines(final Blackhole blackhole) {
+        for (final String[] l : LINES)
+            blackhole.consume(provider.parseLine("vrr:1", "vrr", l[0], l[1], l[2], l[3], l[4], l[5], l[6]));
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import de.schildbach.pte.util.HttpArchive;
+
+import okhttp3.Interceptor;
+
+/**
+ * <p>
+ * Fixtures for the benchmarks, located in the {@code fixtures} folder next to this class. Responses are kept as
+ * {@link HttpArchive} recordings of the requests the benchmarks issue.
+ * </p>
+ *
+ * <p>
+ * To record them again from the live upstreams, run the benchmarks once with the system property
+ * {@code pte.recordFixtures} set to the {@code fixtures} folder. Requests that have not been recorded yet are then
+ * passed on to the network and archived.
+ * </p>
+ */
+final class Fixtures {
+    // set to the fixtures folder to record missing responses, e.g. -Dpte.recordFixtures=jmh/de/schildbach/pte/fixtures
+    private static final String RECORD_FIXTURES_PROPERTY = "pte.recordFixtures";
+
+    private Fixtures() {
+    }
+
+    static byte[] load(final String name) throws IOException {
+        try (final InputStream is = open(name)) {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            final byte[] buf = new byte[8192];
+            int read;
+            while ((read = is.read(buf)) != -1)
+                os.write(buf, 0, read);
+            return os.toByteArray();
+        }
+    }
+
+    /**
+     * Returns an interceptor that answers requests from the given archive, so that the benchmarks run the complete
+     * provider code path without touching the network.
+     */
+    static Interceptor replay(final String name) throws IOException {
+        final String recordFixtures = System.getProperty(RECORD_FIXTURES_PROPERTY);
+        if (recordFixtures != null) {
+            final HttpArchive archive = new HttpArchive(new File(recordFixtures, name + ".archive"));
+            final Interceptor record = archive.recordInterceptor();
+            final Interceptor replay = archive.replayInterceptor();
+            return chain -> archive.contains(chain.request()) ? replay.intercept(chain) : record.intercept(chain);
+        }
+        try (final InputStream is = open(name + ".archive")) {
+            return new HttpArchive(is).replayInterceptor();
+        }
+    }
+
+    private static InputStream open(final String name) throws FileNotFoundException {
+        final InputStream is = Fixtures.class.getResourceAsStream("fixtures/" + name);
+        if (is == null)
+            throw new FileNotFoundException("fixtures/" + name);
+        return is;
+    }
+}
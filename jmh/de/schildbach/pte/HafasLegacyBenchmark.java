@@ -0,0 +1,99 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.dto.QueryTripsResult;
+import de.schildbach.pte.util.StringPool;
+
+/**
+ * Parsing of HAFAS binary trip and XML station board responses, using {@link NsProvider}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HafasLegacyBenchmark {
+    private static final Location FROM = new Location(LocationType.STATION, "8400621");
+    private static final Location TO = new Location(LocationType.STATION, "8400530");
+    private static final Date TIME = new Date(1792224000000L);
+
+    @State(Scope.Thread)
+    public static class Trips {
+        @Param({ "hafas-trips", "hafas-trips-many" })
+        String fixture;
+
+        @Param({ "false", "true" })
+        boolean stringPool;
+
+        final NsProvider provider = new NsProvider();
+
+        @Setup
+        public void setup() throws IOException {
+            if (stringPool)
+                provider.setStringPool(new StringPool(1024));
+            provider.httpClient.setInterceptor(Fixtures.replay(fixture));
+            final QueryTripsResult result = provider.queryTrips(FROM, null, TO, TIME, true, null);
+            if (result.status != QueryTripsResult.Status.OK || result.trips.isEmpty())
+                throw new IllegalStateException(result.toString());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Departures {
+        final NsProvider provider = new NsProvider();
+
+        @Setup
+        public void setup() throws IOException {
+            provider.httpClient.setInterceptor(Fixtures.replay("hafas-stationboard"));
+            final QueryDeparturesResult result = provider.queryDepartures(FROM.id, TIME, 120, false);
+            if (result.status != QueryDeparturesResult.Status.OK
+                    || result.stationDepartures.get(0).departures.isEmpty())
+                throw new IllegalStateException(result.toString());
+        }
+    }
+
+    @Benchmark
+    public QueryTripsResult queryTrips(final Trips state) throws IOException {
+        return state.provider.queryTrips(FROM, null, TO, TIME, true, null);
+    }
+
+    @Benchmark
+    public QueryDeparturesResult queryDepartures(final Departures state) throws IOException {
+        return state.provider.queryDepartures(FROM.id, TIME, 120, false);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.schildbach.pte.util.StringReplaceReader;
+import de.schildbach.pte.util.StringReplacements;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Working around the unparsable XML of a large HAFAS station board, by a chain of readers with one pass per pattern
+ * versus matching the patterns together.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class StringReplaceBenchmark {
+    private static final String[][] REPLACEMENTS = { { " & ", " &amp; " }, { "<b>", " " }, { "</b>", " " },
+            { "<u>", " " }, { "</u>", " " }, { "<i>", " " }, { "</i>", " " }, { "<br />", " " },
+            { " ->", " &#x2192;" }, { " <-", " &#x2190;" }, { " <> ", " &#x2194; " } };
+
+    private final char[] buf = new char[8192];
+    private String stationBoard;
+    private StringReplacements replacements;
+
+    @Setup
+    public void setup() throws IOException {
+        final String fixture = stationBoard();
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20; i++)
+            builder.append(fixture);
+        stationBoard = builder.toString();
+        replacements = new StringReplacements();
+        for (final String[] replacement : REPLACEMENTS)
+            replacements.replace(replacement[0], replacement[1]);
+    }
+
+    @Benchmark
+    public int chain() throws IOException {
+        final StringReplaceReader reader = new StringReplaceReader(stationBoard, REPLACEMENTS[0][0],
+                REPLACEMENTS[0][1]);
+        for (int i = 1; i < REPLACEMENTS.length; i++)
+            reader.replace(REPLACEMENTS[i][0], REPLACEMENTS[i][1]);
+        return readFully(reader);
+    }
+
+    @Benchmark
+    public int automatons() throws IOException {
+        return readFully(replacements.filter(new StringReader(stationBoard)));
+    }
+
+    private int readFully(final Reader reader) throws IOException {
+        int count = 0;
+        int read;
+        while ((read = reader.read(buf)) != -1)
+            count += read;
+        return count;
+    }
+
+    // the station board as recorded, captured while the provider requests it
+    private static String stationBoard() throws IOException {
+        final NsProvider provider = new NsProvider();
+        final Interceptor replay = Fixtures.replay("hafas-stationboard");
+        final String[] body = new String[1];
+        provider.httpClient.setInterceptor(chain -> {
+            final Response response = replay.intercept(chain);
+            body[0] = new String(response.peekBody(Long.MAX_VALUE).bytes(), StandardCharsets.ISO_8859_1);
+            return response;
+        });
+        provider.queryDepartures("8400621", new Date(1792224000000L), 120, false);
+        return body[0];
+    }
+}
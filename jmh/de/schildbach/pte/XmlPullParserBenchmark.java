@@ -0,0 +1,85 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import de.schildbach.pte.util.XmlPullParserPool;
+
+/**
+ * Obtaining a pull parser and reading the root element of a small response, which is the per-request overhead of
+ * the XML based providers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class XmlPullParserBenchmark {
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<efa now=\"2026-10-17T10:00:00\" sessionID=\"0\"><ers/></efa>";
+
+    private XmlPullParserFactory factory;
+
+    @Setup
+    public void setup() throws XmlPullParserException {
+        factory = XmlPullParserFactory.newInstance(System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
+    }
+
+    @Benchmark
+    public String factoryPerRequest() throws XmlPullParserException, IOException {
+        final XmlPullParser pp = XmlPullParserFactory
+                .newInstance(System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null).newPullParser();
+        pp.setInput(new StringReader(XML));
+        pp.nextTag();
+        return pp.getName();
+    }
+
+    @Benchmark
+    public String parserPerRequest() throws XmlPullParserException, IOException {
+        final XmlPullParser pp = factory.newPullParser();
+        pp.setInput(new StringReader(XML));
+        pp.nextTag();
+        return pp.getName();
+    }
+
+    @Benchmark
+    public String pooled() throws XmlPullParserException, IOException {
+        try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(new StringReader(XML))) {
+            lease.parser.nextTag();
+            return lease.parser.getName();
+        }
+    }
+}
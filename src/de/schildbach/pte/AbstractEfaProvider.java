@@ -18,10 +18,24 @@
 package de.schildbach.pte;
 
 import static de.schildbach.pte.util.Preconditions.checkState;
+import static de.schildbach.pte.LineRules.HAS_SYMBOL;
+import static de.schildbach.pte.LineRules.HAS_TRAIN_NUM;
+import static de.schildbach.pte.LineRules.NO_SYMBOL;
+import static de.schildbach.pte.LineRules.NO_TRAIN_NAME;
+import static de.schildbach.pte.LineRules.NO_TRAIN_NUM;
+import static de.schildbach.pte.LineRules.NO_TRAIN_TYPE;
+import static de.schildbach.pte.LineRules.SYMBOL_LABEL;
+import static de.schildbach.pte.LineRules.TRAIN_NUM_LABEL;
+import static de.schildbach.pte.LineRules.label;
+import static de.schildbach.pte.LineRules.longName;
+import static de.schildbach.pte.LineRules.symbol;
+import static de.schildbach.pte.LineRules.trainName;
+import static de.schildbach.pte.LineRules.trainNum;
+import static de.schildbach.pte.LineRules.trainNumLabel;
+import static de.schildbach.pte.LineRules.trainType;
 import static java.util.Objects.requireNonNull;
 
 import java.io.IOException;
-import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -38,6 +52,8 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -52,7 +68,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlPullParserFactory;
 
 import de.schildbach.pte.dto.Departure;
 import de.schildbach.pte.dto.Fare;
@@ -63,6 +78,7 @@ import de.schildbach.pte.dto.Location;
 import de.schildbach.pte.dto.LocationType;
 import de.schildbach.pte.dto.NearbyLocationsResult;
 import de.schildbach.pte.dto.Point;
+import de.schildbach.pte.dto.PointArray;
 import de.schildbach.pte.dto.Position;
 import de.schildbach.pte.dto.Product;
 import de.schildbach.pte.dto.QueryDeparturesResult;
@@ -78,10 +94,15 @@ import de.schildbach.pte.dto.Trip.Leg;
 import de.schildbach.pte.dto.TripOptions;
 import de.schildbach.pte.exception.InvalidDataException;
 import de.schildbach.pte.exception.ParserException;
+import de.schildbach.pte.util.DateTimes;
 import de.schildbach.pte.util.HttpClient;
 import de.schildbach.pte.util.ParserUtils;
+import de.schildbach.pte.util.QueryTrace;
+import de.schildbach.pte.util.SingleFlight;
+import de.schildbach.pte.util.XmlPullParserPool;
 import de.schildbach.pte.util.XmlPullUtil;
 
+import okhttp3.Cookie;
 import okhttp3.HttpUrl;
 import okhttp3.ResponseBody;
 
@@ -122,16 +143,33 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
     private boolean useStringCoordListOutputFormat = true;
     private float fareCorrectionFactor = 1f;
 
-    private final XmlPullParserFactory parserFactory;
+    private final SingleFlight<String, QueryDeparturesResult> departuresFlight = new SingleFlight<>();
 
     private static final Logger log = LoggerFactory.getLogger(AbstractEfaProvider.class);
 
     @SuppressWarnings("serial")
     private static class Context implements QueryTripsContext {
         private final String context;
+        // session cookie of the trip request, which follow-up requests must carry rather than that of another query
+        private final @Nullable String sessionCookieName;
+        private final @Nullable String sessionCookieValue;
 
-        private Context(final String context) {
+        private Context(final String context, final @Nullable Cookie sessionCookie) {
             this.context = context;
+            this.sessionCookieName = sessionCookie != null ? sessionCookie.name() : null;
+            this.sessionCookieValue = sessionCookie != null ? sessionCookie.value() : null;
+        }
+
+        private @Nullable Cookie sessionCookie(final HttpUrl url) {
+            if (sessionCookieName == null)
+                return null;
+            return new Cookie.Builder().name(sessionCookieName).value(sessionCookieValue).domain(url.host()).build();
+        }
+
+        private HttpClient.RequestOptions requestOptions(final HttpUrl url, final String referer) {
+            final HttpClient.RequestOptions options = HttpClient.RequestOptions.NONE.withReferer(referer);
+            final Cookie sessionCookie = sessionCookie(url);
+            return sessionCookie != null ? options.withCookie(sessionCookie) : options;
         }
 
         @Override
@@ -174,13 +212,6 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
             final HttpUrl tripEndpoint, final HttpUrl stopFinderEndpoint, final HttpUrl coordEndpoint) {
         super(network);
 
-        try {
-            parserFactory = XmlPullParserFactory.newInstance(System.getProperty(XmlPullParserFactory.PROPERTY_NAME),
-                    null);
-        } catch (final XmlPullParserException x) {
-            throw new RuntimeException(x);
-        }
-
         this.departureMonitorEndpoint = departureMonitorEndpoint;
         this.tripEndpoint = tripEndpoint;
         this.stopFinderEndpoint = stopFinderEndpoint;
@@ -256,12 +287,12 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
             final @Nullable Set<LocationType> types, final int maxLocations) throws IOException {
         final HttpUrl.Builder url = stopFinderEndpoint.newBuilder();
         appendStopfinderRequestParameters(url, constraint, "JSON", types, maxLocations);
-        final CharSequence page = httpClient.get(url.build());
+        final CharSequence page = httpClient.get(url.build(), null, HEDGEABLE);
         final ResultHeader header = new ResultHeader(network, SERVER_PRODUCT);
 
         try {
             final List<SuggestedLocation> locations = new ArrayList<>();
-            final JSONObject head = new JSONObject(page.toString());
+            final JSONObject head = QueryTrace.parse(() -> new JSONObject(page.toString()));
             final JSONObject stopFinder = head.optJSONObject("stopFinder");
             if (stopFinder != null) {
                 final JSONArray messages = stopFinder.optJSONArray("message");
@@ -393,9 +424,8 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         final AtomicReference<SuggestLocationsResult> result = new AtomicReference<>();
 
         final HttpClient.Callback callback = (bodyPeek, body) -> {
-            try {
-                final XmlPullParser pp = parserFactory.newPullParser();
-                pp.setInput(body.charStream());
+            try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(body.charStream())) {
+                final XmlPullParser pp = lease.parser;
                 final ResultHeader header = enterEfa(pp);
                 XmlPullUtil.optSkip(pp, "ers");
 
@@ -454,7 +484,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
             }
         };
 
-        httpClient.getInputStream(callback, url.build(), httpReferer);
+        httpClient.getInputStream(callback, url.build(), null, HEDGEABLE.withReferer(httpReferer));
 
         return result.get();
     }
@@ -487,9 +517,8 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         final AtomicReference<NearbyLocationsResult> result = new AtomicReference<>();
 
         final HttpClient.Callback callback = (bodyPeek, body) -> {
-            try {
-                final XmlPullParser pp = parserFactory.newPullParser();
-                pp.setInput(body.charStream());
+            try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(body.charStream())) {
+                final XmlPullParser pp = lease.parser;
                 final ResultHeader header = enterItdRequest(pp);
 
                 XmlPullUtil.enter(pp, "itdCoordInfoRequest");
@@ -570,9 +599,8 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         final AtomicReference<NearbyLocationsResult> result = new AtomicReference<>();
 
         final HttpClient.Callback callback = (bodyPeek, body) -> {
-            try {
-                final XmlPullParser pp = parserFactory.newPullParser();
-                pp.setInput(body.charStream());
+            try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(body.charStream())) {
+                final XmlPullParser pp = lease.parser;
                 final ResultHeader header = enterEfa(pp);
 
                 XmlPullUtil.enter(pp, "ci");
@@ -852,9 +880,8 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         final AtomicReference<NearbyLocationsResult> result = new AtomicReference<>();
 
         final HttpClient.Callback callback = (bodyPeek, body) -> {
-            try {
-                final XmlPullParser pp = parserFactory.newPullParser();
-                pp.setInput(body.charStream());
+            try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(body.charStream())) {
+                final XmlPullParser pp = lease.parser;
                 final ResultHeader header = enterItdRequest(pp);
 
                 XmlPullUtil.enter(pp, "itdDepartureMonitorRequest");
@@ -902,514 +929,398 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
     private static final Pattern P_LINE_S_DB = Pattern.compile("(S\\d+) \\((?:DB Regio AG)\\)");
     private static final Pattern P_LINE_NUMBER = Pattern.compile("\\d+");
 
+    private static Predicate<LineRules.Input> trainNumMatches(final Pattern pattern) {
+        return in -> in.trainType == null && in.trainNum != null && pattern.matcher(in.trainNum).matches();
+    }
+
+    private static Predicate<LineRules.Input> longNameStartsWith(final String prefix) {
+        return in -> in.longName != null && in.longName.startsWith(prefix);
+    }
+
+    private static final Function<LineRules.Input, String> NAME_OR_EMPTY = in -> Objects.toString(in.name, "");
+
+    private static final LineRules LINES = LineRules.builder() //
+            .mot(null) //
+            .rule(trainName("S-Bahn")).then(Product.SUBURBAN_TRAIN, NAME_OR_EMPTY) //
+            .rule(trainName("U-Bahn")).then(Product.SUBWAY, NAME_OR_EMPTY) //
+            .rule(trainName("Straßenbahn"), trainName("Badner Bahn")).then(Product.TRAM, NAME_OR_EMPTY) //
+            .rule(trainName("Stadtbus"), trainName("Citybus"), trainName("Regionalbus"), trainName("ÖBB-Postbus"),
+                    trainName("Autobus"), trainName("Discobus"), trainName("Nachtbus"), trainName("Anrufsammeltaxi"),
+                    trainName("Ersatzverkehr"), trainName("Vienna Airport Lines"))
+            .then(Product.BUS, NAME_OR_EMPTY) //
+            .mot("0") //
+            .rule(trainType("EC"), trainName("EuroCity"), trainName("Eurocity")).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("EC")) //
+            .rule(trainType("ECE"), trainName("Eurocity-Express")).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("ECE")) //
+            .rule(trainType("EN"), trainName("EuroNight")).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("EN")) //
+            .rule(trainType("IC"), trainName("IC"), trainName("InterCity")).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("IC")) //
+            .rule(trainNum("IC21"), trainNum("IC40")).and(NO_TRAIN_NAME)
+            .then(Product.HIGH_SPEED_TRAIN, TRAIN_NUM_LABEL) //
+            .rule(trainType("ICE"), trainName("ICE"), trainName("Intercity-Express")).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("ICE")) //
+            .rule(trainType("ICN"), trainName("InterCityNight")).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("ICN")) //
+            .rule(trainType("X"), trainName("InterConnex")).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("X")) //
+            .rule(trainType("CNL"), trainName("CityNightLine")).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("CNL")) //
+            .rule(trainType("THA"), trainName("Thalys")).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("THA")) //
+            .rule(trainType("RHI")).and(HAS_TRAIN_NUM).then(Product.HIGH_SPEED_TRAIN, trainNumLabel("RHI")) //
+            .rule(trainType("TGV"), trainName("TGV")).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("TGV")) //
+            .rule(trainType("TGD")).and(HAS_TRAIN_NUM).then(Product.HIGH_SPEED_TRAIN, trainNumLabel("TGD")) //
+            .rule(trainType("INZ")).and(HAS_TRAIN_NUM).then(Product.HIGH_SPEED_TRAIN, trainNumLabel("INZ")) //
+            .rule(trainType("RJ"), trainName("railjet")).then(Product.HIGH_SPEED_TRAIN, trainNumLabel("RJ")) //
+            .rule(trainType("RJX"), trainName("railjet xpress"))
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("RJX")) //
+            .rule(trainType("WB"), trainName("WESTbahn")).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("WB")) //
+            .rule(trainType("HKX"), trainName("Hamburg-Köln-Express")).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("HKX")) //
+            .rule(trainType("INT")).and(HAS_TRAIN_NUM) // SVV, VAGFR
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("INT")) //
+            .rule(trainType("SC"), trainName("SC Pendolino")).and(HAS_TRAIN_NUM) // SuperCity
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("SC")) //
+            .rule(trainType("ECB")).and(HAS_TRAIN_NUM) // EC, Verona-München
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("ECB")) //
+            .rule(trainType("ES")).and(HAS_TRAIN_NUM) // Eurostar Italia
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("ES")) //
+            .rule(trainType("EST"), trainName("EUROSTAR")).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("EST")) //
+            .rule(trainType("EIC")).and(HAS_TRAIN_NUM) // Ekspres InterCity, Polen
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("EIC")) //
+            .rule(trainType("MT")).and(in -> "Schnee-Express".equals(in.trainName)).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("MT")) //
+            .rule(trainType("TLK"), trainName("Tanie Linie Kolejowe")).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("TLK")) //
+            .rule(trainType("DNZ")).and(HAS_TRAIN_NUM) // Nacht-Schnellzug
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("DNZ")) //
+            .rule(trainType("AVE")).and(HAS_TRAIN_NUM) // klimatisierter Hochgeschwindigkeitszug
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("DNZ")) //
+            .rule(trainType("ARC")).and(HAS_TRAIN_NUM) // Arco/Alvia/Avant (Renfe), Spanien
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("ARC")) //
+            .rule(trainType("HOT")).and(HAS_TRAIN_NUM) // Spanien, Nacht
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("HOT")) //
+            .rule(trainType("LCM")).and(in -> "Locomore".equals(in.trainName)).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("LCM")) //
+            .rule(longName("Locomore")).then(Product.HIGH_SPEED_TRAIN, trainNumLabel("LOC")) //
+            .rule(trainType("NJ")).and(HAS_TRAIN_NUM) // NightJet
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("NJ")) //
+            .rule(trainType("FLX")).and(in -> "FlixTrain".equals(in.trainName)).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("FLX")) //
+
+            .rule(trainType("IR"), trainName("Interregio"), trainName("InterRegio"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("IR")) //
+            .rule(trainNum("IR13"), trainNum("IR36"), trainNum("IR37"), trainNum("IR75")).and(NO_TRAIN_NAME)
+            .then(Product.REGIONAL_TRAIN, TRAIN_NUM_LABEL) //
+            .rule(trainType("IRE"), trainName("Interregio-Express"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("IRE")) //
+            .rule().and(trainNumMatches(P_LINE_IRE)).then(Product.REGIONAL_TRAIN, TRAIN_NUM_LABEL) //
+            .rule(trainType("RE"), trainName("Regional-Express")).then(Product.REGIONAL_TRAIN, trainNumLabel("RE")) //
+            .rule(trainNum("RE")).and(NO_TRAIN_NAME).then(Product.REGIONAL_TRAIN, label("RE")) //
+            .rule().and(trainNumMatches(P_LINE_RE)).then(Product.REGIONAL_TRAIN, TRAIN_NUM_LABEL) //
+            .rule(trainNum("RE3 / RB30")).and(NO_TRAIN_TYPE).and(NO_TRAIN_NAME)
+            .then(Product.REGIONAL_TRAIN, label("RE3/RB30")) //
+            .rule(trainName("Regionalexpress"), trainName("R-Bahn")).then(Product.REGIONAL_TRAIN, SYMBOL_LABEL) //
+            .rule(trainNum("RE1 (RRX)")).then(Product.REGIONAL_TRAIN, label("RE1")) //
+            .rule(trainNum("RE5 (RRX)")).then(Product.REGIONAL_TRAIN, label("RE5")) //
+            .rule(trainNum("RE6 (RRX)")).then(Product.REGIONAL_TRAIN, label("RE6")) //
+            .rule(trainNum("RE11 (RRX)")).then(Product.REGIONAL_TRAIN, label("RE11")) //
+            .rule(trainName("RB-Bahn")).then(Product.REGIONAL_TRAIN, SYMBOL_LABEL) //
+            .rule(trainNum("RB67/71"), trainNum("RB65/68")).and(NO_TRAIN_TYPE)
+            .then(Product.REGIONAL_TRAIN, TRAIN_NUM_LABEL) //
+            .rule(trainName("RE-Bahn")).then(Product.REGIONAL_TRAIN, SYMBOL_LABEL) //
+            .rule(trainType("REX")) // RegionalExpress, Österreich
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("REX")) //
+            .rule(trainType("RB"), trainName("Regionalbahn")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("RB")) //
+            .rule(trainNum("RB")).and(NO_TRAIN_NAME).then(Product.REGIONAL_TRAIN, label("RB")) //
+            .rule().and(trainNumMatches(P_LINE_RB)).then(Product.REGIONAL_TRAIN, TRAIN_NUM_LABEL) //
+            .rule(trainName("Abellio-Zug"), trainName("Westfalenbahn"), trainName("Chiemseebahn"))
+            .then(Product.REGIONAL_TRAIN, SYMBOL_LABEL) //
+            .rule(trainType("R"), trainName("Regionalzug")).then(Product.REGIONAL_TRAIN, trainNumLabel("R")) //
+            .rule().and(trainNumMatches(P_LINE_R)).then(Product.REGIONAL_TRAIN, TRAIN_NUM_LABEL) //
+            .rule(trainType("D"), trainName("Schnellzug")).then(Product.REGIONAL_TRAIN, trainNumLabel("D")) //
+            .rule(trainType("E"), trainName("Eilzug")).then(Product.REGIONAL_TRAIN, trainNumLabel("E")) //
+            .rule(trainType("WFB"), trainName("WestfalenBahn")).then(Product.REGIONAL_TRAIN, trainNumLabel("WFB")) //
+            .rule(trainType("NWB"), trainName("NordWestBahn")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("NWB")) //
+            .rule(trainType("WES"), trainName("Westbahn")).then(Product.REGIONAL_TRAIN, trainNumLabel("WES")) //
+            .rule(trainType("ERB"), trainName("eurobahn")).then(Product.REGIONAL_TRAIN, trainNumLabel("ERB")) //
+            .rule(trainType("CAN"), trainName("cantus Verkehrsgesellschaft"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("CAN")) //
+            .rule(trainType("HEX"), trainName("Veolia Verkehr Sachsen-Anhalt"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("HEX")) //
+            .rule(trainType("EB"), trainName("Erfurter Bahn")).then(Product.REGIONAL_TRAIN, trainNumLabel("EB")) //
+            .rule(longName("Erfurter Bahn")).then(Product.REGIONAL_TRAIN, label("EB")) //
+            .rule(trainType("EBx"), trainName("Erfurter Bahn Express"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("EBx")) //
+            .rule(longName("Erfurter Bahn Express")).and(NO_SYMBOL).then(Product.REGIONAL_TRAIN, label("EBx")) //
+            .rule(trainType("MR")).and(in -> "Märkische Regiobahn".equals(in.trainName)).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("MR")) //
+            .rule(trainType("MRB"), trainName("Mitteldeutsche Regiobahn"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("MRB")) //
+            .rule(trainNum("MRB26")).and(NO_TRAIN_TYPE).then(Product.REGIONAL_TRAIN, TRAIN_NUM_LABEL) //
+            .rule(trainType("ABR"), trainName("ABELLIO Rail NRW GmbH"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("ABR")) //
+            .rule(trainType("NEB"), trainName("NEB Niederbarnimer Eisenbahn"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("NEB")) //
+            .rule(trainType("OE"), trainName("Ostdeutsche Eisenbahn GmbH"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("OE")) //
+            .rule(longName("Ostdeutsche Eisenbahn GmbH")).and(NO_SYMBOL).then(Product.REGIONAL_TRAIN, label("OE")) //
+            .rule(trainType("ODE")).and(HAS_SYMBOL).then(Product.REGIONAL_TRAIN, SYMBOL_LABEL) //
+            .rule(trainType("OLA"), trainName("Ostseeland Verkehr GmbH"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("OLA")) //
+            .rule(trainType("UBB"), trainName("Usedomer Bäderbahn"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("UBB")) //
+            .rule(trainType("EVB"), trainName("ELBE-WESER GmbH")).then(Product.REGIONAL_TRAIN, trainNumLabel("EVB")) //
+            .rule(trainType("RTB"), trainName("Rurtalbahn GmbH")).then(Product.REGIONAL_TRAIN, trainNumLabel("RTB")) //
+            .rule(trainType("STB"), trainName("Süd-Thüringen-Bahn"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("STB")) //
+            .rule(trainType("HTB"), trainName("Hellertalbahn")).then(Product.REGIONAL_TRAIN, trainNumLabel("HTB")) //
+            .rule(trainType("VBG"), trainName("Vogtlandbahn")).then(Product.REGIONAL_TRAIN, trainNumLabel("VBG")) //
+            .rule(trainType("CB"), trainName("City-Bahn Chemnitz")).then(Product.REGIONAL_TRAIN, trainNumLabel("CB")) //
+            .rule(trainNum("C11"), trainNum("C13"), trainNum("C14"), trainNum("C15")).and(NO_TRAIN_TYPE)
+            .then(Product.REGIONAL_TRAIN, TRAIN_NUM_LABEL) //
+            .rule(trainNum("CB523")).then(Product.REGIONAL_TRAIN, TRAIN_NUM_LABEL) //
+            .rule(trainType("VEC"), trainName("vectus Verkehrsgesellschaft"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("VEC")) //
+            .rule(trainType("HzL"), trainName("Hohenzollerische Landesbahn AG"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("HzL")) //
+            .rule(trainType("SBB"), trainName("SBB GmbH")).then(Product.REGIONAL_TRAIN, trainNumLabel("SBB")) //
+            .rule(trainType("MBB"), trainName("Mecklenburgische Bäderbahn Molli"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("MBB")) //
+            .rule(trainType("OS")) // Osobní vlak
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("OS")) //
+            .rule(trainType("SP"), trainType("Sp")) // Spěšný vlak
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("SP")) //
+            .rule(trainType("Dab"), trainName("Daadetalbahn")).then(Product.REGIONAL_TRAIN, trainNumLabel("Dab")) //
+            .rule(trainType("FEG"), trainName("Freiberger Eisenbahngesellschaft"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("FEG")) //
+            .rule(trainType("ARR"), trainName("ARRIVA")).then(Product.REGIONAL_TRAIN, trainNumLabel("ARR")) //
+            .rule(trainType("HSB"), trainName("Harzer Schmalspurbahn"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("HSB")) //
+            .rule(trainType("ALX"), trainName("alex - Länderbahn und Vogtlandbahn GmbH"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("ALX")) //
+            .rule(trainType("EX"), trainName("Fatra")).then(Product.REGIONAL_TRAIN, trainNumLabel("EX")) //
+            .rule(trainType("ME"), trainName("metronom")).then(Product.REGIONAL_TRAIN, trainNumLabel("ME")) //
+            .rule(longName("metronom")).then(Product.REGIONAL_TRAIN, label("ME")) //
+            .rule(trainType("MEr")).then(Product.REGIONAL_TRAIN, trainNumLabel("MEr")) //
+            .rule(trainType("AKN"), trainName("AKN Eisenbahn AG")).then(Product.REGIONAL_TRAIN, trainNumLabel("AKN")) //
+            .rule(trainType("SOE"), trainName("Sächsisch-Oberlausitzer Eisenbahngesellschaft"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("SOE")) //
+            .rule(trainType("VIA"), trainName("VIAS GmbH")).then(Product.REGIONAL_TRAIN, trainNumLabel("VIA")) //
+            .rule(trainType("BRB"), trainName("Bayerische Regiobahn"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("BRB")) //
+            .rule(trainType("BLB"), trainName("Berchtesgadener Land Bahn"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("BLB")) //
+            .rule(trainType("HLB"), trainName("Hessische Landesbahn"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("HLB")) //
+            .rule(trainType("NOB"), trainName("NordOstseeBahn")).then(Product.REGIONAL_TRAIN, trainNumLabel("NOB")) //
+            .rule(trainType("NBE"), trainName("Nordbahn Eisenbahngesellschaft"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("NBE")) //
+            .rule(trainType("VEN"), trainName("Rhenus Veniro"))
+            .then(Product.REGIONAL_TRAIN, in -> "VEN" + in.trainType) //
+            .rule(trainType("DPN"), trainName("Nahreisezug")).then(Product.REGIONAL_TRAIN, trainNumLabel("DPN")) //
+            .rule(trainType("RBG"), trainName("Regental Bahnbetriebs GmbH"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("RBG")) //
+            .rule(trainType("BOB"), trainName("Bodensee-Oberschwaben-Bahn"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("BOB")) //
+            .rule(trainType("VE"), trainName("Vetter")).then(Product.REGIONAL_TRAIN, trainNumLabel("VE")) //
+            .rule(trainType("SDG"), trainName("SDG Sächsische Dampfeisenbahngesellschaft mbH"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("SDG")) //
+            .rule(trainType("PRE"), trainName("Pressnitztalbahn")).then(Product.REGIONAL_TRAIN, trainNumLabel("PRE")) //
+            .rule(trainType("VEB"), trainName("Vulkan-Eifel-Bahn"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("VEB")) //
+            .rule(trainType("neg"), trainName("Norddeutsche Eisenbahn Gesellschaft"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("neg")) //
+            .rule(trainType("AVG"), trainName("Felsenland-Express"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("AVG")) //
+            .rule(trainType("P"), trainName("BayernBahn Betriebs-GmbH"), trainName("Brohltalbahn"),
+                    trainName("Kasbachtalbahn"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("P")) //
+            .rule(trainType("SBS"), trainName("Städtebahn Sachsen"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("SBS")) //
+            .rule(trainType("SES"), trainName("Städteexpress Sachsen"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("SES")) //
+            .rule(trainType("SB-")) // Städtebahn Sachsen
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("SB")) //
+            .rule(trainType("ag")) // agilis
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("ag")) //
+            .rule(trainType("agi"), trainName("agilis")).then(Product.REGIONAL_TRAIN, trainNumLabel("agi")) //
+            .rule(trainType("as"), trainName("agilis-Schnellzug")).then(Product.REGIONAL_TRAIN, trainNumLabel("as")) //
+            .rule(trainType("TLX"), trainName("TRILEX")) // Trilex (Vogtlandbahn)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("TLX")) //
+            .rule(trainType("MSB"), trainName("Mainschleifenbahn"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("MSB")) //
+            .rule(trainType("BE"), trainName("Bentheimer Eisenbahn"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("BE")) //
+            .rule(trainType("erx"), trainName("erixx - Der Heidesprinter"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("erx")) //
+            .rule(trainType("ERX"), trainName("Erixx")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("ERX")) //
+            .rule(trainType("SWE"), trainName("Südwestdeutsche Verkehrs-AG"),
+                    trainName("Südwestdeutsche Landesverkehrs-AG"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("SWE")) //
+            .rule(trainName("SWEG-Zug")) // Südwestdeutschen Verkehrs-Aktiengesellschaft
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("SWEG")) //
+            .rule().and(longNameStartsWith("SWEG-Zug")).then(Product.REGIONAL_TRAIN, trainNumLabel("SWEG")) //
+            .rule(trainName("EGP Eisenbahngesellschaft Potsdam")).then(Product.REGIONAL_TRAIN, trainNumLabel("EGP")) //
+            .rule(trainType("ÖBB"), trainName("ÖBB")).then(Product.REGIONAL_TRAIN, trainNumLabel("ÖBB")) //
+            .rule(trainType("CAT")) // City Airport Train Wien
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("CAT")) //
+            .rule(trainType("DZ"), trainName("Dampfzug")).then(Product.REGIONAL_TRAIN, trainNumLabel("DZ")) //
+            .rule(trainType("CD")) // Tschechien
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("CD")) //
+            .rule(trainType("VR"), trainType("PR")) // Polen
+            .then(Product.REGIONAL_TRAIN, SYMBOL_LABEL) //
+            .rule(trainType("KD")) // Koleje Dolnośląskie (Niederschlesische Eisenbahn)
+            .then(Product.REGIONAL_TRAIN, SYMBOL_LABEL) //
+            .rule(trainName("Koleje Dolnoslaskie")).and(HAS_SYMBOL) // Koleje Dolnośląskie
+            .then(Product.REGIONAL_TRAIN, SYMBOL_LABEL) //
+            .rule(trainType("OO"), trainName("Ordinary passenger (o.pas.)")) // GB
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("OO")) //
+            .rule(trainType("XX"), trainName("Express passenger    (ex.pas.)")) // GB
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("XX")) //
+            .rule(trainType("XZ"), trainName("Express passenger sleeper")) // GB
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("XZ")) //
+            .rule(trainType("ATB")) // Autoschleuse Tauernbahn
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("ATB")) //
+            .rule(trainType("ATZ")) // Autozug
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("ATZ")) //
+            .rule(trainType("AZ"), trainName("Auto-Zug")).then(Product.REGIONAL_TRAIN, trainNumLabel("AZ")) //
+            .rule(trainType("AZS")).and(HAS_TRAIN_NUM).then(Product.REGIONAL_TRAIN, trainNumLabel("AZS")) //
+            .rule(trainType("DWE"), trainName("Dessau-Wörlitzer Eisenbahn"))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("DWE")) //
+            .rule(trainType("KTB"), trainName("Kandertalbahn")).then(Product.REGIONAL_TRAIN, trainNumLabel("KTB")) //
+            .rule(trainType("CBC"), trainName("CBC")) // City-Bahn Chemnitz
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("CBC")) //
+            .rule(trainName("Bernina Express")).then(Product.REGIONAL_TRAIN, trainNumLabel("")) //
+            .rule(trainType("STR")) // Harzquerbahn, Nordhausen
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("STR")) //
+            .rule(trainType("EXT"), trainName("Extrazug")).then(Product.REGIONAL_TRAIN, trainNumLabel("EXT")) //
+            .rule(trainName("Heritage Railway")) // GB
+            .then(Product.REGIONAL_TRAIN, SYMBOL_LABEL) //
+            .rule(trainType("WTB"), trainName("Wutachtalbahn")).then(Product.REGIONAL_TRAIN, trainNumLabel("WTB")) //
+            .rule(trainType("DB"), trainName("DB Regio")).then(Product.REGIONAL_TRAIN, trainNumLabel("DB")) //
+            .rule(trainType("M")).and(in -> "Meridian".equals(in.trainName) || "Messezug".equals(in.trainName))
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("M")) //
+            .rule(trainType("EZ")) // ÖBB Erlebniszug
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("EZ")) //
+            .rule(trainType("DPF")).then(Product.REGIONAL_TRAIN, trainNumLabel("DPF")) //
+            .rule(trainType("WBA"), trainName("Waldbahn")).then(Product.REGIONAL_TRAIN, trainNumLabel("WBA")) //
+            .rule(trainType("ÖB")).and(in -> "Öchsle-Bahn-Betriebsgesellschaft mbH".equals(in.trainName))
+            .and(HAS_TRAIN_NUM).then(Product.REGIONAL_TRAIN, trainNumLabel("ÖB")) //
+            .rule(trainType("ÖBA")).and(HAS_TRAIN_NUM) // Eisenbahn-Betriebsgesellschaft Ochsenhausen
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("ÖBA")) //
+            .rule(trainType("UEF"), trainName("Ulmer Eisenbahnfreunde")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("UEF")) //
+            .rule(trainType("DBG"), trainName("Döllnitzbahn")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("DBG")) //
+            .rule(trainType("TL"), trainName("TL"), trainName("Trilex")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("TL")) //
+            .rule(trainType("OPB"), trainName("oberpfalzbahn")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("OPB")) //
+            .rule(trainType("OPX"), trainName("oberpfalz-express")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("OPX")) //
+            .rule(trainType("LEO"), trainName("Chiemgauer Lokalbahn")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("LEO")) //
+            .rule(trainType("VAE"), trainName("Voralpen-Express")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("VAE")) //
+            .rule(trainType("V6"), trainName("vlexx")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("vlexx")) //
+            .rule(trainType("ARZ"), trainName("Autoreisezug")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("ARZ")) //
+            .rule(trainType("RR")).then(Product.REGIONAL_TRAIN, trainNumLabel("RR")) //
+            .rule(trainType("TER"), trainName("Train Express Regional")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("TER")) //
+            .rule(trainType("ENO"), trainName("enno")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("ENO")) //
+            .rule(longName("enno")).and(NO_SYMBOL).then(Product.REGIONAL_TRAIN, label("enno")) //
+            .rule(trainType("PLB"), trainName("Pinzgauer Lokalbahn")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("PLB")) //
+            .rule(trainType("NX"), trainName("National Express")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("NX")) //
+            .rule(trainType("SE"), trainName("ABELLIO Rail Mitteldeutschland GmbH")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("SE")) //
+            .rule(trainType("DNA")).and(HAS_TRAIN_NUM) // Dieselnetz Augsburg
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("DNA")) //
+            .rule(trainType("Dieselnetz")).and(in -> "Augsburg".equals(in.trainNum))
+            .then(Product.REGIONAL_TRAIN, label("DNA")) //
+            .rule(trainType("SAB"), trainName("Schwäbische Alb-Bahn")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("SAB")) //
+            .rule().and(in -> in.symbol != null && P_LINE_MEX.matcher(in.symbol).matches()) // Metropolexpress
+            .then(Product.REGIONAL_TRAIN, SYMBOL_LABEL) //
+            .rule().and(trainNumMatches(P_LINE_MEX)) // Metropolexpress
+            .then(Product.REGIONAL_TRAIN, TRAIN_NUM_LABEL) //
+            .rule(trainNum("FEX")).then(Product.REGIONAL_TRAIN, label("FEX")) //
+            .rule(trainType("FEX"), trainName("Flughafen-Express")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("FEX")) //
+
+            .rule(trainType("BSB"), trainName("Breisgau-S-Bahn Gmbh")).and(HAS_TRAIN_NUM)
+            .then(Product.REGIONAL_TRAIN, trainNumLabel("BSB")) //
+            .rule(trainName("BSB-Zug")).and(HAS_TRAIN_NUM) // Breisgau-S-Bahn
+            .then(Product.SUBURBAN_TRAIN, TRAIN_NUM_LABEL) //
+            .rule(trainName("BSB-Zug")).and(NO_TRAIN_NUM).then(Product.SUBURBAN_TRAIN, label("BSB")) //
+            .rule().and(longNameStartsWith("BSB-Zug")).then(Product.SUBURBAN_TRAIN, trainNumLabel("BSB")) //
+            .rule(trainType("RSB")) // Regionalschnellbahn, Wien
+            .then(Product.SUBURBAN_TRAIN, trainNumLabel("RSB")) //
+            .rule(trainNum("RS18")).and(NO_TRAIN_TYPE) // Nahverkehrszug Maastricht - Valkenburg - Heerlen
+            .then(Product.SUBURBAN_TRAIN, label("RS18")) //
+            .rule(trainName("RER")).and(in -> in.symbol != null && in.symbol.length() == 1) // Réseau Express Régional
+            .then(Product.SUBURBAN_TRAIN, SYMBOL_LABEL) //
+            .rule(trainType("S"), trainName("S-Bahn")).then(Product.SUBURBAN_TRAIN, trainNumLabel("S")) //
+            .rule(trainType("RS")).and(HAS_TRAIN_NUM) // Regio S-Bahn
+            .then(Product.SUBURBAN_TRAIN, trainNumLabel("RS")) //
+
+            .rule(trainType("RT"), trainName("RegioTram")).then(Product.TRAM, trainNumLabel("RT")) //
+            .rule(symbol("RT4"), symbol("RT5")).and(NO_TRAIN_TYPE).then(Product.TRAM, SYMBOL_LABEL) //
+
+            .rule(trainType("Bus")).and(HAS_TRAIN_NUM).then(Product.BUS, TRAIN_NUM_LABEL) //
+            .rule(longName("Bus")).and(NO_SYMBOL).then(Product.BUS, label("Bus")) //
+            .rule(trainType("SEV"), trainNum("SEV"), trainName("SEV"), symbol("SEV"), trainType("BSV"),
+                    trainName("Ersatzverkehr"), trainName("Schienenersatzverkehr"))
+            .then(Product.BUS, trainNumLabel("SEV")) //
+            .rule(trainName("Bus replacement")) // GB
+            .then(Product.BUS, label("BR")) //
+            .rule(trainType("BR")).and(in -> in.trainName != null && in.trainName.startsWith("Bus")) // GB
+            .then(Product.BUS, trainNumLabel("BR")) //
+            .rule(trainType("EXB")).and(HAS_TRAIN_NUM).then(Product.BUS, trainNumLabel("EXB")) //
+
+            .rule(trainType("GB")) // Gondelbahn
+            .then(Product.CABLECAR, trainNumLabel("GB")) //
+            .rule(trainType("SB")) // Seilbahn
+            .then(Product.SUBURBAN_TRAIN, trainNumLabel("SB")) //
+
+            .rule(trainName("Zug")).and(HAS_SYMBOL).then(null, SYMBOL_LABEL) //
+            .rule(longName("Zug")).and(NO_SYMBOL).then(null, label("Zug")) //
+            .rule(trainName("Zuglinie")).and(HAS_SYMBOL).then(null, SYMBOL_LABEL) //
+            .rule(trainType("ZUG")).and(HAS_TRAIN_NUM).then(null, TRAIN_NUM_LABEL) //
+            .rule().and(in -> in.symbol != null && P_LINE_NUMBER.matcher(in.symbol).matches()).and(NO_TRAIN_TYPE)
+            .and(NO_TRAIN_NAME).then(null, SYMBOL_LABEL) //
+            .rule(trainType("N")).and(NO_TRAIN_NAME).and(NO_SYMBOL).then(null, trainNumLabel("N")) //
+            .rule(trainName("Train")).then(null, label(null)) //
+            .rule(trainType("PPN")).and(in -> "Osobowy".equals(in.trainName)).and(HAS_TRAIN_NUM)
+            .then(null, trainNumLabel("PPN")) //
+
+            // generic
+            .rule().and(in -> in.trainName != null).and(NO_TRAIN_TYPE).and(NO_TRAIN_NUM)
+            .then(null, in -> in.trainName) //
+            .build();
+
     protected Line parseLine(final @Nullable String id, final @Nullable String network, final @Nullable String mot,
             @Nullable String symbol, final @Nullable String name, final @Nullable String longName,
             final @Nullable String trainType, final @Nullable String trainNum, final @Nullable String trainName) {
-        final String trainNumStr = Objects.toString(trainNum, "");
-        if (mot == null) {
-            if (trainName != null) {
-                final String str = Objects.toString(name, "");
-                if (trainName.equals("S-Bahn"))
-                    return new Line(id, network, Product.SUBURBAN_TRAIN, str);
-                if (trainName.equals("U-Bahn"))
-                    return new Line(id, network, Product.SUBWAY, str);
-                if (trainName.equals("Straßenbahn"))
-                    return new Line(id, network, Product.TRAM, str);
-                if (trainName.equals("Badner Bahn"))
-                    return new Line(id, network, Product.TRAM, str);
-                if (trainName.equals("Stadtbus"))
-                    return new Line(id, network, Product.BUS, str);
-                if (trainName.equals("Citybus"))
-                    return new Line(id, network, Product.BUS, str);
-                if (trainName.equals("Regionalbus"))
-                    return new Line(id, network, Product.BUS, str);
-                if (trainName.equals("ÖBB-Postbus"))
-                    return new Line(id, network, Product.BUS, str);
-                if (trainName.equals("Autobus"))
-                    return new Line(id, network, Product.BUS, str);
-                if (trainName.equals("Discobus"))
-                    return new Line(id, network, Product.BUS, str);
-                if (trainName.equals("Nachtbus"))
-                    return new Line(id, network, Product.BUS, str);
-                if (trainName.equals("Anrufsammeltaxi"))
-                    return new Line(id, network, Product.BUS, str);
-                if (trainName.equals("Ersatzverkehr"))
-                    return new Line(id, network, Product.BUS, str);
-                if (trainName.equals("Vienna Airport Lines"))
-                    return new Line(id, network, Product.BUS, str);
-            }
-        } else if ("0".equals(mot)) {
-            if (("EC".equals(trainType) || "EuroCity".equals(trainName) || "Eurocity".equals(trainName))
-                    && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "EC" + trainNumStr);
-            if (("ECE".equals(trainType) || "Eurocity-Express".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "ECE" + trainNumStr);
-            if (("EN".equals(trainType) || "EuroNight".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "EN" + trainNumStr);
-            if (("IC".equals(trainType) || "IC".equals(trainName) || "InterCity".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "IC" + trainNumStr);
-            if ("IC21".equals(trainNum) && trainName == null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, trainNum);
-            if ("IC40".equals(trainNum) && trainName == null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, trainNum);
-            if (("ICE".equals(trainType) || "ICE".equals(trainName) || "Intercity-Express".equals(trainName))
-                    && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "ICE" + trainNumStr);
-            if (("ICN".equals(trainType) || "InterCityNight".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "ICN" + trainNumStr);
-            if (("X".equals(trainType) || "InterConnex".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "X" + trainNumStr);
-            if (("CNL".equals(trainType) || "CityNightLine".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "CNL" + trainNumStr);
-            if (("THA".equals(trainType) || "Thalys".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "THA" + trainNumStr);
-            if ("RHI".equals(trainType) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "RHI" + trainNumStr);
-            if (("TGV".equals(trainType) || "TGV".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "TGV" + trainNumStr);
-            if ("TGD".equals(trainType) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "TGD" + trainNumStr);
-            if ("INZ".equals(trainType) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "INZ" + trainNumStr);
-            if (("RJ".equals(trainType) || "railjet".equals(trainName)))
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "RJ" + trainNumStr);
-            if (("RJX".equals(trainType) || "railjet xpress".equals(trainName)))
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "RJX" + trainNumStr);
-            if (("WB".equals(trainType) || "WESTbahn".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "WB" + trainNumStr);
-            if (("HKX".equals(trainType) || "Hamburg-Köln-Express".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "HKX" + trainNumStr);
-            if ("INT".equals(trainType) && trainNum != null) // SVV, VAGFR
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "INT" + trainNumStr);
-            if (("SC".equals(trainType) || "SC Pendolino".equals(trainName)) && trainNum != null) // SuperCity
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "SC" + trainNumStr);
-            if ("ECB".equals(trainType) && trainNum != null) // EC, Verona-München
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "ECB" + trainNumStr);
-            if ("ES".equals(trainType) && trainNum != null) // Eurostar Italia
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "ES" + trainNumStr);
-            if (("EST".equals(trainType) || "EUROSTAR".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "EST" + trainNumStr);
-            if ("EIC".equals(trainType) && trainNum != null) // Ekspres InterCity, Polen
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "EIC" + trainNumStr);
-            if ("MT".equals(trainType) && "Schnee-Express".equals(trainName) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "MT" + trainNumStr);
-            if (("TLK".equals(trainType) || "Tanie Linie Kolejowe".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "TLK" + trainNumStr);
-            if ("DNZ".equals(trainType) && trainNum != null) // Nacht-Schnellzug
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "DNZ" + trainNumStr);
-            if ("AVE".equals(trainType) && trainNum != null) // klimatisierter Hochgeschwindigkeitszug
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "DNZ" + trainNumStr);
-            if ("ARC".equals(trainType) && trainNum != null) // Arco/Alvia/Avant (Renfe), Spanien
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "ARC" + trainNumStr);
-            if ("HOT".equals(trainType) && trainNum != null) // Spanien, Nacht
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "HOT" + trainNumStr);
-            if ("LCM".equals(trainType) && "Locomore".equals(trainName) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "LCM" + trainNumStr);
-            if ("Locomore".equals(longName))
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "LOC" + trainNumStr);
-            if ("NJ".equals(trainType) && trainNum != null) // NightJet
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "NJ" + trainNumStr);
-            if ("FLX".equals(trainType) && "FlixTrain".equals(trainName) && trainNum != null)
-                return new Line(id, network, Product.HIGH_SPEED_TRAIN, "FLX" + trainNumStr);
-
-            if ("IR".equals(trainType) || "Interregio".equals(trainName) || "InterRegio".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "IR" + trainNumStr);
-            if ("IR13".equals(trainNum) && trainName == null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, trainNum);
-            if ("IR36".equals(trainNum) && trainName == null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, trainNum);
-            if ("IR37".equals(trainNum) && trainName == null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, trainNum);
-            if ("IR75".equals(trainNum) && trainName == null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, trainNum);
-            if ("IRE".equals(trainType) || "Interregio-Express".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "IRE" + trainNumStr);
-            if (trainType == null && trainNum != null && P_LINE_IRE.matcher(trainNum).matches())
-                return new Line(id, network, Product.REGIONAL_TRAIN, trainNum);
-            if ("RE".equals(trainType) || "Regional-Express".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "RE" + trainNumStr);
-            if ("RE".equals(trainNum) && trainName == null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "RE");
-            if (trainType == null && trainNum != null && P_LINE_RE.matcher(trainNum).matches())
-                return new Line(id, network, Product.REGIONAL_TRAIN, trainNumStr);
-            if ("RE3 / RB30".equals(trainNum) && trainType == null && trainName == null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "RE3/RB30");
-            if ("Regionalexpress".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-            if ("R-Bahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-            if ("RE1 (RRX)".equals(trainNum))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "RE1");
-            if ("RE5 (RRX)".equals(trainNum))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "RE5");
-            if ("RE6 (RRX)".equals(trainNum))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "RE6");
-            if ("RE11 (RRX)".equals(trainNum))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "RE11");
-            if ("RB-Bahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-            if (trainType == null && "RB67/71".equals(trainNum))
-                return new Line(id, network, Product.REGIONAL_TRAIN, trainNum);
-            if (trainType == null && "RB65/68".equals(trainNum))
-                return new Line(id, network, Product.REGIONAL_TRAIN, trainNum);
-            if ("RE-Bahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-            if ("REX".equals(trainType)) // RegionalExpress, Österreich
-                return new Line(id, network, Product.REGIONAL_TRAIN, "REX" + trainNumStr);
-            if (("RB".equals(trainType) || "Regionalbahn".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "RB" + trainNumStr);
-            if ("RB".equals(trainNum) && trainName == null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "RB");
-            if (trainType == null && trainNum != null && P_LINE_RB.matcher(trainNum).matches())
-                return new Line(id, network, Product.REGIONAL_TRAIN, trainNum);
-            if ("Abellio-Zug".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-            if ("Westfalenbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-            if ("Chiemseebahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-            if ("R".equals(trainType) || "Regionalzug".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "R" + trainNumStr);
-            if (trainType == null && trainNum != null && P_LINE_R.matcher(trainNum).matches())
-                return new Line(id, network, Product.REGIONAL_TRAIN, trainNum);
-            if ("D".equals(trainType) || "Schnellzug".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "D" + trainNumStr);
-            if ("E".equals(trainType) || "Eilzug".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "E" + trainNumStr);
-            if ("WFB".equals(trainType) || "WestfalenBahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "WFB" + trainNumStr);
-            if (("NWB".equals(trainType) || "NordWestBahn".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "NWB" + trainNumStr);
-            if ("WES".equals(trainType) || "Westbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "WES" + trainNumStr);
-            if ("ERB".equals(trainType) || "eurobahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "ERB" + trainNumStr);
-            if ("CAN".equals(trainType) || "cantus Verkehrsgesellschaft".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "CAN" + trainNumStr);
-            if ("HEX".equals(trainType) || "Veolia Verkehr Sachsen-Anhalt".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "HEX" + trainNumStr);
-            if ("EB".equals(trainType) || "Erfurter Bahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "EB" + trainNumStr);
-            if ("Erfurter Bahn".equals(longName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "EB");
-            if ("EBx".equals(trainType) || "Erfurter Bahn Express".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "EBx" + trainNumStr);
-            if ("Erfurter Bahn Express".equals(longName) && symbol == null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "EBx");
-            if ("MR".equals(trainType) && "Märkische Regiobahn".equals(trainName) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "MR" + trainNumStr);
-            if ("MRB".equals(trainType) || "Mitteldeutsche Regiobahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "MRB" + trainNumStr);
-            if ("MRB26".equals(trainNum) && trainType == null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, trainNum);
-            if ("ABR".equals(trainType) || "ABELLIO Rail NRW GmbH".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "ABR" + trainNumStr);
-            if ("NEB".equals(trainType) || "NEB Niederbarnimer Eisenbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "NEB" + trainNumStr);
-            if ("OE".equals(trainType) || "Ostdeutsche Eisenbahn GmbH".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "OE" + trainNumStr);
-            if ("Ostdeutsche Eisenbahn GmbH".equals(longName) && symbol == null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "OE");
-            if ("ODE".equals(trainType) && symbol != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-            if ("OLA".equals(trainType) || "Ostseeland Verkehr GmbH".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "OLA" + trainNumStr);
-            if ("UBB".equals(trainType) || "Usedomer Bäderbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "UBB" + trainNumStr);
-            if ("EVB".equals(trainType) || "ELBE-WESER GmbH".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "EVB" + trainNumStr);
-            if ("RTB".equals(trainType) || "Rurtalbahn GmbH".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "RTB" + trainNumStr);
-            if ("STB".equals(trainType) || "Süd-Thüringen-Bahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "STB" + trainNumStr);
-            if ("HTB".equals(trainType) || "Hellertalbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "HTB" + trainNumStr);
-            if ("VBG".equals(trainType) || "Vogtlandbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "VBG" + trainNumStr);
-            if ("CB".equals(trainType) || "City-Bahn Chemnitz".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "CB" + trainNumStr);
-            if (trainType == null && ("C11".equals(trainNum) || "C13".equals(trainNum) || "C14".equals(trainNum)
-                    || "C15".equals(trainNum)))
-                return new Line(id, network, Product.REGIONAL_TRAIN, trainNum);
-            if ("CB523".equals(trainNum))
-                return new Line(id, network, Product.REGIONAL_TRAIN, trainNum);
-            if ("VEC".equals(trainType) || "vectus Verkehrsgesellschaft".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "VEC" + trainNumStr);
-            if ("HzL".equals(trainType) || "Hohenzollerische Landesbahn AG".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "HzL" + trainNumStr);
-            if ("SBB".equals(trainType) || "SBB GmbH".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "SBB" + trainNumStr);
-            if ("MBB".equals(trainType) || "Mecklenburgische Bäderbahn Molli".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "MBB" + trainNumStr);
-            if ("OS".equals(trainType)) // Osobní vlak
-                return new Line(id, network, Product.REGIONAL_TRAIN, "OS" + trainNumStr);
-            if ("SP".equals(trainType) || "Sp".equals(trainType)) // Spěšný vlak
-                return new Line(id, network, Product.REGIONAL_TRAIN, "SP" + trainNumStr);
-            if ("Dab".equals(trainType) || "Daadetalbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "Dab" + trainNumStr);
-            if ("FEG".equals(trainType) || "Freiberger Eisenbahngesellschaft".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "FEG" + trainNumStr);
-            if ("ARR".equals(trainType) || "ARRIVA".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "ARR" + trainNumStr);
-            if ("HSB".equals(trainType) || "Harzer Schmalspurbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "HSB" + trainNumStr);
-            if ("ALX".equals(trainType) || "alex - Länderbahn und Vogtlandbahn GmbH".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "ALX" + trainNumStr);
-            if ("EX".equals(trainType) || "Fatra".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "EX" + trainNumStr);
-            if ("ME".equals(trainType) || "metronom".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "ME" + trainNumStr);
-            if ("metronom".equals(longName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "ME");
-            if ("MEr".equals(trainType))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "MEr" + trainNumStr);
-            if ("AKN".equals(trainType) || "AKN Eisenbahn AG".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "AKN" + trainNumStr);
-            if ("SOE".equals(trainType) || "Sächsisch-Oberlausitzer Eisenbahngesellschaft".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "SOE" + trainNumStr);
-            if ("VIA".equals(trainType) || "VIAS GmbH".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "VIA" + trainNumStr);
-            if ("BRB".equals(trainType) || "Bayerische Regiobahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "BRB" + trainNumStr);
-            if ("BLB".equals(trainType) || "Berchtesgadener Land Bahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "BLB" + trainNumStr);
-            if ("HLB".equals(trainType) || "Hessische Landesbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "HLB" + trainNumStr);
-            if ("NOB".equals(trainType) || "NordOstseeBahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "NOB" + trainNumStr);
-            if ("NBE".equals(trainType) || "Nordbahn Eisenbahngesellschaft".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "NBE" + trainNumStr);
-            if ("VEN".equals(trainType) || "Rhenus Veniro".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "VEN" + trainType);
-            if ("DPN".equals(trainType) || "Nahreisezug".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "DPN" + trainNumStr);
-            if ("RBG".equals(trainType) || "Regental Bahnbetriebs GmbH".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "RBG" + trainNumStr);
-            if ("BOB".equals(trainType) || "Bodensee-Oberschwaben-Bahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "BOB" + trainNumStr);
-            if ("VE".equals(trainType) || "Vetter".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "VE" + trainNumStr);
-            if ("SDG".equals(trainType) || "SDG Sächsische Dampfeisenbahngesellschaft mbH".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "SDG" + trainNumStr);
-            if ("PRE".equals(trainType) || "Pressnitztalbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "PRE" + trainNumStr);
-            if ("VEB".equals(trainType) || "Vulkan-Eifel-Bahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "VEB" + trainNumStr);
-            if ("neg".equals(trainType) || "Norddeutsche Eisenbahn Gesellschaft".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "neg" + trainNumStr);
-            if ("AVG".equals(trainType) || "Felsenland-Express".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "AVG" + trainNumStr);
-            if ("P".equals(trainType) || "BayernBahn Betriebs-GmbH".equals(trainName)
-                    || "Brohltalbahn".equals(trainName) || "Kasbachtalbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "P" + trainNumStr);
-            if ("SBS".equals(trainType) || "Städtebahn Sachsen".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "SBS" + trainNumStr);
-            if ("SES".equals(trainType) || "Städteexpress Sachsen".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "SES" + trainNumStr);
-            if ("SB-".equals(trainType)) // Städtebahn Sachsen
-                return new Line(id, network, Product.REGIONAL_TRAIN, "SB" + trainNumStr);
-            if ("ag".equals(trainType)) // agilis
-                return new Line(id, network, Product.REGIONAL_TRAIN, "ag" + trainNumStr);
-            if ("agi".equals(trainType) || "agilis".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "agi" + trainNumStr);
-            if ("as".equals(trainType) || "agilis-Schnellzug".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "as" + trainNumStr);
-            if ("TLX".equals(trainType) || "TRILEX".equals(trainName)) // Trilex (Vogtlandbahn)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "TLX" + trainNumStr);
-            if ("MSB".equals(trainType) || "Mainschleifenbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "MSB" + trainNumStr);
-            if ("BE".equals(trainType) || "Bentheimer Eisenbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "BE" + trainNumStr);
-            if ("erx".equals(trainType) || "erixx - Der Heidesprinter".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "erx" + trainNumStr);
-            if (("ERX".equals(trainType) || "Erixx".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "ERX" + trainNumStr);
-            if ("SWE".equals(trainType) || "Südwestdeutsche Verkehrs-AG".equals(trainName) || "Südwestdeutsche Landesverkehrs-AG".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "SWE" + trainNumStr);
-            if ("SWEG-Zug".equals(trainName)) // Südwestdeutschen Verkehrs-Aktiengesellschaft
-                return new Line(id, network, Product.REGIONAL_TRAIN, "SWEG" + trainNumStr);
-            if (longName != null && longName.startsWith("SWEG-Zug"))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "SWEG" + trainNumStr);
-            if ("EGP Eisenbahngesellschaft Potsdam".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "EGP" + trainNumStr);
-            if ("ÖBB".equals(trainType) || "ÖBB".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "ÖBB" + trainNumStr);
-            if ("CAT".equals(trainType)) // City Airport Train Wien
-                return new Line(id, network, Product.REGIONAL_TRAIN, "CAT" + trainNumStr);
-            if ("DZ".equals(trainType) || "Dampfzug".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "DZ" + trainNumStr);
-            if ("CD".equals(trainType)) // Tschechien
-                return new Line(id, network, Product.REGIONAL_TRAIN, "CD" + trainNumStr);
-            if ("VR".equals(trainType)) // Polen
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-            if ("PR".equals(trainType)) // Polen
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-            if ("KD".equals(trainType)) // Koleje Dolnośląskie (Niederschlesische Eisenbahn)
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-            if ("Koleje Dolnoslaskie".equals(trainName) && symbol != null) // Koleje Dolnośląskie
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-            if ("OO".equals(trainType) || "Ordinary passenger (o.pas.)".equals(trainName)) // GB
-                return new Line(id, network, Product.REGIONAL_TRAIN, "OO" + trainNumStr);
-            if ("XX".equals(trainType) || "Express passenger    (ex.pas.)".equals(trainName)) // GB
-                return new Line(id, network, Product.REGIONAL_TRAIN, "XX" + trainNumStr);
-            if ("XZ".equals(trainType) || "Express passenger sleeper".equals(trainName)) // GB
-                return new Line(id, network, Product.REGIONAL_TRAIN, "XZ" + trainNumStr);
-            if ("ATB".equals(trainType)) // Autoschleuse Tauernbahn
-                return new Line(id, network, Product.REGIONAL_TRAIN, "ATB" + trainNumStr);
-            if ("ATZ".equals(trainType)) // Autozug
-                return new Line(id, network, Product.REGIONAL_TRAIN, "ATZ" + trainNumStr);
-            if ("AZ".equals(trainType) || "Auto-Zug".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "AZ" + trainNumStr);
-            if ("AZS".equals(trainType) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "AZS" + trainNumStr);
-            if ("DWE".equals(trainType) || "Dessau-Wörlitzer Eisenbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "DWE" + trainNumStr);
-            if ("KTB".equals(trainType) || "Kandertalbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "KTB" + trainNumStr);
-            if ("CBC".equals(trainType) || "CBC".equals(trainName)) // City-Bahn Chemnitz
-                return new Line(id, network, Product.REGIONAL_TRAIN, "CBC" + trainNumStr);
-            if ("Bernina Express".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, trainNumStr);
-            if ("STR".equals(trainType)) // Harzquerbahn, Nordhausen
-                return new Line(id, network, Product.REGIONAL_TRAIN, "STR" + trainNumStr);
-            if ("EXT".equals(trainType) || "Extrazug".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "EXT" + trainNumStr);
-            if ("Heritage Railway".equals(trainName)) // GB
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-            if ("WTB".equals(trainType) || "Wutachtalbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "WTB" + trainNumStr);
-            if ("DB".equals(trainType) || "DB Regio".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "DB" + trainNumStr);
-            if ("M".equals(trainType) && "Meridian".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "M" + trainNumStr);
-            if ("M".equals(trainType) && "Messezug".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "M" + trainNumStr);
-            if ("EZ".equals(trainType)) // ÖBB Erlebniszug
-                return new Line(id, network, Product.REGIONAL_TRAIN, "EZ" + trainNumStr);
-            if ("DPF".equals(trainType))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "DPF" + trainNumStr);
-            if ("WBA".equals(trainType) || "Waldbahn".equals(trainName))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "WBA" + trainNumStr);
-            if ("ÖB".equals(trainType) && "Öchsle-Bahn-Betriebsgesellschaft mbH".equals(trainName) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "ÖB" + trainNumStr);
-            if ("ÖBA".equals(trainType) && trainNum != null) // Eisenbahn-Betriebsgesellschaft Ochsenhausen
-                return new Line(id, network, Product.REGIONAL_TRAIN, "ÖBA" + trainNumStr);
-            if (("UEF".equals(trainType) || "Ulmer Eisenbahnfreunde".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "UEF" + trainNumStr);
-            if (("DBG".equals(trainType) || "Döllnitzbahn".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "DBG" + trainNumStr);
-            if (("TL".equals(trainType) || "TL".equals(trainName) || "Trilex".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "TL" + trainNumStr);
-            if (("OPB".equals(trainType) || "oberpfalzbahn".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "OPB" + trainNumStr);
-            if (("OPX".equals(trainType) || "oberpfalz-express".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "OPX" + trainNumStr);
-            if (("LEO".equals(trainType) || "Chiemgauer Lokalbahn".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "LEO" + trainNumStr);
-            if (("VAE".equals(trainType) || "Voralpen-Express".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "VAE" + trainNumStr);
-            if (("V6".equals(trainType) || "vlexx".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "vlexx" + trainNumStr);
-            if (("ARZ".equals(trainType) || "Autoreisezug".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "ARZ" + trainNumStr);
-            if ("RR".equals(trainType))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "RR" + trainNumStr);
-            if (("TER".equals(trainType) || "Train Express Regional".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "TER" + trainNumStr);
-            if (("ENO".equals(trainType) || "enno".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "ENO" + trainNumStr);
-            if ("enno".equals(longName) && symbol == null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "enno");
-            if (("PLB".equals(trainType) || "Pinzgauer Lokalbahn".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "PLB" + trainNumStr);
-            if (("NX".equals(trainType) || "National Express".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "NX" + trainNumStr);
-            if (("SE".equals(trainType) || "ABELLIO Rail Mitteldeutschland GmbH".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "SE" + trainNumStr);
-            if (("DNA".equals(trainType) && trainNum != null)) // Dieselnetz Augsburg
-                return new Line(id, network, Product.REGIONAL_TRAIN, "DNA" + trainNumStr);
-            if ("Dieselnetz".equals(trainType) && "Augsburg".equals(trainNum))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "DNA");
-            if (("SAB".equals(trainType) || "Schwäbische Alb-Bahn".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "SAB" + trainNumStr);
-            if (symbol != null && P_LINE_MEX.matcher(symbol).matches()) // Metropolexpress
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-            if (trainType == null && trainNum != null && P_LINE_MEX.matcher(trainNum).matches()) // Metropolexpress
-                return new Line(id, network, Product.REGIONAL_TRAIN, trainNum);
-            if ("FEX".equals(trainNum))
-                return new Line(id, network, Product.REGIONAL_TRAIN, "FEX");
-            if (("FEX".equals(trainType) || "Flughafen-Express".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "FEX" + trainNumStr);
-
-            if (("BSB".equals(trainType) || "Breisgau-S-Bahn Gmbh".equals(trainName)) && trainNum != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, "BSB" + trainNumStr);
-            if ("BSB-Zug".equals(trainName) && trainNum != null) // Breisgau-S-Bahn
-                return new Line(id, network, Product.SUBURBAN_TRAIN, trainNum);
-            if ("BSB-Zug".equals(trainName) && trainNum == null)
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "BSB");
-            if (longName != null && longName.startsWith("BSB-Zug"))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "BSB" + trainNumStr);
-            if ("RSB".equals(trainType)) // Regionalschnellbahn, Wien
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "RSB" + trainNumStr);
-            if ("RS18".equals(trainNum) && trainType == null) // Nahverkehrszug Maastricht - Valkenburg - Heerlen
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "RS18");
-            if ("RER".equals(trainName) && symbol != null && symbol.length() == 1) // Réseau Express Régional
-                return new Line(id, network, Product.SUBURBAN_TRAIN, symbol);
-            if ("S".equals(trainType))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "S" + trainNumStr);
-            if ("S-Bahn".equals(trainName))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "S" + trainNumStr);
-            if ("RS".equals(trainType) && trainNum != null) // Regio S-Bahn
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "RS" + trainNumStr);
-
-            if ("RT".equals(trainType) || "RegioTram".equals(trainName))
-                return new Line(id, network, Product.TRAM, "RT" + trainNumStr);
-            if ("RT4".equals(symbol) && trainType == null)
-                return new Line(id, network, Product.TRAM, "RT4");
-            if ("RT5".equals(symbol) && trainType == null)
-                return new Line(id, network, Product.TRAM, "RT5");
-
-            if ("Bus".equals(trainType) && trainNum != null)
-                return new Line(id, network, Product.BUS, trainNum);
-            if ("Bus".equals(longName) && symbol == null)
-                return new Line(id, network, Product.BUS, longName);
-            if ("SEV".equals(trainType) || "SEV".equals(trainNum) || "SEV".equals(trainName) || "SEV".equals(symbol)
-                    || "BSV".equals(trainType) || "Ersatzverkehr".equals(trainName)
-                    || "Schienenersatzverkehr".equals(trainName))
-                return new Line(id, network, Product.BUS, "SEV" + trainNumStr);
-            if ("Bus replacement".equals(trainName)) // GB
-                return new Line(id, network, Product.BUS, "BR");
-            if ("BR".equals(trainType) && trainName != null && trainName.startsWith("Bus")) // GB
-                return new Line(id, network, Product.BUS, "BR" + trainNumStr);
-            if ("EXB".equals(trainType) && trainNum != null)
-                return new Line(id, network, Product.BUS, "EXB" + trainNumStr);
-
-            if ("GB".equals(trainType)) // Gondelbahn
-                return new Line(id, network, Product.CABLECAR, "GB" + trainNumStr);
-            if ("SB".equals(trainType)) // Seilbahn
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "SB" + trainNumStr);
-
-            if ("Zug".equals(trainName) && symbol != null)
-                return new Line(id, network, null, symbol);
-            if ("Zug".equals(longName) && symbol == null)
-                return new Line(id, network, null, "Zug");
-            if ("Zuglinie".equals(trainName) && symbol != null)
-                return new Line(id, network, null, symbol);
-            if ("ZUG".equals(trainType) && trainNum != null)
-                return new Line(id, network, null, trainNum);
-            if (symbol != null && P_LINE_NUMBER.matcher(symbol).matches() && trainType == null && trainName == null)
-                return new Line(id, network, null, symbol);
-            if ("N".equals(trainType) && trainName == null && symbol == null)
-                return new Line(id, network, null, "N" + trainNumStr);
-            if ("Train".equals(trainName))
-                return new Line(id, network, null, null);
-            if ("PPN".equals(trainType) && "Osobowy".equals(trainName) && trainNum != null)
-                return new Line(id, network, null, "PPN" + trainNumStr);
+        final Line line = LINES.classify(id, network, mot, symbol, name, longName, trainType, trainNum, trainName);
+        if (line != null)
+            return line;
 
-            // generic
-            if (trainName != null && trainType == null && trainNum == null)
-                return new Line(id, network, null, trainName);
-        } else if ("1".equals(mot)) {
+        final String trainNumStr = Objects.toString(trainNum, "");
+        if ("1".equals(mot)) {
             if (symbol != null)
                 return new Line(id, network, Product.SUBURBAN_TRAIN, symbol);
             if (name != null && P_LINE_S.matcher(name).matches())
@@ -1516,9 +1427,8 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         final AtomicReference<QueryDeparturesResult> result = new AtomicReference<>();
 
         final HttpClient.Callback callback = (bodyPeek, body) -> {
-            try {
-                final XmlPullParser pp = parserFactory.newPullParser();
-                pp.setInput(body.charStream());
+            try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(body.charStream())) {
+                final XmlPullParser pp = lease.parser;
                 final ResultHeader header = enterItdRequest(pp);
 
                 final QueryDeparturesResult r = new QueryDeparturesResult(header);
@@ -1585,9 +1495,6 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
 
                 XmlPullUtil.require(pp, "itdDepartureList");
                 if (XmlPullUtil.optEnter(pp, "itdDepartureList")) {
-                    final Calendar plannedDepartureTime = new GregorianCalendar(timeZone);
-                    final Calendar predictedDepartureTime = new GregorianCalendar(timeZone);
-
                     while (XmlPullUtil.test(pp, "itdDeparture")) {
                         final String assignedStopId = XmlPullUtil.attr(pp, "stopID");
 
@@ -1608,14 +1515,13 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
                         XmlPullUtil.enter(pp, "itdDeparture");
 
                         XmlPullUtil.require(pp, "itdDateTime");
-                        plannedDepartureTime.clear();
-                        processItdDateTime(pp, plannedDepartureTime);
+                        final Date plannedDepartureTime = processItdDateTime(pp);
 
                         XmlPullUtil.optSkip(pp, "itdDateTimeBaseTimetable");
 
-                        predictedDepartureTime.clear();
+                        Date predictedDepartureTime = null;
                         if (XmlPullUtil.test(pp, "itdRTDateTime"))
-                            processItdDateTime(pp, predictedDepartureTime);
+                            predictedDepartureTime = processItdDateTime(pp);
 
                         XmlPullUtil.optSkip(pp, "itdFrequencyInfo");
 
@@ -1623,15 +1529,14 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
                         final boolean isRealtime = XmlPullUtil.attr(pp, "realtime").equals("1");
                         final LineDestinationAndCancelled lineDestinationAndCancelled = processItdServingLine(pp);
 
-                        if (isRealtime && !predictedDepartureTime.isSet(Calendar.HOUR_OF_DAY))
-                            predictedDepartureTime.setTimeInMillis(plannedDepartureTime.getTimeInMillis());
+                        if (isRealtime && predictedDepartureTime == null && plannedDepartureTime != null)
+                            predictedDepartureTime = new Date(plannedDepartureTime.getTime());
 
                         XmlPullUtil.skipExit(pp, "itdDeparture");
 
-                        if (!lineDestinationAndCancelled.cancelled) {
-                            final Departure departure = new Departure(plannedDepartureTime.getTime(),
-                                    predictedDepartureTime.isSet(Calendar.HOUR_OF_DAY)
-                                            ? predictedDepartureTime.getTime() : null,
+                        if (!lineDestinationAndCancelled.cancelled
+                                && (plannedDepartureTime != null || predictedDepartureTime != null)) {
+                            final Departure departure = new Departure(plannedDepartureTime, predictedDepartureTime,
                                     lineDestinationAndCancelled.line, position,
                                     lineDestinationAndCancelled.destination, null, null);
                             assignedStationDepartures.departures.add(departure);
@@ -1647,9 +1552,12 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
             }
         };
 
-        httpClient.getInputStream(callback, url.build(), httpReferer);
-
-        return result.get();
+        // identical concurrent requests share one upstream call
+        final HttpUrl requestUrl = url.build();
+        return departuresFlight.call(requestUrl.toString(), () -> {
+            httpClient.getInputStream(callback, requestUrl, null, HEDGEABLE.withReferer(httpReferer));
+            return result.get();
+        });
     }
 
     protected QueryDeparturesResult queryDeparturesMobile(final String stationId, final @Nullable Date time,
@@ -1659,9 +1567,8 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         final AtomicReference<QueryDeparturesResult> result = new AtomicReference<>();
 
         final HttpClient.Callback callback = (bodyPeek, body) -> {
-            try {
-                final XmlPullParser pp = parserFactory.newPullParser();
-                pp.setInput(body.charStream());
+            try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(body.charStream())) {
+                final XmlPullParser pp = lease.parser;
                 final ResultHeader header = enterEfa(pp);
                 final QueryDeparturesResult r = new QueryDeparturesResult(header);
 
@@ -1682,9 +1589,6 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
                     XmlPullUtil.exit(pp, "err");
                     XmlPullUtil.exit(pp, "ers");
                 } else if (XmlPullUtil.optEnter(pp, "dps")) {
-                    final Calendar plannedDepartureTime = new GregorianCalendar(timeZone);
-                    final Calendar predictedDepartureTime = new GregorianCalendar(timeZone);
-
                     while (XmlPullUtil.optEnter(pp, "dp")) {
                         // misc
                         /* final String stationName = */normalizeLocationName(XmlPullUtil.valueTag(pp, "n"));
@@ -1696,7 +1600,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
                         XmlPullUtil.optSkip(pp, "dt");
 
                         // time
-                        parseMobileSt(pp, plannedDepartureTime, predictedDepartureTime);
+                        final PlannedAndPredictedTime departureTime = parseMobileSt(pp);
 
                         final LineDestination lineDestination = parseMobileM(pp, true);
 
@@ -1719,9 +1623,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
                             r.stationDepartures.add(stationDepartures);
                         }
 
-                        stationDepartures.departures.add(new Departure(plannedDepartureTime.getTime(),
-                                predictedDepartureTime.isSet(Calendar.HOUR_OF_DAY)
-                                        ? predictedDepartureTime.getTime() : null,
+                        stationDepartures.departures.add(new Departure(departureTime.planned, departureTime.predicted,
                                 lineDestination.line, position, lineDestination.destination, null, null));
 
                         XmlPullUtil.skipExit(pp, "dp");
@@ -1738,9 +1640,12 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
             }
         };
 
-        httpClient.getInputStream(callback, url.build(), httpReferer);
-
-        return result.get();
+        // identical concurrent requests share one upstream call
+        final HttpUrl requestUrl = url.build();
+        return departuresFlight.call(requestUrl.toString(), () -> {
+            httpClient.getInputStream(callback, requestUrl, null, HEDGEABLE.withReferer(httpReferer));
+            return result.get();
+        });
     }
 
     private static final Pattern P_MOBILE_M_SYMBOL = Pattern.compile("([^\\s]*)\\s+([^\\s]*)");
@@ -1803,8 +1708,8 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
             final String network = lineId.substring(0, lineId.indexOf(':'));
             final Line parsedLine = parseLine(lineId, network, productType, symbol, symbol, null, trainType, trainNum,
                     productName);
-            line = new Line(parsedLine.id, parsedLine.network, parsedLine.product, parsedLine.label,
-                    lineStyle(parsedLine.network, parsedLine.product, parsedLine.label));
+            line = styledLine(parsedLine.id, parsedLine.network, parsedLine.product, parsedLine.label, null, null,
+                    null);
         }
 
         XmlPullUtil.skipExit(pp, "m");
@@ -1825,21 +1730,34 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         return lineIdNe + ":" + lineIdLi + ":" + lineIdSu + ":" + lineIdDct + ":" + lineIdPr;
     }
 
-    private void parseMobileSt(final XmlPullParser pp, final Calendar plannedDepartureTime,
-            final Calendar predictedDepartureTime) throws XmlPullParserException, IOException {
+    private static class PlannedAndPredictedTime {
+        public final Date planned;
+        public final @Nullable Date predicted;
+
+        public PlannedAndPredictedTime(final Date planned, final @Nullable Date predicted) {
+            this.planned = planned;
+            this.predicted = predicted;
+        }
+    }
+
+    private PlannedAndPredictedTime parseMobileSt(final XmlPullParser pp) throws XmlPullParserException, IOException {
         XmlPullUtil.enter(pp, "st");
 
-        plannedDepartureTime.clear();
-        ParserUtils.parseIsoDate(plannedDepartureTime, XmlPullUtil.valueTag(pp, "da"));
-        ParserUtils.parseIsoTime(plannedDepartureTime, XmlPullUtil.valueTag(pp, "t"));
+        final Date plannedTime = parseMobileDateTime(XmlPullUtil.valueTag(pp, "da"), XmlPullUtil.valueTag(pp, "t"));
 
-        predictedDepartureTime.clear();
-        if (XmlPullUtil.test(pp, "rda")) {
-            ParserUtils.parseIsoDate(predictedDepartureTime, XmlPullUtil.valueTag(pp, "rda"));
-            ParserUtils.parseIsoTime(predictedDepartureTime, XmlPullUtil.valueTag(pp, "rt"));
-        }
+        final Date predictedTime;
+        if (XmlPullUtil.test(pp, "rda"))
+            predictedTime = parseMobileDateTime(XmlPullUtil.valueTag(pp, "rda"), XmlPullUtil.valueTag(pp, "rt"));
+        else
+            predictedTime = null;
 
         XmlPullUtil.skipExit(pp, "st");
+
+        return new PlannedAndPredictedTime(plannedTime, predictedTime);
+    }
+
+    private Date parseMobileDateTime(final CharSequence date, final CharSequence time) {
+        return new Date(dateTimes.time(DateTimes.parseIsoDate(date), DateTimes.parseIsoTime(time) * 1000L));
     }
 
     private StationDepartures findStationDepartures(final List<StationDepartures> stationDepartures, final String id) {
@@ -1866,20 +1784,26 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         return new Location(LocationType.STATION, id, coord, place, name);
     }
 
-    private boolean processItdDateTime(final XmlPullParser pp, final Calendar calendar)
-            throws XmlPullParserException, IOException {
+    /**
+     * @return date and time, or {@code null} if the date is not set
+     */
+    private @Nullable Date processItdDateTime(final XmlPullParser pp) throws XmlPullParserException, IOException {
         XmlPullUtil.enter(pp);
-        calendar.clear();
-        final boolean success = processItdDate(pp, calendar);
-        if (success)
-            processItdTime(pp, calendar);
+        final int epochDay = processItdDate(pp);
+        final Date time;
+        if (epochDay != Integer.MIN_VALUE)
+            time = new Date(dateTimes.time(epochDay, processItdTime(pp)));
+        else
+            time = null;
         XmlPullUtil.skipExit(pp);
 
-        return success;
+        return time;
     }
 
-    private boolean processItdDate(final XmlPullParser pp, final Calendar calendar)
-            throws XmlPullParserException, IOException {
+    /**
+     * @return days since 1970-01-01, or {@link Integer#MIN_VALUE} if the date is not set
+     */
+    private int processItdDate(final XmlPullParser pp) throws XmlPullParserException, IOException {
         XmlPullUtil.require(pp, "itdDate");
         final int year = XmlPullUtil.intAttr(pp, "year");
         final int month = XmlPullUtil.intAttr(pp, "month") - 1;
@@ -1888,9 +1812,9 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         XmlPullUtil.next(pp);
 
         if (weekday < 0)
-            return false;
+            return Integer.MIN_VALUE;
         if (year == 0)
-            return false;
+            return Integer.MIN_VALUE;
         if (year < 1900 || year > 2100)
             throw new InvalidDataException("invalid year: " + year);
         if (month < 0 || month > 11)
@@ -1898,18 +1822,18 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         if (day < 1 || day > 31)
             throw new InvalidDataException("invalid day: " + day);
 
-        calendar.set(Calendar.YEAR, year);
-        calendar.set(Calendar.MONTH, month);
-        calendar.set(Calendar.DAY_OF_MONTH, day);
-        return true;
+        return DateTimes.epochDay(year, month + 1, day);
     }
 
-    private void processItdTime(final XmlPullParser pp, final Calendar calendar)
-            throws XmlPullParserException, IOException {
+    /**
+     * @return milliseconds of the day
+     */
+    private long processItdTime(final XmlPullParser pp) throws XmlPullParserException, IOException {
         XmlPullUtil.require(pp, "itdTime");
-        calendar.set(Calendar.HOUR_OF_DAY, XmlPullUtil.intAttr(pp, "hour"));
-        calendar.set(Calendar.MINUTE, XmlPullUtil.intAttr(pp, "minute"));
+        final long millisOfDay = XmlPullUtil.intAttr(pp, "hour") * 3600000L
+                + XmlPullUtil.intAttr(pp, "minute") * 60000L;
         XmlPullUtil.next(pp);
+        return millisOfDay;
     }
 
     private static class LineDestinationAndCancelled {
@@ -1983,8 +1907,8 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         final Line slLine = parseLine(slStateless, divaNetwork, slMotType, slSymbol, slNumber, slNumber, trainType,
                 slTrainNum, trainName);
 
-        final Line line = new Line(slLine.id, slLine.network, slLine.product, slLine.label,
-                lineStyle(slLine.network, slLine.product, slLine.label), itdMessage);
+        final Line line = styledLine(slLine.id, slLine.network, slLine.product, slLine.label, null, null,
+                itdMessage);
         final boolean cancelled = "-9999".equals(itdDelay);
         return new LineDestinationAndCancelled(line, destination, cancelled);
     }
@@ -2126,9 +2050,9 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         appendTripRequestParameters(url, from, via, to, date, dep, options);
         final AtomicReference<QueryTripsResult> result = new AtomicReference<>();
 
-        final HttpClient.Callback callback = (bodyPeek, body) -> {
-            try {
-                result.set(queryTrips(url.build(), body.charStream()));
+        final HttpClient.SessionCallback callback = (bodyPeek, body, sessionCookie) -> {
+            try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(body.charStream())) {
+                result.set(queryTrips(url.build(), sessionCookie, lease.parser));
             } catch (final XmlPullParserException | ParserException x) {
                 throw new ParserException("cannot parse xml: " + bodyPeek, x);
             } catch (final RuntimeException x) {
@@ -2136,7 +2060,8 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
             }
         };
 
-        httpClient.getInputStream(callback, url.build(), httpRefererTrip);
+        httpClient.getInputStream(callback, url.build(), null,
+                HttpClient.RequestOptions.NONE.withReferer(httpRefererTrip));
 
         return result.get();
     }
@@ -2147,9 +2072,9 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         appendTripRequestParameters(url, from, via, to, date, dep, options);
         final AtomicReference<QueryTripsResult> result = new AtomicReference<>();
 
-        final HttpClient.Callback callback = (bodyPeek, body) -> {
-            try {
-                result.set(queryTripsMobile(url.build(), from, via, to, body.charStream()));
+        final HttpClient.SessionCallback callback = (bodyPeek, body, sessionCookie) -> {
+            try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(body.charStream())) {
+                result.set(queryTripsMobile(url.build(), from, via, to, sessionCookie, lease.parser));
             } catch (final XmlPullParserException | ParserException x) {
                 throw new ParserException("cannot parse xml: " + bodyPeek, x);
             } catch (final RuntimeException x) {
@@ -2157,7 +2082,8 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
             }
         };
 
-        httpClient.getInputStream(callback, url.build(), httpRefererTrip);
+        httpClient.getInputStream(callback, url.build(), null,
+                HttpClient.RequestOptions.NONE.withReferer(httpRefererTrip));
 
         return result.get();
     }
@@ -2171,9 +2097,10 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         url.addEncodedQueryParameter("command", later ? "tripNext" : "tripPrev");
         final AtomicReference<QueryTripsResult> result = new AtomicReference<>();
 
-        final HttpClient.Callback callback = (bodyPeek, body) -> {
-            try {
-                result.set(queryTrips(url.build(), body.charStream()));
+        final HttpClient.SessionCallback callback = (bodyPeek, body, sessionCookie) -> {
+            try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(body.charStream())) {
+                result.set(queryTrips(url.build(),
+                        sessionCookie != null ? sessionCookie : context.sessionCookie(url.build()), lease.parser));
             } catch (final XmlPullParserException | ParserException x) {
                 throw new ParserException("cannot parse xml: " + bodyPeek, x);
             } catch (final RuntimeException x) {
@@ -2181,7 +2108,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
             }
         };
 
-        httpClient.getInputStream(callback, url.build(), httpRefererTrip);
+        httpClient.getInputStream(callback, url.build(), null, context.requestOptions(url.build(), httpRefererTrip));
 
         return result.get();
     }
@@ -2195,9 +2122,10 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         url.addEncodedQueryParameter("command", later ? "tripNext" : "tripPrev");
         final AtomicReference<QueryTripsResult> result = new AtomicReference<>();
 
-        final HttpClient.Callback callback = (bodyPeek, body) -> {
-            try {
-                result.set(queryTripsMobile(url.build(), null, null, null, body.charStream()));
+        final HttpClient.SessionCallback callback = (bodyPeek, body, sessionCookie) -> {
+            try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(body.charStream())) {
+                result.set(queryTripsMobile(url.build(), null, null, null,
+                        sessionCookie != null ? sessionCookie : context.sessionCookie(url.build()), lease.parser));
             } catch (final XmlPullParserException | ParserException x) {
                 throw new ParserException("cannot parse xml: " + bodyPeek, x);
             } catch (final RuntimeException x) {
@@ -2205,15 +2133,13 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
             }
         };
 
-        httpClient.getInputStream(callback, url.build(), httpRefererTrip);
+        httpClient.getInputStream(callback, url.build(), null, context.requestOptions(url.build(), httpRefererTrip));
 
         return result.get();
     }
 
-    private QueryTripsResult queryTrips(final HttpUrl url, final Reader reader)
-            throws XmlPullParserException, IOException {
-        final XmlPullParser pp = parserFactory.newPullParser();
-        pp.setInput(reader);
+    private QueryTripsResult queryTrips(final HttpUrl url, final @Nullable Cookie sessionCookie,
+            final XmlPullParser pp) throws XmlPullParserException, IOException {
         final ResultHeader header = enterItdRequest(pp);
         final Object context = header.context;
 
@@ -2300,8 +2226,6 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
             XmlPullUtil.optSkip(pp, "itdLegTTs");
 
             if (XmlPullUtil.optEnter(pp, "itdRouteList")) {
-                final Calendar calendar = new GregorianCalendar(timeZone);
-
                 while (XmlPullUtil.test(pp, "itdRoute")) {
                     final String tripId;
                     if (useRouteIndexAsTripId) {
@@ -2342,12 +2266,12 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
                         XmlPullUtil.enter(pp, "itdPoint");
                         XmlPullUtil.optSkip(pp, "itdMapItemList");
                         XmlPullUtil.require(pp, "itdDateTime");
-                        processItdDateTime(pp, calendar);
-                        final Date departureTime = calendar.getTime();
+                        final Date departureTime = processItdDateTime(pp);
+                        if (departureTime == null)
+                            throw new InvalidDataException("missing departure time");
                         final Date departureTargetTime;
                         if (XmlPullUtil.test(pp, "itdDateTimeTarget")) {
-                            processItdDateTime(pp, calendar);
-                            departureTargetTime = calendar.getTime();
+                            departureTargetTime = processItdDateTime(pp);
                         } else {
                             departureTargetTime = null;
                         }
@@ -2362,12 +2286,12 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
                         XmlPullUtil.enter(pp, "itdPoint");
                         XmlPullUtil.optSkip(pp, "itdMapItemList");
                         XmlPullUtil.require(pp, "itdDateTime");
-                        processItdDateTime(pp, calendar);
-                        final Date arrivalTime = calendar.getTime();
+                        final Date arrivalTime = processItdDateTime(pp);
+                        if (arrivalTime == null)
+                            throw new InvalidDataException("missing arrival time");
                         final Date arrivalTargetTime;
                         if (XmlPullUtil.test(pp, "itdDateTimeTarget")) {
-                            processItdDateTime(pp, calendar);
-                            arrivalTargetTime = calendar.getTime();
+                            arrivalTargetTime = processItdDateTime(pp);
                         } else {
                             arrivalTargetTime = null;
                         }
@@ -2379,7 +2303,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
                         final int itdMeansOfTransportType = XmlPullUtil.intAttr(pp, "type");
 
                         if (itdMeansOfTransportType <= 16) {
-                            cancelled |= processPublicLeg(pp, legs, calendar, departureTime, departureTargetTime,
+                            cancelled |= processPublicLeg(pp, legs, departureTime, departureTargetTime,
                                     departureLocation, departurePosition, arrivalTime, arrivalTargetTime,
                                     arrivalLocation, arrivalPosition);
                         } else if (itdMeansOfTransportType == 97
@@ -2472,7 +2396,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         }
 
         return new QueryTripsResult(header, url.toString(), from, via, to,
-                new Context(commandLink((String) context, requestId).toString()), trips);
+                new Context(commandLink((String) context, requestId).toString(), sessionCookie), trips);
     }
 
     private void processIndividualLeg(final XmlPullParser pp, final List<Leg> legs,
@@ -2493,8 +2417,10 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         if (lastLeg != null && lastLeg instanceof Trip.Individual
                 && ((Trip.Individual) lastLeg).type == individualType) {
             final Trip.Individual lastIndividual = (Trip.Individual) legs.remove(legs.size() - 1);
-            if (path != null && lastIndividual.path != null)
-                path.addAll(0, lastIndividual.path);
+            if (path != null && lastIndividual.path != null) {
+                final List<Point> firstPath = lastIndividual.path, secondPath = path;
+                path = PointArray.lazy(() -> PointArray.builder(0).addAll(firstPath).addAll(secondPath).build());
+            }
             legs.add(new Trip.Individual(individualType, lastIndividual.departure, lastIndividual.departureTime,
                     arrivalLocation, arrivalTime, path, distance));
         } else {
@@ -2503,10 +2429,10 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         }
     }
 
-    private boolean processPublicLeg(final XmlPullParser pp, final List<Leg> legs, final Calendar calendar,
-            final Date departureTime, final Date departureTargetTime, final Location departureLocation,
-            final Position departurePosition, final Date arrivalTime, final Date arrivalTargetTime,
-            final Location arrivalLocation, final Position arrivalPosition) throws XmlPullParserException, IOException {
+    private boolean processPublicLeg(final XmlPullParser pp, final List<Leg> legs, final Date departureTime,
+            final Date departureTargetTime, final Location departureLocation, final Position departurePosition,
+            final Date arrivalTime, final Date arrivalTargetTime, final Location arrivalLocation,
+            final Position arrivalPosition) throws XmlPullParserException, IOException {
         final String destinationName = normalizeLocationName(XmlPullUtil.optAttr(pp, "destination", null));
         final String destinationId = XmlPullUtil.optAttr(pp, "destID", null);
         final Location destination;
@@ -2598,35 +2524,20 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
                 XmlPullUtil.optSkip(pp, "sPAs");
                 XmlPullUtil.require(pp, "itdDateTime");
 
-                final Date plannedStopArrivalTime;
+                final Date plannedStopArrivalTime = processItdDateTime(pp);
                 final Date predictedStopArrivalTime;
-                if (processItdDateTime(pp, calendar)) {
-                    plannedStopArrivalTime = calendar.getTime();
-                    if (arrivalDelay != null) {
-                        calendar.add(Calendar.MINUTE, arrivalDelay);
-                        predictedStopArrivalTime = calendar.getTime();
-                    } else {
-                        predictedStopArrivalTime = null;
-                    }
-                } else {
-                    plannedStopArrivalTime = null;
+                if (plannedStopArrivalTime != null && arrivalDelay != null)
+                    predictedStopArrivalTime = new Date(plannedStopArrivalTime.getTime() + arrivalDelay * 60000L);
+                else
                     predictedStopArrivalTime = null;
-                }
 
-                final Date plannedStopDepartureTime;
+                final Date plannedStopDepartureTime = XmlPullUtil.test(pp, "itdDateTime") ? processItdDateTime(pp)
+                        : null;
                 final Date predictedStopDepartureTime;
-                if (XmlPullUtil.test(pp, "itdDateTime") && processItdDateTime(pp, calendar)) {
-                    plannedStopDepartureTime = calendar.getTime();
-                    if (departureDelay != null) {
-                        calendar.add(Calendar.MINUTE, departureDelay);
-                        predictedStopDepartureTime = calendar.getTime();
-                    } else {
-                        predictedStopDepartureTime = null;
-                    }
-                } else {
-                    plannedStopDepartureTime = null;
+                if (plannedStopDepartureTime != null && departureDelay != null)
+                    predictedStopDepartureTime = new Date(plannedStopDepartureTime.getTime() + departureDelay * 60000L);
+                else
                     predictedStopDepartureTime = null;
-                }
 
                 final Stop stop = new Stop(stopLocation, plannedStopArrivalTime, predictedStopArrivalTime, stopPosition,
                         null, plannedStopDepartureTime, predictedStopDepartureTime, stopPosition, null);
@@ -2676,8 +2587,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
 
         if (XmlPullUtil.optEnter(pp, "nextDeps")) {
             while (XmlPullUtil.test(pp, "itdDateTime")) {
-                processItdDateTime(pp, calendar);
-                /* final Date nextDepartureTime = */calendar.getTime();
+                /* final Date nextDepartureTime = */processItdDateTime(pp);
             }
             XmlPullUtil.skipExit(pp, "nextDeps");
         }
@@ -2685,8 +2595,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         final Set<Line.Attr> lineAttrs = new HashSet<>();
         if (wheelChairAccess || lowFloorVehicle)
             lineAttrs.add(Line.Attr.WHEEL_CHAIR_ACCESS);
-        final Line styledLine = new Line(line.id, line.network, line.product, line.label,
-                lineStyle(line.network, line.product, line.label), lineAttrs);
+        final Line styledLine = styledLine(line.id, line.network, line.product, line.label, null, lineAttrs, null);
 
         final Stop departure = new Stop(departureLocation, true,
                 departureTargetTime != null ? departureTargetTime : departureTime,
@@ -2701,15 +2610,11 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
     }
 
     private QueryTripsResult queryTripsMobile(final HttpUrl url, final Location from, final @Nullable Location via,
-            final Location to, final Reader reader) throws XmlPullParserException, IOException {
-        final XmlPullParser pp = parserFactory.newPullParser();
-        pp.setInput(reader);
+            final Location to, final @Nullable Cookie sessionCookie, final XmlPullParser pp)
+            throws XmlPullParserException, IOException {
         final ResultHeader header = enterEfa(pp);
         XmlPullUtil.optSkip(pp, "msgs");
 
-        final Calendar plannedTimeCal = new GregorianCalendar(timeZone);
-        final Calendar predictedTimeCal = new GregorianCalendar(timeZone);
-
         final List<Trip> trips = new ArrayList<>();
 
         if (XmlPullUtil.optEnter(pp, "ts")) {
@@ -2747,7 +2652,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
                         XmlPullUtil.optValueTag(pp, "rtStatus", null);
                         XmlPullUtil.requireSkip(pp, "dt");
 
-                        parseMobileSt(pp, plannedTimeCal, predictedTimeCal);
+                        final PlannedAndPredictedTime time = parseMobileSt(pp);
 
                         XmlPullUtil.optSkip(pp, "lis"); // links
 
@@ -2767,17 +2672,12 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
 
                         XmlPullUtil.skipExit(pp, "p");
 
-                        final Date plannedTime = plannedTimeCal.isSet(Calendar.HOUR_OF_DAY) ? plannedTimeCal.getTime()
-                                : null;
-                        final Date predictedTime = predictedTimeCal.isSet(Calendar.HOUR_OF_DAY)
-                                ? predictedTimeCal.getTime() : null;
-
                         if ("departure".equals(usage)) {
-                            departure = new Stop(location, true, plannedTime, predictedTime, position, null);
+                            departure = new Stop(location, true, time.planned, time.predicted, position, null);
                             if (firstDepartureLocation == null)
                                 firstDepartureLocation = location;
                         } else if ("arrival".equals(usage)) {
-                            arrival = new Stop(location, false, plannedTime, predictedTime, position, null);
+                            arrival = new Stop(location, false, time.planned, time.predicted, position, null);
                             lastArrivalLocation = location;
                         } else {
                             throw new IllegalStateException("unknown usage: " + usage);
@@ -2805,27 +2705,22 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
                         intermediateStops = new LinkedList<>();
 
                         while (XmlPullUtil.test(pp, "s")) {
-                            plannedTimeCal.clear();
-                            predictedTimeCal.clear();
-
                             final String s = XmlPullUtil.valueTag(pp, "s");
                             final String[] intermediateParts = s.split(";");
                             final String id = intermediateParts[0];
                             if (!id.equals(departure.location.id) && !id.equals(arrival.location.id)) {
                                 final String name = normalizeLocationName(intermediateParts[1]);
 
+                                Date plannedTime = null;
+                                Date predictedTime = null;
                                 if (!(intermediateParts[2].startsWith("000") && intermediateParts[3].startsWith("000"))) {
-                                    ParserUtils.parseIsoDate(plannedTimeCal, intermediateParts[2]);
-                                    ParserUtils.parseIsoTime(plannedTimeCal, intermediateParts[3]);
+                                    plannedTime = parseMobileDateTime(intermediateParts[2], intermediateParts[3]);
 
                                     if (isRealtime) {
-                                        ParserUtils.parseIsoDate(predictedTimeCal, intermediateParts[2]);
-                                        ParserUtils.parseIsoTime(predictedTimeCal, intermediateParts[3]);
-
-                                        if (intermediateParts.length > 5 && intermediateParts[5].length() > 0) {
-                                            final int delay = Integer.parseInt(intermediateParts[5]);
-                                            predictedTimeCal.add(Calendar.MINUTE, delay);
-                                        }
+                                        long delay = 0;
+                                        if (intermediateParts.length > 5 && intermediateParts[5].length() > 0)
+                                            delay = Integer.parseInt(intermediateParts[5]);
+                                        predictedTime = new Date(plannedTime.getTime() + delay * 60000L);
                                     }
                                 }
                                 final String coordPart = intermediateParts[4];
@@ -2848,10 +2743,6 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
                                 }
                                 final Location location = new Location(LocationType.STATION, id, coords, null, name);
 
-                                final Date plannedTime = plannedTimeCal.isSet(Calendar.HOUR_OF_DAY)
-                                        ? plannedTimeCal.getTime() : null;
-                                final Date predictedTime = predictedTimeCal.isSet(Calendar.HOUR_OF_DAY)
-                                        ? predictedTimeCal.getTime() : null;
                                 final Stop stop = new Stop(location, false, plannedTime, predictedTime, null, null);
 
                                 intermediateStops.add(stop);
@@ -2922,7 +2813,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         if (trips.size() > 0) {
             final String[] context = (String[]) header.context;
             return new QueryTripsResult(header, url.toString(), from, via, to,
-                    new Context(commandLink(context[0], context[1]).toString()), trips);
+                    new Context(commandLink(context[0], context[1]).toString(), sessionCookie), trips);
         } else {
             return new QueryTripsResult(header, QueryTripsResult.Status.NO_TRIPS);
         }
@@ -2952,36 +2843,48 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
         return path;
     }
 
+    private static final String COORDINATE_NUMBER_REGEX = "[-+]?(?:\\d+(?:\\.\\d*)?|\\.\\d+)";
+    private static final String COORDINATE_REGEX = COORDINATE_NUMBER_REGEX + "," + COORDINATE_NUMBER_REGEX
+            + "(?:,[^ ]*)?";
+    private static final Pattern P_COORDINATE_STRING = Pattern
+            .compile(" *" + COORDINATE_REGEX + "(?: +" + COORDINATE_REGEX + ")* *");
+
     private @Nullable List<Point> processCoordinateStrings(final XmlPullParser pp, final String tag)
             throws XmlPullParserException, IOException {
-        final List<Point> path = new LinkedList<>();
-
         final String value = XmlPullUtil.optValueTag(pp, tag, null);
         if (value != null) {
-            for (final String coordStr : value.split(" +"))
-                path.add(parseCoord(coordStr));
-            return path;
+            // only the format is checked here, decoding the numbers is deferred until the path is used
+            if (!P_COORDINATE_STRING.matcher(value).matches())
+                throw new ParserException("cannot parse coordinates: " + value);
+            return PointArray.lazy(() -> {
+                final PointArray.Builder path = PointArray.builder();
+                for (final String coordStr : value.trim().split(" +")) {
+                    final String[] parts = coordStr.split(",");
+                    path.addDouble(Double.parseDouble(parts[1]), Double.parseDouble(parts[0]));
+                }
+                return path.build();
+            });
         } else {
             return null;
         }
     }
 
     private List<Point> processCoordinateBaseElems(final XmlPullParser pp) throws XmlPullParserException, IOException {
-        final List<Point> path = new LinkedList<>();
+        final PointArray.Builder path = PointArray.builder();
 
         XmlPullUtil.enter(pp, "itdCoordinateBaseElemList");
 
         while (XmlPullUtil.optEnter(pp, "itdCoordinateBaseElem")) {
             final double x = Double.parseDouble(XmlPullUtil.valueTag(pp, "x"));
             final double y = Double.parseDouble(XmlPullUtil.valueTag(pp, "y"));
-            path.add(Point.fromDouble(y, x));
+            path.addDouble(y, x);
 
             XmlPullUtil.skipExit(pp, "itdCoordinateBaseElem");
         }
 
         XmlPullUtil.skipExit(pp, "itdCoordinateBaseElemList");
 
-        return path;
+        return path.build();
     }
 
     private Point parseCoord(final String coordStr) {
@@ -3164,9 +3067,8 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
             throw new RuntimeException(message);
         } else {
             final String now = XmlPullUtil.valueTag(pp, "now");
-            final Calendar serverTime = new GregorianCalendar(timeZone);
-            ParserUtils.parseIsoDate(serverTime, now.substring(0, 10));
-            ParserUtils.parseEuropeanTime(serverTime, now.substring(11));
+            final long serverTime = dateTimes.time(DateTimes.parseIsoDate(now.substring(0, 10)),
+                    DateTimes.parseEuropeanTime(now.substring(11)) * 1000L);
 
             final Map<String, String> params = processPas(pp);
             final String requestId = params.get("requestID");
@@ -3174,7 +3076,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider {
             final String serverId = params.get("serverID");
 
             final ResultHeader header = new ResultHeader(network, SERVER_PRODUCT, null, serverId,
-                    serverTime.getTimeInMillis(), new String[] { sessionId, requestId });
+                    serverTime, new String[] { sessionId, requestId });
 
             return header;
         }
@@ -33,13 +33,13 @@ import java.util.EnumSet;
 import java.util.GregorianCalendar;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -56,6 +56,7 @@ import de.schildbach.pte.dto.Location;
 import de.schildbach.pte.dto.LocationType;
 import de.schildbach.pte.dto.NearbyLocationsResult;
 import de.schildbach.pte.dto.Point;
+import de.schildbach.pte.dto.PointArray;
 import de.schildbach.pte.dto.Position;
 import de.schildbach.pte.dto.Product;
 import de.schildbach.pte.dto.QueryDeparturesResult;
@@ -70,10 +71,15 @@ import de.schildbach.pte.dto.SuggestedLocation;
 import de.schildbach.pte.dto.Trip;
 import de.schildbach.pte.dto.TripOptions;
 import de.schildbach.pte.exception.ParserException;
+import de.schildbach.pte.util.DateTimes;
+import de.schildbach.pte.util.HttpClient;
+import de.schildbach.pte.util.JsonReader;
 import de.schildbach.pte.util.ParserUtils;
 import de.schildbach.pte.util.PolylineFormat;
+import de.schildbach.pte.util.SingleFlight;
 
 import okhttp3.HttpUrl;
+import okio.Buffer;
 
 /**
  * This is an implementation of the HCI (HAFAS Client Interface).
@@ -91,6 +97,7 @@ public abstract class AbstractHafasClientInterfaceProvider extends AbstractHafas
     private String apiAuthorization;
     @Nullable
     private String apiClient;
+    private final SingleFlight<String, QueryDeparturesResult> stationBoardFlight = new SingleFlight<>();
 
     private static final String SERVER_PRODUCT = "hci";
     private static final String SECTION_TYPE_JOURNEY = "JNY";
@@ -101,6 +108,9 @@ public abstract class AbstractHafasClientInterfaceProvider extends AbstractHafas
     private static final String SECTION_TYPE_CHECK_IN = "CHKI";
     private static final String SECTION_TYPE_CHECK_OUT = "CHKO";
 
+    // all used methods only look up data, so requests are safe to be sent more than once
+    private static final HttpClient.RequestOptions JSON_REQUEST = IDEMPOTENT.withContentType("application/json");
+
     public AbstractHafasClientInterfaceProvider(final NetworkId network, final HttpUrl apiBase,
             final Product[] productsMap) {
         super(network, productsMap);
@@ -210,62 +220,39 @@ public abstract class AbstractHafasClientInterfaceProvider extends AbstractHafas
                 false);
 
         final HttpUrl url = requestUrl(request);
-        final CharSequence page = httpClient.get(url, request, "application/json");
-
-        try {
-            final JSONObject head = new JSONObject(page.toString());
-            final String headErr = head.optString("err", null);
-            if (headErr != null && !"OK".equals(headErr)) {
-                final String headErrTxt = head.optString("errTxt");
-                throw new RuntimeException(headErr + " " + headErrTxt);
-            }
+        final List<Location> locations = new ArrayList<>();
+        final ServiceResult result = jsonRequest(url, request, "LocGeoPos", (name, reader, common) -> {
+            if ("locL".equals(name))
+                locations.addAll(parseLocList(readJSONArray(reader), common.crdSysList));
+            else
+                reader.skipValue();
+        });
 
-            final JSONArray svcResList = head.getJSONArray("svcResL");
-            checkState(svcResList.length() == 2);
-            final ResultHeader header = parseServerInfo(svcResList.getJSONObject(0), head.getString("ver"));
-
-            final JSONObject svcRes = svcResList.getJSONObject(1);
-            checkState("LocGeoPos".equals(svcRes.getString("meth")));
-            final String err = svcRes.getString("err");
-            if (!"OK".equals(err)) {
-                final String errTxt = svcRes.optString("errTxt");
-                final String msg = "err=" + err + ", errTxt=\"" + errTxt + "\"";
-                log.debug("Hafas error: {}", msg);
-                if ("FAIL".equals(err) && "HCI Service: request failed".equals(errTxt))
-                    return new NearbyLocationsResult(header, NearbyLocationsResult.Status.SERVICE_DOWN);
-                if ("CGI_READ_FAILED".equals(err))
-                    return new NearbyLocationsResult(header, NearbyLocationsResult.Status.SERVICE_DOWN);
-                if ("CGI_NO_SERVER".equals(err))
-                    return new NearbyLocationsResult(header, NearbyLocationsResult.Status.SERVICE_DOWN);
-                if ("H_UNKNOWN".equals(err))
-                    return new NearbyLocationsResult(header, NearbyLocationsResult.Status.SERVICE_DOWN);
-                throw new RuntimeException(msg);
-            }
-            final JSONObject res = svcRes.getJSONObject("res");
-
-            final JSONObject common = res.getJSONObject("common");
-            /* final List<String[]> remarks = */ parseRemList(common.optJSONArray("remL"));
-            final JSONArray crdSysList = common.optJSONArray("crdSysL");
-
-            final JSONArray locL = res.optJSONArray("locL");
-            final List<Location> locations;
-            if (locL != null) {
-                locations = parseLocList(locL, crdSysList);
-
-                // filter unwanted location types
-                for (Iterator<Location> i = locations.iterator(); i.hasNext();) {
-                    final Location location = i.next();
-                    if (!types.contains(location.type))
-                        i.remove();
-                }
-            } else {
-                locations = Collections.emptyList();
-            }
+        final ResultHeader header = result.header;
+        final String err = result.err;
+        if (!"OK".equals(err)) {
+            final String errTxt = result.errTxt;
+            final String msg = "err=" + err + ", errTxt=\"" + errTxt + "\"";
+            log.debug("Hafas error: {}", msg);
+            if ("FAIL".equals(err) && "HCI Service: request failed".equals(errTxt))
+                return new NearbyLocationsResult(header, NearbyLocationsResult.Status.SERVICE_DOWN);
+            if ("CGI_READ_FAILED".equals(err))
+                return new NearbyLocationsResult(header, NearbyLocationsResult.Status.SERVICE_DOWN);
+            if ("CGI_NO_SERVER".equals(err))
+                return new NearbyLocationsResult(header, NearbyLocationsResult.Status.SERVICE_DOWN);
+            if ("H_UNKNOWN".equals(err))
+                return new NearbyLocationsResult(header, NearbyLocationsResult.Status.SERVICE_DOWN);
+            throw new RuntimeException(msg);
+        }
 
-            return new NearbyLocationsResult(header, locations);
-        } catch (final JSONException x) {
-            throw new ParserException("cannot parse json: '" + page + "' on " + url, x);
+        // filter unwanted location types
+        for (Iterator<Location> i = locations.iterator(); i.hasNext();) {
+            final Location location = i.next();
+            if (!types.contains(location.type))
+                i.remove();
         }
+
+        return new NearbyLocationsResult(header, locations);
     }
 
     protected final QueryDeparturesResult jsonStationBoard(final String stationId, final @Nullable Date time,
@@ -294,131 +281,117 @@ public abstract class AbstractHafasClientInterfaceProvider extends AbstractHafas
                 + (canStbFltrEquiv ? "\"stbFltrEquiv\":" + Boolean.toString(!equivs) + "," : "") //
                 + "\"maxJny\":" + maxJny + "}", false);
 
+        // identical concurrent requests share one upstream call
         final HttpUrl url = requestUrl(request);
-        final CharSequence page = httpClient.get(url, request, "application/json");
+        return stationBoardFlight.call(url + "\n" + request,
+                () -> jsonStationBoard(url, request, stationId, equivs));
+    }
 
-        try {
-            final JSONObject head = new JSONObject(page.toString());
-            final String headErr = head.optString("err", null);
-            if (headErr != null && !"OK".equals(headErr)) {
-                final String headErrTxt = head.optString("errTxt");
-                throw new RuntimeException(headErr + " " + headErrTxt);
+    private QueryDeparturesResult jsonStationBoard(final HttpUrl url, final String request, final String stationId,
+            final boolean equivs) throws IOException {
+        final List<StationDepartures> stationDeparturesList = new ArrayList<>();
+        final ServiceResult serviceResult = jsonRequest(url, request, "StationBoard", (name, reader, common) -> {
+            if (!"jnyL".equals(name)) {
+                reader.skipValue();
+                return;
             }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                final JSONObject jny = readJSONObject(reader);
+                final JSONObject stbStop = jny.getJSONObject("stbStop");
 
-            final JSONArray svcResList = head.getJSONArray("svcResL");
-            checkState(svcResList.length() == 2);
-            final ResultHeader header = parseServerInfo(svcResList.getJSONObject(0), head.getString("ver"));
-            final QueryDeparturesResult result = new QueryDeparturesResult(header);
-
-            final JSONObject svcRes = svcResList.optJSONObject(1);
-            checkState("StationBoard".equals(svcRes.getString("meth")));
-            final String err = svcRes.getString("err");
-            if (!"OK".equals(err)) {
-                final String errTxt = svcRes.optString("errTxt");
-                final String msg = "err=" + err + ", errTxt=\"" + errTxt + "\"";
-                log.debug("Hafas error: {}", msg);
-                if ("LOCATION".equals(err) && "HCI Service: location missing or invalid".equals(errTxt))
-                    return new QueryDeparturesResult(header, QueryDeparturesResult.Status.INVALID_STATION);
-                if ("FAIL".equals(err) && "HCI Service: request failed".equals(errTxt))
-                    return new QueryDeparturesResult(header, QueryDeparturesResult.Status.SERVICE_DOWN);
-                if ("PROBLEMS".equals(err) && "HCI Service: problems during service execution".equals(errTxt))
-                    return new QueryDeparturesResult(header, QueryDeparturesResult.Status.SERVICE_DOWN);
-                if ("CGI_READ_FAILED".equals(err))
-                    return new QueryDeparturesResult(header, QueryDeparturesResult.Status.SERVICE_DOWN);
-                if ("CGI_NO_SERVER".equals(err))
-                    return new QueryDeparturesResult(header, QueryDeparturesResult.Status.SERVICE_DOWN);
-                if ("H_UNKNOWN".equals(err))
-                    return new QueryDeparturesResult(header, QueryDeparturesResult.Status.SERVICE_DOWN);
-                throw new RuntimeException(msg);
-            }
-            final JSONObject res = svcRes.getJSONObject("res");
-
-            final JSONObject common = res.getJSONObject("common");
-            final List<String[]> remarks = parseRemList(common.optJSONArray("remL"));
-            final List<Style> styles = parseIcoList(common.getJSONArray("icoL"));
-            final List<String> operators = parseOpList(common.optJSONArray("opL"));
-            final List<Line> lines = parseProdList(common.optJSONArray("prodL"), operators, styles);
-            final JSONArray crdSysList = common.optJSONArray("crdSysL");
-            final JSONArray locList = common.getJSONArray("locL");
-
-            final JSONArray jnyList = res.optJSONArray("jnyL");
-            if (jnyList != null) {
-                for (int iJny = 0; iJny < jnyList.length(); iJny++) {
-                    final JSONObject jny = jnyList.getJSONObject(iJny);
-                    final JSONObject stbStop = jny.getJSONObject("stbStop");
-
-                    final boolean cancelled = stbStop.optBoolean("dCncl", false);
-                    if (cancelled)
-                        continue;
-
-                    final Position position = parseJsonPosition(stbStop, "dPlatfS", "dPltfS");
-
-                    c.clear();
-                    ParserUtils.parseIsoDate(c, jny.getString("date"));
-                    final Date baseDate = c.getTime();
-
-                    final Date plannedTime = parseJsonTime(c, baseDate, stbStop.getString("dTimeS"));
-
-                    final Date predictedTime = parseJsonTime(c, baseDate, stbStop.optString("dTimeR", null));
-
-                    final int dProdX = stbStop.optInt("dProdX", -1);
-                    final Line line = dProdX != -1 ? lines.get(dProdX) : null;
-
-                    final Location location = parseLoc(locList, stbStop.getInt("locX"), null, crdSysList);
-                    checkState(location.type == LocationType.STATION);
-                    if (!equivs && !location.id.equals(stationId))
-                        continue;
-
-                    final String jnyDirTxt = jny.optString("dirTxt", null);
-                    Location destination = null;
-                    // if last entry in stopL happens to be our destination, use it
-                    final JSONArray stopList = jny.optJSONArray("stopL");
-                    if (stopList != null) {
-                        final int lastStopIdx = stopList.getJSONObject(stopList.length() - 1).getInt("locX");
-                        final String lastStopName = locList.getJSONObject(lastStopIdx).getString("name");
-                        if (jnyDirTxt != null && jnyDirTxt.equals(lastStopName))
-                            destination = parseLoc(locList, lastStopIdx, null, crdSysList);
-                    }
-                    // otherwise split unidentified destination as if it was a station and use it
-                    if (destination == null && jnyDirTxt != null) {
-                        final String[] splitJnyDirTxt = splitStationName(jnyDirTxt);
-                        destination = new Location(LocationType.ANY, null, splitJnyDirTxt[0], splitJnyDirTxt[1]);
-                    }
+                final boolean cancelled = stbStop.optBoolean("dCncl", false);
+                if (cancelled)
+                    continue;
 
-                    final JSONArray remList = jny.optJSONArray("remL");
-                    String message = null;
-                    if (remList != null) {
-                        for (int iRem = 0; iRem < remList.length(); iRem++) {
-                            final JSONObject rem = remList.getJSONObject(iRem);
-                            final String[] remark = remarks.get(rem.getInt("remX"));
-                            if ("l?".equals(remark[0]))
-                                message = remark[1];
-                        }
-                    }
+                final Position position = parseJsonPosition(stbStop, "dPlatfS", "dPltfS");
+
+                final int baseDay = DateTimes.parseIsoDate(jny.getString("date"));
 
-                    if (line != null) {
-                        final Departure departure = new Departure(plannedTime, predictedTime, line, position,
-                                destination, null, message);
+                final Date plannedTime = parseJsonTime(baseDay, stbStop.getString("dTimeS"));
 
-                        StationDepartures stationDepartures = findStationDepartures(result.stationDepartures, location);
-                        if (stationDepartures == null) {
-                            stationDepartures = new StationDepartures(location, new ArrayList<Departure>(8), null);
-                            result.stationDepartures.add(stationDepartures);
-                        }
+                final Date predictedTime = parseJsonTime(baseDay, stbStop.optString("dTimeR", null));
 
-                        stationDepartures.departures.add(departure);
+                final int dProdX = stbStop.optInt("dProdX", -1);
+                final Line line = dProdX != -1 ? common.line(dProdX) : null;
+
+                final Location location = parseLoc(common.locList, stbStop.getInt("locX"), null, common.crdSysList);
+                checkState(location.type == LocationType.STATION);
+                if (!equivs && !location.id.equals(stationId))
+                    continue;
+
+                final String jnyDirTxt = jny.optString("dirTxt", null);
+                Location destination = null;
+                // if last entry in stopL happens to be our destination, use it
+                final JSONArray stopList = jny.optJSONArray("stopL");
+                if (stopList != null) {
+                    final int lastStopIdx = stopList.getJSONObject(stopList.length() - 1).getInt("locX");
+                    final String lastStopName = common.locList.getJSONObject(lastStopIdx).getString("name");
+                    if (jnyDirTxt != null && jnyDirTxt.equals(lastStopName))
+                        destination = parseLoc(common.locList, lastStopIdx, null, common.crdSysList);
+                }
+                // otherwise split unidentified destination as if it was a station and use it
+                if (destination == null && jnyDirTxt != null) {
+                    final String[] splitJnyDirTxt = splitStationName(jnyDirTxt);
+                    destination = new Location(LocationType.ANY, null, splitJnyDirTxt[0], splitJnyDirTxt[1]);
+                }
+
+                final JSONArray remList = jny.optJSONArray("remL");
+                String message = null;
+                if (remList != null) {
+                    for (int iRem = 0; iRem < remList.length(); iRem++) {
+                        final JSONObject rem = remList.getJSONObject(iRem);
+                        final String[] remark = common.remark(rem.getInt("remX"));
+                        if ("l?".equals(remark[0]))
+                            message = remark[1];
                     }
                 }
-            }
 
-            // sort departures
-            for (final StationDepartures stationDepartures : result.stationDepartures)
-                Collections.sort(stationDepartures.departures, Departure.TIME_COMPARATOR);
+                if (line != null) {
+                    final Departure departure = new Departure(plannedTime, predictedTime, line, position,
+                            destination, null, message);
+
+                    StationDepartures stationDepartures = findStationDepartures(stationDeparturesList, location);
+                    if (stationDepartures == null) {
+                        stationDepartures = new StationDepartures(location, new ArrayList<Departure>(8), null);
+                        stationDeparturesList.add(stationDepartures);
+                    }
 
-            return result;
-        } catch (final JSONException x) {
-            throw new ParserException("cannot parse json: '" + page + "' on " + url, x);
+                    stationDepartures.departures.add(departure);
+                }
+            }
+            reader.endArray();
+        });
+
+        final ResultHeader header = serviceResult.header;
+        final String err = serviceResult.err;
+        if (!"OK".equals(err)) {
+            final String errTxt = serviceResult.errTxt;
+            final String msg = "err=" + err + ", errTxt=\"" + errTxt + "\"";
+            log.debug("Hafas error: {}", msg);
+            if ("LOCATION".equals(err) && "HCI Service: location missing or invalid".equals(errTxt))
+                return new QueryDeparturesResult(header, QueryDeparturesResult.Status.INVALID_STATION);
+            if ("FAIL".equals(err) && "HCI Service: request failed".equals(errTxt))
+                return new QueryDeparturesResult(header, QueryDeparturesResult.Status.SERVICE_DOWN);
+            if ("PROBLEMS".equals(err) && "HCI Service: problems during service execution".equals(errTxt))
+                return new QueryDeparturesResult(header, QueryDeparturesResult.Status.SERVICE_DOWN);
+            if ("CGI_READ_FAILED".equals(err))
+                return new QueryDeparturesResult(header, QueryDeparturesResult.Status.SERVICE_DOWN);
+            if ("CGI_NO_SERVER".equals(err))
+                return new QueryDeparturesResult(header, QueryDeparturesResult.Status.SERVICE_DOWN);
+            if ("H_UNKNOWN".equals(err))
+                return new QueryDeparturesResult(header, QueryDeparturesResult.Status.SERVICE_DOWN);
+            throw new RuntimeException(msg);
         }
+
+        final QueryDeparturesResult result = new QueryDeparturesResult(header);
+        result.stationDepartures.addAll(stationDeparturesList);
+
+        // sort departures
+        for (final StationDepartures stationDepartures : result.stationDepartures)
+            Collections.sort(stationDepartures.departures, Departure.TIME_COMPARATOR);
+
+        return result;
     }
 
     protected final SuggestLocationsResult jsonLocMatch(final CharSequence constraint,
@@ -440,54 +413,45 @@ public abstract class AbstractHafasClientInterfaceProvider extends AbstractHafas
                 "{\"input\":{\"field\":\"S\",\"loc\":" + loc + ",\"maxLoc\":" + maxLocations + "}}", false);
 
         final HttpUrl url = requestUrl(request);
-        final CharSequence page = httpClient.get(url, request, "application/json");
-
-        try {
-            final JSONObject head = new JSONObject(page.toString());
-            final String headErr = head.optString("err", null);
-            if (headErr != null && !"OK".equals(headErr)) {
-                final String headErrTxt = head.optString("errTxt");
-                throw new RuntimeException(headErr + " " + headErrTxt);
+        final List<Location> locations = new ArrayList<>();
+        final ServiceResult result = jsonRequest(url, request, "LocMatch", (name, reader, common) -> {
+            if ("match".equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("locL".equals(reader.nextName()))
+                        locations.addAll(parseLocList(readJSONArray(reader), common.crdSysList));
+                    else
+                        reader.skipValue();
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
             }
+        });
 
-            final JSONArray svcResList = head.getJSONArray("svcResL");
-            checkState(svcResList.length() == 2);
-            final ResultHeader header = parseServerInfo(svcResList.getJSONObject(0), head.getString("ver"));
-
-            final JSONObject svcRes = svcResList.optJSONObject(1);
-            checkState("LocMatch".equals(svcRes.getString("meth")));
-            final String err = svcRes.getString("err");
-            if (!"OK".equals(err)) {
-                final String errTxt = svcRes.optString("errTxt");
-                final String msg = "err=" + err + ", errTxt=\"" + errTxt + "\"";
-                log.debug("Hafas error: {}", msg);
-                if ("FAIL".equals(err) && "HCI Service: request failed".equals(errTxt))
-                    return new SuggestLocationsResult(header, SuggestLocationsResult.Status.SERVICE_DOWN);
-                if ("CGI_READ_FAILED".equals(err))
-                    return new SuggestLocationsResult(header, SuggestLocationsResult.Status.SERVICE_DOWN);
-                if ("CGI_NO_SERVER".equals(err))
-                    return new SuggestLocationsResult(header, SuggestLocationsResult.Status.SERVICE_DOWN);
-                if ("H_UNKNOWN".equals(err))
-                    return new SuggestLocationsResult(header, SuggestLocationsResult.Status.SERVICE_DOWN);
-                throw new RuntimeException(msg);
-            }
-            final JSONObject res = svcRes.getJSONObject("res");
-
-            final JSONObject common = res.getJSONObject("common");
-            /* final List<String[]> remarks = */ parseRemList(common.optJSONArray("remL"));
-
-            final JSONObject match = res.getJSONObject("match");
-            final JSONArray crdSysList = common.optJSONArray("crdSysL");
-            final List<Location> locations = parseLocList(match.optJSONArray("locL"), crdSysList);
-            final List<SuggestedLocation> suggestedLocations = new ArrayList<>(locations.size());
-            for (final Location location : locations)
-                suggestedLocations.add(new SuggestedLocation(location));
-            // TODO weight
-
-            return new SuggestLocationsResult(header, suggestedLocations);
-        } catch (final JSONException x) {
-            throw new ParserException("cannot parse json: '" + page + "' on " + url, x);
+        final ResultHeader header = result.header;
+        final String err = result.err;
+        if (!"OK".equals(err)) {
+            final String errTxt = result.errTxt;
+            final String msg = "err=" + err + ", errTxt=\"" + errTxt + "\"";
+            log.debug("Hafas error: {}", msg);
+            if ("FAIL".equals(err) && "HCI Service: request failed".equals(errTxt))
+                return new SuggestLocationsResult(header, SuggestLocationsResult.Status.SERVICE_DOWN);
+            if ("CGI_READ_FAILED".equals(err))
+                return new SuggestLocationsResult(header, SuggestLocationsResult.Status.SERVICE_DOWN);
+            if ("CGI_NO_SERVER".equals(err))
+                return new SuggestLocationsResult(header, SuggestLocationsResult.Status.SERVICE_DOWN);
+            if ("H_UNKNOWN".equals(err))
+                return new SuggestLocationsResult(header, SuggestLocationsResult.Status.SERVICE_DOWN);
+            throw new RuntimeException(msg);
         }
+
+        final List<SuggestedLocation> suggestedLocations = new ArrayList<>(locations.size());
+        for (final Location location : locations)
+            suggestedLocations.add(new SuggestedLocation(location));
+        // TODO weight
+
+        return new SuggestLocationsResult(header, suggestedLocations);
     }
 
     private Location jsonTripSearchIdentify(final Location location) throws IOException {
@@ -560,266 +524,253 @@ public abstract class AbstractHafasClientInterfaceProvider extends AbstractHafas
                 false);
 
         final HttpUrl url = requestUrl(request);
-        final CharSequence page = httpClient.get(url, request, "application/json");
-
-        try {
-            final JSONObject head = new JSONObject(page.toString());
-            final String headErr = head.optString("err", null);
-            if (headErr != null && !"OK".equals(headErr)) {
-                final String headErrTxt = head.optString("errTxt");
-                throw new RuntimeException(headErr + " " + headErrTxt);
+        final List<Trip> trips = new ArrayList<>();
+        final ScrollContexts contexts = new ScrollContexts();
+        final ServiceResult serviceResult = jsonRequest(url, request, "TripSearch", (name, reader, common) -> {
+            if ("outConL".equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext())
+                    trips.add(parseOutCon(readJSONObject(reader), common));
+                reader.endArray();
+            } else if ("outCtxScrF".equals(name)) {
+                contexts.later = reader.nextString();
+            } else if ("outCtxScrB".equals(name)) {
+                contexts.earlier = reader.nextString();
+            } else {
+                reader.skipValue();
             }
+        });
 
-            final JSONArray svcResList = head.getJSONArray("svcResL");
-            checkState(svcResList.length() == 2);
-            final ResultHeader header = parseServerInfo(svcResList.getJSONObject(0), head.getString("ver"));
-
-            final JSONObject svcRes = svcResList.optJSONObject(1);
-            checkState("TripSearch".equals(svcRes.getString("meth")));
-            final String err = svcRes.getString("err");
-            if (!"OK".equals(err)) {
-                final String errTxt = svcRes.optString("errTxt");
-                final String msg = "err=" + err + ", errTxt=\"" + errTxt + "\"";
-                log.debug("Hafas error: {}", msg);
-                if ("H890".equals(err)) // No connections found.
-                    return new QueryTripsResult(header, QueryTripsResult.Status.NO_TRIPS);
-                if ("H883".equals(err)) // HAFAS Kernel: No connection found after post filtering
-                    return new QueryTripsResult(header, QueryTripsResult.Status.NO_TRIPS);
-                if ("H891".equals(err)) // No route found (try entering an intermediate station).
-                    return new QueryTripsResult(header, QueryTripsResult.Status.NO_TRIPS);
-                if ("H892".equals(err)) // HAFAS Kernel: Request too complex (try entering less intermediate
-                                        // stations).
-                    return new QueryTripsResult(header, QueryTripsResult.Status.NO_TRIPS);
-                if ("H895".equals(err)) // Departure/Arrival are too near.
-                    return new QueryTripsResult(header, QueryTripsResult.Status.TOO_CLOSE);
-                if ("H9220".equals(err)) // Nearby to the given address stations could not be found.
-                    return new QueryTripsResult(header, QueryTripsResult.Status.UNRESOLVABLE_ADDRESS);
-                if ("H886".equals(err)) // HAFAS Kernel: No connections found within the requested time
-                                        // interval.
-                    return new QueryTripsResult(header, QueryTripsResult.Status.NO_TRIPS);
-                if ("H887".equals(err)) // HAFAS Kernel: Kernel computation time limit reached.
-                    return new QueryTripsResult(header, QueryTripsResult.Status.SERVICE_DOWN);
-                if ("H9240".equals(err)) // HAFAS Kernel: Internal error.
-                    return new QueryTripsResult(header, QueryTripsResult.Status.SERVICE_DOWN);
-                if ("H900".equals(err)) // HAFAS Kernel: No connection found, the connection period requested may be
-                                        // outside the timetable period
-                    return new QueryTripsResult(header, QueryTripsResult.Status.INVALID_DATE);
-                if ("H9360".equals(err)) // Date outside of the timetable period.
-                    return new QueryTripsResult(header, QueryTripsResult.Status.INVALID_DATE);
-                if ("H9380".equals(err)) // Departure/Arrival/Intermediate or equivalent stations def'd more
-                                         // than once.
-                    return new QueryTripsResult(header, QueryTripsResult.Status.TOO_CLOSE);
-                if ("FAIL".equals(err))
-                    return new QueryTripsResult(header, QueryTripsResult.Status.SERVICE_DOWN);
-                if ("PROBLEMS".equals(err) && "HCI Service: problems during service execution".equals(errTxt))
-                    return new QueryTripsResult(header, QueryTripsResult.Status.SERVICE_DOWN);
-                if ("LOCATION".equals(err) && "HCI Service: location missing or invalid".equals(errTxt))
-                    return new QueryTripsResult(header, QueryTripsResult.Status.UNKNOWN_LOCATION);
-                if ("CGI_READ_FAILED".equals(err))
-                    return new QueryTripsResult(header, QueryTripsResult.Status.SERVICE_DOWN);
-                if ("CGI_NO_SERVER".equals(err))
-                    return new QueryTripsResult(header, QueryTripsResult.Status.SERVICE_DOWN);
-                if ("H_UNKNOWN".equals(err))
-                    return new QueryTripsResult(header, QueryTripsResult.Status.SERVICE_DOWN);
-                throw new RuntimeException(msg);
-            }
-            final JSONObject res = svcRes.getJSONObject("res");
-
-            final JSONObject common = res.getJSONObject("common");
-            final List<String[]> remarks = parseRemList(common.optJSONArray("remL"));
-            final List<Style> styles = parseIcoList(common.getJSONArray("icoL"));
-            final JSONArray crdSysList = common.optJSONArray("crdSysL");
-            final JSONArray locList = common.getJSONArray("locL");
-            final List<String> operators = parseOpList(common.optJSONArray("opL"));
-            final List<Line> lines = parseProdList(common.optJSONArray("prodL"), operators, styles);
-            final List<String> encodedPolylines = parsePolyList(common.getJSONArray("polyL"));
-
-            final JSONArray outConList = res.optJSONArray("outConL");
-            final List<Trip> trips = new ArrayList<>(outConList.length());
-            for (int iOutCon = 0; iOutCon < outConList.length(); iOutCon++) {
-                final JSONObject outCon = outConList.getJSONObject(iOutCon);
-                final Location tripFrom = parseLoc(locList, outCon.getJSONObject("dep").getInt("locX"),
-                        new HashSet<Integer>(), crdSysList);
-                final Location tripTo = parseLoc(locList, outCon.getJSONObject("arr").getInt("locX"),
-                        new HashSet<Integer>(), crdSysList);
-
-                c.clear();
-                ParserUtils.parseIsoDate(c, outCon.getString("date"));
-                final Date baseDate = c.getTime();
-
-                final JSONArray secList = outCon.optJSONArray("secL");
-                final List<Trip.Leg> legs = new ArrayList<>(secList.length());
-                for (int iSec = 0; iSec < secList.length(); iSec++) {
-                    final JSONObject sec = secList.getJSONObject(iSec);
-                    final String secType = sec.getString("type");
-
-                    final JSONObject secDep = sec.getJSONObject("dep");
-                    final Stop departureStop = parseJsonStop(secDep, locList, crdSysList, c, baseDate);
-
-                    final JSONObject secArr = sec.getJSONObject("arr");
-                    final Stop arrivalStop = parseJsonStop(secArr, locList, crdSysList, c, baseDate);
-
-                    final Trip.Leg leg;
-                    if (SECTION_TYPE_JOURNEY.equals(secType) || SECTION_TYPE_TELE_TAXI.equals(secType)) {
-                        final JSONObject jny = sec.getJSONObject("jny");
-                        final Line line = lines.get(jny.getInt("prodX"));
-                        final String dirTxt = jny.optString("dirTxt", null);
-
-                        final Location destination;
-                        if (dirTxt != null) {
-                            final String[] splitDirTxt = splitStationName(dirTxt);
-                            destination = new Location(LocationType.ANY, null, splitDirTxt[0], splitDirTxt[1]);
-                        } else {
-                            destination = null;
-                        }
-
-                        final JSONArray stopList = jny.optJSONArray("stopL");
-                        final List<Stop> intermediateStops;
-                        if (stopList != null) {
-                            checkState(stopList.length() >= 2);
-                            intermediateStops = new ArrayList<>(stopList.length());
-                            for (int iStop = 1; iStop < stopList.length() - 1; iStop++) {
-                                final JSONObject stop = stopList.getJSONObject(iStop);
-                                final Stop intermediateStop = parseJsonStop(stop, locList, crdSysList, c, baseDate);
-                                intermediateStops.add(intermediateStop);
-                            }
-                        } else {
-                            intermediateStops = null;
-                        }
-
-                        final List<Point> path;
-                        final JSONObject polyG = jny.optJSONObject("polyG");
-                        if (polyG != null) {
-                            final int crdSysX = polyG.optInt("crdSysX", -1);
-                            if (crdSysX != -1) {
-                                final String crdSysType = crdSysList.getJSONObject(crdSysX).getString("type");
-                                if (!"WGS84".equals(crdSysType))
-                                    throw new RuntimeException("unknown type: " + crdSysType);
-                            }
-                            final JSONArray polyXList = polyG.getJSONArray("polyXL");
-                            path = new LinkedList<>();
-                            final int polyXListLen = polyXList.length();
-                            for (int i = 0; i < polyXListLen; i++) {
-                                final String encodedPolyline = encodedPolylines.get(polyXList.getInt(i));
-                                path.addAll(PolylineFormat.decode(encodedPolyline));
-                            }
-                        } else {
-                            path = null;
-                        }
-
-                        final JSONArray remList = jny.optJSONArray("remL");
-                        String message = null;
-                        if (remList != null) {
-                            for (int iRem = 0; iRem < remList.length(); iRem++) {
-                                final JSONObject rem = remList.getJSONObject(iRem);
-                                final String[] remark = remarks.get(rem.getInt("remX"));
-                                if ("l?".equals(remark[0]))
-                                    message = remark[1];
-                            }
-                        }
-
-                        leg = new Trip.Public(line, destination, departureStop, arrivalStop, intermediateStops, path,
-                                message);
-                    } else if (SECTION_TYPE_WALK.equals(secType)) {
-                        final JSONObject gis = sec.getJSONObject("gis");
-                        final int distance = gis.optInt("dist", 0);
-                        leg = new Trip.Individual(Trip.Individual.Type.WALK, departureStop.location,
-                                departureStop.getDepartureTime(), arrivalStop.location, arrivalStop.getArrivalTime(),
-                                null, distance);
-                    } else if (SECTION_TYPE_TRANSFER.equals(secType) || SECTION_TYPE_DEVI.equals(secType)) {
-                        final JSONObject gis = sec.optJSONObject("gis");
-                        final int distance = gis != null ? gis.optInt("dist", 0) : 0;
-                        leg = new Trip.Individual(Trip.Individual.Type.TRANSFER, departureStop.location,
-                                departureStop.getDepartureTime(), arrivalStop.location, arrivalStop.getArrivalTime(),
-                                null, distance);
-                    } else if (SECTION_TYPE_CHECK_IN.equals(secType)) {
-                        final JSONObject gis = sec.optJSONObject("gis");
-                        final int distance = gis != null ? gis.optInt("dist", 0) : 0;
-                        leg = new Trip.Individual(Trip.Individual.Type.CHECK_IN, departureStop.location,
-                                departureStop.getDepartureTime(), arrivalStop.location, arrivalStop.getArrivalTime(),
-                                null, distance);
-                    } else if (SECTION_TYPE_CHECK_OUT.equals(secType)) {
-                        final JSONObject gis = sec.optJSONObject("gis");
-                        final int distance = gis != null ? gis.optInt("dist", 0) : 0;
-                        leg = new Trip.Individual(Trip.Individual.Type.CHECK_OUT, departureStop.location,
-                                departureStop.getDepartureTime(), arrivalStop.location, arrivalStop.getArrivalTime(),
-                                null, distance);
-                    } else {
-                        throw new IllegalStateException("cannot handle type: " + secType);
-                    }
+        final ResultHeader header = serviceResult.header;
+        final String err = serviceResult.err;
+        if (!"OK".equals(err)) {
+            final String errTxt = serviceResult.errTxt;
+            final String msg = "err=" + err + ", errTxt=\"" + errTxt + "\"";
+            log.debug("Hafas error: {}", msg);
+            if ("H890".equals(err)) // No connections found.
+                return new QueryTripsResult(header, QueryTripsResult.Status.NO_TRIPS);
+            if ("H883".equals(err)) // HAFAS Kernel: No connection found after post filtering
+                return new QueryTripsResult(header, QueryTripsResult.Status.NO_TRIPS);
+            if ("H891".equals(err)) // No route found (try entering an intermediate station).
+                return new QueryTripsResult(header, QueryTripsResult.Status.NO_TRIPS);
+            if ("H892".equals(err)) // HAFAS Kernel: Request too complex (try entering less intermediate
+                                    // stations).
+                return new QueryTripsResult(header, QueryTripsResult.Status.NO_TRIPS);
+            if ("H895".equals(err)) // Departure/Arrival are too near.
+                return new QueryTripsResult(header, QueryTripsResult.Status.TOO_CLOSE);
+            if ("H9220".equals(err)) // Nearby to the given address stations could not be found.
+                return new QueryTripsResult(header, QueryTripsResult.Status.UNRESOLVABLE_ADDRESS);
+            if ("H886".equals(err)) // HAFAS Kernel: No connections found within the requested time
+                                    // interval.
+                return new QueryTripsResult(header, QueryTripsResult.Status.NO_TRIPS);
+            if ("H887".equals(err)) // HAFAS Kernel: Kernel computation time limit reached.
+                return new QueryTripsResult(header, QueryTripsResult.Status.SERVICE_DOWN);
+            if ("H9240".equals(err)) // HAFAS Kernel: Internal error.
+                return new QueryTripsResult(header, QueryTripsResult.Status.SERVICE_DOWN);
+            if ("H900".equals(err)) // HAFAS Kernel: No connection found, the connection period requested may be
+                                    // outside the timetable period
+                return new QueryTripsResult(header, QueryTripsResult.Status.INVALID_DATE);
+            if ("H9360".equals(err)) // Date outside of the timetable period.
+                return new QueryTripsResult(header, QueryTripsResult.Status.INVALID_DATE);
+            if ("H9380".equals(err)) // Departure/Arrival/Intermediate or equivalent stations def'd more
+                                     // than once.
+                return new QueryTripsResult(header, QueryTripsResult.Status.TOO_CLOSE);
+            if ("FAIL".equals(err))
+                return new QueryTripsResult(header, QueryTripsResult.Status.SERVICE_DOWN);
+            if ("PROBLEMS".equals(err) && "HCI Service: problems during service execution".equals(errTxt))
+                return new QueryTripsResult(header, QueryTripsResult.Status.SERVICE_DOWN);
+            if ("LOCATION".equals(err) && "HCI Service: location missing or invalid".equals(errTxt))
+                return new QueryTripsResult(header, QueryTripsResult.Status.UNKNOWN_LOCATION);
+            if ("CGI_READ_FAILED".equals(err))
+                return new QueryTripsResult(header, QueryTripsResult.Status.SERVICE_DOWN);
+            if ("CGI_NO_SERVER".equals(err))
+                return new QueryTripsResult(header, QueryTripsResult.Status.SERVICE_DOWN);
+            if ("H_UNKNOWN".equals(err))
+                return new QueryTripsResult(header, QueryTripsResult.Status.SERVICE_DOWN);
+            throw new RuntimeException(msg);
+        }
+
+        final JsonContext context = new JsonContext(from, via, to, time, dep, products, walkSpeed, contexts.later,
+                contexts.earlier);
+        return new QueryTripsResult(header, null, from, null, to, context, trips);
+    }
+
+    private Trip parseOutCon(final JSONObject outCon, final Common common) throws JSONException {
+        final Location tripFrom = parseLoc(common.locList, outCon.getJSONObject("dep").getInt("locX"),
+                new HashSet<Integer>(), common.crdSysList);
+        final Location tripTo = parseLoc(common.locList, outCon.getJSONObject("arr").getInt("locX"),
+                new HashSet<Integer>(), common.crdSysList);
+
+        final int baseDay = DateTimes.parseIsoDate(outCon.getString("date"));
+
+        final JSONArray secList = outCon.optJSONArray("secL");
+        final List<Trip.Leg> legs = new ArrayList<>(secList.length());
+        for (int iSec = 0; iSec < secList.length(); iSec++) {
+            final JSONObject sec = secList.getJSONObject(iSec);
+            final String secType = sec.getString("type");
+
+            final JSONObject secDep = sec.getJSONObject("dep");
+            final Stop departureStop = parseJsonStop(secDep, common, baseDay);
 
-                    legs.add(leg);
+            final JSONObject secArr = sec.getJSONObject("arr");
+            final Stop arrivalStop = parseJsonStop(secArr, common, baseDay);
+
+            final Trip.Leg leg;
+            if (SECTION_TYPE_JOURNEY.equals(secType) || SECTION_TYPE_TELE_TAXI.equals(secType)) {
+                final JSONObject jny = sec.getJSONObject("jny");
+                final Line line = common.line(jny.getInt("prodX"));
+                final String dirTxt = jny.optString("dirTxt", null);
+
+                final Location destination;
+                if (dirTxt != null) {
+                    final String[] splitDirTxt = splitStationName(dirTxt);
+                    destination = new Location(LocationType.ANY, null, splitDirTxt[0], splitDirTxt[1]);
+                } else {
+                    destination = null;
+                }
+
+                final JSONArray stopList = jny.optJSONArray("stopL");
+                final List<Stop> intermediateStops;
+                if (stopList != null) {
+                    checkState(stopList.length() >= 2);
+                    intermediateStops = new ArrayList<>(stopList.length());
+                    for (int iStop = 1; iStop < stopList.length() - 1; iStop++) {
+                        final JSONObject stop = stopList.getJSONObject(iStop);
+                        final Stop intermediateStop = parseJsonStop(stop, common, baseDay);
+                        intermediateStops.add(intermediateStop);
+                    }
+                } else {
+                    intermediateStops = null;
                 }
 
-                final List<Fare> fares;
-                final JSONObject trfRes = outCon.optJSONObject("trfRes");
-                final JSONArray ovwTrfRefList = outCon.optJSONArray("ovwTrfRefL");
-                if (trfRes != null && ovwTrfRefList != null) {
-                    fares = new LinkedList<>();
-                    final JSONArray fareSetList = trfRes.getJSONArray("fareSetL");
-                    for (int i = 0; i < ovwTrfRefList.length(); i++) {
-                        final JSONObject ovwTrfRef = ovwTrfRefList.getJSONObject(i);
-                        final String type = ovwTrfRef.getString("type");
-                        if (type.equals("T")) { // ticket
-                            final JSONObject jsonFareSet = fareSetList.getJSONObject(ovwTrfRef.getInt("fareSetX"));
-                            final JSONObject jsonFare =
-                                    jsonFareSet.getJSONArray("fareL").getJSONObject(ovwTrfRef.getInt("fareX"));
-                            final String fareName = jsonFare.getString("name");
-                            final int ticketX = ovwTrfRef.getInt("ticketX");
-                            final JSONObject jsonTicket = jsonFare.getJSONArray("ticketL").getJSONObject(ticketX);
-                            final String ticketName = jsonTicket.getString("name");
-                            final Price price = parsePriceFromObject(jsonTicket);
-                            if (price != null) {
-                                final Fare fare = new Fare(normalizeFareName(fareName) + '\n' + ticketName,
-                                        normalizeFareType(ticketName), price.currency, price.amount, null, null);
-                                if (!hideFare(fare))
-                                    fares.add(fare);
-                            }
-                        } else if (type.equals("F")) { // fare
-                            final JSONObject jsonFareSet = fareSetList.getJSONObject(ovwTrfRef.getInt("fareSetX"));
-                            final JSONObject jsonFare =
-                                    jsonFareSet.getJSONArray("fareL").getJSONObject(ovwTrfRef.getInt("fareX"));
-                            final String fareName = jsonFare.getString("name");
-                            final Price price = parsePriceFromObject(jsonFare);
-                            if (price != null) {
-                                final Fare fare = new Fare(normalizeFareName(fareName), normalizeFareType(fareName),
-                                        price.currency, price.amount, null, null);
-                                if (!hideFare(fare))
-                                    fares.add(fare);
-                            }
-                        } else if (type.equals("FS")) { // fare set
-                            final JSONObject jsonFareSet = fareSetList.getJSONObject(ovwTrfRef.getInt("fareSetX"));
-                            final String fareSetName = jsonFareSet.getString("name");
-                            final JSONArray fareList = jsonFareSet.getJSONArray("fareL");
-                            for (int iFare = 0; iFare < fareList.length(); iFare++) {
-                                final JSONObject jsonFare = fareList.getJSONObject(iFare);
-                                final String fareName = jsonFare.getString("name");
-                                final Price price = parsePriceFromObject(jsonFare);
-                                final Fare fare = new Fare(normalizeFareName(fareSetName), normalizeFareType(fareName),
-                                        price.currency, price.amount, null, null);
-                                if (!hideFare(fare))
-                                    fares.add(fare);
-                            }
-                        } else if (ovwTrfRef.length() == 1) {
-                            // cannot handle tariffs with no information other than the type
-                        } else {
-                            throw new IllegalArgumentException("cannot handle type: " + type);
-                        }
+                final List<Point> path;
+                final JSONObject polyG = jny.optJSONObject("polyG");
+                if (polyG != null) {
+                    final int crdSysX = polyG.optInt("crdSysX", -1);
+                    if (crdSysX != -1) {
+                        final String crdSysType = common.crdSysList.getJSONObject(crdSysX).getString("type");
+                        if (!"WGS84".equals(crdSysType))
+                            throw new RuntimeException("unknown type: " + crdSysType);
                     }
+                    final JSONArray polyXList = polyG.getJSONArray("polyXL");
+                    final int polyXListLen = polyXList.length();
+                    final String[] encodedPolylines = new String[polyXListLen];
+                    for (int i = 0; i < polyXListLen; i++)
+                        encodedPolylines[i] = common.polyList.get(polyXList.getInt(i));
+                    path = PointArray.lazy(() -> {
+                        final PointArray.Builder pathBuilder = PointArray.builder();
+                        for (final String encodedPolyline : encodedPolylines)
+                            PolylineFormat.decode(encodedPolyline, pathBuilder);
+                        return pathBuilder.build();
+                    });
                 } else {
-                    fares = null;
+                    path = null;
+                }
+
+                final JSONArray remList = jny.optJSONArray("remL");
+                String message = null;
+                if (remList != null) {
+                    for (int iRem = 0; iRem < remList.length(); iRem++) {
+                        final JSONObject rem = remList.getJSONObject(iRem);
+                        final String[] remark = common.remark(rem.getInt("remX"));
+                        if ("l?".equals(remark[0]))
+                            message = remark[1];
+                    }
                 }
 
-                final Trip trip = new Trip(null, tripFrom, tripTo, legs, fares, null, null);
-                trips.add(trip);
+                leg = new Trip.Public(line, destination, departureStop, arrivalStop, intermediateStops, path,
+                        message);
+            } else if (SECTION_TYPE_WALK.equals(secType)) {
+                final JSONObject gis = sec.getJSONObject("gis");
+                final int distance = gis.optInt("dist", 0);
+                leg = new Trip.Individual(Trip.Individual.Type.WALK, departureStop.location,
+                        departureStop.getDepartureTime(), arrivalStop.location, arrivalStop.getArrivalTime(),
+                        null, distance);
+            } else if (SECTION_TYPE_TRANSFER.equals(secType) || SECTION_TYPE_DEVI.equals(secType)) {
+                final JSONObject gis = sec.optJSONObject("gis");
+                final int distance = gis != null ? gis.optInt("dist", 0) : 0;
+                leg = new Trip.Individual(Trip.Individual.Type.TRANSFER, departureStop.location,
+                        departureStop.getDepartureTime(), arrivalStop.location, arrivalStop.getArrivalTime(),
+                        null, distance);
+            } else if (SECTION_TYPE_CHECK_IN.equals(secType)) {
+                final JSONObject gis = sec.optJSONObject("gis");
+                final int distance = gis != null ? gis.optInt("dist", 0) : 0;
+                leg = new Trip.Individual(Trip.Individual.Type.CHECK_IN, departureStop.location,
+                        departureStop.getDepartureTime(), arrivalStop.location, arrivalStop.getArrivalTime(),
+                        null, distance);
+            } else if (SECTION_TYPE_CHECK_OUT.equals(secType)) {
+                final JSONObject gis = sec.optJSONObject("gis");
+                final int distance = gis != null ? gis.optInt("dist", 0) : 0;
+                leg = new Trip.Individual(Trip.Individual.Type.CHECK_OUT, departureStop.location,
+                        departureStop.getDepartureTime(), arrivalStop.location, arrivalStop.getArrivalTime(),
+                        null, distance);
+            } else {
+                throw new IllegalStateException("cannot handle type: " + secType);
             }
 
-            final JsonContext context = new JsonContext(from, via, to, time, dep, products, walkSpeed,
-                    res.optString("outCtxScrF"), res.optString("outCtxScrB"));
-            return new QueryTripsResult(header, null, from, null, to, context, trips);
-        } catch (final JSONException x) {
-            throw new ParserException("cannot parse json: '" + page + "' on " + url, x);
+            legs.add(leg);
+        }
+
+        final List<Fare> fares;
+        final JSONObject trfRes = outCon.optJSONObject("trfRes");
+        final JSONArray ovwTrfRefList = outCon.optJSONArray("ovwTrfRefL");
+        if (trfRes != null && ovwTrfRefList != null) {
+            fares = new LinkedList<>();
+            final JSONArray fareSetList = trfRes.getJSONArray("fareSetL");
+            for (int i = 0; i < ovwTrfRefList.length(); i++) {
+                final JSONObject ovwTrfRef = ovwTrfRefList.getJSONObject(i);
+                final String type = ovwTrfRef.getString("type");
+                if (type.equals("T")) { // ticket
+                    final JSONObject jsonFareSet = fareSetList.getJSONObject(ovwTrfRef.getInt("fareSetX"));
+                    final JSONObject jsonFare =
+                            jsonFareSet.getJSONArray("fareL").getJSONObject(ovwTrfRef.getInt("fareX"));
+                    final String fareName = jsonFare.getString("name");
+                    final int ticketX = ovwTrfRef.getInt("ticketX");
+                    final JSONObject jsonTicket = jsonFare.getJSONArray("ticketL").getJSONObject(ticketX);
+                    final String ticketName = jsonTicket.getString("name");
+                    final Price price = parsePriceFromObject(jsonTicket);
+                    if (price != null) {
+                        final Fare fare = new Fare(normalizeFareName(fareName) + '\n' + ticketName,
+                                normalizeFareType(ticketName), price.currency, price.amount, null, null);
+                        if (!hideFare(fare))
+                            fares.add(fare);
+                    }
+                } else if (type.equals("F")) { // fare
+                    final JSONObject jsonFareSet = fareSetList.getJSONObject(ovwTrfRef.getInt("fareSetX"));
+                    final JSONObject jsonFare =
+                            jsonFareSet.getJSONArray("fareL").getJSONObject(ovwTrfRef.getInt("fareX"));
+                    final String fareName = jsonFare.getString("name");
+                    final Price price = parsePriceFromObject(jsonFare);
+                    if (price != null) {
+                        final Fare fare = new Fare(normalizeFareName(fareName), normalizeFareType(fareName),
+                                price.currency, price.amount, null, null);
+                        if (!hideFare(fare))
+                            fares.add(fare);
+                    }
+                } else if (type.equals("FS")) { // fare set
+                    final JSONObject jsonFareSet = fareSetList.getJSONObject(ovwTrfRef.getInt("fareSetX"));
+                    final String fareSetName = jsonFareSet.getString("name");
+                    final JSONArray fareList = jsonFareSet.getJSONArray("fareL");
+                    for (int iFare = 0; iFare < fareList.length(); iFare++) {
+                        final JSONObject jsonFare = fareList.getJSONObject(iFare);
+                        final String fareName = jsonFare.getString("name");
+                        final Price price = parsePriceFromObject(jsonFare);
+                        final Fare fare = new Fare(normalizeFareName(fareSetName), normalizeFareType(fareName),
+                                price.currency, price.amount, null, null);
+                        if (!hideFare(fare))
+                            fares.add(fare);
+                    }
+                } else if (ovwTrfRef.length() == 1) {
+                    // cannot handle tariffs with no information other than the type
+                } else {
+                    throw new IllegalArgumentException("cannot handle type: " + type);
+                }
+            }
+        } else {
+            fares = null;
         }
+
+        return new Trip(null, tripFrom, tripTo, legs, fares, null, null);
     }
 
     protected Fare.Type normalizeFareType(final String fareName) {
@@ -877,6 +828,217 @@ public abstract class AbstractHafasClientInterfaceProvider extends AbstractHafas
         return apiBase.newBuilder().addPathSegment(apiEndpoint).build();
     }
 
+    /**
+     * Handles a member of {@code res}, other than {@code common}, by consuming its value from the reader.
+     */
+    private interface ResHandler {
+        void handle(String name, JsonReader reader, Common common) throws IOException, JSONException;
+    }
+
+    private static final class ServiceResult {
+        public ResultHeader header;
+        public String err;
+        public String errTxt;
+    }
+
+    private static final class ScrollContexts {
+        public String later = "";
+        public String earlier = "";
+    }
+
+    /**
+     * Requests a service and parses the response while it is being streamed. Members of {@code res} are passed to
+     * the handler one by one, so apart from the tables in {@code common} only the element being parsed is held in
+     * memory. Servers send {@code common} first; members that come before it anyway are buffered until it is read.
+     */
+    private ServiceResult jsonRequest(final HttpUrl url, final String request, final String meth,
+            final ResHandler handler) throws IOException {
+        final ServiceResult result = new ServiceResult();
+        httpClient.getInputStream((bodyPeek, body) -> {
+            try (final JsonReader reader = new JsonReader(body.source())) {
+                readServiceResult(reader, meth, handler, result);
+            } catch (final JSONException | ParserException x) {
+                throw new ParserException("cannot parse json: '" + bodyPeek + "' on " + url, x);
+            }
+        }, url, request, JSON_REQUEST);
+        return result;
+    }
+
+    private void readServiceResult(final JsonReader reader, final String meth, final ResHandler handler,
+            final ServiceResult result) throws IOException, JSONException {
+        String ver = null, headErr = null, headErrTxt = "";
+        JSONObject serverInfo = null;
+        String svcMeth = null, err = null, errTxt = "";
+        boolean resComplete = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if ("ver".equals(name)) {
+                ver = reader.nextString();
+            } else if ("err".equals(name)) {
+                headErr = reader.nextString();
+            } else if ("errTxt".equals(name)) {
+                headErrTxt = reader.nextString();
+            } else if ("svcResL".equals(name) && (headErr == null || "OK".equals(headErr))) {
+                reader.beginArray();
+                checkState(reader.hasNext());
+                serverInfo = readJSONObject(reader);
+                checkState(reader.hasNext());
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    final String svcResName = reader.nextName();
+                    if ("meth".equals(svcResName)) {
+                        svcMeth = reader.nextString();
+                    } else if ("err".equals(svcResName)) {
+                        err = reader.nextString();
+                    } else if ("errTxt".equals(svcResName)) {
+                        errTxt = reader.nextString();
+                    } else if ("res".equals(svcResName) && (err == null || "OK".equals(err))) {
+                        checkState(svcMeth == null || meth.equals(svcMeth));
+                        resComplete = readRes(reader, handler);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                checkState(!reader.hasNext());
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (headErr != null && !"OK".equals(headErr))
+            throw new RuntimeException(headErr + " " + headErrTxt);
+        if (serverInfo == null || ver == null || err == null)
+            throw new JSONException("incomplete response");
+        checkState(meth.equals(svcMeth));
+        // error responses need not carry any result
+        if ("OK".equals(err) && !resComplete)
+            throw new JSONException("JSONObject[\"common\"] not found.");
+        result.header = parseServerInfo(serverInfo, ver);
+        result.err = err;
+        result.errTxt = errTxt;
+    }
+
+    /**
+     * @return false if {@code res} lacks {@code common}, in which case none of its members have been handled
+     */
+    private boolean readRes(final JsonReader reader, final ResHandler handler) throws IOException, JSONException {
+        Common common = null;
+        final Map<String, Buffer> deferred = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if ("common".equals(name))
+                common = readCommon(reader);
+            else if (common != null)
+                handler.handle(name, reader, common);
+            else {
+                final Buffer value = new Buffer();
+                reader.copyValue(value);
+                deferred.put(name, value);
+            }
+        }
+        reader.endObject();
+
+        if (common == null)
+            return false;
+        for (final Map.Entry<String, Buffer> entry : deferred.entrySet())
+            handler.handle(entry.getKey(), new JsonReader(entry.getValue()), common);
+        return true;
+    }
+
+    private Common readCommon(final JsonReader reader) throws IOException, JSONException {
+        final Common common = new Common();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if ("locL".equals(name))
+                common.locList = readJSONArray(reader);
+            else if ("crdSysL".equals(name))
+                common.crdSysList = readJSONArray(reader);
+            else if ("remL".equals(name))
+                common.remList = readJSONArray(reader);
+            else if ("icoL".equals(name))
+                common.icoList = readJSONArray(reader);
+            else if ("opL".equals(name))
+                common.opList = readJSONArray(reader);
+            else if ("prodL".equals(name))
+                common.prodList = readJSONArray(reader);
+            else if ("polyL".equals(name))
+                common.polyList = readPolyList(reader);
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+        return common;
+    }
+
+    private List<String> readPolyList(final JsonReader reader) throws IOException, JSONException {
+        final List<String> polylines = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            boolean delta = false;
+            String crdEncYX = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if ("delta".equals(name))
+                    delta = reader.nextBoolean();
+                else if ("crdEncYX".equals(name))
+                    crdEncYX = reader.nextString();
+                else
+                    reader.skipValue();
+            }
+            reader.endObject();
+            checkState(delta);
+            if (crdEncYX == null)
+                throw new JSONException("JSONObject[\"crdEncYX\"] not found.");
+            polylines.add(crdEncYX);
+        }
+        reader.endArray();
+        return polylines;
+    }
+
+    private static JSONObject readJSONObject(final JsonReader reader) throws IOException, JSONException {
+        final JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext())
+            object.put(reader.nextName(), readJSONValue(reader));
+        reader.endObject();
+        return object;
+    }
+
+    private static JSONArray readJSONArray(final JsonReader reader) throws IOException, JSONException {
+        final JSONArray array = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext())
+            array.put(readJSONValue(reader));
+        reader.endArray();
+        return array;
+    }
+
+    private static Object readJSONValue(final JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+        case BEGIN_OBJECT:
+            return readJSONObject(reader);
+        case BEGIN_ARRAY:
+            return readJSONArray(reader);
+        case NUMBER:
+            // same conversion as org.json applies to unquoted values
+            return JSONObject.stringToValue(reader.nextString());
+        case BOOLEAN:
+            return reader.nextBoolean();
+        case NULL:
+            reader.nextNull();
+            return JSONObject.NULL;
+        default:
+            return reader.nextString();
+        }
+    }
+
     private String jsonLocation(final Location location) {
         if (location.type == LocationType.STATION && location.hasId())
             return "{\"type\":\"S\",\"extId\":" + JSONObject.quote(location.id) + "}";
@@ -911,32 +1073,25 @@ public abstract class AbstractHafasClientInterfaceProvider extends AbstractHafas
             return new ResultHeader(network, SERVER_PRODUCT, serverVersion, null, 0, null);
         }
         final JSONObject res = serverInfo.getJSONObject("res");
-        final Calendar c = new GregorianCalendar(timeZone);
-        ParserUtils.parseIsoDate(c, res.getString("sD"));
-        c.setTime(parseJsonTime(c, c.getTime(), res.getString("sT")));
-        return new ResultHeader(network, SERVER_PRODUCT, serverVersion, null, c.getTimeInMillis(), null);
+        final Date serverTime = parseJsonTime(DateTimes.parseIsoDate(res.getString("sD")), res.getString("sT"));
+        return new ResultHeader(network, SERVER_PRODUCT, serverVersion, null, serverTime.getTime(), null);
     }
 
-    private static final Pattern P_JSON_TIME = Pattern.compile("(\\d{2})?(\\d{2})(\\d{2})(\\d{2})");
-
-    private final Date parseJsonTime(final Calendar calendar, final Date baseDate, final CharSequence str) {
+    /**
+     * Parses times like {@code 081500}, optionally prefixed by the number of days after the base day like
+     * {@code 01081500}.
+     */
+    private final Date parseJsonTime(final int baseDay, final CharSequence str) {
         if (str == null)
             return null;
 
-        final Matcher m = P_JSON_TIME.matcher(str);
-        if (m.matches()) {
-            calendar.setTime(baseDate);
-
-            if (m.group(1) != null)
-                calendar.add(Calendar.DAY_OF_YEAR, Integer.parseInt(m.group(1)));
-            calendar.set(Calendar.HOUR_OF_DAY, Integer.parseInt(m.group(2)));
-            calendar.set(Calendar.MINUTE, Integer.parseInt(m.group(3)));
-            calendar.set(Calendar.SECOND, Integer.parseInt(m.group(4)));
-
-            return calendar.getTime();
-        }
-
-        throw new RuntimeException("cannot parse: '" + str + "'");
+        final int length = str.length();
+        if (length != 6 && length != 8)
+            throw new RuntimeException("cannot parse: '" + str + "'");
+        final int day = length == 8 ? baseDay + DateTimes.digits(str, 0, 2) : baseDay;
+        final int i = length - 6;
+        return new Date(dateTimes.time(day, DateTimes.digits(str, i, i + 2), DateTimes.digits(str, i + 2, i + 4),
+                DateTimes.digits(str, i + 4, i + 6)));
     }
 
     private Position parseJsonPosition(final JSONObject json, final String platfName, final String pltfName)
@@ -950,19 +1105,19 @@ public abstract class AbstractHafasClientInterfaceProvider extends AbstractHafas
         return null;
     }
 
-    private Stop parseJsonStop(final JSONObject json, final JSONArray locList, final JSONArray crdSysList,
-            final Calendar c, final Date baseDate) throws JSONException {
-        final Location location = parseLoc(locList, json.getInt("locX"), new HashSet<Integer>(), crdSysList);
+    private Stop parseJsonStop(final JSONObject json, final Common common, final int baseDay) throws JSONException {
+        final Location location = parseLoc(common.locList, json.getInt("locX"), new HashSet<Integer>(),
+                common.crdSysList);
 
         final boolean arrivalCancelled = json.optBoolean("aCncl", false);
-        final Date plannedArrivalTime = parseJsonTime(c, baseDate, json.optString("aTimeS", null));
-        final Date predictedArrivalTime = parseJsonTime(c, baseDate, json.optString("aTimeR", null));
+        final Date plannedArrivalTime = parseJsonTime(baseDay, json.optString("aTimeS", null));
+        final Date predictedArrivalTime = parseJsonTime(baseDay, json.optString("aTimeR", null));
         final Position plannedArrivalPosition = parseJsonPosition(json, "aPlatfS", "aPltfS");
         final Position predictedArrivalPosition = parseJsonPosition(json, "aPlatfR", "aPltfR");
 
         final boolean departureCancelled = json.optBoolean("dCncl", false);
-        final Date plannedDepartureTime = parseJsonTime(c, baseDate, json.optString("dTimeS", null));
-        final Date predictedDepartureTime = parseJsonTime(c, baseDate, json.optString("dTimeR", null));
+        final Date plannedDepartureTime = parseJsonTime(baseDay, json.optString("dTimeS", null));
+        final Date predictedDepartureTime = parseJsonTime(baseDay, json.optString("dTimeR", null));
         final Position plannedDeparturePosition = parseJsonPosition(json, "dPlatfS", "dPltfS");
         final Position predictedDeparturePosition = parseJsonPosition(json, "dPlatfR", "dPltfR");
 
@@ -971,47 +1126,23 @@ public abstract class AbstractHafasClientInterfaceProvider extends AbstractHafas
                 plannedDeparturePosition, predictedDeparturePosition, departureCancelled);
     }
 
-    private List<String[]> parseRemList(final JSONArray remList) throws JSONException {
-        if (remList == null)
+    private Style parseIco(final JSONObject ico) throws JSONException {
+        if (!ico.has("bg"))
             return null;
-
-        final List<String[]> remarks = new ArrayList<>(remList.length());
-        for (int i = 0; i < remList.length(); i++) {
-            final JSONObject rem = remList.getJSONObject(i);
-            final String code = rem.optString("code", null);
-            final String txtS = rem.optString("txtS", null);
-            final String txtN = rem.optString("txtN", null);
-            remarks.add(new String[] { code, txtS != null ? txtS : txtN });
-        }
-        return remarks;
-    }
-
-    private List<Style> parseIcoList(final JSONArray icoList) throws JSONException {
-        final List<Style> styles = new ArrayList<>(icoList.length());
-        for (int i = 0; i < icoList.length(); i++) {
-            final JSONObject ico = icoList.getJSONObject(i);
-            if (ico.has("bg")) {
-                final int background = parseIcoColor(ico.getJSONObject("bg"));
-                final JSONObject fg = ico.optJSONObject("fg");
-                final int foreground = fg != null ? parseIcoColor(fg) : Style.deriveForegroundColor(background);
-                final String shp = ico.optString("shp", null);
-                if (shp == null) {
-                    styles.add(new Style(background, foreground));
-                } else {
-                    final Style.Shape shape;
-                    if ("C".equals(shp))
-                        shape = Style.Shape.CIRCLE;
-                    else if ("R".equals(shp))
-                        shape = Style.Shape.RECT;
-                    else
-                        throw new IllegalStateException("cannot handle shp: " + shp);
-                    styles.add(new Style(shape, background, foreground));
-                }
-            } else {
-                styles.add(null);
-            }
-        }
-        return styles;
+        final int background = parseIcoColor(ico.getJSONObject("bg"));
+        final JSONObject fg = ico.optJSONObject("fg");
+        final int foreground = fg != null ? parseIcoColor(fg) : Style.deriveForegroundColor(background);
+        final String shp = ico.optString("shp", null);
+        if (shp == null)
+            return new Style(background, foreground);
+        final Style.Shape shape;
+        if ("C".equals(shp))
+            shape = Style.Shape.CIRCLE;
+        else if ("R".equals(shp))
+            shape = Style.Shape.RECT;
+        else
+            throw new IllegalStateException("cannot handle shp: " + shp);
+        return new Style(shape, background, foreground);
     }
 
     private int parseIcoColor(final JSONObject color) throws JSONException {
@@ -1088,44 +1219,53 @@ public abstract class AbstractHafasClientInterfaceProvider extends AbstractHafas
         return new Location(locationType, id, coord, placeAndName[0], placeAndName[1], products);
     }
 
-    private List<String> parseOpList(final JSONArray opList) throws JSONException {
-        if (opList == null)
-            return null;
-
-        final List<String> operators = new ArrayList<>(opList.length());
-        for (int i = 0; i < opList.length(); i++) {
-            final JSONObject op = opList.getJSONObject(i);
-            final String operator = op.getString("name");
-            operators.add(operator);
-        }
-        return operators;
+    private Line parseProd(final JSONObject prod, final Common common) throws JSONException {
+        final String name = prod.getString("name");
+        final String nameS = prod.optString("nameS", null);
+        final String number = prod.optString("number", null);
+        final int icoIndex = prod.getInt("icoX");
+        final Style style = parseIco(common.icoList.getJSONObject(icoIndex));
+        final int oprIndex = prod.optInt("oprX", -1);
+        final String operator = oprIndex != -1 ? common.opList.getJSONObject(oprIndex).getString("name") : null;
+        final int cls = prod.optInt("cls", -1);
+        final JSONObject prodCtx = prod.optJSONObject("prodCtx");
+        final String id = prodCtx != null ? prodCtx.optString("lineId", null) : null;
+        final Product product = cls != -1 ? intToProduct(cls) : null;
+        return newLine(id, operator, product, !name.isEmpty() ? name : null, nameS, number, style);
     }
 
-    private List<Line> parseProdList(final JSONArray prodList, final List<String> operators, final List<Style> styles)
-            throws JSONException {
-        if (prodList == null)
-            return null;
-
-        final int prodListLen = prodList.length();
-        final List<Line> lines = new ArrayList<>(prodListLen);
-
-        for (int iProd = 0; iProd < prodListLen; iProd++) {
-            final JSONObject prod = prodList.getJSONObject(iProd);
-            final String name = prod.getString("name");
-            final String nameS = prod.optString("nameS", null);
-            final String number = prod.optString("number", null);
-            final int icoIndex = prod.getInt("icoX");
-            final Style style = styles.get(icoIndex);
-            final int oprIndex = prod.optInt("oprX", -1);
-            final String operator = oprIndex != -1 ? operators.get(oprIndex) : null;
-            final int cls = prod.optInt("cls", -1);
-            final JSONObject prodCtx = prod.optJSONObject("prodCtx");
-            final String id = prodCtx != null ? prodCtx.optString("lineId", null) : null;
-            final Product product = cls != -1 ? intToProduct(cls) : null;
-            lines.add(newLine(id, operator, product, !name.isEmpty() ? name : null, nameS, number, style));
+    /**
+     * Tables of {@code res.common}, which the rest of a response refers to by index. Entries are only parsed when
+     * referred to; lines are parsed once per response.
+     */
+    private final class Common {
+        public JSONArray locList = new JSONArray();
+        public @Nullable JSONArray crdSysList = null;
+        public JSONArray remList = new JSONArray();
+        public JSONArray icoList = new JSONArray();
+        public JSONArray opList = new JSONArray();
+        public JSONArray prodList = new JSONArray();
+        public List<String> polyList = Collections.emptyList();
+        private Line[] lines = null;
+
+        public Line line(final int prodX) throws JSONException {
+            if (lines == null)
+                lines = new Line[prodList.length()];
+            Line line = lines[prodX];
+            if (line == null) {
+                line = parseProd(prodList.getJSONObject(prodX), this);
+                lines[prodX] = line;
+            }
+            return line;
         }
 
-        return lines;
+        public String[] remark(final int remX) throws JSONException {
+            final JSONObject rem = remList.getJSONObject(remX);
+            final String code = rem.optString("code", null);
+            final String txtS = rem.optString("txtS", null);
+            final String txtN = rem.optString("txtN", null);
+            return new String[] { code, txtS != null ? txtS : txtN };
+        }
     }
 
     private static class Price {
@@ -1154,18 +1294,6 @@ public abstract class AbstractHafasClientInterfaceProvider extends AbstractHafas
         }
     }
 
-    private List<String> parsePolyList(final JSONArray polyList) throws JSONException {
-        final int len = polyList.length();
-        final List<String> polylines = new ArrayList<>(len);
-
-        for (int i = 0; i < len; i++) {
-            final JSONObject poly = polyList.getJSONObject(i);
-            checkState(poly.getBoolean("delta"));
-            polylines.add(poly.getString("crdEncYX"));
-        }
-        return polylines;
-    }
-
     protected Line newLine(final String id, final String operator, final Product product, final @Nullable String name,
             final @Nullable String shortName, final @Nullable String number, final Style style) {
         final String longName;
@@ -1185,10 +1313,10 @@ public abstract class AbstractHafasClientInterfaceProvider extends AbstractHafas
                 label = number;
             else
                 label = name;
-            return new Line(id, operator, product, label, longName, lineStyle(operator, product, label));
+            return styledLine(id, operator, product, label, longName, null, null);
         } else {
             // Otherwise the longer label is fine
-            return new Line(id, operator, product, name, longName, lineStyle(operator, product, name));
+            return styledLine(id, operator, product, name, longName, null, null);
         }
     }
 
@@ -20,12 +20,12 @@ package de.schildbach.pte;
 import static de.schildbach.pte.util.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -53,7 +53,6 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlPullParserFactory;
 
 import de.schildbach.pte.dto.Departure;
 import de.schildbach.pte.dto.Line;
@@ -62,6 +61,7 @@ import de.schildbach.pte.dto.Location;
 import de.schildbach.pte.dto.LocationType;
 import de.schildbach.pte.dto.NearbyLocationsResult;
 import de.schildbach.pte.dto.Point;
+import de.schildbach.pte.dto.PointArray;
 import de.schildbach.pte.dto.Position;
 import de.schildbach.pte.dto.Product;
 import de.schildbach.pte.dto.QueryDeparturesResult;
@@ -76,10 +76,14 @@ import de.schildbach.pte.dto.Trip;
 import de.schildbach.pte.dto.TripOptions;
 import de.schildbach.pte.exception.ParserException;
 import de.schildbach.pte.exception.SessionExpiredException;
+import de.schildbach.pte.util.DateTimes;
 import de.schildbach.pte.util.HttpClient;
-import de.schildbach.pte.util.LittleEndianDataInputStream;
 import de.schildbach.pte.util.ParserUtils;
+import de.schildbach.pte.util.QueryTrace;
+import de.schildbach.pte.util.StringPool;
 import de.schildbach.pte.util.StringReplaceReader;
+import de.schildbach.pte.util.StringReplacements;
+import de.schildbach.pte.util.XmlPullParserPool;
 import de.schildbach.pte.util.XmlPullUtil;
 
 import okhttp3.HttpUrl;
@@ -105,6 +109,8 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
     private boolean stationBoardHasStationTable = true;
     private boolean stationBoardHasLocation = false;
     private boolean stationBoardCanDoEquivs = true;
+    private @Nullable StringPool stringPool = null;
+    private @Nullable StringReplacements xmlStationBoardReplacements = null;
 
     @SuppressWarnings("serial")
     private static class Context implements QueryTripsContext {
@@ -231,6 +237,18 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
         return this;
     }
 
+    /**
+     * Shares strings decoded from binary trip responses across responses, e.g. station names and line labels.
+     * Within a response, each string is decoded only once anyway.
+     *
+     * @param stringPool
+     *            pool to use, possibly shared with other providers, or {@code null} to disable pooling
+     */
+    public AbstractHafasProvider setStringPool(final @Nullable StringPool stringPool) {
+        this.stringPool = stringPool;
+        return this;
+    }
+
     private final String wrapReqC(final CharSequence request, final Charset encoding) {
         return "<?xml version=\"1.0\" encoding=\"" + (encoding != null ? encoding.name() : "iso-8859-1") + "\"?>" //
                 + "<ReqC ver=\"1.1\" prod=\"" + REQC_PROD + "\" lang=\"DE\""
@@ -317,7 +335,7 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
     private static final Pattern P_AJAX_GET_STOPS_ID = Pattern.compile(".*?@L=0*(\\d+)@.*?");
 
     protected final SuggestLocationsResult jsonGetStops(final HttpUrl url) throws IOException {
-        final CharSequence page = httpClient.get(url);
+        final CharSequence page = httpClient.get(url, null, HEDGEABLE);
 
         final Matcher mJson = P_AJAX_GET_STOPS_JSON.matcher(page);
         if (mJson.matches()) {
@@ -325,7 +343,7 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
             final List<SuggestedLocation> locations = new ArrayList<>();
 
             try {
-                final JSONObject head = new JSONObject(json);
+                final JSONObject head = QueryTrace.parse(() -> new JSONObject(json));
                 final JSONArray aSuggestions = head.getJSONArray("suggestions");
 
                 for (int i = 0; i < aSuggestions.length(); i++) {
@@ -440,28 +458,13 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
         final AtomicReference<QueryDeparturesResult> result = new AtomicReference<>();
 
         httpClient.getInputStream((bodyPeek, body) -> {
-            StringReplaceReader reader = null;
             String firstChars = null;
 
             // work around unparsable XML
-            reader = new StringReplaceReader(body.charStream(), " & ", " &amp; ");
-            reader.replace("<b>", " ");
-            reader.replace("</b>", " ");
-            reader.replace("<u>", " ");
-            reader.replace("</u>", " ");
-            reader.replace("<i>", " ");
-            reader.replace("</i>", " ");
-            reader.replace("<br />", " ");
-            reader.replace(" ->", " &#x2192;"); // right arrow
-            reader.replace(" <-", " &#x2190;"); // left arrow
-            reader.replace(" <> ", " &#x2194; "); // left-right arrow
-            addCustomReplaces(reader);
+            final Reader reader = xmlStationBoardReplacements().filter(body.charStream());
 
-            try {
-                final XmlPullParserFactory factory = XmlPullParserFactory
-                        .newInstance(System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
-                final XmlPullParser pp = factory.newPullParser();
-                pp.setInput(reader);
+            try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(reader)) {
+                final XmlPullParser pp = lease.parser;
 
                 pp.nextTag();
 
@@ -677,6 +680,40 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
         ParserUtils.parseEuropeanTime(calendar, timeStr);
     }
 
+    private synchronized StringReplacements xmlStationBoardReplacements() {
+        if (xmlStationBoardReplacements == null) {
+            final StringReplacements replacements = new StringReplacements();
+            replacements.replace(" & ", " &amp; ");
+            replacements.replace("<b>", " ");
+            replacements.replace("</b>", " ");
+            replacements.replace("<u>", " ");
+            replacements.replace("</u>", " ");
+            replacements.replace("<i>", " ");
+            replacements.replace("</i>", " ");
+            replacements.replace("<br />", " ");
+            replacements.replace(" ->", " &#x2192;"); // right arrow
+            replacements.replace(" <-", " &#x2190;"); // left arrow
+            replacements.replace(" <> ", " &#x2194; "); // left-right arrow
+            addCustomReplaces(replacements);
+            xmlStationBoardReplacements = replacements;
+        }
+        return xmlStationBoardReplacements;
+    }
+
+    protected void addCustomReplaces(final StringReplacements replacements) {
+        // pairs added via the former hook go straight to the replacements
+        addCustomReplaces(new StringReplaceReader(new StringReader(""), "\0", "\0") {
+            @Override
+            public void replace(final String pattern, final String replacementPattern) {
+                replacements.replace(pattern, replacementPattern);
+            }
+        });
+    }
+
+    /**
+     * @deprecated override {@link #addCustomReplaces(StringReplacements)} instead
+     */
+    @Deprecated
     protected void addCustomReplaces(final StringReplaceReader reader) {
     }
 
@@ -789,11 +826,8 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
                 : queryEndpoint.newBuilder().addPathSegment(apiLanguage).build();
         final AtomicReference<QueryTripsResult> result = new AtomicReference<>();
         httpClient.getInputStream((bodyPeek, body) -> {
-            try {
-                final XmlPullParserFactory factory = XmlPullParserFactory
-                        .newInstance(System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
-                final XmlPullParser pp = factory.newPullParser();
-                pp.setInput(body.charStream());
+            try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(body.charStream())) {
+                final XmlPullParser pp = lease.parser;
 
                 XmlPullUtil.require(pp, "ResC");
                 final String product = XmlPullUtil.attr(pp, "prod").split(" ")[0];
@@ -929,9 +963,7 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
                         XmlPullUtil.next(pp);
                     XmlPullUtil.enter(pp, "Overview");
 
-                    final Calendar currentDate = new GregorianCalendar(timeZone);
-                    currentDate.clear();
-                    parseDate(currentDate, XmlPullUtil.valueTag(pp, "Date"));
+                    final int currentDay = parseDate(XmlPullUtil.valueTag(pp, "Date"));
                     XmlPullUtil.enter(pp, "Departure");
                     XmlPullUtil.enter(pp, "BasicStop");
                     while (pp.getName().equals("StAttrList"))
@@ -975,8 +1007,6 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
 
                     XmlPullUtil.enter(pp, "ConSectionList");
 
-                    final Calendar time = new GregorianCalendar(timeZone);
-
                     while (XmlPullUtil.test(pp, "ConSection")) {
                         XmlPullUtil.enter(pp, "ConSection");
 
@@ -989,9 +1019,7 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
 
                         XmlPullUtil.optSkip(pp, "Arr");
                         XmlPullUtil.enter(pp, "Dep");
-                        time.setTimeInMillis(currentDate.getTimeInMillis());
-                        parseTime(time, XmlPullUtil.valueTag(pp, "Time"));
-                        final Date departureTime = time.getTime();
+                        final Date departureTime = parseTime(currentDay, XmlPullUtil.valueTag(pp, "Time"));
                         final Position departurePos = parsePlatform(pp);
                         XmlPullUtil.skipExit(pp, "Dep");
 
@@ -1058,18 +1086,14 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
 
                                         if (XmlPullUtil.test(pp, "Arr")) {
                                             XmlPullUtil.enter(pp, "Arr");
-                                            time.setTimeInMillis(currentDate.getTimeInMillis());
-                                            parseTime(time, XmlPullUtil.valueTag(pp, "Time"));
-                                            stopArrivalTime = time.getTime();
+                                            stopArrivalTime = parseTime(currentDay, XmlPullUtil.valueTag(pp, "Time"));
                                             stopArrivalPosition = parsePlatform(pp);
                                             XmlPullUtil.skipExit(pp, "Arr");
                                         }
 
                                         if (XmlPullUtil.test(pp, "Dep")) {
                                             XmlPullUtil.enter(pp, "Dep");
-                                            time.setTimeInMillis(currentDate.getTimeInMillis());
-                                            parseTime(time, XmlPullUtil.valueTag(pp, "Time"));
-                                            stopDepartureTime = time.getTime();
+                                            stopDepartureTime = parseTime(currentDay, XmlPullUtil.valueTag(pp, "Time"));
                                             stopDeparturePosition = parsePlatform(pp);
                                             XmlPullUtil.skipExit(pp, "Dep");
                                         }
@@ -1103,15 +1127,16 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
                         // polyline
                         final List<Point> path;
                         if (XmlPullUtil.test(pp, "Polyline")) {
-                            path = new LinkedList<>();
+                            final PointArray.Builder pathBuilder = PointArray.builder();
                             XmlPullUtil.enter(pp, "Polyline");
                             while (XmlPullUtil.test(pp, "Point")) {
                                 final int x = XmlPullUtil.intAttr(pp, "x");
                                 final int y = XmlPullUtil.intAttr(pp, "y");
-                                path.add(Point.from1E6(y, x));
+                                pathBuilder.add1E6(y, x);
                                 XmlPullUtil.next(pp);
                             }
                             XmlPullUtil.skipExit(pp, "Polyline");
+                            path = pathBuilder.build();
                         } else {
                             path = null;
                         }
@@ -1123,9 +1148,7 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
                             XmlPullUtil.next(pp);
                         final Location sectionArrivalLocation = parseLocation(pp);
                         XmlPullUtil.enter(pp, "Arr");
-                        time.setTimeInMillis(currentDate.getTimeInMillis());
-                        parseTime(time, XmlPullUtil.valueTag(pp, "Time"));
-                        final Date arrivalTime = time.getTime();
+                        final Date arrivalTime = parseTime(currentDay, XmlPullUtil.valueTag(pp, "Time"));
                         final Position arrivalPos = parsePlatform(pp);
                         XmlPullUtil.skipExit(pp, "Arr");
 
@@ -1211,30 +1234,29 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
         return attributeVariants;
     }
 
-    private static final Pattern P_DATE = Pattern.compile("(\\d{4})(\\d{2})(\\d{2})");
-
-    private static final void parseDate(final Calendar calendar, final CharSequence str) {
-        final Matcher m = P_DATE.matcher(str);
-        if (!m.matches())
+    /**
+     * Parses dates like {@code 20261017}.
+     *
+     * @return days since 1970-01-01
+     */
+    private static final int parseDate(final String str) {
+        if (str.length() != 8)
             throw new RuntimeException("cannot parse: '" + str + "'");
 
-        calendar.set(Calendar.YEAR, Integer.parseInt(m.group(1)));
-        calendar.set(Calendar.MONTH, Integer.parseInt(m.group(2)) - 1);
-        calendar.set(Calendar.DAY_OF_MONTH, Integer.parseInt(m.group(3)));
+        return DateTimes.parseIsoDate(str);
     }
 
-    private static final Pattern P_TIME = Pattern.compile("(\\d+)d(\\d+):(\\d{2}):(\\d{2})");
-
-    private static void parseTime(final Calendar calendar, final CharSequence str) {
-        final Matcher m = P_TIME.matcher(str);
-        if (!m.matches())
+    /**
+     * Parses times like {@code 00d08:15:00}, prefixed by the number of days after the given day.
+     */
+    private Date parseTime(final int day, final String str) {
+        final int d = str.indexOf('d');
+        final int colon = str.indexOf(':', d + 1);
+        if (d <= 0 || colon < 0 || str.length() != colon + 6 || str.charAt(colon + 3) != ':')
             throw new IllegalArgumentException("cannot parse: '" + str + "'");
 
-        calendar.set(Calendar.HOUR_OF_DAY, Integer.parseInt(m.group(2)));
-        calendar.set(Calendar.MINUTE, Integer.parseInt(m.group(3)));
-        calendar.set(Calendar.SECOND, Integer.parseInt(m.group(4)));
-        calendar.set(Calendar.MILLISECOND, 0);
-        calendar.add(Calendar.DAY_OF_MONTH, Integer.parseInt(m.group(1)));
+        return new Date(dateTimes.time(day + DateTimes.digits(str, 0, d), DateTimes.digits(str, d + 1, colon),
+                DateTimes.digits(str, colon + 1, colon + 3), DateTimes.digits(str, colon + 4, colon + 6)));
     }
 
     private static final String locationXml(final Location location) {
@@ -1344,8 +1366,6 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
             url.addEncodedQueryParameter("clientType", ParserUtils.urlEncode(clientType, requestUrlEncoding));
     }
 
-    private final static int QUERY_TRIPS_BINARY_BUFFER_SIZE = 384 * 1024;
-
     protected final QueryTripsResult queryTripsBinary(Location from, @Nullable Location via, Location to,
             final Date date, final boolean dep, @Nullable TripOptions options) throws IOException {
         final ResultHeader header = new ResultHeader(network, SERVER_PRODUCT);
@@ -1383,7 +1403,7 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
         final HttpUrl.Builder url = queryEndpoint.newBuilder().addPathSegment(apiLanguage);
         appendQueryTripsBinaryParameters(url, from, via, to, date, dep, options.products, options.accessibility,
                 options.flags);
-        return queryTripsBinary(url.build(), from, via, to, QUERY_TRIPS_BINARY_BUFFER_SIZE);
+        return queryTripsBinary(url.build(), from, via, to);
     }
 
     protected void appendQueryMoreTripsBinaryParameters(final HttpUrl.Builder url,
@@ -1402,21 +1422,11 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
 
         final HttpUrl.Builder url = queryEndpoint.newBuilder().addPathSegment(apiLanguage);
         appendQueryMoreTripsBinaryParameters(url, context, later);
-        return queryTripsBinary(url.build(), null, null, null, QUERY_TRIPS_BINARY_BUFFER_SIZE + context.usedBufferSize);
-    }
-
-    private static class CustomBufferedInputStream extends BufferedInputStream {
-        public CustomBufferedInputStream(final InputStream in) {
-            super(in);
-        }
-
-        public int getCount() {
-            return count;
-        }
+        return queryTripsBinary(url.build(), null, null, null);
     }
 
     private QueryTripsResult queryTripsBinary(final HttpUrl url, final Location from, final @Nullable Location via,
-            final Location to, final int expectedBufferSize) throws IOException {
+            final Location to) throws IOException {
         /*
          * Many thanks to Malte Starostik and Robert, who helped a lot with analyzing this API!
          */
@@ -1424,60 +1434,42 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
         final AtomicReference<QueryTripsResult> result = new AtomicReference<>();
 
         httpClient.getInputStream((HttpClient.Callback) (bodyPeek, body) -> {
-            final CustomBufferedInputStream bis = new CustomBufferedInputStream(
-                    new GZIPInputStream(body.byteStream()));
-
-            // initialize input stream
-            final LittleEndianDataInputStream is = new LittleEndianDataInputStream(bis);
-            is.mark(expectedBufferSize);
+            // inflate once, all pointers are absolute offsets into the inflated response
+            final ByteBuffer buf = inflate(body.byteStream());
 
             // quick check of status
-            final int version = is.readShortReverse();
+            final int version = getUnsignedShort(buf, 0);
             if (version != 6 && version != 5)
                 throw new IllegalStateException("unknown version: " + version + ", first chars: " + bodyPeek);
             final ResultHeader header = new ResultHeader(network, SERVER_PRODUCT, Integer.toString(version), null,
                     0, null);
 
             // quick seek for pointers
-            is.reset();
-            is.skipBytes(0x20);
-            final int serviceDaysTablePtr = is.readIntReverse();
-            final int stringTablePtr = is.readIntReverse();
-
-            is.reset();
-            is.skipBytes(0x36);
-            final int stationTablePtr = is.readIntReverse();
-            final int commentTablePtr = is.readIntReverse();
-
-            is.reset();
-            is.skipBytes(0x46);
-            final int extensionHeaderPtr = is.readIntReverse();
+            final int serviceDaysTablePtr = buf.getInt(0x20);
+            final int stringTablePtr = buf.getInt(0x24);
+            final int stationTablePtr = buf.getInt(0x36);
+            final int commentTablePtr = buf.getInt(0x3a);
+            final int extensionHeaderPtr = buf.getInt(0x46);
 
             // read strings
-            final StringTable strings = new StringTable(is, stringTablePtr, serviceDaysTablePtr - stringTablePtr);
-
-            is.reset();
-            is.skipBytes(extensionHeaderPtr);
+            final StringTable strings = new StringTable(buf, stringTablePtr, serviceDaysTablePtr - stringTablePtr,
+                    stringPool);
 
             // read extension header
-            final int extensionHeaderLength = is.readIntReverse();
+            final int extensionHeaderLength = buf.getInt(extensionHeaderPtr);
             if (extensionHeaderLength < 0x2c)
                 throw new IllegalStateException("too short: " + extensionHeaderLength);
 
-            is.skipBytes(12);
-            final int errorCode = is.readShortReverse();
+            final int errorCode = getUnsignedShort(buf, extensionHeaderPtr + 0x10);
 
             if (errorCode == 0) {
                 // string encoding
-                is.skipBytes(14);
-                final Charset stringEncoding = Charset.forName(strings.read(is));
+                final Charset stringEncoding = Charset
+                        .forName(strings.get(getUnsignedShort(buf, extensionHeaderPtr + 0x20)));
                 strings.setEncoding(stringEncoding);
 
                 // read number of trips
-                is.reset();
-                is.skipBytes(30);
-
-                final int numTrips = is.readShortReverse();
+                final int numTrips = getUnsignedShort(buf, 30);
                 if (numTrips == 0) {
                     result.set(new QueryTripsResult(header, url.toString(), from, via, to, null,
                             new LinkedList<Trip>()));
@@ -1485,102 +1477,93 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
                 }
 
                 // read rest of header
-                is.reset();
-                is.skipBytes(0x02);
+                buf.position(0x02);
 
-                final Location resDeparture = location(is, strings);
-                final Location resArrival = location(is, strings);
+                final Location resDeparture = location(buf, strings);
+                final Location resArrival = location(buf, strings);
 
-                is.skipBytes(10);
+                skip(buf, 10);
 
-                final long resDate = date(is);
-                /* final long resDate30 = */date(is);
+                final int resDay = date(buf);
+                /* final int resDay30 = */date(buf);
 
-                is.reset();
-                is.skipBytes(extensionHeaderPtr + 0x8);
+                buf.position(extensionHeaderPtr + 0x8);
 
-                final int seqNr = is.readShortReverse();
+                final int seqNr = readUnsignedShort(buf);
                 if (seqNr == 0)
                     throw new SessionExpiredException();
                 else if (seqNr < 0)
                     throw new IllegalStateException("illegal sequence number: " + seqNr);
 
-                final String requestId = strings.read(is);
+                final String requestId = strings.read(buf);
 
-                final int tripDetailsPtr = is.readIntReverse();
+                final int tripDetailsPtr = buf.getInt();
                 if (tripDetailsPtr == 0)
                     throw new IllegalStateException("no connection details");
 
-                is.skipBytes(4);
+                skip(buf, 4);
 
-                final int disruptionsPtr = is.readIntReverse();
+                final int disruptionsPtr = buf.getInt();
 
-                is.skipBytes(10);
+                skip(buf, 10);
 
-                final String ld = strings.read(is);
-                final int attrsOffset = is.readIntReverse();
+                final String ld = strings.read(buf);
+                final int attrsOffset = buf.getInt();
 
                 final int tripAttrsPtr;
                 if (extensionHeaderLength >= 0x30) {
                     if (extensionHeaderLength < 0x32)
                         throw new IllegalArgumentException("too short: " + extensionHeaderLength);
-                    is.reset();
-                    is.skipBytes(extensionHeaderPtr + 0x2c);
-                    tripAttrsPtr = is.readIntReverse();
+                    tripAttrsPtr = buf.getInt(extensionHeaderPtr + 0x2c);
                 } else {
                     tripAttrsPtr = 0;
                 }
 
                 // determine stops offset
-                is.reset();
-                is.skipBytes(tripDetailsPtr);
-                final int tripDetailsVersion = is.readShortReverse();
+                final int tripDetailsVersion = getUnsignedShort(buf, tripDetailsPtr);
                 if (tripDetailsVersion != 1)
                     throw new IllegalStateException("unknown trip details version: " + tripDetailsVersion);
-                is.skipBytes(0x02);
 
-                final int tripDetailsIndexOffset = is.readShortReverse();
-                final int tripDetailsLegOffset = is.readShortReverse();
-                final int tripDetailsLegSize = is.readShortReverse();
-                final int stopsSize = is.readShortReverse();
-                final int stopsOffset = is.readShortReverse();
+                final int tripDetailsIndexOffset = getUnsignedShort(buf, tripDetailsPtr + 0x04);
+                final int tripDetailsLegOffset = getUnsignedShort(buf, tripDetailsPtr + 0x06);
+                final int tripDetailsLegSize = getUnsignedShort(buf, tripDetailsPtr + 0x08);
+                final int stopsSize = getUnsignedShort(buf, tripDetailsPtr + 0x0a);
+                final int stopsOffset = getUnsignedShort(buf, tripDetailsPtr + 0x0c);
 
                 // read stations
-                final StationTable stations = new StationTable(is, stationTablePtr,
+                final StationTable stations = new StationTable(buf, stationTablePtr,
                         commentTablePtr - stationTablePtr, strings);
 
                 // read comments
-                final CommentTable comments = new CommentTable(is, commentTablePtr,
+                final CommentTable comments = new CommentTable(buf, commentTablePtr,
                         tripDetailsPtr - commentTablePtr, strings);
 
                 final List<Trip> trips = new ArrayList<>(numTrips);
 
                 // read trips
                 for (int iTrip = 0; iTrip < numTrips; iTrip++) {
-                    is.reset();
-                    is.skipBytes(0x4a + iTrip * 12);
+                    buf.position(0x4a + iTrip * 12);
 
-                    final int serviceDaysTableOffset = is.readShortReverse();
+                    final int serviceDaysTableOffset = readUnsignedShort(buf);
 
-                    final int legsOffset = is.readIntReverse();
+                    final int legsOffset = buf.getInt();
 
-                    final int numLegs = is.readShortReverse();
+                    final int numLegs = readUnsignedShort(buf);
 
-                    final int numChanges = is.readShortReverse();
+                    final int numChanges = readUnsignedShort(buf);
 
-                    /* final long duration = time(is, 0, 0); */is.readShortReverse();
+                    /* final long duration = time(buf, 0, 0); */readUnsignedShort(buf);
 
-                    is.reset();
-                    is.skipBytes(serviceDaysTablePtr + serviceDaysTableOffset);
+                    buf.position(serviceDaysTablePtr + serviceDaysTableOffset);
 
-                    /* final String serviceDaysText = */strings.read(is);
+                    skip(buf, 2); // service days text
 
-                    final int serviceBitBase = is.readShortReverse();
-                    final int serviceBitLength = is.readShortReverse();
+                    final int serviceBitBase = readUnsignedShort(buf);
+                    final int serviceBitLength = readUnsignedShort(buf);
 
                     int tripDayOffset = serviceBitBase * 8;
                     for (int i = 0; i < serviceBitLength; i++) {
-                        int serviceBits = is.read();
+                        int serviceBits = buf.get() & 0xff;
                         if (serviceBits == 0) {
                             tripDayOffset += 8;
                             continue;
@@ -1592,68 +1575,52 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
                         break;
                     }
 
-                    is.reset();
-                    is.skipBytes(tripDetailsPtr + tripDetailsIndexOffset + iTrip * 2);
-                    final int tripDetailsOffset = is.readShortReverse();
-
-                    is.reset();
-                    is.skipBytes(tripDetailsPtr + tripDetailsOffset);
-                    final int realtimeStatus = is.readShortReverse();
-
-                    /* final short delay = */is.readShortReverse();
-
-                    /* final int legIndex = */is.readShortReverse();
+                    final int tripDetailsOffset = getUnsignedShort(buf,
+                            tripDetailsPtr + tripDetailsIndexOffset + iTrip * 2);
 
-                    is.skipBytes(2); // 0xffff
-
-                    /* final int legStatus = */is.readShortReverse();
-
-                    is.skipBytes(2); // 0x0000
+                    // followed by delay, leg index, 0xffff, leg status and 0x0000
+                    final int realtimeStatus = getUnsignedShort(buf, tripDetailsPtr + tripDetailsOffset);
 
                     String connectionId = null;
                     if (tripAttrsPtr != 0) {
-                        is.reset();
-                        is.skipBytes(tripAttrsPtr + iTrip * 2);
-                        final int tripAttrsIndex = is.readShortReverse();
+                        final int tripAttrsIndex = getUnsignedShort(buf, tripAttrsPtr + iTrip * 2);
 
-                        is.reset();
-                        is.skipBytes(attrsOffset + tripAttrsIndex * 4);
+                        buf.position(attrsOffset + tripAttrsIndex * 4);
                         while (true) {
-                            final String key = strings.read(is);
+                            final String key = strings.read(buf);
                             if (key == null)
                                 break;
                             else if (key.equals("ConnectionId"))
-                                connectionId = strings.read(is);
+                                connectionId = strings.read(buf);
                             else
-                                is.skipBytes(2);
+                                skip(buf, 2);
                         }
                     }
 
                     final List<Trip.Leg> legs = new ArrayList<>(numLegs);
 
                     for (int iLegs = 0; iLegs < numLegs; iLegs++) {
-                        is.reset();
-                        is.skipBytes(0x4a + legsOffset + iLegs * 20);
+                        buf.position(0x4a + legsOffset + iLegs * 20);
 
-                        final long plannedDepartureTime = time(is, resDate, tripDayOffset);
-                        final Location departureLocation = stations.read(is);
+                        final long plannedDepartureTime = time(buf, resDay, tripDayOffset);
+                        final Location departureLocation = stations.read(buf);
 
-                        final long plannedArrivalTime = time(is, resDate, tripDayOffset);
-                        final Location arrivalLocation = stations.read(is);
+                        final long plannedArrivalTime = time(buf, resDay, tripDayOffset);
+                        final Location arrivalLocation = stations.read(buf);
 
-                        final int type = is.readShortReverse();
+                        final int type = readUnsignedShort(buf);
 
-                        final String lineName = strings.read(is);
+                        final String lineName = strings.read(buf);
 
-                        final Position plannedDeparturePosition = normalizePosition(strings.read(is));
-                        final Position plannedArrivalPosition = normalizePosition(strings.read(is));
+                        final Position plannedDeparturePosition = normalizePosition(strings.read(buf));
+                        final Position plannedArrivalPosition = normalizePosition(strings.read(buf));
 
-                        final int legAttrIndex = is.readShortReverse();
+                        final int legAttrIndex = readUnsignedShort(buf);
 
                         final List<Attr> lineAttrs = new ArrayList<>();
                         String lineComment = null;
                         boolean lineOnDemand = false;
-                        for (final String comment : comments.read(is)) {
+                        for (final String comment : comments.read(buf)) {
                             if (comment.startsWith("bf ")) {
                                 lineAttrs.add(Attr.WHEEL_CHAIR_ACCESS);
                             } else if (comment.startsWith("FA ") || comment.startsWith("FB ")
@@ -1667,103 +1634,92 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
                             }
                         }
 
-                        is.reset();
-                        is.skipBytes(attrsOffset + legAttrIndex * 4);
+                        buf.position(attrsOffset + legAttrIndex * 4);
                         String directionStr = null;
                         int lineClass = 0;
                         String lineCategory = null;
                         String routingType = null;
                         String lineNetwork = null;
                         while (true) {
-                            final String key = strings.read(is);
+                            final String key = strings.read(buf);
                             if (key == null)
                                 break;
                             else if (key.equals("Direction"))
-                                directionStr = strings.read(is);
+                                directionStr = strings.read(buf);
                             else if (key.equals("Class"))
-                                lineClass = Integer.parseInt(strings.read(is));
+                                lineClass = Integer.parseInt(strings.read(buf));
                             else if (key.equals("Category"))
-                                lineCategory = strings.read(is);
+                                lineCategory = strings.read(buf);
                             // else if (key.equals("Operator"))
-                            // lineOperator = strings.read(is);
+                            // lineOperator = strings.read(buf);
                             else if (key.equals("GisRoutingType"))
-                                routingType = strings.read(is);
+                                routingType = strings.read(buf);
                             else if (key.equals("AdminCode"))
-                                lineNetwork = normalizeLineAdministration(strings.read(is));
+                                lineNetwork = normalizeLineAdministration(strings.read(buf));
                             else
-                                is.skipBytes(2);
+                                skip(buf, 2);
                         }
 
                         if (lineCategory == null && lineName != null)
                             lineCategory = categoryFromName(lineName);
 
-                        is.reset();
-                        is.skipBytes(tripDetailsPtr + tripDetailsOffset + tripDetailsLegOffset
+                        buf.position(tripDetailsPtr + tripDetailsOffset + tripDetailsLegOffset
                                 + iLegs * tripDetailsLegSize);
 
                         if (tripDetailsLegSize != 16)
                             throw new IllegalStateException(
                                     "unhandled trip details leg size: " + tripDetailsLegSize);
 
-                        final long predictedDepartureTime = time(is, resDate, tripDayOffset);
-                        final long predictedArrivalTime = time(is, resDate, tripDayOffset);
-                        final Position predictedDeparturePosition = normalizePosition(strings.read(is));
-                        final Position predictedArrivalPosition = normalizePosition(strings.read(is));
+                        final long predictedDepartureTime = time(buf, resDay, tripDayOffset);
+                        final long predictedArrivalTime = time(buf, resDay, tripDayOffset);
+                        final Position predictedDeparturePosition = normalizePosition(strings.read(buf));
+                        final Position predictedArrivalPosition = normalizePosition(strings.read(buf));
 
-                        final int bits = is.readShortReverse();
+                        final int bits = readUnsignedShort(buf);
                         final boolean arrivalCancelled = (bits & 0x10) != 0;
                         final boolean departureCancelled = (bits & 0x20) != 0;
 
-                        is.readShort();
+                        skip(buf, 2);
 
-                        final int firstStopIndex = is.readShortReverse();
+                        final int firstStopIndex = readUnsignedShort(buf);
 
-                        final int numStops = is.readShortReverse();
-
-                        is.reset();
-                        is.skipBytes(disruptionsPtr);
+                        final int numStops = readUnsignedShort(buf);
 
                         String disruptionText = null;
 
-                        if (is.readShortReverse() == 1) {
-                            is.reset();
-                            is.skipBytes(disruptionsPtr + 2 + iTrip * 2);
-
-                            int disruptionsOffset = is.readShortReverse();
+                        if (getUnsignedShort(buf, disruptionsPtr) == 1) {
+                            int disruptionsOffset = getUnsignedShort(buf, disruptionsPtr + 2 + iTrip * 2);
                             while (disruptionsOffset != 0) {
-                                is.reset();
-                                is.skipBytes(disruptionsPtr + disruptionsOffset);
+                                buf.position(disruptionsPtr + disruptionsOffset);
 
-                                strings.read(is); // "0"
+                                skip(buf, 2); // "0"
 
-                                final int disruptionLeg = is.readShortReverse();
+                                final int disruptionLeg = readUnsignedShort(buf);
 
-                                is.skipBytes(2); // bitmaske
+                                skip(buf, 2); // bitmaske
 
-                                strings.read(is); // start of line
-                                strings.read(is); // end of line
+                                skip(buf, 2); // start of line
+                                skip(buf, 2); // end of line
 
-                                strings.read(is);
-                                // id
-                                /* final String disruptionTitle = */strings.read(is);
-                                final String disruptionShortText = ParserUtils.formatHtml(strings.read(is));
+                                skip(buf, 2); // id
+                                skip(buf, 2); // title
+                                final String disruptionShortText = ParserUtils.formatHtml(strings.read(buf));
 
-                                disruptionsOffset = is.readShortReverse(); // next
+                                disruptionsOffset = readUnsignedShort(buf); // next
 
                                 if (iLegs == disruptionLeg) {
-                                    final int disruptionAttrsIndex = is.readShortReverse();
+                                    final int disruptionAttrsIndex = readUnsignedShort(buf);
 
-                                    is.reset();
-                                    is.skipBytes(attrsOffset + disruptionAttrsIndex * 4);
+                                    buf.position(attrsOffset + disruptionAttrsIndex * 4);
 
                                     while (true) {
-                                        final String key = strings.read(is);
+                                        final String key = strings.read(buf);
                                         if (key == null)
                                             break;
                                         else if (key.equals("Text"))
-                                            disruptionText = ParserUtils.resolveEntities(strings.read(is));
+                                            disruptionText = ParserUtils.resolveEntities(strings.read(buf));
                                         else
-                                            is.skipBytes(2);
+                                            skip(buf, 2);
                                     }
 
                                     if (disruptionShortText != null)
@@ -1775,8 +1731,7 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
                         List<Stop> intermediateStops = null;
 
                         if (numStops > 0) {
-                            is.reset();
-                            is.skipBytes(tripDetailsPtr + stopsOffset + firstStopIndex * stopsSize);
+                            buf.position(tripDetailsPtr + stopsOffset + firstStopIndex * stopsSize);
 
                             if (stopsSize != 26)
                                 throw new IllegalStateException("unhandled stops size: " + stopsSize);
@@ -1784,33 +1739,33 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
                             intermediateStops = new ArrayList<>(numStops);
 
                             for (int iStop = 0; iStop < numStops; iStop++) {
-                                final long plannedStopDepartureTime = time(is, resDate, tripDayOffset);
+                                final long plannedStopDepartureTime = time(buf, resDay, tripDayOffset);
                                 final Date plannedStopDepartureDate = plannedStopDepartureTime != 0
                                         ? new Date(plannedStopDepartureTime) : null;
-                                final long plannedStopArrivalTime = time(is, resDate, tripDayOffset);
+                                final long plannedStopArrivalTime = time(buf, resDay, tripDayOffset);
                                 final Date plannedStopArrivalDate = plannedStopArrivalTime != 0
                                         ? new Date(plannedStopArrivalTime) : null;
-                                final Position plannedStopDeparturePosition = normalizePosition(strings.read(is));
-                                final Position plannedStopArrivalPosition = normalizePosition(strings.read(is));
+                                final Position plannedStopDeparturePosition = normalizePosition(strings.read(buf));
+                                final Position plannedStopArrivalPosition = normalizePosition(strings.read(buf));
 
-                                is.readInt();
+                                skip(buf, 4);
 
-                                final long predictedStopDepartureTime = time(is, resDate, tripDayOffset);
+                                final long predictedStopDepartureTime = time(buf, resDay, tripDayOffset);
                                 final Date predictedStopDepartureDate = predictedStopDepartureTime != 0
                                         ? new Date(predictedStopDepartureTime) : null;
-                                final long predictedStopArrivalTime = time(is, resDate, tripDayOffset);
+                                final long predictedStopArrivalTime = time(buf, resDay, tripDayOffset);
                                 final Date predictedStopArrivalDate = predictedStopArrivalTime != 0
                                         ? new Date(predictedStopArrivalTime) : null;
-                                final Position predictedStopDeparturePosition = normalizePosition(strings.read(is));
-                                final Position predictedStopArrivalPosition = normalizePosition(strings.read(is));
+                                final Position predictedStopDeparturePosition = normalizePosition(strings.read(buf));
+                                final Position predictedStopArrivalPosition = normalizePosition(strings.read(buf));
 
-                                final int stopBits = is.readShortReverse();
+                                final int stopBits = readUnsignedShort(buf);
                                 final boolean stopArrivalCancelled = (stopBits & 0x10) != 0;
                                 final boolean stopDepartureCancelled = (stopBits & 0x20) != 0;
 
-                                is.readShort();
+                                skip(buf, 2);
 
-                                final Location stopLocation = stations.read(is);
+                                final Location stopLocation = stations.read(buf);
 
                                 final boolean validPredictedDate = !dominantPlanStopTime
                                         || (plannedStopArrivalDate != null && plannedStopDepartureDate != null);
@@ -1908,7 +1863,7 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
                         || !(trips.get(0).legs.get(0) instanceof Trip.Individual);
 
                 result.set(new QueryTripsResult(header, url.toString(), from, via, to,
-                        new QueryTripsBinaryContext(requestId, seqNr, ld, bis.getCount(), canQueryMore), trips));
+                        new QueryTripsBinaryContext(requestId, seqNr, ld, buf.limit(), canQueryMore), trips));
             } else {
                 log.debug("Hafas error: {}", errorCode);
                 if (errorCode == 1) {
@@ -2009,12 +1964,12 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
         return result.get();
     }
 
-    private Location location(final LittleEndianDataInputStream is, final StringTable strings) throws IOException {
-        final String name = strings.read(is);
-        is.readShort();
-        final int type = is.readShortReverse();
-        final int lon = is.readIntReverse();
-        final int lat = is.readIntReverse();
+    private Location location(final ByteBuffer buf, final StringTable strings) {
+        final String name = strings.read(buf);
+        skip(buf, 2);
+        final int type = readUnsignedShort(buf);
+        final int lon = buf.getInt();
+        final int lat = buf.getInt();
 
         if (type == 1) {
             final String[] placeAndName = splitStationName(name);
@@ -2030,20 +1985,16 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
         }
     }
 
-    private long date(final LittleEndianDataInputStream is) throws IOException {
-        final int days = is.readShortReverse();
-
-        final Calendar date = new GregorianCalendar(timeZone);
-        date.clear();
-        date.set(Calendar.YEAR, 1980);
-        date.set(Calendar.DAY_OF_YEAR, days);
-
-        return date.getTimeInMillis();
+    /**
+     * @return days since 1970-01-01
+     */
+    private int date(final ByteBuffer buf) {
+        final int days = readUnsignedShort(buf);
+        return DateTimes.epochDay(1980, 1, days);
     }
 
-    private long time(final LittleEndianDataInputStream is, final long baseDate, final int dayOffset)
-            throws IOException {
-        final int value = is.readShortReverse();
+    private long time(final ByteBuffer buf, final int baseDay, final int dayOffset) {
+        final int value = readUnsignedShort(buf);
         if (value == 0xffff)
             return 0;
 
@@ -2053,117 +2004,203 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
         if (minutes < 0 || minutes > 60)
             throw new IllegalStateException("minutes out of range: " + minutes);
 
-        final Calendar time = new GregorianCalendar(timeZone);
-
-        time.setTimeInMillis(baseDate);
-        if (time.get(Calendar.HOUR) != 0 || time.get(Calendar.MINUTE) != 0)
-            throw new IllegalStateException("baseDate not on date boundary: " + baseDate);
+        return dateTimes.time(baseDay + dayOffset, hours, minutes, 0);
+    }
+
+    // per thread, as decoding a response never inflates another one; kept unless it grew too large
+    private static final ThreadLocal<byte[]> INFLATE_BUFFERS = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+    private static final int MAX_POOLED_INFLATE_BUFFER = 1024 * 1024;
+
+    /**
+     * Inflates the given response straight into the inflate buffer of the current thread, which is reused by the
+     * next call on that thread.
+     */
+    private static ByteBuffer inflate(final InputStream is) throws IOException {
+        byte[] array = INFLATE_BUFFERS.get();
+        int length = 0;
+        try (final InputStream inflater = new GZIPInputStream(is)) {
+            while (true) {
+                if (length == array.length)
+                    array = Arrays.copyOf(array, array.length * 2);
+                final int read = inflater.read(array, length, array.length - length);
+                if (read == -1)
+                    break;
+                length += read;
+            }
+        }
+        if (array.length <= MAX_POOLED_INFLATE_BUFFER)
+            INFLATE_BUFFERS.set(array);
+        return ByteBuffer.wrap(array, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
 
-        time.add(Calendar.DAY_OF_YEAR, dayOffset);
+    private static int readUnsignedShort(final ByteBuffer buf) {
+        return buf.getShort() & 0xffff;
+    }
 
-        time.set(Calendar.HOUR, hours);
-        time.set(Calendar.MINUTE, minutes);
+    private static int getUnsignedShort(final ByteBuffer buf, final int index) {
+        return buf.getShort(index) & 0xffff;
+    }
 
-        return time.getTimeInMillis();
+    private static void skip(final ByteBuffer buf, final int length) {
+        buf.position(buf.position() + length);
     }
 
     private static class StringTable {
         private Charset encoding = StandardCharsets.US_ASCII;
-        private final byte[] table;
-
-        public StringTable(final DataInputStream is, final int stringTablePtr, final int length) throws IOException {
-            is.reset();
-            is.skipBytes(stringTablePtr);
-            table = new byte[length];
-            is.readFully(table);
+        private final ByteBuffer table;
+        private final int tablePtr;
+        private final int length;
+        private final @Nullable StringPool pool;
+
+        // decoded strings by pointer, open addressing with linear probing; pointer 0 is null and never cached
+        private int[] cachedPointers = new int[64];
+        private String[] cachedStrings = new String[64];
+        private int numCached = 0;
+
+        public StringTable(final ByteBuffer table, final int stringTablePtr, final int length,
+                final @Nullable StringPool pool) {
+            this.table = table;
+            this.tablePtr = stringTablePtr;
+            this.length = length;
+            this.pool = pool;
         }
 
         public void setEncoding(final Charset encoding) {
             this.encoding = encoding;
+            Arrays.fill(cachedPointers, 0);
+            Arrays.fill(cachedStrings, null);
+            numCached = 0;
         }
 
-        public String read(final LittleEndianDataInputStream is) throws IOException {
-            final int pointer = is.readShortReverse();
+        public String read(final ByteBuffer buf) {
+            return get(readUnsignedShort(buf));
+        }
+
+        public String get(final int pointer) {
             if (pointer == 0)
                 return null;
-            if (pointer >= table.length)
-                throw new IllegalStateException(
-                        "pointer " + pointer + " cannot exceed strings table size " + table.length);
+            if (pointer >= length)
+                throw new IllegalStateException("pointer " + pointer + " cannot exceed strings table size " + length);
+
+            final int mask = cachedPointers.length - 1;
+            int slot = pointer & mask;
+            while (cachedPointers[slot] != 0) {
+                if (cachedPointers[slot] == pointer)
+                    return cachedStrings[slot];
+                slot = (slot + 1) & mask;
+            }
 
-            try (final InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(table, pointer, table.length - pointer), encoding)) {
-                final StringBuilder builder = new StringBuilder();
+            final String string = decode(pointer);
+            cachedPointers[slot] = pointer;
+            cachedStrings[slot] = string;
+            if (++numCached * 2 > cachedPointers.length)
+                growCache();
+            return string;
+        }
 
-                int c;
-                while ((c = reader.read()) != 0)
-                    builder.append((char) c);
+        private String decode(final int pointer) {
+            // strings are zero terminated, which works for all single byte encodings and UTF-8
+            final int start = tablePtr + pointer;
+            final int end = tablePtr + length;
+            int terminator = start;
+            while (terminator < end && table.get(terminator) != 0)
+                terminator++;
+            if (terminator == end)
+                throw new IllegalStateException("unterminated string at pointer " + pointer);
+
+            // trim bytes rather than the decoded string, so that pooled strings can be returned as they are
+            int from = start;
+            int to = terminator;
+            while (from < to && (table.get(from) & 0xff) <= ' ')
+                from++;
+            while (to > from && (table.get(to - 1) & 0xff) <= ' ')
+                to--;
+
+            final byte[] array = table.array();
+            final int offset = table.arrayOffset() + from;
+            if (pool != null)
+                return pool.decode(array, offset, to - from, encoding);
+            else
+                return new String(array, offset, to - from, encoding);
+        }
 
-                return builder.toString().trim();
+        private void growCache() {
+            final int[] pointers = cachedPointers;
+            final String[] strings = cachedStrings;
+            cachedPointers = new int[pointers.length * 2];
+            cachedStrings = new String[strings.length * 2];
+            final int mask = cachedPointers.length - 1;
+            for (int i = 0; i < pointers.length; i++) {
+                if (pointers[i] != 0) {
+                    int slot = pointers[i] & mask;
+                    while (cachedPointers[slot] != 0)
+                        slot = (slot + 1) & mask;
+                    cachedPointers[slot] = pointers[i];
+                    cachedStrings[slot] = strings[i];
+                }
             }
         }
     }
 
     private static class CommentTable {
         private final StringTable strings;
-        private final byte[] table;
-
-        public CommentTable(final DataInputStream is, final int commentTablePtr, final int length,
-                final StringTable strings) throws IOException {
-            is.reset();
-            is.skipBytes(commentTablePtr);
-            table = new byte[length];
-            is.readFully(table);
-
+        private final ByteBuffer table;
+        private final int tablePtr;
+        private final int length;
+
+        public CommentTable(final ByteBuffer table, final int commentTablePtr, final int length,
+                final StringTable strings) {
+            this.table = table;
+            this.tablePtr = commentTablePtr;
+            this.length = length;
             this.strings = strings;
         }
 
-        public String[] read(final LittleEndianDataInputStream is) throws IOException {
-            final int pointer = is.readShortReverse();
-            if (pointer >= table.length)
+        public String[] read(final ByteBuffer buf) {
+            final int pointer = readUnsignedShort(buf);
+            if (pointer >= length)
                 throw new IllegalStateException(
-                        "pointer " + pointer + " cannot exceed comments table size " + table.length);
+                        "pointer " + pointer + " cannot exceed comments table size " + length);
 
-            try (final LittleEndianDataInputStream commentsInputStream = new LittleEndianDataInputStream(new ByteArrayInputStream(table, pointer, table.length - pointer))) {
-                final int numComments = commentsInputStream.readShortReverse();
-                final String[] comments = new String[numComments];
+            final int commentsPtr = tablePtr + pointer;
+            final int numComments = getUnsignedShort(table, commentsPtr);
+            final String[] comments = new String[numComments];
 
-                for (int i = 0; i < numComments; i++)
-                    comments[i] = strings.read(commentsInputStream);
+            for (int i = 0; i < numComments; i++)
+                comments[i] = strings.get(getUnsignedShort(table, commentsPtr + 2 + i * 2));
 
-                return comments;
-            }
+            return comments;
         }
     }
 
     private class StationTable {
         private final StringTable strings;
-        private final byte[] table;
-
-        public StationTable(final DataInputStream is, final int stationTablePtr, final int length,
-                final StringTable strings) throws IOException {
-            is.reset();
-            is.skipBytes(stationTablePtr);
-            table = new byte[length];
-            is.readFully(table);
-
+        private final ByteBuffer table;
+        private final int tablePtr;
+        private final int length;
+
+        public StationTable(final ByteBuffer table, final int stationTablePtr, final int length,
+                final StringTable strings) {
+            this.table = table;
+            this.tablePtr = stationTablePtr;
+            this.length = length;
             this.strings = strings;
         }
 
-        private Location read(final LittleEndianDataInputStream is) throws IOException {
-            final int index = is.readShortReverse();
+        private Location read(final ByteBuffer buf) {
+            final int index = readUnsignedShort(buf);
             final int ptr = index * 14;
-            if (ptr >= table.length)
-                throw new IllegalStateException(
-                        "pointer " + ptr + " cannot exceed stations table size " + table.length);
+            if (ptr >= length)
+                throw new IllegalStateException("pointer " + ptr + " cannot exceed stations table size " + length);
 
-            try (final LittleEndianDataInputStream stationInputStream = new LittleEndianDataInputStream(new ByteArrayInputStream(table, ptr, 14))) {
-                final String[] placeAndName = splitStationName(strings.read(stationInputStream));
-                final int id = stationInputStream.readIntReverse();
-                final int lon = stationInputStream.readIntReverse();
-                final int lat = stationInputStream.readIntReverse();
+            final int stationPtr = tablePtr + ptr;
+            final String[] placeAndName = splitStationName(strings.get(getUnsignedShort(table, stationPtr)));
+            final int id = table.getInt(stationPtr + 2);
+            final int lon = table.getInt(stationPtr + 6);
+            final int lat = table.getInt(stationPtr + 10);
 
-                return new Location(LocationType.STATION, id != 0 ? Integer.toString(id) : null,
-                        Point.from1E6(lat, lon), placeAndName[0], placeAndName[1]);
-            }
+            return new Location(LocationType.STATION, id != 0 ? Integer.toString(id) : null, Point.from1E6(lat, lon),
+                    placeAndName[0], placeAndName[1]);
         }
     }
 
@@ -2299,7 +2336,7 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
         final CharSequence page = httpClient.get(url);
 
         try {
-            final JSONObject head = new JSONObject(page.toString());
+            final JSONObject head = QueryTrace.parse(() -> new JSONObject(page.toString()));
             final int error = head.getInt("error");
             if (error == 0) {
                 final List<Location> locations = new LinkedList<>();
@@ -2984,13 +3021,11 @@ public abstract class AbstractHafasLegacyProvider extends AbstractHafasProvider
     protected Line newLine(final String network, final Product product, final String normalizedName,
             final String comment, final Line.Attr... attrs) {
         if (attrs.length == 0) {
-            return new Line(null, network, product, normalizedName, lineStyle(network, product, normalizedName),
-                    comment);
+            return styledLine(null, network, product, normalizedName, null, null, comment);
         } else {
             final Set<Line.Attr> attrSet = new HashSet<>();
             attrSet.addAll(Arrays.asList(attrs));
-            return new Line(null, network, product, normalizedName, lineStyle(network, product, normalizedName),
-                    attrSet, comment);
+            return styledLine(null, network, product, normalizedName, null, attrSet, comment);
         }
     }
 }
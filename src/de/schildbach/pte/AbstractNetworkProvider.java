@@ -27,32 +27,74 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
 
+import de.schildbach.pte.dto.Line;
 import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.NearbyLocationsResult;
 import de.schildbach.pte.dto.Point;
 import de.schildbach.pte.dto.Position;
 import de.schildbach.pte.dto.Product;
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.dto.QueryTripsContext;
 import de.schildbach.pte.dto.QueryTripsResult;
 import de.schildbach.pte.dto.Style;
 import de.schildbach.pte.dto.SuggestLocationsResult;
 import de.schildbach.pte.dto.TripOptions;
+import de.schildbach.pte.util.AsyncQuery;
+import de.schildbach.pte.util.CallControl;
+import de.schildbach.pte.util.CircuitBreaker;
+import de.schildbach.pte.util.CoordStore;
+import de.schildbach.pte.util.DateTimes;
+import de.schildbach.pte.util.HedgingPolicy;
+import de.schildbach.pte.util.HttpArchive;
 import de.schildbach.pte.util.HttpClient;
+import de.schildbach.pte.util.RateLimiter;
+import de.schildbach.pte.util.RetryPolicy;
+
+import okhttp3.Interceptor;
 
 /**
  * @author Andreas Schildbach
  */
-public abstract class AbstractNetworkProvider implements NetworkProvider {
+public abstract class AbstractNetworkProvider implements NetworkProvider, AsyncNetworkProvider {
     protected final NetworkId network;
     protected final HttpClient httpClient = new HttpClient();
+    private @Nullable Executor asyncExecutor = null;
+    private @Nullable CoordStore coordStore = null;
 
     protected Charset requestUrlEncoding = StandardCharsets.ISO_8859_1;
     protected TimeZone timeZone = TimeZone.getTimeZone("CET");
+    /** converts local times of {@link #timeZone}, without calendars */
+    protected DateTimes dateTimes = new DateTimes(timeZone);
     protected int numTripsRequested = 6;
     private @Nullable Map<String, Style> styles = null;
+    private @Nullable LineCache lineCache = new LineCache(DEFAULT_LINE_CACHE_SIZE, this::lineStyle);
+
+    private static final int DEFAULT_LINE_CACHE_SIZE = 1000;
+
+    private static final Map<NetworkId, RateLimiter> RATE_LIMITERS = new ConcurrentHashMap<>();
+    private static final Map<NetworkId, CircuitBreaker> CIRCUIT_BREAKERS = new ConcurrentHashMap<>();
+
+    /** options for POST requests that may be retried on any failure, see {@link #setRetryPolicy(RetryPolicy)} */
+    protected static final HttpClient.RequestOptions IDEMPOTENT = HttpClient.RequestOptions.NONE
+            .withIdempotent(true);
+
+    /** options for cheap requests that may be hedged, see {@link #setHedging(double, double)} */
+    protected static final HttpClient.RequestOptions HEDGEABLE = HttpClient.RequestOptions.NONE
+            .withHedgeable(true);
 
     protected static final Set<Product> ALL_EXCEPT_HIGHSPEED = EnumSet
             .complementOf(EnumSet.of(Product.HIGH_SPEED_TRAIN));
@@ -97,6 +139,102 @@ public abstract class AbstractNetworkProvider implements NetworkProvider {
         return ALL_EXCEPT_HIGHSPEED;
     }
 
+    @Override
+    public AsyncNetworkProvider withTimeout(final long timeout, final TimeUnit unit) {
+        final long timeoutNanos = unit.toNanos(timeout);
+        return new AsyncNetworkProvider() {
+            @Override
+            public AsyncNetworkProvider withTimeout(final long timeout, final TimeUnit unit) {
+                return AbstractNetworkProvider.this.withTimeout(timeout, unit);
+            }
+
+            @Override
+            public CompletableFuture<NearbyLocationsResult> queryNearbyLocationsAsync(final Set<LocationType> types,
+                    final Location location, final int maxDistance, final int maxLocations) {
+                return async(() -> queryNearbyLocations(types, location, maxDistance, maxLocations), timeoutNanos);
+            }
+
+            @Override
+            public CompletableFuture<QueryDeparturesResult> queryDeparturesAsync(final String stationId,
+                    final @Nullable Date time, final int maxDepartures, final boolean equivs) {
+                return async(() -> queryDepartures(stationId, time, maxDepartures, equivs), timeoutNanos);
+            }
+
+            @Override
+            public CompletableFuture<SuggestLocationsResult> suggestLocationsAsync(final CharSequence constraint,
+                    final @Nullable Set<LocationType> types, final int maxLocations) {
+                return async(() -> suggestLocations(constraint, types, maxLocations), timeoutNanos);
+            }
+
+            @Override
+            public CompletableFuture<QueryTripsResult> queryTripsAsync(final Location from,
+                    final @Nullable Location via, final Location to, final Date date, final boolean dep,
+                    final @Nullable TripOptions options) {
+                return async(() -> queryTrips(from, via, to, date, dep, options), timeoutNanos);
+            }
+
+            @Override
+            public CompletableFuture<QueryTripsResult> queryMoreTripsAsync(final QueryTripsContext context,
+                    final boolean later) {
+                return async(() -> queryMoreTrips(context, later), timeoutNanos);
+            }
+        };
+    }
+
+    @Override
+    public CompletableFuture<NearbyLocationsResult> queryNearbyLocationsAsync(final Set<LocationType> types,
+            final Location location, final int maxDistance, final int maxLocations) {
+        return async(() -> queryNearbyLocations(types, location, maxDistance, maxLocations), 0);
+    }
+
+    @Override
+    public CompletableFuture<QueryDeparturesResult> queryDeparturesAsync(final String stationId,
+            final @Nullable Date time, final int maxDepartures, final boolean equivs) {
+        return async(() -> queryDepartures(stationId, time, maxDepartures, equivs), 0);
+    }
+
+    @Override
+    public CompletableFuture<SuggestLocationsResult> suggestLocationsAsync(final CharSequence constraint,
+            final @Nullable Set<LocationType> types, final int maxLocations) {
+        return async(() -> suggestLocations(constraint, types, maxLocations), 0);
+    }
+
+    @Override
+    public CompletableFuture<QueryTripsResult> queryTripsAsync(final Location from, final @Nullable Location via,
+            final Location to, final Date date, final boolean dep, final @Nullable TripOptions options) {
+        return async(() -> queryTrips(from, via, to, date, dep, options), 0);
+    }
+
+    @Override
+    public CompletableFuture<QueryTripsResult> queryMoreTripsAsync(final QueryTripsContext context,
+            final boolean later) {
+        return async(() -> queryMoreTrips(context, later), 0);
+    }
+
+    private <T> CompletableFuture<T> async(final CallControl.IOCallable<T> query, final long timeoutNanos) {
+        final Executor executor = this.asyncExecutor;
+        return AsyncQuery.start(query, timeoutNanos, executor != null ? executor : AsyncExecutorHolder.EXECUTOR);
+    }
+
+    private static class AsyncExecutorHolder {
+        private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+        private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(NUM_THREADS, NUM_THREADS, 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ThreadFactory() {
+                    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "pte-async-" + threadNumber.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        static {
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+    }
+
     public AbstractNetworkProvider setUserAgent(final String userAgent) {
         httpClient.setUserAgent(userAgent);
         return this;
@@ -112,6 +250,109 @@ public abstract class AbstractNetworkProvider implements NetworkProvider {
         return this;
     }
 
+    public AbstractNetworkProvider setHttp2Enabled(final boolean http2Enabled) {
+        httpClient.setHttp2Enabled(http2Enabled);
+        return this;
+    }
+
+    /**
+     * Sets an interceptor for all HTTP requests of this provider, e.g. to record or replay responses using an
+     * {@link HttpArchive}.
+     */
+    public AbstractNetworkProvider setHttpInterceptor(final @Nullable Interceptor interceptor) {
+        httpClient.setInterceptor(interceptor);
+        return this;
+    }
+
+    /**
+     * Limits the rate of requests to this network. The limit is shared by all providers of the network in this
+     * process, and the most recently set maximum rate applies. The rate backs off if the network signals overload,
+     * i.e. responds with 429, 502, 503 or 504.
+     *
+     * @param maxRate
+     *            maximum number of requests per second
+     */
+    public AbstractNetworkProvider setRateLimit(final double maxRate) {
+        final RateLimiter rateLimiter = RATE_LIMITERS.computeIfAbsent(network, n -> new RateLimiter(maxRate));
+        rateLimiter.setMaxRate(maxRate);
+        httpClient.setRateLimiter(rateLimiter);
+        return this;
+    }
+
+    /**
+     * Stops requests to this network for the given duration after the given number of consecutive failures. The
+     * circuit breaker is shared by all providers of the network in this process; the first configuration applies.
+     */
+    public AbstractNetworkProvider setCircuitBreaker(final int failureThreshold, final long openDuration,
+            final TimeUnit unit) {
+        httpClient.setCircuitBreaker(CIRCUIT_BREAKERS.computeIfAbsent(network,
+                n -> new CircuitBreaker(failureThreshold, openDuration, unit)));
+        return this;
+    }
+
+    /**
+     * Hedges cheap requests, like looking up stations or departures: if a request has not been answered after
+     * the given percentile of response times, an identical request is sent and the first answer is used.
+     *
+     * @param percentile
+     *            percentile of response times after which to hedge, e.g. 95
+     * @param budget
+     *            maximum fraction of requests that may be hedged, e.g. 0.05
+     */
+    public AbstractNetworkProvider setHedging(final double percentile, final double budget) {
+        httpClient.setHedgingPolicy(new HedgingPolicy(percentile, budget));
+        return this;
+    }
+
+    /**
+     * Sets the policy for retrying failed requests. By default, timeouts, connection problems and some gateway
+     * errors are retried up to two times with backoff.
+     */
+    public AbstractNetworkProvider setRetryPolicy(final RetryPolicy retryPolicy) {
+        httpClient.setRetryPolicy(retryPolicy);
+        return this;
+    }
+
+    /**
+     * <p>
+     * Sets the executor that parses the responses of queries issued via {@link AsyncNetworkProvider}. If not set, a
+     * shared pool with one daemon thread per processor is used.
+     * </p>
+     *
+     * <p>
+     * Waiting for the network does not occupy a thread of the executor: the HTTP calls of these queries are enqueued
+     * to the OkHttp dispatcher, whose limits can be set via {@link HttpClient#setMaxRequests(int)} and
+     * {@link HttpClient#setMaxRequestsPerHost(int)}, and the query is only run on the executor once a response has
+     * arrived. The deadline of a query includes the time it spends waiting in these queues. Coalesced requests are
+     * shared with other queries as usual, but requests of asynchronous queries are not hedged.
+     * </p>
+     */
+    public AbstractNetworkProvider setAsyncExecutor(final Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+        return this;
+    }
+
+    /**
+     * Sets the store used to look up station coordinates instead of querying them. Stations parsed with both id
+     * and coordinate are added to it. Keys are prefixed with the network, so a store can be shared.
+     */
+    public AbstractNetworkProvider setCoordStore(final @Nullable CoordStore coordStore) {
+        this.coordStore = coordStore;
+        return this;
+    }
+
+    protected final @Nullable Point storedCoord(final String stationId) {
+        final CoordStore coordStore = this.coordStore;
+        return coordStore != null ? coordStore.get(network.name() + '/' + stationId) : null;
+    }
+
+    protected final Location storeCoord(final Location location) {
+        final CoordStore coordStore = this.coordStore;
+        if (coordStore != null && location.type == LocationType.STATION && location.hasId() && location.hasCoord())
+            coordStore.put(network.name() + '/' + location.id, location.coord);
+        return location;
+    }
+
     protected AbstractNetworkProvider setRequestUrlEncoding(final Charset requestUrlEncoding) {
         this.requestUrlEncoding = requestUrlEncoding;
         return this;
@@ -119,6 +360,7 @@ public abstract class AbstractNetworkProvider implements NetworkProvider {
 
     protected AbstractNetworkProvider setTimeZone(final String timeZoneId) {
         this.timeZone = TimeZone.getTimeZone(timeZoneId);
+        this.dateTimes = new DateTimes(timeZone);
         return this;
     }
 
@@ -133,9 +375,34 @@ public abstract class AbstractNetworkProvider implements NetworkProvider {
 
     protected AbstractNetworkProvider setStyles(final Map<String, Style> styles) {
         this.styles = styles;
+        final LineCache lineCache = this.lineCache;
+        if (lineCache != null)
+            lineCache.clear();
         return this;
     }
 
+    /**
+     * Sets the maximum number of distinct lines to reuse instead of building them anew, or disables reusing lines
+     * if zero.
+     */
+    public AbstractNetworkProvider setLineCacheSize(final int maxLines) {
+        this.lineCache = maxLines > 0 ? new LineCache(maxLines, this::lineStyle) : null;
+        return this;
+    }
+
+    /**
+     * @return line styled by {@link #lineStyle(String, Product, String)}, being the same instance for the same
+     *         arguments as long as it is cached
+     */
+    protected final Line styledLine(final @Nullable String id, final @Nullable String network,
+            final @Nullable Product product, final @Nullable String label, final @Nullable String name,
+            final @Nullable Set<Line.Attr> attrs, final @Nullable String message) {
+        final LineCache lineCache = this.lineCache;
+        if (lineCache != null)
+            return lineCache.get(id, network, product, label, name, attrs, message);
+        return new Line(id, network, product, label, name, lineStyle(network, product, label), attrs, message);
+    }
+
     protected AbstractNetworkProvider setSessionCookieName(final String sessionCookieName) {
         httpClient.setSessionCookieName(sessionCookieName);
         return this;
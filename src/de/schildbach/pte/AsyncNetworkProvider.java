@@ -0,0 +1,73 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.NearbyLocationsResult;
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.dto.QueryTripsContext;
+import de.schildbach.pte.dto.QueryTripsResult;
+import de.schildbach.pte.dto.SuggestLocationsResult;
+import de.schildbach.pte.dto.TripOptions;
+
+/**
+ * <p>
+ * Asynchronous companion of {@link NetworkProvider}. Each method takes the same parameters as its blocking
+ * counterpart and returns immediately.
+ * </p>
+ *
+ * <p>
+ * Cancelling a returned future cancels the HTTP calls that are still in flight for it. Failures are reported
+ * by completing the future exceptionally, with the same exceptions the blocking method would throw.
+ * </p>
+ */
+public interface AsyncNetworkProvider {
+    /**
+     * Returns a view of this provider that applies the given deadline to each query issued through it. Once the
+     * deadline is exceeded, in-flight calls are aborted and the future completes with an
+     * {@link java.io.InterruptedIOException}.
+     */
+    AsyncNetworkProvider withTimeout(long timeout, TimeUnit unit);
+
+    /** @see NetworkProvider#queryNearbyLocations(Set, Location, int, int) */
+    CompletableFuture<NearbyLocationsResult> queryNearbyLocationsAsync(Set<LocationType> types, Location location,
+            int maxDistance, int maxLocations);
+
+    /** @see NetworkProvider#queryDepartures(String, Date, int, boolean) */
+    CompletableFuture<QueryDeparturesResult> queryDeparturesAsync(String stationId, @Nullable Date time,
+            int maxDepartures, boolean equivs);
+
+    /** @see NetworkProvider#suggestLocations(CharSequence, Set, int) */
+    CompletableFuture<SuggestLocationsResult> suggestLocationsAsync(CharSequence constraint,
+            @Nullable Set<LocationType> types, int maxLocations);
+
+    /** @see NetworkProvider#queryTrips(Location, Location, Location, Date, boolean, TripOptions) */
+    CompletableFuture<QueryTripsResult> queryTripsAsync(Location from, @Nullable Location via, Location to, Date date,
+            boolean dep, @Nullable TripOptions options);
+
+    /** @see NetworkProvider#queryMoreTrips(QueryTripsContext, boolean) */
+    CompletableFuture<QueryTripsResult> queryMoreTripsAsync(QueryTripsContext context, boolean later);
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.NearbyLocationsResult;
+import de.schildbach.pte.dto.Point;
+import de.schildbach.pte.dto.Product;
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.dto.QueryTripsContext;
+import de.schildbach.pte.dto.QueryTripsResult;
+import de.schildbach.pte.dto.Style;
+import de.schildbach.pte.dto.SuggestLocationsResult;
+import de.schildbach.pte.dto.TripOptions;
+import de.schildbach.pte.util.CacheStats;
+
+/**
+ * <p>
+ * Decorator of a {@link NetworkProvider} that caches query results in memory. Each cache is disabled until
+ * configured, so that the time to live can be chosen per network.
+ * </p>
+ *
+ * <p>
+ * Results returned from a cache are copies, so callers may modify them.
+ * </p>
+ */
+public final class CachingNetworkProvider implements NetworkProvider {
+    private final NetworkProvider provider;
+    private volatile @Nullable DeparturesCache departuresCache = null;
+    private volatile @Nullable SuggestLocationsCache suggestLocationsCache = null;
+    private volatile @Nullable NearbyLocationsCache nearbyLocationsCache = null;
+
+    public CachingNetworkProvider(final NetworkProvider provider) {
+        this.provider = requireNonNull(provider);
+    }
+
+    public NetworkProvider getProvider() {
+        return provider;
+    }
+
+    /**
+     * Enables caching of departure boards. The time to live bounds how late real-time data may be.
+     *
+     * @param ttl
+     *            time to live of a cached departure board
+     * @param maxDepartures
+     *            maximum number of departures to keep over all cached boards
+     */
+    public CachingNetworkProvider setDeparturesCache(final long ttl, final TimeUnit unit, final int maxDepartures) {
+        this.departuresCache = new DeparturesCache(ttl, unit, maxDepartures);
+        return this;
+    }
+
+    public @Nullable CacheStats getDeparturesCacheStats() {
+        final DeparturesCache departuresCache = this.departuresCache;
+        return departuresCache != null ? departuresCache.stats() : null;
+    }
+
+    /**
+     * Enables caching of location suggestions. Results for a constraint are also used to answer extensions of that
+     * constraint, so this is mostly useful for autocompletion.
+     *
+     * @param ttl
+     *            time to live of cached suggestions
+     * @param maxLocations
+     *            maximum number of suggested locations to keep over all cached results
+     */
+    public CachingNetworkProvider setSuggestLocationsCache(final long ttl, final TimeUnit unit,
+            final int maxLocations) {
+        this.suggestLocationsCache = new SuggestLocationsCache(ttl, unit, maxLocations);
+        return this;
+    }
+
+    public @Nullable CacheStats getSuggestLocationsCacheStats() {
+        final SuggestLocationsCache suggestLocationsCache = this.suggestLocationsCache;
+        return suggestLocationsCache != null ? suggestLocationsCache.stats() : null;
+    }
+
+    /**
+     * Enables caching of nearby locations by coordinate. Queries close to an earlier query are answered from its
+     * result, as long as it is known to cover the requested distance.
+     *
+     * @param ttl
+     *            time to live of cached nearby locations
+     * @param cellSize
+     *            edge length of the grid cells in meters, should be in the order of typical query distances
+     * @param maxLocations
+     *            maximum number of locations to keep over all cached results
+     */
+    public CachingNetworkProvider setNearbyLocationsCache(final long ttl, final TimeUnit unit, final int cellSize,
+            final int maxLocations) {
+        this.nearbyLocationsCache = new NearbyLocationsCache(ttl, unit, cellSize, maxLocations);
+        return this;
+    }
+
+    public @Nullable CacheStats getNearbyLocationsCacheStats() {
+        final NearbyLocationsCache nearbyLocationsCache = this.nearbyLocationsCache;
+        return nearbyLocationsCache != null ? nearbyLocationsCache.stats() : null;
+    }
+
+    @Override
+    public NetworkId id() {
+        return provider.id();
+    }
+
+    @Override
+    public boolean hasCapabilities(final Capability... capabilities) {
+        return provider.hasCapabilities(capabilities);
+    }
+
+    @Override
+    public NearbyLocationsResult queryNearbyLocations(final Set<LocationType> types, final Location location,
+            final int maxDistance, final int maxLocations) throws IOException {
+        final NearbyLocationsCache nearbyLocationsCache = this.nearbyLocationsCache;
+        if (nearbyLocationsCache == null || !NearbyLocationsCache.isCacheable(location))
+            return provider.queryNearbyLocations(types, location, maxDistance, maxLocations);
+
+        final NearbyLocationsResult cached = nearbyLocationsCache.get(types, location, maxDistance, maxLocations);
+        if (cached != null)
+            return cached;
+
+        final NearbyLocationsResult result = provider.queryNearbyLocations(types, location, maxDistance,
+                maxLocations);
+        nearbyLocationsCache.put(types, location, maxDistance, maxLocations, result);
+        return result;
+    }
+
+    @Override
+    public QueryDeparturesResult queryDepartures(final String stationId, final @Nullable Date time,
+            final int maxDepartures, final boolean equivs) throws IOException {
+        final DeparturesCache departuresCache = this.departuresCache;
+        if (departuresCache == null)
+            return provider.queryDepartures(stationId, time, maxDepartures, equivs);
+
+        final QueryDeparturesResult cached = departuresCache.get(stationId, time, maxDepartures, equivs);
+        if (cached != null)
+            return cached;
+
+        final QueryDeparturesResult result = provider.queryDepartures(stationId, time, maxDepartures, equivs);
+        departuresCache.put(stationId, time, maxDepartures, equivs, result);
+        return result;
+    }
+
+    @Override
+    public SuggestLocationsResult suggestLocations(final CharSequence constraint,
+            final @Nullable Set<LocationType> types, final int maxLocations) throws IOException {
+        final SuggestLocationsCache suggestLocationsCache = this.suggestLocationsCache;
+        if (suggestLocationsCache == null)
+            return provider.suggestLocations(constraint, types, maxLocations);
+
+        final SuggestLocationsResult cached = suggestLocationsCache.get(constraint, types, maxLocations);
+        if (cached != null)
+            return cached;
+
+        final SuggestLocationsResult result = provider.suggestLocations(constraint, types, maxLocations);
+        suggestLocationsCache.put(constraint, types, maxLocations, result);
+        return result;
+    }
+
+    @Deprecated
+    @Override
+    public SuggestLocationsResult suggestLocations(final CharSequence constraint) throws IOException {
+        return suggestLocations(constraint, null, 0);
+    }
+
+    @Override
+    public Set<Product> defaultProducts() {
+        return provider.defaultProducts();
+    }
+
+    @Override
+    public QueryTripsResult queryTrips(final Location from, final @Nullable Location via, final Location to,
+            final Date date, final boolean dep, final @Nullable TripOptions options) throws IOException {
+        return provider.queryTrips(from, via, to, date, dep, options);
+    }
+
+    @Deprecated
+    @Override
+    public QueryTripsResult queryTrips(final Location from, final @Nullable Location via, final Location to,
+            final Date date, final boolean dep, final @Nullable Set<Product> products,
+            final @Nullable Optimize optimize, final @Nullable WalkSpeed walkSpeed,
+            final @Nullable Accessibility accessibility, final @Nullable Set<TripFlag> flags) throws IOException {
+        return provider.queryTrips(from, via, to, date, dep, products, optimize, walkSpeed, accessibility, flags);
+    }
+
+    @Override
+    public QueryTripsResult queryMoreTrips(final QueryTripsContext context, final boolean later) throws IOException {
+        return provider.queryMoreTrips(context, later);
+    }
+
+    @Override
+    public Style lineStyle(final @Nullable String network, final @Nullable Product product,
+            final @Nullable String label) {
+        return provider.lineStyle(network, product, label);
+    }
+
+    @Override
+    public Point[] getArea() throws IOException {
+        return provider.getArea();
+    }
+}
@@ -19,7 +19,6 @@ package de.schildbach.pte;
 
 import java.io.IOException;
 import java.text.DateFormat;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -71,7 +70,10 @@ import de.schildbach.pte.exception.AbstractHttpException;
 import de.schildbach.pte.exception.BlockedException;
 import de.schildbach.pte.exception.InternalErrorException;
 import de.schildbach.pte.exception.ParserException;
+import de.schildbach.pte.util.DateTimes;
+import de.schildbach.pte.util.HttpClient;
 import de.schildbach.pte.util.ParserUtils;
+import de.schildbach.pte.util.QueryTrace;
 import okhttp3.HttpUrl;
 
 /**
@@ -155,25 +157,34 @@ public final class DbProvider extends AbstractNetworkProvider {
     private static final Pattern P_SPLIT_NAME_ONE_COMMA = Pattern.compile("([^,]*), ([^,]*)");
 
     public DbProvider() {
+        this(API_BASE);
+    }
+
+    DbProvider(final HttpUrl apiBase) {
         super(NetworkId.DB);
-        this.departureEndpoint = API_BASE.newBuilder().addPathSegments("bahnhofstafel/abfahrt").build();
-        this.tripEndpoint = API_BASE.newBuilder().addPathSegments("angebote/fahrplan").build();
-        this.locationsEndpoint = API_BASE.newBuilder().addPathSegments("location/search").build();
-        this.nearbyEndpoint = API_BASE.newBuilder().addPathSegments("location/nearby").build();
+        this.departureEndpoint = apiBase.newBuilder().addPathSegments("bahnhofstafel/abfahrt").build();
+        this.tripEndpoint = apiBase.newBuilder().addPathSegments("angebote/fahrplan").build();
+        this.locationsEndpoint = apiBase.newBuilder().addPathSegments("location/search").build();
+        this.nearbyEndpoint = apiBase.newBuilder().addPathSegments("location/nearby").build();
         this.resultHeader = new ResultHeader(network, "movas");
     }
 
     private String doRequest(final HttpUrl url, final String body, final String contentType) throws IOException {
         // DB API requires these headers
         // Content-Type must be exactly as passed below,
-        // passing it to httpClient.get would add charset suffix
-        httpClient.setHeader("X-Correlation-ID", UUID.randomUUID() + "_" + UUID.randomUUID());
-        httpClient.setHeader("Accept", contentType);
-        httpClient.setHeader("Content-Type", contentType);
-        final CharSequence page = httpClient.get(url, body, null);
+        // passing it as request content type would add charset suffix
+        final HttpClient.RequestOptions options = HttpClient.RequestOptions.NONE
+                .withHeader("X-Correlation-ID", UUID.randomUUID() + "_" + UUID.randomUUID())
+                .withHeader("Accept", contentType)
+                .withHeader("Content-Type", contentType);
+        final CharSequence page = httpClient.get(url, body, options);
         return page.toString();
     }
 
+    private static JSONObject parseJson(final String page) throws JSONException {
+        return QueryTrace.parse(() -> new JSONObject(page));
+    }
+
     private CharSequence formatDate(final Calendar time) {
         final int year = time.get(Calendar.YEAR);
         final int month = time.get(Calendar.MONTH) + 1;
@@ -187,27 +198,24 @@ public final class DbProvider extends AbstractNetworkProvider {
         return String.format(Locale.ENGLISH, "%02d:%02d", hour, minute);
     }
 
-    private static final DateFormat ISO_DATE_TIME_WOFFSET_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX");
-
-    static {
-        ISO_DATE_TIME_WOFFSET_FORMAT.setTimeZone(timeZone);
-    }
+    // SimpleDateFormat is not thread-safe, so each thread gets its own instance
+    private static final ThreadLocal<DateFormat> ISO_DATE_TIME_WOFFSET_FORMAT = ThreadLocal.withInitial(() -> {
+        final DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX");
+        format.setTimeZone(timeZone);
+        return format;
+    });
 
     private String formatIso8601WOffset(final Date time) {
         if (time == null)
             return null;
-        return ISO_DATE_TIME_WOFFSET_FORMAT.format(time);
+        return ISO_DATE_TIME_WOFFSET_FORMAT.get().format(time);
     }
 
 
     private Date parseIso8601WOffset(final String time) {
         if (time == null)
             return null;
-        try {
-            return ISO_DATE_TIME_WOFFSET_FORMAT.parse(time);
-        } catch (final ParseException x) {
-            throw new RuntimeException(x);
-        }
+        return new Date(DateTimes.parseIsoDateTimeWithOffset(time));
     }
 
     private String createLidEntry(final String key, final Object value) {
@@ -327,7 +335,7 @@ public final class DbProvider extends AbstractNetworkProvider {
         if (pos == null) {
             pos = loc.optJSONObject("position");
         }
-        if (pos != null) {
+        if (pos != null && pos.has("latitude") && pos.has("longitude")) {
             coord = Point.fromDouble(pos.optDouble("latitude"), pos.optDouble("longitude"));
         } else {
             coord = lid.coord;
@@ -565,7 +573,7 @@ public final class DbProvider extends AbstractNetworkProvider {
         String page = null;
         try {
             page = doRequest(url, request, contentType);
-            final JSONObject res = new JSONObject(page);
+            final JSONObject res = parseJson(page);
             final JSONArray verbindungen = res.getJSONArray("verbindungen");
             final List<Trip> trips = new ArrayList<>();
 
@@ -672,7 +680,7 @@ public final class DbProvider extends AbstractNetworkProvider {
         try {
             page = doRequest(url, request, contentType);
             final QueryDeparturesResult result = new QueryDeparturesResult(this.resultHeader);
-            final JSONObject head = new JSONObject(page);
+            final JSONObject head = parseJson(page);
             final JSONArray deps = head.getJSONArray("bahnhofstafelAbfahrtPositionen");
             int added = 0;
             for (int i = 0; i < deps.length(); i++) {
@@ -0,0 +1,169 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.pte.dto.Departure;
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.dto.StationDepartures;
+import de.schildbach.pte.util.CacheStats;
+import de.schildbach.pte.util.LruCache;
+
+/**
+ * <p>
+ * Cache of departure boards, keyed by station and {@code equivs}.
+ * </p>
+ *
+ * <p>
+ * A request is answered from a cached board if that board was requested for the same or an earlier minute, and
+ * still contains at least the requested number of departures from the requested minute on. The answer is sliced
+ * from the cached departures, so a board fetched with a large {@code maxDepartures} serves any smaller request.
+ * Cache weight is measured in departures.
+ * </p>
+ */
+final class DeparturesCache {
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final LruCache<String, Entry> cache;
+
+    private static final class Entry {
+        final long time;
+        final int maxDepartures;
+        final QueryDeparturesResult result;
+
+        Entry(final long time, final int maxDepartures, final QueryDeparturesResult result) {
+            this.time = time;
+            this.maxDepartures = maxDepartures;
+            this.result = result;
+        }
+
+        int weight() {
+            int weight = 1;
+            for (final StationDepartures stationDepartures : result.stationDepartures)
+                weight += stationDepartures.departures.size();
+            return weight;
+        }
+    }
+
+    DeparturesCache(final long ttl, final TimeUnit unit, final int maxDepartures) {
+        this.cache = new LruCache<>(maxDepartures, ttl, unit, Entry::weight);
+    }
+
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Nullable
+    QueryDeparturesResult get(final String stationId, final @Nullable Date time, final int maxDepartures,
+            final boolean equivs) {
+        final Entry entry = cache.get(key(stationId, equivs));
+        final QueryDeparturesResult result = entry != null ? slice(entry, minute(time), maxDepartures) : null;
+        if (result != null)
+            cache.stats().recordHit();
+        else
+            cache.stats().recordMiss();
+        return result;
+    }
+
+    void put(final String stationId, final @Nullable Date time, final int maxDepartures, final boolean equivs,
+            final QueryDeparturesResult result) {
+        if (result.status != QueryDeparturesResult.Status.OK)
+            return;
+        final String key = key(stationId, equivs);
+        final Entry entry = new Entry(minute(time), maxDepartures, copy(result, Long.MIN_VALUE, Integer.MAX_VALUE));
+
+        // don't replace a cached board that already answers this request with more departures, e.g. if a smaller
+        // request for the same minute completes after a larger one
+        final Entry existing = cache.get(key);
+        if (existing != null && slice(existing, entry.time, maxDepartures) != null
+                && existing.weight() >= entry.weight())
+            return;
+        cache.put(key, entry);
+    }
+
+    private static String key(final String stationId, final boolean equivs) {
+        return stationId + (equivs ? "|equivs" : "");
+    }
+
+    private static long minute(final @Nullable Date time) {
+        final long millis = time != null ? time.getTime() : System.currentTimeMillis();
+        return millis - Math.floorMod(millis, MINUTE_MS);
+    }
+
+    private static @Nullable QueryDeparturesResult slice(final Entry entry, final long time,
+            final int maxDepartures) {
+        if (time < entry.time)
+            return null;
+        final boolean sameRequest = time == entry.time;
+
+        // provider default number of departures is unknown, so only the identical request can be answered
+        if (maxDepartures == 0 || entry.maxDepartures == 0) {
+            if (!sameRequest || maxDepartures != entry.maxDepartures)
+                return null;
+            return copy(entry.result, Long.MIN_VALUE, Integer.MAX_VALUE);
+        }
+
+        // the same request with a smaller limit yields a prefix of the cached board
+        if (sameRequest && maxDepartures <= entry.maxDepartures)
+            return copy(entry.result, Long.MIN_VALUE, maxDepartures);
+
+        // a later request is only complete if enough departures remain after its time
+        int remaining = 0;
+        for (final StationDepartures stationDepartures : entry.result.stationDepartures)
+            for (final Departure departure : stationDepartures.departures)
+                if (departure.getTime().getTime() >= time)
+                    remaining++;
+        if (remaining < maxDepartures)
+            return null;
+        return copy(entry.result, time, maxDepartures);
+    }
+
+    private static QueryDeparturesResult copy(final QueryDeparturesResult result, final long fromTime,
+            final int maxDepartures) {
+        // determine the time of the last departure to keep, over all stations
+        final List<Departure> all = new ArrayList<>();
+        for (final StationDepartures stationDepartures : result.stationDepartures)
+            for (final Departure departure : stationDepartures.departures)
+                if (departure.getTime().getTime() >= fromTime)
+                    all.add(departure);
+        all.sort(Departure.TIME_COMPARATOR);
+        int budget = Math.min(maxDepartures, all.size());
+        final long untilTime = budget > 0 ? all.get(budget - 1).getTime().getTime() : Long.MIN_VALUE;
+
+        final QueryDeparturesResult copy = new QueryDeparturesResult(result.header);
+        for (final StationDepartures stationDepartures : result.stationDepartures) {
+            final List<Departure> departures = new ArrayList<>();
+            for (final Departure departure : stationDepartures.departures) {
+                final long departureTime = departure.getTime().getTime();
+                if (departureTime >= fromTime && departureTime <= untilTime && budget > 0) {
+                    departures.add(departure);
+                    budget--;
+                }
+            }
+            copy.stationDepartures.add(new StationDepartures(stationDepartures.location, departures,
+                    stationDepartures.lines));
+        }
+        return copy;
+    }
+}
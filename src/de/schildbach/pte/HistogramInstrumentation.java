@@ -0,0 +1,91 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.schildbach.pte.util.Histogram;
+import de.schildbach.pte.util.QueryTrace;
+
+/**
+ * <p>
+ * {@link Instrumentation} that keeps a {@link Histogram} of nanoseconds per network, method, outcome and phase. The
+ * histograms can be scraped at any time, e.g. to export them to a monitoring system.
+ * </p>
+ */
+public final class HistogramInstrumentation implements Instrumentation {
+    private final Map<Series, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public static final class Series {
+        public final NetworkId network;
+        public final String method;
+        public final String outcome;
+        public final QueryTrace.Phase phase;
+
+        public Series(final NetworkId network, final String method, final String outcome,
+                final QueryTrace.Phase phase) {
+            this.network = requireNonNull(network);
+            this.method = requireNonNull(method);
+            this.outcome = requireNonNull(outcome);
+            this.phase = requireNonNull(phase);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (o == this)
+                return true;
+            if (!(o instanceof Series))
+                return false;
+            final Series other = (Series) o;
+            return this.network == other.network && this.method.equals(other.method)
+                    && this.outcome.equals(other.outcome) && this.phase == other.phase;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(network, method, outcome, phase);
+        }
+
+        @Override
+        public String toString() {
+            return network + "." + method + "." + phase + "{" + outcome + "}";
+        }
+    }
+
+    @Override
+    public void record(final NetworkId network, final String method, final String outcome,
+            final QueryTrace.Phase phase, final long nanos) {
+        final Series series = new Series(network, method, outcome, phase);
+        Histogram histogram = histograms.get(series);
+        if (histogram == null)
+            histogram = histograms.computeIfAbsent(series, s -> new Histogram());
+        histogram.record(nanos);
+    }
+
+    /**
+     * @return live view of all histograms recorded so far
+     */
+    public Map<Series, Histogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+}
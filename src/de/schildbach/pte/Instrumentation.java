@@ -0,0 +1,50 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import de.schildbach.pte.util.QueryTrace;
+
+/**
+ * <p>
+ * Receives the time spent in each phase of provider queries that are run via an {@link InstrumentedNetworkProvider}.
+ * </p>
+ *
+ * <p>
+ * Implementations must be thread-safe and should be fast, as they are called on the querying thread.
+ * </p>
+ */
+public interface Instrumentation {
+    String OUTCOME_OK = "OK";
+
+    /**
+     * Called once per phase that occurred, after the query has finished.
+     *
+     * @param network
+     *            network of the provider that was queried
+     * @param method
+     *            name of the query method, e.g. {@code queryTrips}
+     * @param outcome
+     *            {@link #OUTCOME_OK}, or the simple class name of the exception thrown by the query, e.g.
+     *            {@code BlockedException}
+     * @param phase
+     *            phase of the query
+     * @param nanos
+     *            time spent in the phase
+     */
+    void record(NetworkId network, String method, String outcome, QueryTrace.Phase phase, long nanos);
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.NearbyLocationsResult;
+import de.schildbach.pte.dto.Point;
+import de.schildbach.pte.dto.Product;
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.dto.QueryTripsContext;
+import de.schildbach.pte.dto.QueryTripsResult;
+import de.schildbach.pte.dto.Style;
+import de.schildbach.pte.dto.SuggestLocationsResult;
+import de.schildbach.pte.dto.TripOptions;
+import de.schildbach.pte.util.CallControl;
+import de.schildbach.pte.util.HttpClient;
+import de.schildbach.pte.util.QueryTrace;
+
+/**
+ * <p>
+ * Decorator of a {@link NetworkProvider} that traces each query and reports the time spent in its phases to an
+ * {@link Instrumentation}. Phases of HTTP calls are only seen for providers that use {@link HttpClient}.
+ * </p>
+ */
+public final class InstrumentedNetworkProvider implements NetworkProvider {
+    private final NetworkProvider provider;
+    private final Instrumentation instrumentation;
+
+    public InstrumentedNetworkProvider(final NetworkProvider provider, final Instrumentation instrumentation) {
+        this.provider = requireNonNull(provider);
+        this.instrumentation = requireNonNull(instrumentation);
+    }
+
+    public NetworkProvider getProvider() {
+        return provider;
+    }
+
+    @Override
+    public NetworkId id() {
+        return provider.id();
+    }
+
+    @Override
+    public boolean hasCapabilities(final Capability... capabilities) {
+        return provider.hasCapabilities(capabilities);
+    }
+
+    @Override
+    public NearbyLocationsResult queryNearbyLocations(final Set<LocationType> types, final Location location,
+            final int maxDistance, final int maxLocations) throws IOException {
+        return trace("queryNearbyLocations",
+                () -> provider.queryNearbyLocations(types, location, maxDistance, maxLocations));
+    }
+
+    @Override
+    public QueryDeparturesResult queryDepartures(final String stationId, final @Nullable Date time,
+            final int maxDepartures, final boolean equivs) throws IOException {
+        return trace("queryDepartures", () -> provider.queryDepartures(stationId, time, maxDepartures, equivs));
+    }
+
+    @Override
+    public SuggestLocationsResult suggestLocations(final CharSequence constraint,
+            final @Nullable Set<LocationType> types, final int maxLocations) throws IOException {
+        return trace("suggestLocations", () -> provider.suggestLocations(constraint, types, maxLocations));
+    }
+
+    @Deprecated
+    @Override
+    public SuggestLocationsResult suggestLocations(final CharSequence constraint) throws IOException {
+        return suggestLocations(constraint, null, 0);
+    }
+
+    @Override
+    public Set<Product> defaultProducts() {
+        return provider.defaultProducts();
+    }
+
+    @Override
+    public QueryTripsResult queryTrips(final Location from, final @Nullable Location via, final Location to,
+            final Date date, final boolean dep, final @Nullable TripOptions options) throws IOException {
+        return trace("queryTrips", () -> provider.queryTrips(from, via, to, date, dep, options));
+    }
+
+    @Deprecated
+    @Override
+    public QueryTripsResult queryTrips(final Location from, final @Nullable Location via, final Location to,
+            final Date date, final boolean dep, final @Nullable Set<Product> products,
+            final @Nullable Optimize optimize, final @Nullable WalkSpeed walkSpeed,
+            final @Nullable Accessibility accessibility, final @Nullable Set<TripFlag> flags) throws IOException {
+        return queryTrips(from, via, to, date, dep, new TripOptions(products, optimize, walkSpeed, accessibility,
+                flags));
+    }
+
+    @Override
+    public QueryTripsResult queryMoreTrips(final QueryTripsContext context, final boolean later) throws IOException {
+        return trace("queryMoreTrips", () -> provider.queryMoreTrips(context, later));
+    }
+
+    @Override
+    public Style lineStyle(final @Nullable String network, final @Nullable Product product,
+            final @Nullable String label) {
+        return provider.lineStyle(network, product, label);
+    }
+
+    @Override
+    public Point[] getArea() throws IOException {
+        return trace("getArea", provider::getArea);
+    }
+
+    private <T> T trace(final String method, final CallControl.IOCallable<T> query) throws IOException {
+        final QueryTrace trace = new QueryTrace();
+        String outcome = Instrumentation.OUTCOME_OK;
+        try {
+            return trace.call(query);
+        } catch (final IOException | RuntimeException x) {
+            outcome = x.getClass().getSimpleName();
+            throw x;
+        } finally {
+            final NetworkId network = provider.id();
+            for (final QueryTrace.Phase phase : QueryTrace.Phase.values()) {
+                final long nanos = trace.nanos(phase);
+                if (nanos >= 0)
+                    instrumentation.record(network, method, outcome, phase, nanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.pte.dto.Line;
+import de.schildbach.pte.dto.Product;
+import de.schildbach.pte.dto.Style;
+import de.schildbach.pte.util.CacheStats;
+
+/**
+ * <p>
+ * Canonical instances of styled lines, keyed by the attributes they are built from.
+ * </p>
+ *
+ * <p>
+ * The same lines are parsed over and over again, so instead of building a new line and looking up its style each
+ * time, the line built for the first occurrence is returned. Lines are immutable apart from their attributes, which
+ * are therefore copied into an unmodifiable set.
+ * </p>
+ *
+ * <p>
+ * Lookups do not take a lock, so that concurrent parsers do not contend on the cache. Each line remembers when it
+ * was last used. Once the configured number of lines is exceeded, one thread evicts the least recently used lines,
+ * leaving some headroom so that this does not happen on every insert. Lines inserted concurrently may exceed the
+ * configured number until then.
+ * </p>
+ */
+final class LineCache {
+    interface Styler {
+        Style lineStyle(@Nullable String network, @Nullable Product product, @Nullable String label);
+    }
+
+    private final ConcurrentHashMap<Key, Entry> lines = new ConcurrentHashMap<>();
+    private final int maxLines;
+    private final int evictToLines;
+    private final Styler styler;
+    private final CacheStats stats = new CacheStats();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private static final class Entry {
+        final Line line;
+        volatile long lastUsedNanoTime;
+
+        Entry(final Line line, final long nanoTime) {
+            this.line = line;
+            this.lastUsedNanoTime = nanoTime;
+        }
+    }
+
+    private static final class Key {
+        final @Nullable String id;
+        final @Nullable String network;
+        final @Nullable Product product;
+        final @Nullable String label;
+        final @Nullable String name;
+        final @Nullable Set<Line.Attr> attrs;
+        final @Nullable String message;
+        final int hashCode;
+
+        Key(final @Nullable String id, final @Nullable String network, final @Nullable Product product,
+                final @Nullable String label, final @Nullable String name, final @Nullable Set<Line.Attr> attrs,
+                final @Nullable String message) {
+            this.id = id;
+            this.network = network;
+            this.product = product;
+            this.label = label;
+            this.name = name;
+            this.attrs = attrs;
+            this.message = message;
+            int hashCode = Objects.hashCode(id);
+            hashCode = 31 * hashCode + Objects.hashCode(network);
+            hashCode = 31 * hashCode + Objects.hashCode(product);
+            hashCode = 31 * hashCode + Objects.hashCode(label);
+            hashCode = 31 * hashCode + Objects.hashCode(name);
+            hashCode = 31 * hashCode + Objects.hashCode(attrs);
+            hashCode = 31 * hashCode + Objects.hashCode(message);
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (o == this)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            final Key other = (Key) o;
+            return hashCode == other.hashCode && product == other.product && Objects.equals(label, other.label)
+                    && Objects.equals(id, other.id) && Objects.equals(network, other.network)
+                    && Objects.equals(name, other.name) && Objects.equals(attrs, other.attrs)
+                    && Objects.equals(message, other.message);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    LineCache(final int maxLines, final Styler styler) {
+        this.maxLines = maxLines;
+        this.evictToLines = maxLines - maxLines / 8;
+        this.styler = styler;
+    }
+
+    CacheStats stats() {
+        return stats;
+    }
+
+    int size() {
+        return lines.size();
+    }
+
+    void clear() {
+        lines.clear();
+    }
+
+    /**
+     * @return line with the given attributes, styled by network, product and label
+     */
+    Line get(final @Nullable String id, final @Nullable String network, final @Nullable Product product,
+            final @Nullable String label, final @Nullable String name, final @Nullable Set<Line.Attr> attrs,
+            final @Nullable String message) {
+        final Key key = new Key(id, network, product, label, name, attrs, message);
+        final Entry cached = lines.get(key);
+        if (cached != null) {
+            cached.lastUsedNanoTime = System.nanoTime();
+            stats.recordHit();
+            return cached.line;
+        }
+        stats.recordMiss();
+
+        // the key must not refer to the caller's set, which might be modified later
+        final Set<Line.Attr> attrsCopy = attrs != null ? Collections.unmodifiableSet(
+                attrs.isEmpty() ? EnumSet.noneOf(Line.Attr.class) : EnumSet.copyOf(attrs)) : null;
+        final Line line = new Line(id, network, product, label, name, styler.lineStyle(network, product, label),
+                attrsCopy, message);
+        lines.put(new Key(id, network, product, label, name, attrsCopy, message),
+                new Entry(line, System.nanoTime()));
+        if (lines.size() > maxLines)
+            evict();
+        return line;
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true))
+            return;
+        try {
+            final long[] lastUsed = new long[lines.size()];
+            int size = 0;
+            for (final Entry entry : lines.values()) {
+                if (size == lastUsed.length)
+                    break;
+                lastUsed[size++] = entry.lastUsedNanoTime;
+            }
+            final int numEvict = size - evictToLines;
+            if (numEvict <= 0)
+                return;
+            Arrays.sort(lastUsed, 0, size);
+            final long cutoff = lastUsed[numEvict - 1];
+            int numEvicted = 0;
+            for (final Map.Entry<Key, Entry> entry : lines.entrySet()) {
+                if (numEvicted == numEvict)
+                    break;
+                final Entry value = entry.getValue();
+                if (value.lastUsedNanoTime - cutoff <= 0 && lines.remove(entry.getKey(), value)) {
+                    stats.recordEviction();
+                    numEvicted++;
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.pte.dto.Line;
+import de.schildbach.pte.dto.Product;
+
+/**
+ * <p>
+ * Ordered rules for classifying lines by the attributes EFA reports about them, grouped by means of transport. The
+ * first matching rule determines product and label, like a chain of {@code if} statements would.
+ * </p>
+ *
+ * <p>
+ * Most rules are keyed by exact values of attributes, like a train type or name. These rules are looked up by the
+ * attribute values of a line, so only the few rules that can match are evaluated, in their original order. Rules
+ * without key are evaluated for every line that reaches them.
+ * </p>
+ */
+public final class LineRules {
+    /**
+     * The attributes of a line to classify.
+     */
+    public static final class Input {
+        public final @Nullable String mot;
+        public final @Nullable String symbol;
+        public final @Nullable String name;
+        public final @Nullable String longName;
+        public final @Nullable String trainType;
+        public final @Nullable String trainNum;
+        public final @Nullable String trainName;
+
+        private Input(final @Nullable String mot, final @Nullable String symbol, final @Nullable String name,
+                final @Nullable String longName, final @Nullable String trainType, final @Nullable String trainNum,
+                final @Nullable String trainName) {
+            this.mot = mot;
+            this.symbol = symbol;
+            this.name = name;
+            this.longName = longName;
+            this.trainType = trainType;
+            this.trainNum = trainNum;
+            this.trainName = trainName;
+        }
+
+        private @Nullable String get(final int attribute) {
+            switch (attribute) {
+            case SYMBOL:
+                return symbol;
+            case NAME:
+                return name;
+            case LONG_NAME:
+                return longName;
+            case TRAIN_TYPE:
+                return trainType;
+            case TRAIN_NUM:
+                return trainNum;
+            default:
+                return trainName;
+            }
+        }
+    }
+
+    public static final Predicate<Input> HAS_SYMBOL = in -> in.symbol != null;
+    public static final Predicate<Input> NO_SYMBOL = in -> in.symbol == null;
+    public static final Predicate<Input> HAS_TRAIN_NUM = in -> in.trainNum != null;
+    public static final Predicate<Input> NO_TRAIN_NUM = in -> in.trainNum == null;
+    public static final Predicate<Input> NO_TRAIN_TYPE = in -> in.trainType == null;
+    public static final Predicate<Input> NO_TRAIN_NAME = in -> in.trainName == null;
+
+    public static final Function<Input, String> SYMBOL_LABEL = in -> in.symbol;
+    public static final Function<Input, String> NAME_LABEL = in -> in.name;
+    public static final Function<Input, String> TRAIN_NUM_LABEL = in -> in.trainNum;
+
+    /**
+     * @return label of the train number, prefixed with the given string
+     */
+    public static Function<Input, String> trainNumLabel(final String prefix) {
+        return in -> prefix + Objects.toString(in.trainNum, "");
+    }
+
+    /**
+     * @return fixed label
+     */
+    public static Function<Input, String> label(final @Nullable String label) {
+        return in -> label;
+    }
+
+    private static final int SYMBOL = 0;
+    private static final int NAME = 1;
+    private static final int LONG_NAME = 2;
+    private static final int TRAIN_TYPE = 3;
+    private static final int TRAIN_NUM = 4;
+    private static final int TRAIN_NAME = 5;
+    private static final int NUM_ATTRIBUTES = 6;
+
+    /**
+     * Exact value of an attribute a rule is keyed by.
+     */
+    public static final class Key {
+        private final int attribute;
+        private final String value;
+
+        private Key(final int attribute, final String value) {
+            this.attribute = attribute;
+            this.value = value;
+        }
+    }
+
+    public static Key symbol(final String symbol) {
+        return new Key(SYMBOL, symbol);
+    }
+
+    public static Key name(final String name) {
+        return new Key(NAME, name);
+    }
+
+    public static Key longName(final String longName) {
+        return new Key(LONG_NAME, longName);
+    }
+
+    public static Key trainType(final String trainType) {
+        return new Key(TRAIN_TYPE, trainType);
+    }
+
+    public static Key trainNum(final String trainNum) {
+        return new Key(TRAIN_NUM, trainNum);
+    }
+
+    public static Key trainName(final String trainName) {
+        return new Key(TRAIN_NAME, trainName);
+    }
+
+    private static final class Rule {
+        final Predicate<Input> condition;
+        final @Nullable Product product;
+        final Function<Input, String> label;
+
+        Rule(final Predicate<Input> condition, final @Nullable Product product, final Function<Input, String> label) {
+            this.condition = condition;
+            this.product = product;
+            this.label = label;
+        }
+    }
+
+    private static final class Section {
+        final Rule[] rules;
+        final List<Map<String, int[]>> index; // rule indices by attribute value, for each attribute
+        final int[] unkeyed; // indices of rules without key
+
+        Section(final List<Rule> rules, final List<Map<String, List<Integer>>> index, final List<Integer> unkeyed) {
+            this.rules = rules.toArray(new Rule[0]);
+            this.index = new ArrayList<>(NUM_ATTRIBUTES);
+            for (final Map<String, List<Integer>> attributeIndex : index) {
+                final Map<String, int[]> map = new HashMap<>();
+                for (final Map.Entry<String, List<Integer>> entry : attributeIndex.entrySet())
+                    map.put(entry.getKey(), toArray(entry.getValue()));
+                this.index.add(map);
+            }
+            this.unkeyed = toArray(unkeyed);
+        }
+
+        private static int[] toArray(final List<Integer> list) {
+            return list.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    private final Map<String, Section> sections;
+    private final @Nullable Section noMotSection;
+
+    private LineRules(final Map<String, Section> sections, final @Nullable Section noMotSection) {
+        this.sections = sections;
+        this.noMotSection = noMotSection;
+    }
+
+    /**
+     * @return line of the first matching rule, or {@code null} if no rule matches
+     */
+    public @Nullable Line classify(final @Nullable String id, final @Nullable String network,
+            final @Nullable String mot, final @Nullable String symbol, final @Nullable String name,
+            final @Nullable String longName, final @Nullable String trainType, final @Nullable String trainNum,
+            final @Nullable String trainName) {
+        final Section section = mot != null ? sections.get(mot) : noMotSection;
+        if (section == null)
+            return null;
+        final Input in = new Input(mot, symbol, name, longName, trainType, trainNum, trainName);
+
+        // candidate rules: those keyed by any of the attribute values, and those without key
+        final int[][] candidates = new int[NUM_ATTRIBUTES + 1][];
+        int numCandidates = 0;
+        for (int attribute = 0; attribute < NUM_ATTRIBUTES; attribute++) {
+            final String value = in.get(attribute);
+            if (value != null) {
+                final int[] rules = section.index.get(attribute).get(value);
+                if (rules != null)
+                    candidates[numCandidates++] = rules;
+            }
+        }
+        if (section.unkeyed.length > 0)
+            candidates[numCandidates++] = section.unkeyed;
+
+        // evaluate candidates in rule order, merging the sorted lists
+        final int[] positions = new int[numCandidates];
+        while (true) {
+            int next = Integer.MAX_VALUE;
+            for (int i = 0; i < numCandidates; i++)
+                if (positions[i] < candidates[i].length)
+                    next = Math.min(next, candidates[i][positions[i]]);
+            if (next == Integer.MAX_VALUE)
+                return null;
+            for (int i = 0; i < numCandidates; i++)
+                if (positions[i] < candidates[i].length && candidates[i][positions[i]] == next)
+                    positions[i]++;
+
+            final Rule rule = section.rules[next];
+            if (rule.condition.test(in))
+                return new Line(id, network, rule.product, rule.label.apply(in));
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private final Map<String, SectionBuilder> sections = new HashMap<>();
+        private final SectionBuilder noMotSection = new SectionBuilder();
+        private SectionBuilder section = noMotSection;
+
+        private Builder() {
+        }
+
+        /**
+         * Subsequent rules apply to the given means of transport, or to lines without one if {@code null}.
+         */
+        public Builder mot(final @Nullable String mot) {
+            section = mot != null ? sections.computeIfAbsent(mot, k -> new SectionBuilder()) : noMotSection;
+            return this;
+        }
+
+        /**
+         * Adds a rule that matches if any of the given keys match, or always if none are given.
+         */
+        public RuleBuilder rule(final Key... keys) {
+            return new RuleBuilder(this, keys);
+        }
+
+        public LineRules build() {
+            final Map<String, Section> sections = new HashMap<>();
+            for (final Map.Entry<String, SectionBuilder> entry : this.sections.entrySet())
+                sections.put(entry.getKey(), entry.getValue().build());
+            return new LineRules(sections, noMotSection.rules.isEmpty() ? null : noMotSection.build());
+        }
+    }
+
+    public static final class RuleBuilder {
+        private final Builder builder;
+        private final Key[] keys;
+        private Predicate<Input> condition = in -> true;
+
+        private RuleBuilder(final Builder builder, final Key[] keys) {
+            this.builder = builder;
+            this.keys = keys;
+        }
+
+        /**
+         * Additionally requires the given condition.
+         */
+        public RuleBuilder and(final Predicate<Input> condition) {
+            this.condition = this.condition.and(condition);
+            return this;
+        }
+
+        /**
+         * Completes the rule with the line it classifies to.
+         */
+        public Builder then(final @Nullable Product product, final Function<Input, String> label) {
+            builder.section.add(keys, new Rule(condition, product, label));
+            return builder;
+        }
+    }
+
+    private static final class SectionBuilder {
+        final List<Rule> rules = new ArrayList<>();
+        final List<Map<String, List<Integer>>> index = new ArrayList<>(NUM_ATTRIBUTES);
+        final List<Integer> unkeyed = new ArrayList<>();
+
+        SectionBuilder() {
+            for (int attribute = 0; attribute < NUM_ATTRIBUTES; attribute++)
+                index.add(new HashMap<>());
+        }
+
+        void add(final Key[] keys, final Rule rule) {
+            final int ruleIndex = rules.size();
+            rules.add(rule);
+            if (keys.length == 0) {
+                unkeyed.add(ruleIndex);
+                return;
+            }
+            for (final Key key : keys) {
+                final List<Integer> list = index.get(key.attribute).computeIfAbsent(key.value,
+                        k -> new ArrayList<>());
+                if (list.isEmpty() || list.get(list.size() - 1).intValue() != ruleIndex)
+                    list.add(ruleIndex);
+            }
+        }
+
+        Section build() {
+            return new Section(rules, index, unkeyed);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import static de.schildbach.pte.util.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.NearbyLocationsResult;
+import de.schildbach.pte.dto.Point;
+import de.schildbach.pte.util.CacheStats;
+import de.schildbach.pte.util.LruCache;
+
+/**
+ * <p>
+ * Cache of nearby locations, bucketed by grid cells of roughly equal size.
+ * </p>
+ *
+ * <p>
+ * Each cell keeps the most recent result of a query whose center lies within it. A later query is answered from the
+ * cell it falls into or one of the eight adjacent cells, if the disc that cached result is known to cover fully
+ * contains the requested disc. That is the queried radius if the provider returned fewer locations than requested,
+ * or else the distance to the farthest returned location. The answer is filtered and sorted by distance to the new
+ * center. Only queries by coordinate are cached. Cache weight is measured in locations.
+ * </p>
+ */
+final class NearbyLocationsCache {
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    private final double latStep;
+    private final LruCache<String, Entry> cache;
+
+    private static final class Entry {
+        final Point center;
+        final int maxDistance;
+        final int maxLocations;
+        final NearbyLocationsResult result;
+        final float coveredDistance;
+
+        Entry(final Point center, final int maxDistance, final int maxLocations, final NearbyLocationsResult result) {
+            this.center = center;
+            this.maxDistance = maxDistance;
+            this.maxLocations = maxLocations;
+            this.result = result;
+            this.coveredDistance = coveredDistance();
+        }
+
+        int weight() {
+            return 1 + result.locations.size();
+        }
+
+        private float coveredDistance() {
+            if (maxLocations == 0)
+                return 0; // provider default number of locations is unknown
+            if (result.locations.size() < maxLocations)
+                return maxDistance;
+            float farthest = 0;
+            for (final Location location : result.locations)
+                farthest = Math.max(farthest, LocationUtils.computeDistance(center, location.coord));
+            return maxDistance > 0 ? Math.min(farthest, maxDistance) : farthest;
+        }
+    }
+
+    NearbyLocationsCache(final long ttl, final TimeUnit unit, final int cellSize, final int maxLocations) {
+        checkArgument(cellSize > 0, () -> "cellSize must be positive");
+        this.latStep = cellSize / METERS_PER_DEGREE;
+        this.cache = new LruCache<>(maxLocations, ttl, unit, Entry::weight);
+    }
+
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    static boolean isCacheable(final Location location) {
+        return location.type == LocationType.COORD && location.hasCoord();
+    }
+
+    @Nullable
+    NearbyLocationsResult get(final Set<LocationType> types, final Location location, final int maxDistance,
+            final int maxLocations) {
+        final Point center = location.coord;
+        final String typesKey = typesKey(types);
+        final int latCell = latCell(center.getLatAsDouble());
+        NearbyLocationsResult result = null;
+        for (int dLat = -1; dLat <= 1 && result == null; dLat++) {
+            final int row = latCell + dLat;
+            final int lonCell = lonCell(row, center.getLonAsDouble());
+            for (int dLon = -1; dLon <= 1 && result == null; dLon++) {
+                final Entry entry = cache.get(key(typesKey, row, lonCell + dLon));
+                if (entry != null)
+                    result = answer(entry, center, maxDistance, maxLocations);
+            }
+        }
+        if (result != null)
+            cache.stats().recordHit();
+        else
+            cache.stats().recordMiss();
+        return result;
+    }
+
+    void put(final Set<LocationType> types, final Location location, final int maxDistance, final int maxLocations,
+            final NearbyLocationsResult result) {
+        if (result.status != NearbyLocationsResult.Status.OK)
+            return;
+        for (final Location resultLocation : result.locations)
+            if (!resultLocation.hasCoord())
+                return;
+        final Point center = location.coord;
+        final int latCell = latCell(center.getLatAsDouble());
+        cache.put(key(typesKey(types), latCell, lonCell(latCell, center.getLonAsDouble())),
+                new Entry(center, maxDistance, maxLocations,
+                        new NearbyLocationsResult(result.header, new ArrayList<>(result.locations))));
+    }
+
+    private static @Nullable NearbyLocationsResult answer(final Entry entry, final Point center,
+            final int maxDistance, final int maxLocations) {
+        // provider defaults are unknown, so only the identical request can be answered
+        if (maxDistance == 0 || maxLocations == 0) {
+            if (!center.equals(entry.center) || maxDistance != entry.maxDistance
+                    || maxLocations != entry.maxLocations)
+                return null;
+            return new NearbyLocationsResult(entry.result.header, new ArrayList<>(entry.result.locations));
+        }
+
+        if (LocationUtils.computeDistance(center, entry.center) + maxDistance > entry.coveredDistance)
+            return null;
+
+        final List<Location> locations = new ArrayList<>();
+        for (final Location location : entry.result.locations)
+            if (LocationUtils.computeDistance(center, location.coord) <= maxDistance)
+                locations.add(location);
+        locations.sort(Comparator.comparingDouble(location -> LocationUtils.computeDistance(center, location.coord)));
+        return new NearbyLocationsResult(entry.result.header,
+                locations.size() > maxLocations ? new ArrayList<>(locations.subList(0, maxLocations)) : locations);
+    }
+
+    private int latCell(final double lat) {
+        return (int) Math.floor(lat / latStep);
+    }
+
+    private int lonCell(final int latCell, final double lon) {
+        // keep cells roughly square by widening them towards the poles
+        final double lat = (latCell + 0.5) * latStep;
+        final double lonStep = latStep / Math.max(Math.cos(Math.toRadians(lat)), 0.01);
+        return (int) Math.floor(lon / lonStep);
+    }
+
+    private static String key(final String typesKey, final int latCell, final int lonCell) {
+        return typesKey + '|' + latCell + '|' + lonCell;
+    }
+
+    private static String typesKey(final Set<LocationType> types) {
+        return types.stream().map(LocationType::name).sorted().collect(Collectors.joining(","));
+    }
+}
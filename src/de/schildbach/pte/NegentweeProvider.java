@@ -64,6 +64,7 @@ import de.schildbach.pte.dto.TripOptions;
 import de.schildbach.pte.exception.InternalErrorException;
 import de.schildbach.pte.exception.NotFoundException;
 import de.schildbach.pte.util.ParserUtils;
+import de.schildbach.pte.util.QueryTrace;
 import de.schildbach.pte.util.WordUtils;
 
 import okhttp3.HttpUrl;
@@ -194,7 +195,7 @@ public class NegentweeProvider extends AbstractNetworkProvider {
         final CharSequence page = httpClient.get(url);
 
         try {
-            JSONObject head = new JSONObject(page.toString());
+            JSONObject head = QueryTrace.parse(() -> new JSONObject(page.toString()));
             JSONObject location = head.getJSONObject("location");
 
             return locationFromJSONObject(location);
@@ -226,7 +227,7 @@ public class NegentweeProvider extends AbstractNetworkProvider {
         final CharSequence page = httpClient.get(url);
 
         try {
-            JSONObject head = new JSONObject(page.toString());
+            JSONObject head = QueryTrace.parse(() -> new JSONObject(page.toString()));
             JSONArray locations = head.getJSONArray("locations");
 
             Location[] foundLocations = new Location[locations.length()];
@@ -585,8 +586,8 @@ public class NegentweeProvider extends AbstractNetworkProvider {
 
         Point locationPoint = Point.fromDouble(latlon.getDouble("lat"), latlon.getDouble("long"));
 
-        return new Location(locationTypeFromTypeString(locationType), location.getString("id"), locationPoint,
-                !(place == null) ? place.optString("name", null) : null, locationName, null);
+        return storeCoord(new Location(locationTypeFromTypeString(locationType), location.getString("id"),
+                locationPoint, !(place == null) ? place.optString("name", null) : null, locationName, null));
     }
 
     private List<Location> solveAmbiguousLocation(Location location) throws IOException {
@@ -633,7 +634,7 @@ public class NegentweeProvider extends AbstractNetworkProvider {
         List<Trip> foundTrips = new ArrayList<>();
         String tripsEarlier, tripsLater;
         try {
-            final JSONObject head = new JSONObject(page.toString());
+            final JSONObject head = QueryTrace.parse(() -> new JSONObject(page.toString()));
 
             if (head.has("error")) {
                 switch (head.getString("error")) {
@@ -717,7 +718,9 @@ public class NegentweeProvider extends AbstractNetworkProvider {
         if (!location.hasCoord()) {
             try {
                 if (location.hasId()) {
-                    location = queryLocationById(location.id);
+                    final Point storedCoord = storedCoord(location.id);
+                    location = storedCoord != null ? new Location(location.type, location.id, storedCoord,
+                            location.place, location.name, location.products) : queryLocationById(location.id);
                 } else if (location.hasName()) {
                     location = queryLocationByName(location.name, EnumSet.of(location.type));
                 }
@@ -755,7 +758,7 @@ public class NegentweeProvider extends AbstractNetworkProvider {
         // Parse result into location list
         final List<Location> foundLocations = new ArrayList<>();
         try {
-            final JSONObject head = new JSONObject(page.toString());
+            final JSONObject head = QueryTrace.parse(() -> new JSONObject(page.toString()));
             final JSONArray locations = head.optJSONArray("locations");
 
             for (int i = 0; i < locations.length(); i++) {
@@ -784,7 +787,7 @@ public class NegentweeProvider extends AbstractNetworkProvider {
 
         QueryDeparturesResult queryDeparturesResult = new QueryDeparturesResult(this.resultHeader);
         try {
-            JSONObject head = new JSONObject(page.toString());
+            JSONObject head = QueryTrace.parse(() -> new JSONObject(page.toString()));
             JSONArray tabs = head.getJSONArray("tabs");
             for (int t = 0; t < tabs.length(); t++) {
                 JSONObject tab = tabs.getJSONObject(t);
@@ -842,7 +845,7 @@ public class NegentweeProvider extends AbstractNetworkProvider {
 
         final List<SuggestedLocation> foundLocations = new ArrayList<>();
         try {
-            final JSONObject head = new JSONObject(page.toString());
+            final JSONObject head = QueryTrace.parse(() -> new JSONObject(page.toString()));
             final JSONArray locations = head.optJSONArray("locations");
 
             if (head.has("error")) {
@@ -0,0 +1,341 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import static de.schildbach.pte.util.Preconditions.checkArgument;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.SuggestLocationsResult;
+import de.schildbach.pte.dto.SuggestedLocation;
+import de.schildbach.pte.util.CacheStats;
+
+/**
+ * <p>
+ * Cache of location suggestions, organized as a trie of normalized constraints.
+ * </p>
+ *
+ * <p>
+ * While a user types, each keystroke extends the previous constraint. If the provider returned fewer suggestions
+ * than requested for a shorter constraint, that result was complete, so the suggestions for any extension of it are
+ * a subset that can be filtered locally. If a cached suggestion does not contain the words of the shorter constraint
+ * either, the provider matched it by means unknown to us, and the request is passed on instead.
+ * </p>
+ *
+ * <p>
+ * Constraints are normalized by case folding, stripping diacritics and collapsing separators. Cache weight is
+ * measured in suggestions; the least recently used results are evicted first.
+ * </p>
+ */
+final class SuggestLocationsCache {
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final char TYPES_SEPARATOR = '\u0000';
+    private static final Pattern P_DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern P_SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final long maxWeight;
+    private final long ttlNanos;
+    private final CacheStats stats = new CacheStats();
+    private final Node root = new Node(null, TYPES_SEPARATOR);
+    private final LinkedHashMap<Node, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+
+    private static final class Node {
+        final @Nullable Node parent;
+        final char c;
+        char[] keys = NO_KEYS;
+        Node[] children = NO_CHILDREN;
+        @Nullable
+        Entry entry = null;
+
+        Node(final @Nullable Node parent, final char c) {
+            this.parent = parent;
+            this.c = c;
+        }
+
+        @Nullable
+        Node child(final char c) {
+            final int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node addChild(final char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0)
+                return children[i];
+            i = -i - 1;
+            final Node child = new Node(this, c);
+            final char[] newKeys = new char[keys.length + 1];
+            final Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            newKeys[i] = c;
+            newChildren[i] = child;
+            System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+
+        void removeChild(final char c) {
+            final int i = Arrays.binarySearch(keys, c);
+            if (i < 0)
+                return;
+            final char[] newKeys = new char[keys.length - 1];
+            final Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(keys, i + 1, newKeys, i, keys.length - i - 1);
+            System.arraycopy(children, i + 1, newChildren, i, children.length - i - 1);
+            keys = newKeys;
+            children = newChildren;
+        }
+
+        boolean isEmpty() {
+            return entry == null && keys.length == 0;
+        }
+    }
+
+    private static final class Entry {
+        final String constraint;
+        final int maxLocations;
+        final SuggestLocationsResult result;
+        final long createdNanoTime;
+
+        Entry(final String constraint, final int maxLocations, final SuggestLocationsResult result,
+                final long createdNanoTime) {
+            this.constraint = constraint;
+            this.maxLocations = maxLocations;
+            this.result = result;
+            this.createdNanoTime = createdNanoTime;
+        }
+
+        int weight() {
+            return 1 + result.suggestedLocations.size();
+        }
+
+        /** The provider returned less than it was asked for, so there are no further matches. */
+        boolean isComplete() {
+            return maxLocations > 0 && result.suggestedLocations.size() < maxLocations;
+        }
+    }
+
+    SuggestLocationsCache(final long ttl, final TimeUnit unit, final long maxWeight) {
+        checkArgument(maxWeight > 0, () -> "maxWeight must be positive");
+        checkArgument(ttl > 0, () -> "ttl must be positive");
+        this.maxWeight = maxWeight;
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    CacheStats stats() {
+        return stats;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized @Nullable SuggestLocationsResult get(final CharSequence constraint,
+            final @Nullable Set<LocationType> types, final int maxLocations) {
+        final String normalized = normalize(constraint);
+        final String typesKey = typesKey(types);
+        final String key = typesKey + TYPES_SEPARATOR + normalized;
+        final int start = typesKey.length() + 1;
+        final long now = System.nanoTime();
+
+        // walk down the trie, remembering the exact entry and the longest complete prefix
+        Node exact = null;
+        Node prefix = null;
+        Node node = root;
+        for (int depth = 0; node != null;) {
+            final Entry entry = node.entry;
+            if (entry != null && depth >= start) {
+                if (now - entry.createdNanoTime >= ttlNanos)
+                    remove(node);
+                else if (depth == key.length())
+                    exact = node;
+                else if (entry.isComplete())
+                    prefix = node;
+            }
+            if (depth == key.length())
+                break;
+            node = node.child(key.charAt(depth++));
+        }
+
+        SuggestLocationsResult result = null;
+        Node used = null;
+        if (exact != null) {
+            result = answer(exact.entry, maxLocations);
+            used = exact;
+        }
+        if (result == null && prefix != null) {
+            result = filter(prefix.entry, normalized, maxLocations);
+            used = prefix;
+        }
+
+        if (result != null) {
+            entries.get(used); // touch
+            stats.recordHit();
+        } else {
+            stats.recordMiss();
+        }
+        return result;
+    }
+
+    synchronized void put(final CharSequence constraint, final @Nullable Set<LocationType> types,
+            final int maxLocations, final SuggestLocationsResult result) {
+        if (result.status != SuggestLocationsResult.Status.OK)
+            return;
+        final String normalized = normalize(constraint);
+        final String key = typesKey(types) + TYPES_SEPARATOR + normalized;
+
+        Node node = root;
+        for (int i = 0; i < key.length(); i++)
+            node = node.addChild(key.charAt(i));
+        if (node.entry != null)
+            weight -= node.entry.weight();
+        final Entry entry = new Entry(normalized, maxLocations,
+                new SuggestLocationsResult(result.header, result.suggestedLocations), System.nanoTime());
+        node.entry = entry;
+        entries.put(node, entry);
+        weight += entry.weight();
+
+        for (final Iterator<Node> i = entries.keySet().iterator(); weight > maxWeight && i.hasNext();) {
+            final Node eldest = i.next();
+            i.remove();
+            detach(eldest);
+            stats.recordEviction();
+        }
+    }
+
+    synchronized void clear() {
+        for (final Node node : entries.keySet())
+            detach(node);
+        entries.clear();
+    }
+
+    private void remove(final Node node) {
+        entries.remove(node);
+        detach(node);
+    }
+
+    private void detach(Node node) {
+        weight -= node.entry.weight();
+        node.entry = null;
+        while (node.parent != null && node.isEmpty()) {
+            node.parent.removeChild(node.c);
+            node = node.parent;
+        }
+    }
+
+    private static @Nullable SuggestLocationsResult answer(final Entry entry, final int maxLocations) {
+        // provider default number of suggestions is unknown, so only the identical request can be answered
+        if (maxLocations == 0 || entry.maxLocations == 0) {
+            if (maxLocations != entry.maxLocations)
+                return null;
+            return copy(entry.result, entry.result.suggestedLocations);
+        }
+        if (maxLocations > entry.maxLocations && !entry.isComplete())
+            return null;
+        return copy(entry.result, limit(entry.result.suggestedLocations, maxLocations));
+    }
+
+    private static @Nullable SuggestLocationsResult filter(final Entry entry, final String constraint,
+            final int maxLocations) {
+        if (maxLocations == 0)
+            return null;
+        final String[] tokens = tokens(constraint);
+        final String[] entryTokens = tokens(entry.constraint);
+        final List<SuggestedLocation> filtered = new ArrayList<>();
+        for (final SuggestedLocation suggestedLocation : entry.result.suggestedLocations) {
+            final String[] words = words(suggestedLocation.location);
+            if (matches(words, tokens))
+                filtered.add(suggestedLocation);
+            else if (!matches(words, entryTokens))
+                return null;
+        }
+        return copy(entry.result, limit(filtered, maxLocations));
+    }
+
+    private static boolean matches(final String[] words, final String[] tokens) {
+        for (final String token : tokens) {
+            boolean found = false;
+            for (final String word : words) {
+                if (word.startsWith(token)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found)
+                return false;
+        }
+        return true;
+    }
+
+    private static String[] words(final Location location) {
+        final StringBuilder text = new StringBuilder();
+        if (location.place != null)
+            text.append(location.place).append(' ');
+        if (location.name != null)
+            text.append(location.name);
+        return tokens(normalize(text));
+    }
+
+    private static String[] tokens(final String normalized) {
+        return normalized.isEmpty() ? new String[0] : normalized.split(" ");
+    }
+
+    private static List<SuggestedLocation> limit(final List<SuggestedLocation> suggestedLocations,
+            final int maxLocations) {
+        return suggestedLocations.size() > maxLocations ? suggestedLocations.subList(0, maxLocations)
+                : suggestedLocations;
+    }
+
+    private static SuggestLocationsResult copy(final SuggestLocationsResult result,
+            final List<SuggestedLocation> suggestedLocations) {
+        return new SuggestLocationsResult(result.header, suggestedLocations);
+    }
+
+    static String normalize(final CharSequence constraint) {
+        final String decomposed = Normalizer.normalize(constraint, Normalizer.Form.NFD);
+        final String stripped = P_DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+        return P_SEPARATORS.matcher(stripped).replaceAll(" ").trim();
+    }
+
+    private static String typesKey(final @Nullable Set<LocationType> types) {
+        if (types == null)
+            return "";
+        return types.stream().map(LocationType::name).sorted().collect(Collectors.joining(","));
+    }
+}
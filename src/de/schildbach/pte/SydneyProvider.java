@@ -17,9 +17,17 @@
 
 package de.schildbach.pte;
 
+import static de.schildbach.pte.LineRules.HAS_SYMBOL;
+import static de.schildbach.pte.LineRules.SYMBOL_LABEL;
+import static de.schildbach.pte.LineRules.label;
+import static de.schildbach.pte.LineRules.name;
+import static de.schildbach.pte.LineRules.symbol;
+import static de.schildbach.pte.LineRules.trainName;
+
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Predicate;
 
 import javax.annotation.Nullable;
 
@@ -69,134 +77,98 @@ public class SydneyProvider extends AbstractEfaProvider {
         return super.normalizeLocationName(name).replace("$XINT$", "&");
     }
 
-    @Override
-    protected Line parseLine(final @Nullable String id, final @Nullable String network, final @Nullable String mot,
-            final @Nullable String symbol, final @Nullable String name, final @Nullable String longName,
-            final @Nullable String trainType, final @Nullable String trainNum, final @Nullable String trainName) {
-        if ("1".equals(mot)) {
-            if ("BMT".equals(symbol) || "Blue Mountains Line".equals(symbol))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "BMT");
-            if ("CCN".equals(symbol) || "Central Coast & Newcastle Line".equals(symbol))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "CCN");
-            if ("SHL".equals(symbol) || "Southern Highlands Line".equals(symbol))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "SHL");
-            if ("SCO".equals(symbol) || "South Coast Line".equals(symbol))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "SCO");
-            if ("HUN".equals(symbol) || "Hunter Line".equals(symbol))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "HUN");
-            if ("SWR".equals(symbol)) // South West Rail Link
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "SWR");
-            if ("NRC".equals(symbol) || (symbol != null && symbol.startsWith("North Coast NSW Line")))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "NRC");
-            if ("WST".equals(symbol) || (symbol != null && symbol.startsWith("Western NSW Line")))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "WST");
-            if ("STH".equals(symbol) || (symbol != null && symbol.startsWith("Southern NSW Line")))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "STH");
-            if ("NRW".equals(symbol) || (symbol != null && symbol.startsWith("North Western NSW Line")))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "NRW");
+    private static Predicate<LineRules.Input> symbolStartsWith(final String prefix) {
+        return in -> in.symbol != null && in.symbol.startsWith(prefix);
+    }
 
-            if ("T1".equals(symbol) || "T1 North Shore & Northern Line".equals(symbol)
-                    || "T1 North Shore and Northern Line".equals(symbol) || "T1 Northern Line".equals(symbol)
-                    || "T1 Western Line".equals(symbol) || "T1 North Shore, Northern & Western Line".equals(symbol))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "T1");
-            if ("T2".equals(symbol) || "T2 Inner West & South Line".equals(symbol) || "T2 Airport Line".equals(symbol)
-                    || "T2 Airport, Inner West & South Line".equals(symbol))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "T2");
-            if ("T3".equals(symbol) || "T3 Bankstown Line".equals(symbol))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "T3");
-            if ("T4".equals(symbol) || "T4 Eastern Suburbs & Illawarra Line".equals(symbol))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "T4");
-            if ("T5".equals(symbol) || "T5 Cumberland Line".equals(symbol))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "T5");
-            if ("T6".equals(symbol) || "T6 Carlingford Line".equals(symbol))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "T6");
-            if ("T7".equals(symbol) || "T7 Olympic Park Line".equals(symbol))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "T7");
-            if ("T8".equals(symbol) || "T8 Airport & South Line".equals(symbol))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "T8");
-            if ("T9".equals(symbol) || "T9 Northern Line".equals(symbol))
-                return new Line(id, network, Product.SUBURBAN_TRAIN, "T9");
+    private static final LineRules LINES = LineRules.builder() //
+            .mot("1") //
+            .rule(symbol("BMT"), symbol("Blue Mountains Line")).then(Product.SUBURBAN_TRAIN, label("BMT")) //
+            .rule(symbol("CCN"), symbol("Central Coast & Newcastle Line"))
+            .then(Product.SUBURBAN_TRAIN, label("CCN")) //
+            .rule(symbol("SHL"), symbol("Southern Highlands Line")).then(Product.SUBURBAN_TRAIN, label("SHL")) //
+            .rule(symbol("SCO"), symbol("South Coast Line")).then(Product.SUBURBAN_TRAIN, label("SCO")) //
+            .rule(symbol("HUN"), symbol("Hunter Line")).then(Product.SUBURBAN_TRAIN, label("HUN")) //
+            .rule(symbol("SWR")) // South West Rail Link
+            .then(Product.SUBURBAN_TRAIN, label("SWR")) //
+            .rule(symbol("NRC")).then(Product.SUBURBAN_TRAIN, label("NRC")) //
+            .rule().and(symbolStartsWith("North Coast NSW Line")).then(Product.SUBURBAN_TRAIN, label("NRC")) //
+            .rule(symbol("WST")).then(Product.SUBURBAN_TRAIN, label("WST")) //
+            .rule().and(symbolStartsWith("Western NSW Line")).then(Product.SUBURBAN_TRAIN, label("WST")) //
+            .rule(symbol("STH")).then(Product.SUBURBAN_TRAIN, label("STH")) //
+            .rule().and(symbolStartsWith("Southern NSW Line")).then(Product.SUBURBAN_TRAIN, label("STH")) //
+            .rule(symbol("NRW")).then(Product.SUBURBAN_TRAIN, label("NRW")) //
+            .rule().and(symbolStartsWith("North Western NSW Line")).then(Product.SUBURBAN_TRAIN, label("NRW")) //
 
-            if (("31".equals(symbol) || "36".equals(symbol) || "621".equals(symbol) || "622".equals(symbol)
-                    || "635".equals(symbol) || "636".equals(symbol))
-                    && ((trainName != null && trainName.startsWith("Regional Trains"))
-                            || (longName != null && longName.startsWith("Regional Trains"))))
-                return new Line(id, network, null, symbol);
+            .rule(symbol("T1"), symbol("T1 North Shore & Northern Line"), symbol("T1 North Shore and Northern Line"),
+                    symbol("T1 Northern Line"), symbol("T1 Western Line"),
+                    symbol("T1 North Shore, Northern & Western Line"))
+            .then(Product.SUBURBAN_TRAIN, label("T1")) //
+            .rule(symbol("T2"), symbol("T2 Inner West & South Line"), symbol("T2 Airport Line"),
+                    symbol("T2 Airport, Inner West & South Line"))
+            .then(Product.SUBURBAN_TRAIN, label("T2")) //
+            .rule(symbol("T3"), symbol("T3 Bankstown Line")).then(Product.SUBURBAN_TRAIN, label("T3")) //
+            .rule(symbol("T4"), symbol("T4 Eastern Suburbs & Illawarra Line"))
+            .then(Product.SUBURBAN_TRAIN, label("T4")) //
+            .rule(symbol("T5"), symbol("T5 Cumberland Line")).then(Product.SUBURBAN_TRAIN, label("T5")) //
+            .rule(symbol("T6"), symbol("T6 Carlingford Line")).then(Product.SUBURBAN_TRAIN, label("T6")) //
+            .rule(symbol("T7"), symbol("T7 Olympic Park Line")).then(Product.SUBURBAN_TRAIN, label("T7")) //
+            .rule(symbol("T8"), symbol("T8 Airport & South Line")).then(Product.SUBURBAN_TRAIN, label("T8")) //
+            .rule(symbol("T9"), symbol("T9 Northern Line")).then(Product.SUBURBAN_TRAIN, label("T9")) //
 
-            throw new IllegalStateException("cannot normalize mot='" + mot + "' symbol='" + symbol + "' name='" + name
-                    + "' long='" + longName + "' trainType='" + trainType + "' trainNum='" + trainNum + "' trainName='"
-                    + trainName + "'");
-        } else if ("2".equals(mot)) {
-            if ("M".equals(symbol) || "M Metro North West Line".equals(symbol))
-                return new Line(id, network, Product.SUBWAY, "M");
+            .rule(symbol("31"), symbol("36"), symbol("621"), symbol("622"), symbol("635"), symbol("636"))
+            .and(in -> (in.trainName != null && in.trainName.startsWith("Regional Trains"))
+                    || (in.longName != null && in.longName.startsWith("Regional Trains")))
+            .then(null, SYMBOL_LABEL) //
 
-            throw new IllegalStateException("cannot normalize mot='" + mot + "' symbol='" + symbol + "' name='" + name
-                    + "' long='" + longName + "' trainType='" + trainType + "' trainNum='" + trainNum + "' trainName='"
-                    + trainName + "'");
-        } else if ("4".equals(mot)) {
-            if ("L1".equals(symbol) || "L1 Dulwich Hill Line".equals(symbol))
-                return new Line(id, network, Product.TRAM, "L1");
-            if ("L2".equals(symbol) || "L2 Randwick Line".equals(symbol))
-                return new Line(id, network, Product.TRAM, "L2");
-            if ("L3".equals(symbol) || "L3 Kingsford Line".equals(symbol))
-                return new Line(id, network, Product.TRAM, "L3");
+            .mot("2") //
+            .rule(symbol("M"), symbol("M Metro North West Line")).then(Product.SUBWAY, label("M")) //
 
-            throw new IllegalStateException("cannot normalize mot='" + mot + "' symbol='" + symbol + "' name='" + name
-                    + "' long='" + longName + "' trainType='" + trainType + "' trainNum='" + trainNum + "' trainName='"
-                    + trainName + "'");
-        } else if ("9".equals(mot)) {
-            if ("F1".equals(symbol) || "F1 Manly".equals(symbol))
-                return new Line(id, network, Product.FERRY, "F1");
-            if ("F2".equals(symbol) || "F2 Taronga Zoo".equals(symbol))
-                return new Line(id, network, Product.FERRY, "F2");
-            if ("F3".equals(symbol) || "F3 Parramatta River".equals(symbol))
-                return new Line(id, network, Product.FERRY, "F3");
-            if ("F4".equals(symbol) || "F4 Darling Harbour".equals(symbol))
-                return new Line(id, network, Product.FERRY, "F4");
-            if ("F5".equals(symbol) || "F5 Neutral Bay".equals(symbol))
-                return new Line(id, network, Product.FERRY, "F5");
-            if ("F6".equals(symbol) || "F6 Mosman Bay".equals(symbol))
-                return new Line(id, network, Product.FERRY, "F6");
-            if ("F7".equals(symbol) || "F7 Eastern Suburbs".equals(symbol))
-                return new Line(id, network, Product.FERRY, "F7");
-            if ("F8".equals(symbol) || "F8 Cockatoo Island".equals(symbol))
-                return new Line(id, network, Product.FERRY, "F8");
-            if (("Private ferry servic".equals(trainName) || "Private ferry and fa".equals(trainName))
-                    && symbol != null)
-                return new Line(id, network, Product.FERRY, symbol);
-            if ("MFF".equals(symbol) || "Manly Fast Ferry".equals(name))
-                return new Line(id, network, Product.FERRY, "MFF");
-            if ("LneCv".equals(symbol) || "Lane Cove Ferry".equals(name))
-                return new Line(id, network, Product.FERRY, "LneCv");
-            if ("EmpBa".equals(symbol) || "Woy Woy to Empire Bay Ferry".equals(name))
-                return new Line(id, network, Product.FERRY, "EmpBa");
-            if ("Stkn".equals(symbol) || "Stockton Ferry".equals(name))
-                return new Line(id, network, Product.FERRY, "Stkn");
-            if ("CCWB".equals(symbol) || "Circular Quay to Watsons Bay".equals(name))
-                return new Line(id, network, Product.FERRY, "CCWB");
-            if ("CCZC".equals(symbol) || "City to Taronga Zoo".equals(name))
-                return new Line(id, network, Product.FERRY, "CCZC");
-            if ("CCGD".equals(symbol) || "City to Garden Island and Manly".equals(name))
-                return new Line(id, network, Product.FERRY, "CCGD");
-            if ("CCWM".equals(symbol) || "Manly to Watsons Bay".equals(name))
-                return new Line(id, network, Product.FERRY, "CCWM");
-            if ("MDH".equals(symbol) || "MDH Manly to Darling Harbour Loop Ferry".equals(name))
-                return new Line(id, network, Product.FERRY, "MDH");
-            if ("CCGZ".equals(symbol) || "CCGZ Garden Island & Taronga Zoo Ferry".equals(name))
-                return new Line(id, network, Product.FERRY, "CCGZ");
-            if ("CCDH".equals(symbol) || "CCDH Circular Quay Luna Park Darling Harbour Ferry".equals(name))
-                return new Line(id, network, Product.FERRY, "CCDH");
-            if ("CCDM".equals(symbol) || "CCDM Manly Ferry".equals(name))
-                return new Line(id, network, Product.FERRY, "CCDM");
-            if ("CCSH".equals(symbol) || "CCSH Shark Island Ferry".equals(name))
-                return new Line(id, network, Product.FERRY, "CCSH");
-            if ("CCTZ".equals(symbol) || "CCTZ Taronga Zoo Ferry".equals(name))
-                return new Line(id, network, Product.FERRY, "CCTZ");
+            .mot("4") //
+            .rule(symbol("L1"), symbol("L1 Dulwich Hill Line")).then(Product.TRAM, label("L1")) //
+            .rule(symbol("L2"), symbol("L2 Randwick Line")).then(Product.TRAM, label("L2")) //
+            .rule(symbol("L3"), symbol("L3 Kingsford Line")).then(Product.TRAM, label("L3")) //
+
+            .mot("9") //
+            .rule(symbol("F1"), symbol("F1 Manly")).then(Product.FERRY, label("F1")) //
+            .rule(symbol("F2"), symbol("F2 Taronga Zoo")).then(Product.FERRY, label("F2")) //
+            .rule(symbol("F3"), symbol("F3 Parramatta River")).then(Product.FERRY, label("F3")) //
+            .rule(symbol("F4"), symbol("F4 Darling Harbour")).then(Product.FERRY, label("F4")) //
+            .rule(symbol("F5"), symbol("F5 Neutral Bay")).then(Product.FERRY, label("F5")) //
+            .rule(symbol("F6"), symbol("F6 Mosman Bay")).then(Product.FERRY, label("F6")) //
+            .rule(symbol("F7"), symbol("F7 Eastern Suburbs")).then(Product.FERRY, label("F7")) //
+            .rule(symbol("F8"), symbol("F8 Cockatoo Island")).then(Product.FERRY, label("F8")) //
+            .rule(trainName("Private ferry servic"), trainName("Private ferry and fa")).and(HAS_SYMBOL)
+            .then(Product.FERRY, SYMBOL_LABEL) //
+            .rule(symbol("MFF"), name("Manly Fast Ferry")).then(Product.FERRY, label("MFF")) //
+            .rule(symbol("LneCv"), name("Lane Cove Ferry")).then(Product.FERRY, label("LneCv")) //
+            .rule(symbol("EmpBa"), name("Woy Woy to Empire Bay Ferry")).then(Product.FERRY, label("EmpBa")) //
+            .rule(symbol("Stkn"), name("Stockton Ferry")).then(Product.FERRY, label("Stkn")) //
+            .rule(symbol("CCWB"), name("Circular Quay to Watsons Bay")).then(Product.FERRY, label("CCWB")) //
+            .rule(symbol("CCZC"), name("City to Taronga Zoo")).then(Product.FERRY, label("CCZC")) //
+            .rule(symbol("CCGD"), name("City to Garden Island and Manly")).then(Product.FERRY, label("CCGD")) //
+            .rule(symbol("CCWM"), name("Manly to Watsons Bay")).then(Product.FERRY, label("CCWM")) //
+            .rule(symbol("MDH"), name("MDH Manly to Darling Harbour Loop Ferry")).then(Product.FERRY, label("MDH")) //
+            .rule(symbol("CCGZ"), name("CCGZ Garden Island & Taronga Zoo Ferry")).then(Product.FERRY, label("CCGZ")) //
+            .rule(symbol("CCDH"), name("CCDH Circular Quay Luna Park Darling Harbour Ferry"))
+            .then(Product.FERRY, label("CCDH")) //
+            .rule(symbol("CCDM"), name("CCDM Manly Ferry")).then(Product.FERRY, label("CCDM")) //
+            .rule(symbol("CCSH"), name("CCSH Shark Island Ferry")).then(Product.FERRY, label("CCSH")) //
+            .rule(symbol("CCTZ"), name("CCTZ Taronga Zoo Ferry")).then(Product.FERRY, label("CCTZ")) //
+            .build();
 
+    @Override
+    protected Line parseLine(final @Nullable String id, final @Nullable String network, final @Nullable String mot,
+            final @Nullable String symbol, final @Nullable String name, final @Nullable String longName,
+            final @Nullable String trainType, final @Nullable String trainNum, final @Nullable String trainName) {
+        final Line line = LINES.classify(id, network, mot, symbol, name, longName, trainType, trainNum, trainName);
+        if (line != null)
+            return line;
+
+        if ("1".equals(mot) || "2".equals(mot) || "4".equals(mot) || "9".equals(mot))
             throw new IllegalStateException("cannot normalize mot='" + mot + "' symbol='" + symbol + "' name='" + name
                     + "' long='" + longName + "' trainType='" + trainType + "' trainNum='" + trainNum + "' trainName='"
                     + trainName + "'");
-        }
 
         return super.parseLine(id, network, mot, symbol, name, longName, trainType, trainNum, trainName);
     }
@@ -17,6 +17,14 @@
 
 package de.schildbach.pte;
 
+import static de.schildbach.pte.LineRules.HAS_SYMBOL;
+import static de.schildbach.pte.LineRules.NAME_LABEL;
+import static de.schildbach.pte.LineRules.NO_TRAIN_TYPE;
+import static de.schildbach.pte.LineRules.SYMBOL_LABEL;
+import static de.schildbach.pte.LineRules.TRAIN_NUM_LABEL;
+import static de.schildbach.pte.LineRules.trainName;
+import static de.schildbach.pte.LineRules.trainNum;
+
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
@@ -67,33 +75,27 @@ public class VrrProvider extends AbstractEfaProvider {
         }
     }
 
+    private static final LineRules LINES = LineRules.builder() //
+            .mot("0") //
+            .rule(trainName("Regionalbahn"), trainName("NordWestBahn")).and(HAS_SYMBOL)
+            .then(Product.REGIONAL_TRAIN, SYMBOL_LABEL) //
+            .rule(trainNum("SEV7"), trainNum("3SEV"), trainNum("SEV A"), trainNum("SEV B")).and(NO_TRAIN_TYPE)
+            .then(Product.BUS, TRAIN_NUM_LABEL) //
+            .mot("11") //
+            // Wuppertaler Schwebebahn & SkyTrain D'dorf, H-Bahn TU Dortmund
+            .rule(trainName("Schwebebahn"), trainName("H-Bahn")).then(Product.CABLECAR, NAME_LABEL) //
+            .rule().and(in -> in.longName != null
+                    && (in.longName.startsWith("Schwebebahn") || in.longName.startsWith("H-Bahn")))
+            .then(Product.CABLECAR, NAME_LABEL) //
+            .build();
+
     @Override
     protected Line parseLine(final @Nullable String id, final @Nullable String network, final @Nullable String mot,
             final @Nullable String symbol, final @Nullable String name, final @Nullable String longName,
             final @Nullable String trainType, final @Nullable String trainNum, final @Nullable String trainName) {
-        if ("0".equals(mot)) {
-            if ("Regionalbahn".equals(trainName) && symbol != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-            if ("NordWestBahn".equals(trainName) && symbol != null)
-                return new Line(id, network, Product.REGIONAL_TRAIN, symbol);
-
-            if (trainType == null && "SEV7".equals(trainNum))
-                return new Line(id, network, Product.BUS, trainNum);
-            if (trainType == null && "3SEV".equals(trainNum))
-                return new Line(id, network, Product.BUS, trainNum);
-            if (trainType == null && "SEV A".equals(trainNum))
-                return new Line(id, network, Product.BUS, trainNum);
-            if (trainType == null && "SEV B".equals(trainNum))
-                return new Line(id, network, Product.BUS, trainNum);
-        } else if ("11".equals(mot)) {
-            // Wuppertaler Schwebebahn & SkyTrain D'dorf
-            if ("Schwebebahn".equals(trainName) || (longName != null && longName.startsWith("Schwebebahn")))
-                return new Line(id, network, Product.CABLECAR, name);
-
-            // H-Bahn TU Dortmund
-            if ("H-Bahn".equals(trainName) || (longName != null && longName.startsWith("H-Bahn")))
-                return new Line(id, network, Product.CABLECAR, name);
-        }
+        final Line line = LINES.classify(id, network, mot, symbol, name, longName, trainType, trainNum, trainName);
+        if (line != null)
+            return line;
 
         return super.parseLine(id, network, mot, symbol, name, longName, trainType, trainNum, trainName);
     }
@@ -21,7 +21,6 @@ import static java.util.Objects.requireNonNull;
 
 import java.io.IOException;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -40,7 +39,9 @@ import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
 
+import de.schildbach.pte.util.DateTimes;
 import de.schildbach.pte.util.ParserUtils;
+import de.schildbach.pte.util.QueryTrace;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -364,7 +365,7 @@ public class VrsProvider extends AbstractNetworkProvider {
         try {
             int num = 0;
             final List<Location> locations = new ArrayList<>();
-            final JSONObject head = new JSONObject(page.toString());
+            final JSONObject head = QueryTrace.parse(() -> new JSONObject(page.toString()));
             final JSONArray objects = head.getJSONArray("objects");
             for (int i = 0; i < objects.length(); i++) {
                 final JSONObject entry = objects.getJSONObject(i);
@@ -396,7 +397,7 @@ public class VrsProvider extends AbstractNetworkProvider {
                     final JSONObject line = lines.getJSONObject(j);
                     products.add(parseProduct(line.getString("productCode"), line.getString("name")));
                 }
-                locations.add(new Location(type, id, coord, place, name, products));
+                locations.add(storeCoord(new Location(type, id, coord, place, name, products)));
                 if (maxLocations > 0 && ++num >= maxLocations) {
                     break;
                 }
@@ -427,7 +428,7 @@ public class VrsProvider extends AbstractNetworkProvider {
         final CharSequence page = httpClient.get(url.build());
 
         try {
-            final JSONObject head = new JSONObject(page.toString());
+            final JSONObject head = QueryTrace.parse(() -> new JSONObject(page.toString()));
             final String error = head.optString("error", null);
             if (error != null) {
                 if (error.equals("ASS2-Server lieferte leere Antwort."))
@@ -529,7 +530,7 @@ public class VrsProvider extends AbstractNetworkProvider {
         try {
             final List<SuggestedLocation> locations = new ArrayList<>();
 
-            final JSONObject head = new JSONObject(page.toString());
+            final JSONObject head = QueryTrace.parse(() -> new JSONObject(page.toString()));
             final String error = head.optString("error", null);
             if (error != null) {
                 if (error.equals("ASS2-Server lieferte leere Antwort."))
@@ -641,7 +642,7 @@ public class VrsProvider extends AbstractNetworkProvider {
 
         try {
             final List<Trip> trips = new ArrayList<>();
-            final JSONObject head = new JSONObject(page.toString());
+            final JSONObject head = QueryTrace.parse(() -> new JSONObject(page.toString()));
             final String error = head.optString("error", null);
             if (error != null) {
                 if (error.equals("ASS2-Server lieferte leere Antwort."))
@@ -1047,7 +1048,7 @@ public class VrsProvider extends AbstractNetworkProvider {
                 products.add(line.product);
             }
         }
-        return new LocationWithPosition(new Location(locationType, id, coord, place, name, products),
+        return new LocationWithPosition(storeCoord(new Location(locationType, id, coord, place, name, products)),
                 position != null ? new Position(position.substring(position.lastIndexOf(" ") + 1)) : null);
     }
 
@@ -1083,14 +1084,18 @@ public class VrsProvider extends AbstractNetworkProvider {
     }
 
     private final static Date parseDateTime(final String dateTimeStr) throws ParseException {
-        final int lastColonIndex = dateTimeStr.lastIndexOf(':');
-        if (lastColonIndex < 0)
-            throw new ParseException(dateTimeStr, lastColonIndex);
-        return new SimpleDateFormat("yyyy-MM-dd'T'kk:mm:ssZ")
-                .parse(dateTimeStr.substring(0, lastColonIndex) + "00");
+        try {
+            return new Date(DateTimes.parseIsoDateTimeWithOffset(dateTimeStr));
+        } catch (final IllegalArgumentException x) {
+            throw new ParseException(dateTimeStr, 0);
+        }
     }
 
     private final Point stationToCoord(String id) throws IOException {
+        final Point storedCoord = storedCoord(id);
+        if (storedCoord != null)
+            return storedCoord;
+
         final HttpUrl.Builder url = API_BASE.newBuilder();
         url.addQueryParameter("eID", "tx_vrsinfo_ass2_timetable");
         url.addQueryParameter("i", id);
@@ -1098,7 +1103,7 @@ public class VrsProvider extends AbstractNetworkProvider {
         final CharSequence page = httpClient.get(url.build());
 
         try {
-            final JSONObject head = new JSONObject(page.toString());
+            final JSONObject head = QueryTrace.parse(() -> new JSONObject(page.toString()));
             final String error = head.optString("error", null);
             if (error != null) {
                 throw new IllegalStateException(error);
@@ -1106,7 +1111,9 @@ public class VrsProvider extends AbstractNetworkProvider {
             final JSONArray timetable = head.getJSONArray("timetable");
             final JSONObject entry = timetable.getJSONObject(0);
             final JSONObject stop = entry.getJSONObject("stop");
-            return Point.fromDouble(stop.getDouble("x"), stop.getDouble("y"));
+            final Point coord = Point.fromDouble(stop.getDouble("x"), stop.getDouble("y"));
+            storeCoord(new Location(LocationType.STATION, id, coord));
+            return coord;
         } catch (final JSONException x) {
             throw new RuntimeException("cannot parse: '" + page + "' on " + url, x);
         }
@@ -17,57 +17,97 @@
 
 package de.schildbach.pte.dto;
 
+import static de.schildbach.pte.util.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Locale;
-import java.util.Objects;
 
 /**
+ * <p>
+ * Geographic point, stored as latitude and longitude in fixed-point 1E7 units, which is a resolution of about one
+ * centimeter.
+ * </p>
+ *
  * @author Andreas Schildbach
  */
 public final class Point implements Serializable {
     private static final long serialVersionUID = -256077054671402897L;
 
-    private final double lat, lon;
+    // serialized as degrees, compatible to previous versions
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("lat", Double.TYPE), new ObjectStreamField("lon", Double.TYPE) };
+
+    private int lat, lon; // not final only because of deserialization
 
-    private Point(final double lat, final double lon) {
+    private Point(final int lat, final int lon) {
         this.lat = lat;
         this.lon = lon;
     }
 
     public static Point fromDouble(final double lat, final double lon) {
+        return new Point(to1E7(lat), to1E7(lon));
+    }
+
+    public static Point from1E7(final int lat, final int lon) {
         return new Point(lat, lon);
     }
 
     public static Point from1E6(final int lat, final int lon) {
-        return new Point(lat / 1E6, lon / 1E6);
+        return new Point(scaleTo1E7(lat, 10), scaleTo1E7(lon, 10));
     }
 
     public static Point from1E5(final int lat, final int lon) {
-        return new Point(lat / 1E5, lon / 1E5);
+        return new Point(scaleTo1E7(lat, 100), scaleTo1E7(lon, 100));
+    }
+
+    static int to1E7(final double degrees) {
+        checkArgument(!Double.isNaN(degrees), () -> "not a number");
+        final long value = Math.round(degrees * 1E7);
+        checkArgument(value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE,
+                () -> "out of range: " + degrees);
+        return (int) value;
+    }
+
+    private static int scaleTo1E7(final int value, final int factor) {
+        final long scaled = (long) value * factor;
+        checkArgument(scaled >= Integer.MIN_VALUE && scaled <= Integer.MAX_VALUE, () -> "out of range: " + value);
+        return (int) scaled;
     }
 
     public double getLatAsDouble() {
-        return lat;
+        return lat / 1E7;
     }
 
     public double getLonAsDouble() {
+        return lon / 1E7;
+    }
+
+    public int getLatAs1E7() {
+        return lat;
+    }
+
+    public int getLonAs1E7() {
         return lon;
     }
 
     public int getLatAs1E6() {
-        return (int) Math.round(lat * 1E6);
+        return Math.floorDiv(lat + 5, 10);
     }
 
     public int getLonAs1E6() {
-        return (int) Math.round(lon * 1E6);
+        return Math.floorDiv(lon + 5, 10);
     }
 
     public int getLatAs1E5() {
-        return (int) Math.round(lat * 1E5);
+        return Math.floorDiv(lat + 50, 100);
     }
 
     public int getLonAs1E5() {
-        return (int) Math.round(lon * 1E5);
+        return Math.floorDiv(lon + 50, 100);
     }
 
     @Override
@@ -86,11 +126,24 @@ public final class Point implements Serializable {
 
     @Override
     public int hashCode() {
-        return Objects.hash(lat, lon);
+        return 31 * lat + lon;
     }
 
     @Override
     public String toString() {
-        return String.format(Locale.ENGLISH, "%.7f/%.7f", lat, lon);
+        return String.format(Locale.ENGLISH, "%.7f/%.7f", getLatAsDouble(), getLonAsDouble());
+    }
+
+    private void writeObject(final ObjectOutputStream os) throws IOException {
+        final ObjectOutputStream.PutField fields = os.putFields();
+        fields.put("lat", getLatAsDouble());
+        fields.put("lon", getLonAsDouble());
+        os.writeFields();
+    }
+
+    private void readObject(final ObjectInputStream is) throws ClassNotFoundException, IOException {
+        final ObjectInputStream.GetField fields = is.readFields();
+        lat = to1E7(fields.get("lat", 0.0));
+        lon = to1E7(fields.get("lon", 0.0));
     }
 }
@@ -0,0 +1,227 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.dto;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+/**
+ * <p>
+ * Immutable list of points, like the path of a trip leg, backed by a single array of 1E7 coordinates rather than one
+ * object per point. Points are created on access, so prefer the coordinate accessors when iterating long paths.
+ * </p>
+ */
+public final class PointArray extends AbstractList<Point> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 2617307493722145718L;
+
+    private final int[] coords; // latitude and longitude of each point
+    private final int size;
+
+    private PointArray(final int[] coords, final int size) {
+        this.coords = coords;
+        this.size = size;
+    }
+
+    public static Builder builder() {
+        return new Builder(16);
+    }
+
+    public static Builder builder(final int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+    /**
+     * <p>
+     * Returns a list of points that are decoded only when the list is first accessed, e.g. from the raw polyline a
+     * provider responded with. Most paths are never looked at, so this saves decoding them.
+     * </p>
+     *
+     * <p>
+     * The decoder is called at most once, even if multiple threads access the list concurrently, and released after
+     * decoding.
+     * </p>
+     */
+    public static List<Point> lazy(final Supplier<PointArray> decoder) {
+        return new Lazy(decoder);
+    }
+
+    @Override
+    public Point get(final int index) {
+        checkIndex(index);
+        return Point.from1E7(coords[index * 2], coords[index * 2 + 1]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int getLatAs1E7(final int index) {
+        checkIndex(index);
+        return coords[index * 2];
+    }
+
+    public int getLonAs1E7(final int index) {
+        checkIndex(index);
+        return coords[index * 2 + 1];
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof PointArray))
+            return super.equals(o);
+        final PointArray other = (PointArray) o;
+        if (this.size != other.size)
+            return false;
+        for (int i = 0; i < size * 2; i++)
+            if (this.coords[i] != other.coords[i])
+                return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 1;
+        for (int i = 0; i < size * 2; i += 2)
+            hashCode = 31 * hashCode + (31 * coords[i] + coords[i + 1]);
+        return hashCode;
+    }
+
+    public static final class Builder {
+        private int[] coords;
+        private int size = 0;
+
+        private Builder(final int expectedSize) {
+            this.coords = new int[Math.max(expectedSize, 1) * 2];
+        }
+
+        /**
+         * Makes room for at least the given total number of points, so adding them does not need to grow the array.
+         */
+        public Builder ensureCapacity(final int minSize) {
+            if (coords.length < minSize * 2)
+                coords = Arrays.copyOf(coords, Math.max(coords.length * 2, minSize * 2));
+            return this;
+        }
+
+        public Builder add1E7(final int lat, final int lon) {
+            if (coords.length < size * 2 + 2)
+                coords = Arrays.copyOf(coords, coords.length * 2);
+            coords[size * 2] = lat;
+            coords[size * 2 + 1] = lon;
+            size++;
+            return this;
+        }
+
+        public Builder add1E6(final int lat, final int lon) {
+            return add1E7(Math.multiplyExact(lat, 10), Math.multiplyExact(lon, 10));
+        }
+
+        public Builder add1E5(final int lat, final int lon) {
+            return add1E7(Math.multiplyExact(lat, 100), Math.multiplyExact(lon, 100));
+        }
+
+        public Builder addDouble(final double lat, final double lon) {
+            return add1E7(Point.to1E7(lat), Point.to1E7(lon));
+        }
+
+        public Builder add(final Point point) {
+            return add1E7(point.getLatAs1E7(), point.getLonAs1E7());
+        }
+
+        public Builder addAll(final List<Point> points) {
+            if (points instanceof PointArray || points instanceof Lazy) {
+                final PointArray array = points instanceof Lazy ? ((Lazy) points).points() : (PointArray) points;
+                ensureCapacity(size + array.size);
+                System.arraycopy(array.coords, 0, coords, size * 2, array.size * 2);
+                size += array.size;
+            } else {
+                for (final Point point : points)
+                    add(point);
+            }
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public PointArray build() {
+            return new PointArray(coords.length == size * 2 ? coords : Arrays.copyOf(coords, size * 2), size);
+        }
+    }
+
+    private static final class Lazy extends AbstractList<Point> implements RandomAccess {
+        private @Nullable Supplier<PointArray> decoder;
+        private volatile @Nullable PointArray points = null;
+
+        Lazy(final Supplier<PointArray> decoder) {
+            this.decoder = decoder;
+        }
+
+        PointArray points() {
+            PointArray points = this.points;
+            if (points == null) {
+                synchronized (this) {
+                    points = this.points;
+                    if (points == null) {
+                        points = decoder.get();
+                        this.points = points;
+                        decoder = null;
+                    }
+                }
+            }
+            return points;
+        }
+
+        @Override
+        public Point get(final int index) {
+            return points().get(index);
+        }
+
+        @Override
+        public int size() {
+            return points().size();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (o == this)
+                return true;
+            return points().equals(o instanceof Lazy ? ((Lazy) o).points() : o);
+        }
+
+        @Override
+        public int hashCode() {
+            return points().hashCode();
+        }
+    }
+}
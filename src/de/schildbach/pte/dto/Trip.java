@@ -25,7 +25,6 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
@@ -348,9 +347,10 @@ public final class Trip implements Serializable {
             try {
                 final int pathSize = is.readInt();
                 if (pathSize >= 0) {
-                    path = new ArrayList<>(pathSize);
+                    final PointArray.Builder builder = PointArray.builder(pathSize);
                     for (int i = 0; i < pathSize; i++)
-                        path.add(Point.from1E6(is.readInt(), is.readInt()));
+                        builder.add1E6(is.readInt(), is.readInt());
+                    path = builder.build();
                 } else {
                     path = null;
                 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.schildbach.pte.exception.CircuitOpenException;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.ByteString;
+
+/**
+ * <p>
+ * Counterpart of {@link RetryingCall} for queries run via {@link AsyncQuery}. Each attempt is enqueued to the OkHttp
+ * dispatcher, and waiting for the rate limiter or between attempts is scheduled rather than blocking a thread.
+ * </p>
+ *
+ * <p>
+ * The response body is read completely on the dispatcher, so that the query can parse it without waiting for the
+ * network. Requests are not hedged.
+ * </p>
+ */
+final class AsyncCall implements Callback {
+    private final RetryPolicy policy;
+    private final boolean idempotent;
+    private final CallControl callControl;
+    private final @Nullable RateLimiter rateLimiter;
+    private final @Nullable CircuitBreaker circuitBreaker;
+    private final CompletableFuture<BufferedResponse> future = new CompletableFuture<>();
+    private volatile Call call;
+    private volatile int number = 1;
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncCall.class);
+
+    AsyncCall(final Call call, final RetryPolicy policy, final boolean idempotent, final CallControl callControl,
+            final @Nullable RateLimiter rateLimiter, final @Nullable CircuitBreaker circuitBreaker) {
+        this.call = call;
+        this.policy = policy;
+        this.idempotent = idempotent;
+        this.callControl = callControl;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    CompletableFuture<BufferedResponse> start() {
+        attempt();
+        return future;
+    }
+
+    private void attempt() {
+        if (callControl.isCancelled()) {
+            future.completeExceptionally(new InterruptedIOException("cancelled"));
+            return;
+        }
+        if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+            future.completeExceptionally(
+                    new CircuitOpenException(call.request().url(), circuitBreaker.getRetryAfterMillis()));
+            return;
+        }
+        final long waitNanos = rateLimiter != null ? rateLimiter.reserve(callControl.remainingNanos()) : 0;
+        if (waitNanos < 0)
+            future.completeExceptionally(new InterruptedIOException("deadline exceeded while waiting for rate limit"));
+        else if (waitNanos > 0)
+            AsyncQuery.SCHEDULER.schedule(this::send, waitNanos, TimeUnit.NANOSECONDS);
+        else
+            send();
+    }
+
+    private void send() {
+        try {
+            callControl.attach(call);
+        } catch (final InterruptedIOException x) {
+            if (rateLimiter != null)
+                rateLimiter.release();
+            future.completeExceptionally(x);
+            return;
+        }
+        call.enqueue(this);
+    }
+
+    @Override
+    public void onResponse(final Call call, final Response response) {
+        HttpClient.onResponse(response.code(), rateLimiter, circuitBreaker);
+        final BufferedResponse buffered;
+        try (final ResponseBody body = response.body()) {
+            buffered = new BufferedResponse(response, body.byteString(), body.contentType());
+        } catch (final IOException x) {
+            callControl.detach(call);
+            future.completeExceptionally(x);
+            return;
+        }
+        callControl.detach(call);
+        final long delayNanos;
+        try {
+            delayNanos = policy.retryDelayNanos(number, buffered.newResponse(), idempotent, callControl);
+        } catch (final IOException x) {
+            future.completeExceptionally(x);
+            return;
+        }
+        if (delayNanos < 0) {
+            future.complete(buffered);
+            return;
+        }
+        log.info("Got {} response, retrying {}", response.code(), call.request().url());
+        retry(delayNanos);
+    }
+
+    @Override
+    public void onFailure(final Call call, final IOException x) {
+        callControl.detach(call);
+        HttpClient.onFailure(call, callControl, circuitBreaker);
+        final long delayNanos = call.isCanceled() ? -1 : policy.retryDelayNanos(number, x, idempotent, callControl);
+        if (delayNanos < 0) {
+            future.completeExceptionally(x);
+            return;
+        }
+        log.info("Got {}, retrying {}", x.toString(), call.request().url());
+        retry(delayNanos);
+    }
+
+    private void retry(final long delayNanos) {
+        number++;
+        call = call.clone();
+        AsyncQuery.SCHEDULER.schedule(this::attempt, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Response whose body has been read completely, so that it can be handed out any number of times.
+     */
+    static final class BufferedResponse {
+        private final Response response;
+        private final ByteString body;
+        private final @Nullable MediaType contentType;
+
+        private BufferedResponse(final Response response, final ByteString body,
+                final @Nullable MediaType contentType) {
+            this.response = response;
+            this.body = body;
+            this.contentType = contentType;
+        }
+
+        Response newResponse() {
+            return response.newBuilder().body(ResponseBody.create(body, contentType)).build();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * <p>
+ * Runs a provider query without occupying a thread while it waits for the network.
+ * </p>
+ *
+ * <p>
+ * Providers are written as blocking code. Rather than blocking, {@link HttpClient} enqueues each call of an
+ * asynchronous query to the OkHttp dispatcher and suspends the query by unwinding it. Once the response has been
+ * read completely, the query is run again from the start on the given executor. Steps that completed in a previous
+ * run, like calls that have been answered, are replayed rather than repeated, so the query proceeds up to the next
+ * response it has to wait for, or returns its result. The executor thus only ever parses and processes responses.
+ * </p>
+ *
+ * <p>
+ * Queries that issue several calls parse the earlier responses again on each run, so they must not have side effects
+ * that break if repeated.
+ * </p>
+ */
+public final class AsyncQuery<T> {
+    static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "pte-async-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final CallControl.IOCallable<T> query;
+    private final CallControl callControl;
+    private final Executor executor;
+    private final CompletableFuture<T> future;
+    private final Map<Object, Object> steps = new HashMap<>();
+    private final Map<Object, Integer> occurrences = new HashMap<>();
+    private @Nullable CompletableFuture<?> pending = null;
+
+    private AsyncQuery(final CallControl.IOCallable<T> query, final CallControl callControl,
+            final Executor executor) {
+        this.query = query;
+        this.callControl = callControl;
+        this.executor = executor;
+        this.future = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(final boolean mayInterruptIfRunning) {
+                callControl.cancel();
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+    }
+
+    /**
+     * Starts the given query. Cancelling the returned future cancels the query, including all of its calls.
+     *
+     * @param timeoutNanos
+     *            deadline of the query, including the time it waits for the executor, or 0 for no deadline
+     */
+    public static <T> CompletableFuture<T> start(final CallControl.IOCallable<T> query, final long timeoutNanos,
+            final Executor executor) {
+        final CallControl callControl = timeoutNanos > 0 ? new CallControl(timeoutNanos, TimeUnit.NANOSECONDS)
+                : new CallControl();
+        final AsyncQuery<T> asyncQuery = new AsyncQuery<>(query, callControl, executor);
+        callControl.setAsyncQuery(asyncQuery);
+        final CompletableFuture<T> future = asyncQuery.future;
+        if (timeoutNanos > 0) {
+            final ScheduledFuture<?> timer = SCHEDULER.schedule(() -> {
+                if (future.completeExceptionally(new InterruptedIOException("deadline exceeded")))
+                    callControl.cancel();
+            }, timeoutNanos, TimeUnit.NANOSECONDS);
+            future.whenComplete((value, x) -> timer.cancel(false));
+        }
+        asyncQuery.resume();
+        return future;
+    }
+
+    private void resume() {
+        try {
+            executor.execute(this::run);
+        } catch (final RejectedExecutionException x) {
+            future.completeExceptionally(x);
+        }
+    }
+
+    private void run() {
+        if (future.isDone())
+            return;
+        occurrences.clear();
+        try {
+            future.complete(callControl.call(query));
+        } catch (final Suspension x) {
+            final CompletableFuture<?> pending = this.pending;
+            this.pending = null;
+            pending.whenComplete((value, failure) -> resume());
+        } catch (final Throwable x) {
+            future.completeExceptionally(x);
+        }
+    }
+
+    /**
+     * Returns the outcome of the given future, suspending the query until the future is complete.
+     */
+    <V> V await(final CompletableFuture<V> future) throws IOException {
+        if (!future.isDone()) {
+            pending = future;
+            throw Suspension.INSTANCE;
+        }
+        try {
+            return future.getNow(null);
+        } catch (final CancellationException x) {
+            throw new InterruptedIOException("cancelled");
+        } catch (final CompletionException x) {
+            final Throwable cause = x.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return key for the given step, distinguishing repeated occurrences of the same step within one run
+     */
+    Object stepKey(final Object step) {
+        return Arrays.asList(step, occurrences.merge(step, 1, Integer::sum));
+    }
+
+    /**
+     * @return the state stored for the given step by a previous run, or null if the step has not been taken before
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    <S> S getStep(final Object key) {
+        return (S) steps.get(key);
+    }
+
+    void putStep(final Object key, final Object state) {
+        steps.put(key, state);
+    }
+
+    void removeStep(final Object key) {
+        steps.remove(key);
+    }
+
+    /**
+     * Runs the given action once the query has completed, in whichever way.
+     */
+    void whenDone(final Runnable action) {
+        future.whenComplete((value, x) -> action.run());
+    }
+
+    static boolean isSuspension(final Throwable x) {
+        return x instanceof Suspension;
+    }
+
+    /**
+     * Unwinds a query that has to wait. It is an error rather than an exception, so that it passes through the
+     * exception handling of providers.
+     */
+    private static final class Suspension extends Error {
+        private static final long serialVersionUID = 1L;
+        private static final Suspension INSTANCE = new Suspension();
+
+        private Suspension() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import okhttp3.Call;
+
+/**
+ * <p>
+ * Cancellation and deadline of all HTTP calls that are issued by one provider query.
+ * </p>
+ *
+ * <p>
+ * While a query is run via {@link #call(IOCallable)}, {@link HttpClient} attaches each of its calls to this
+ * control. Cancelling the control cancels all attached calls, and the remaining time until the deadline is
+ * applied as OkHttp call timeout.
+ * </p>
+ */
+public final class CallControl {
+    private static final ThreadLocal<CallControl> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanoTime;
+    private final boolean hasDeadline;
+    private final Set<Call> calls = ConcurrentHashMap.newKeySet();
+    private final Set<Runnable> cancelListeners = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled = false;
+    private volatile @Nullable AsyncQuery<?> asyncQuery = null;
+
+    public CallControl() {
+        this.deadlineNanoTime = 0;
+        this.hasDeadline = false;
+    }
+
+    public CallControl(final long timeout, final TimeUnit unit) {
+        this.deadlineNanoTime = System.nanoTime() + unit.toNanos(timeout);
+        this.hasDeadline = true;
+    }
+
+    public interface IOCallable<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * Runs the given query on the current thread, with all HTTP calls it issues being governed by this control.
+     */
+    public <T> T call(final IOCallable<T> callable) throws IOException {
+        final CallControl previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            checkNotCancelled();
+            return callable.call();
+        } finally {
+            if (previous != null)
+                CURRENT.set(previous);
+            else
+                CURRENT.remove();
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (final Call call : calls)
+            call.cancel();
+        for (final Runnable listener : cancelListeners)
+            listener.run();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isExpired() {
+        return hasDeadline && deadlineNanoTime - System.nanoTime() <= 0;
+    }
+
+    static @Nullable CallControl current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return the asynchronous query governed by this control, or null if the query blocks its thread
+     */
+    @Nullable
+    AsyncQuery<?> asyncQuery() {
+        return asyncQuery;
+    }
+
+    void setAsyncQuery(final AsyncQuery<?> asyncQuery) {
+        this.asyncQuery = asyncQuery;
+    }
+
+    /**
+     * Returns the time left until the deadline in nanoseconds, or {@link Long#MAX_VALUE} if there is no deadline.
+     */
+    long remainingNanos() {
+        return hasDeadline ? deadlineNanoTime - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Runs the given listener once this control is cancelled, right away if it already is.
+     */
+    void addCancelListener(final Runnable listener) {
+        cancelListeners.add(listener);
+        if (cancelled && cancelListeners.remove(listener))
+            listener.run();
+    }
+
+    void removeCancelListener(final Runnable listener) {
+        cancelListeners.remove(listener);
+    }
+
+    void attach(final Call call) throws InterruptedIOException {
+        if (cancelled)
+            throw new InterruptedIOException("cancelled");
+        if (hasDeadline) {
+            final long remainingNanos = remainingNanos();
+            if (remainingNanos <= 0)
+                throw new InterruptedIOException("deadline exceeded");
+            call.timeout().timeout(remainingNanos, TimeUnit.NANOSECONDS);
+        }
+        calls.add(call);
+        if (cancelled)
+            call.cancel();
+    }
+
+    void detach(final Call call) {
+        calls.remove(call);
+    }
+
+    private void checkNotCancelled() throws InterruptedIOException {
+        if (cancelled)
+            throw new InterruptedIOException("cancelled");
+        if (isExpired())
+            throw new InterruptedIOException("deadline exceeded");
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static de.schildbach.pte.util.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>
+ * Circuit breaker that stops requests to an upstream after it failed repeatedly.
+ * </p>
+ *
+ * <p>
+ * After the given number of consecutive failures, the circuit opens and requests are refused for the open duration.
+ * Then it is half-open: a single probe request is let through, and its outcome decides whether the circuit closes
+ * again or stays open for another open duration. If the probe does not report back within the open duration, e.g.
+ * because it was cancelled, another probe is let through.
+ * </p>
+ */
+public final class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier nanoTime;
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long changedNanoTime;
+
+    public CircuitBreaker(final int failureThreshold, final long openDuration, final TimeUnit unit) {
+        this(failureThreshold, openDuration, unit, System::nanoTime);
+    }
+
+    CircuitBreaker(final int failureThreshold, final long openDuration, final TimeUnit unit,
+            final LongSupplier nanoTime) {
+        checkArgument(failureThreshold > 0, () -> "failureThreshold must be positive: " + failureThreshold);
+        checkArgument(openDuration > 0, () -> "openDuration must be positive: " + openDuration);
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos(openDuration);
+        this.nanoTime = nanoTime;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return whether a request may be made
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.CLOSED)
+            return true;
+        final long now = nanoTime.getAsLong();
+        if (now - changedNanoTime < openNanos)
+            return false;
+        // let a probe through
+        state = State.HALF_OPEN;
+        changedNanoTime = now;
+        return true;
+    }
+
+    /**
+     * @return milliseconds until the next request may be made, or 0 if the circuit is closed
+     */
+    public synchronized long getRetryAfterMillis() {
+        if (state == State.CLOSED)
+            return 0;
+        return Math.max(TimeUnit.NANOSECONDS.toMillis(openNanos - (nanoTime.getAsLong() - changedNanoTime)), 0);
+    }
+
+    public synchronized void onSuccess() {
+        failures = 0;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            state = State.OPEN;
+            changedNanoTime = nanoTime.getAsLong();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.pte.dto.Point;
+
+/**
+ * <p>
+ * Store of station coordinates by key, used by providers to avoid a request just to look up the coordinate of a
+ * station they only know the id of.
+ * </p>
+ *
+ * <p>
+ * Implementations must be thread-safe. They may forget entries at any time.
+ * </p>
+ */
+public interface CoordStore {
+    @Nullable
+    Point get(String key);
+
+    void put(String key, Point coord);
+
+    /**
+     * @return store that keeps all coordinates on the heap, for the lifetime of the store
+     */
+    static CoordStore inMemory() {
+        final Map<String, Point> map = new ConcurrentHashMap<>();
+        return new CoordStore() {
+            @Override
+            public @Nullable Point get(final String key) {
+                return map.get(key);
+            }
+
+            @Override
+            public void put(final String key, final Point coord) {
+                map.put(key, coord);
+            }
+        };
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * <p>
+ * Parses the date and time formats of the providers directly into milliseconds since the epoch, without calendars,
+ * regular expressions or intermediate strings. Local dates are represented as days since 1970-01-01.
+ * </p>
+ *
+ * <p>
+ * Local times are converted using the zone offset of their day, which is computed once and cached. Days on which the
+ * offset changes are converted by a {@link GregorianCalendar}, so results are the same as from setting the fields of
+ * a lenient calendar. Instances are safe for use by multiple threads.
+ * </p>
+ */
+public final class DateTimes {
+    public static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+
+    private static final int TRANSITION = Integer.MIN_VALUE;
+    private static final int CACHE_SIZE = 64; // power of two
+
+    private final TimeZone timeZone;
+    private final Day[] days = new Day[CACHE_SIZE];
+
+    private static final class Day {
+        final int epochDay;
+        final int offset; // or TRANSITION if the offset changes during the day
+
+        Day(final int epochDay, final int offset) {
+            this.epochDay = epochDay;
+            this.offset = offset;
+        }
+    }
+
+    public DateTimes(final TimeZone timeZone) {
+        this.timeZone = (TimeZone) timeZone.clone();
+    }
+
+    /**
+     * @return milliseconds since the epoch of the given local time, which may exceed one day
+     */
+    public long time(final int epochDay, final long millisOfDay) {
+        final long local = epochDay * DAY_MILLIS + millisOfDay;
+        final int day = (int) Math.floorDiv(local, DAY_MILLIS);
+        final int offset = offset(day);
+        if (offset != TRANSITION)
+            return local - offset;
+        return calendar(day, local - day * DAY_MILLIS).getTimeInMillis();
+    }
+
+    /**
+     * @return milliseconds since the epoch of the given local time, where all fields may exceed their range
+     */
+    public long time(final int epochDay, final int hour, final int minute, final int second) {
+        return time(epochDay, hour * 3600000L + minute * 60000L + second * 1000L);
+    }
+
+    /**
+     * @return local day of the given milliseconds since the epoch
+     */
+    public int epochDay(final long time) {
+        return (int) Math.floorDiv(time + timeZone.getOffset(time), DAY_MILLIS);
+    }
+
+    private int offset(final int epochDay) {
+        final int index = epochDay & (CACHE_SIZE - 1);
+        final Day cached = days[index];
+        if (cached != null && cached.epochDay == epochDay)
+            return cached.offset;
+
+        final long start = calendar(epochDay, 0).getTimeInMillis();
+        final int offset = (int) (epochDay * DAY_MILLIS - start);
+        final boolean uniform = timeZone.getOffset(start) == offset
+                && timeZone.getOffset(start + DAY_MILLIS - 1) == offset;
+        final Day day = new Day(epochDay, uniform ? offset : TRANSITION);
+        days[index] = day;
+        return day.offset;
+    }
+
+    private Calendar calendar(final int epochDay, final long millisOfDay) {
+        final Calendar calendar = new GregorianCalendar(timeZone);
+        calendar.clear();
+        final long civil = civil(epochDay);
+        calendar.set((int) (civil >> 16), (int) (civil >> 8 & 0xff) - 1, (int) (civil & 0xff));
+        calendar.set(Calendar.MILLISECOND, (int) millisOfDay);
+        return calendar;
+    }
+
+    /**
+     * @return days since 1970-01-01 of the given date, where month and day may exceed their range
+     */
+    public static int epochDay(int year, int month, final int day) {
+        year += Math.floorDiv(month - 1, 12);
+        month = Math.floorMod(month - 1, 12) + 1;
+
+        // see http://howardhinnant.github.io/date_algorithms.html#days_from_civil
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = Math.floorDiv(y, 400);
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468 + day - 1;
+    }
+
+    /**
+     * @return year, month and day of the given days since 1970-01-01, packed into bits 16 and up, 8 to 15 and 0 to 7
+     */
+    static long civil(final int epochDay) {
+        // see http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+        final int z = epochDay + 719468;
+        final int era = Math.floorDiv(z, 146097);
+        final int dayOfEra = z - era * 146097;
+        final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final int mp = (5 * dayOfYear + 2) / 153;
+        final int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        final int month = mp < 10 ? mp + 3 : mp - 9;
+        final int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return (long) year << 16 | month << 8 | day;
+    }
+
+    /**
+     * Parses dates like {@code 2026-10-17}, {@code 20261017}, {@code 17-10-2026} or {@code 17.10.2026}.
+     *
+     * @return days since 1970-01-01
+     */
+    public static int parseIsoDate(final CharSequence str) {
+        final int length = str.length();
+        if (length == 8)
+            return epochDay(digits(str, 0, 4), digits(str, 4, 6), digits(str, 6, 8));
+        if (length == 9 && str.charAt(4) == '-')
+            return epochDay(digits(str, 0, 4), digits(str, 5, 7), digits(str, 7, 9));
+        if (length == 9 && str.charAt(6) == '-')
+            return epochDay(digits(str, 0, 4), digits(str, 4, 6), digits(str, 7, 9));
+        if (length == 10) {
+            final char sep2 = str.charAt(2), sep4 = str.charAt(4);
+            if (sep4 == '-' && str.charAt(7) == '-')
+                return epochDay(digits(str, 0, 4), digits(str, 5, 7), digits(str, 8, 10));
+            if ((sep2 == '-' || sep2 == '.') && (str.charAt(5) == '-' || str.charAt(5) == '.'))
+                return epochDay(digits(str, 6, 10), digits(str, 3, 5), digits(str, 0, 2));
+        }
+        throw new IllegalArgumentException("cannot parse: '" + str + "'");
+    }
+
+    /**
+     * Parses times like {@code 08:15}, {@code 0815}, {@code 08:15:30} or {@code 081530}, also with {@code -} as
+     * separator.
+     *
+     * @return seconds of the day
+     */
+    public static int parseIsoTime(final CharSequence str) {
+        final int length = str.length();
+        if (length == 4)
+            return digits(str, 0, 2) * 3600 + digits(str, 2, 4) * 60;
+        if (length == 5 && isTimeSeparator(str.charAt(2)))
+            return digits(str, 0, 2) * 3600 + digits(str, 3, 5) * 60;
+        if (length == 6)
+            return digits(str, 0, 2) * 3600 + digits(str, 2, 4) * 60 + digits(str, 4, 6);
+        if (length == 8 && isTimeSeparator(str.charAt(2)) && isTimeSeparator(str.charAt(5)))
+            return digits(str, 0, 2) * 3600 + digits(str, 3, 5) * 60 + digits(str, 6, 8);
+        if (length == 7 && isTimeSeparator(str.charAt(2)))
+            return digits(str, 0, 2) * 3600 + digits(str, 3, 5) * 60 + digits(str, 5, 7);
+        if (length == 7 && isTimeSeparator(str.charAt(4)))
+            return digits(str, 0, 2) * 3600 + digits(str, 2, 4) * 60 + digits(str, 5, 7);
+        throw new IllegalArgumentException("cannot parse: '" + str + "'");
+    }
+
+    /**
+     * Parses times like {@code 8:15}, {@code 08:15} or {@code 8:15:30}, with one or two digits for the hour.
+     *
+     * @return seconds of the day
+     */
+    public static int parseEuropeanTime(final CharSequence str) {
+        final int length = str.length();
+        final int colon = length > 1 && str.charAt(1) == ':' ? 1 : 2;
+        if (length >= colon + 3 && str.charAt(colon) == ':') {
+            final int seconds = digits(str, 0, colon) * 3600 + digits(str, colon + 1, colon + 3) * 60;
+            if (length == colon + 3)
+                return seconds;
+            if (length == colon + 6 && str.charAt(colon + 3) == ':')
+                return seconds + digits(str, colon + 4, colon + 6);
+        }
+        throw new IllegalArgumentException("cannot parse: '" + str + "'");
+    }
+
+    private static boolean isTimeSeparator(final char c) {
+        return c == ':' || c == '-';
+    }
+
+    /**
+     * Parses date and time with zone offset like {@code 2026-10-17T08:15:00+02:00}, {@code 2026-10-17T08:15:00+0200}
+     * or {@code 2026-10-17T06:15:00Z}.
+     *
+     * @return milliseconds since the epoch
+     */
+    public static long parseIsoDateTimeWithOffset(final CharSequence str) {
+        final int length = str.length();
+        if (length >= 20 && str.charAt(4) == '-' && str.charAt(7) == '-' && str.charAt(10) == 'T'
+                && str.charAt(13) == ':' && str.charAt(16) == ':') {
+            final int epochDay = epochDay(digits(str, 0, 4), digits(str, 5, 7), digits(str, 8, 10));
+            final long local = epochDay * DAY_MILLIS + digits(str, 11, 13) * 3600000L + digits(str, 14, 16) * 60000L
+                    + digits(str, 17, 19) * 1000L;
+            final char sign = str.charAt(19);
+            if (length == 20 && sign == 'Z')
+                return local;
+            if (sign == '+' || sign == '-') {
+                final int offsetMinutes;
+                if (length == 25 && str.charAt(22) == ':')
+                    offsetMinutes = digits(str, 20, 22) * 60 + digits(str, 23, 25);
+                else if (length == 24)
+                    offsetMinutes = digits(str, 20, 22) * 60 + digits(str, 22, 24);
+                else
+                    throw new IllegalArgumentException("cannot parse: '" + str + "'");
+                return local - (sign == '+' ? offsetMinutes : -offsetMinutes) * 60000L;
+            }
+        }
+        throw new IllegalArgumentException("cannot parse: '" + str + "'");
+    }
+
+    /**
+     * @return decimal value of the given range of characters, which must all be digits
+     */
+    public static int digits(final CharSequence str, final int start, final int end) {
+        if (start >= end)
+            throw new IllegalArgumentException("cannot parse: '" + str + "'");
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            final int digit = str.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                throw new IllegalArgumentException("cannot parse: '" + str + "'");
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
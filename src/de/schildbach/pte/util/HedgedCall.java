@@ -0,0 +1,231 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * <p>
+ * Executes a call, sending an identical hedge if the call has not been answered after a delay. Whichever answers
+ * first wins, and the other one is cancelled.
+ * </p>
+ *
+ * <p>
+ * The primary call runs synchronously on the calling thread, so it is not subject to the limits of the OkHttp
+ * dispatcher. Only the hedge is enqueued. If the primary call fails while the hedge is in flight, the outcome of the
+ * hedge is awaited.
+ * </p>
+ *
+ * <p>
+ * The hedge is only sent if the circuit breaker lets it through and the rate limiter has a token available right
+ * away, so it never delays other requests. It is prepared on the calling thread, so that it is traced as part of the
+ * same query as the primary call.
+ * </p>
+ *
+ * <p>
+ * The losing call is detached from the {@link CallControl} right away. A winning hedge stays attached until its body
+ * is closed, like the primary call does until the request is finished.
+ * </p>
+ */
+final class HedgedCall implements Callback {
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "pte-hedge-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Call primary;
+    private final HedgingPolicy policy;
+    private final @Nullable CallControl callControl;
+    private final @Nullable RateLimiter rateLimiter;
+    private final @Nullable CircuitBreaker circuitBreaker;
+    private @Nullable Call prepared = null;
+    private @Nullable Call hedge = null;
+    private @Nullable Response hedgeResponse = null;
+    private @Nullable IOException hedgeFailure = null;
+    private boolean primaryFinished = false;
+    private boolean done = false;
+
+    HedgedCall(final Call primary, final HedgingPolicy policy, final @Nullable CallControl callControl,
+            final @Nullable RateLimiter rateLimiter, final @Nullable CircuitBreaker circuitBreaker) {
+        this.primary = primary;
+        this.policy = policy;
+        this.callControl = callControl;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    Response execute() throws IOException {
+        final long startNanoTime = System.nanoTime();
+        final long delayNanos = policy.onRequest();
+        if (delayNanos < 0) {
+            final Response response = primary.execute();
+            policy.recordLatency(System.nanoTime() - startNanoTime);
+            return response;
+        }
+
+        synchronized (this) {
+            prepared = primary.clone();
+        }
+        final ScheduledFuture<?> timer = SCHEDULER.schedule(this::sendHedge, delayNanos, TimeUnit.NANOSECONDS);
+        Response response = null;
+        IOException failure = null;
+        try {
+            response = primary.execute();
+        } catch (final IOException x) {
+            failure = x;
+        }
+        timer.cancel(false);
+        final Response winner;
+        try {
+            winner = awaitWinner(response, failure);
+        } catch (final IOException x) {
+            detach(hedgeCall());
+            throw x;
+        }
+        policy.recordLatency(System.nanoTime() - startNanoTime);
+        final Call hedge = hedgeCall();
+        if (hedge == null)
+            return winner;
+        if (winner == response) {
+            detach(hedge);
+            return winner;
+        }
+        detach(primary);
+        return detachOnClose(winner, hedge);
+    }
+
+    private void detach(final @Nullable Call call) {
+        if (call != null && callControl != null)
+            callControl.detach(call);
+    }
+
+    /**
+     * Keeps the winning hedge attached until its body is closed, so that cancelling the query still aborts reading
+     * the body.
+     */
+    private Response detachOnClose(final Response response, final Call hedge) {
+        if (callControl == null)
+            return response;
+        final ResponseBody body = response.body();
+        final BufferedSource source = Okio.buffer(new ForwardingSource(body.source()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    callControl.detach(hedge);
+                }
+            }
+        });
+        return response.newBuilder().body(ResponseBody.create(source, body.contentType(), body.contentLength()))
+                .build();
+    }
+
+    private synchronized Response awaitWinner(final @Nullable Response response, final @Nullable IOException failure)
+            throws IOException {
+        primaryFinished = true;
+        try {
+            if (hedgeResponse != null) {
+                if (response != null)
+                    response.close();
+                return hedgeResponse;
+            }
+            if (response != null) {
+                if (hedge != null)
+                    hedge.cancel();
+                return response;
+            }
+            if (hedge == null)
+                throw failure;
+            while (hedgeResponse == null && hedgeFailure == null)
+                wait();
+            if (hedgeResponse != null)
+                return hedgeResponse;
+            throw failure;
+        } catch (final InterruptedException x) {
+            Thread.currentThread().interrupt();
+            hedge.cancel();
+            throw new InterruptedIOException("interrupted while waiting for hedge");
+        } finally {
+            done = true;
+        }
+    }
+
+    private synchronized @Nullable Call hedgeCall() {
+        return hedge;
+    }
+
+    private void sendHedge() {
+        final Call hedge;
+        synchronized (this) {
+            if (primaryFinished)
+                return;
+            if (circuitBreaker != null && !circuitBreaker.tryAcquire())
+                return;
+            if (rateLimiter != null && rateLimiter.reserve(0) < 0)
+                return;
+            if (!policy.tryAcquireHedge()) {
+                if (rateLimiter != null)
+                    rateLimiter.release();
+                return;
+            }
+            hedge = prepared;
+            this.hedge = hedge;
+        }
+        try {
+            if (callControl != null)
+                callControl.attach(hedge);
+            hedge.enqueue(this);
+        } catch (final IOException x) {
+            onFailure(hedge, x);
+        }
+    }
+
+    @Override
+    public synchronized void onResponse(final Call call, final Response response) {
+        if (done) {
+            response.close();
+            return;
+        }
+        hedgeResponse = response;
+        primary.cancel();
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void onFailure(final Call call, final IOException x) {
+        hedgeFailure = x;
+        notifyAll();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static de.schildbach.pte.util.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+/**
+ * <p>
+ * Decides when to hedge a request, i.e. to send a second identical request if the first one is slow to answer.
+ * </p>
+ *
+ * <p>
+ * The delay is the given percentile of recently observed times until response headers arrived. No request is hedged
+ * until enough times have been observed. Each request earns the given budget, and each hedge costs one request, so
+ * hedging adds at most that fraction of extra load. Unused budget accumulates up to a small number of hedges.
+ * </p>
+ */
+public final class HedgingPolicy {
+    private static final int MIN_SAMPLES = 20;
+    private static final int WINDOW_SAMPLES = 1000;
+    private static final long BUDGET_UNIT = 1_000_000;
+    private static final long MAX_BUDGET = 10 * BUDGET_UNIT;
+
+    private final double percentile;
+    private final long budgetPerRequest;
+    private final AtomicLong budget = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private volatile Histogram latencies = new Histogram();
+    private volatile @Nullable Histogram previousLatencies = null;
+
+    /**
+     * @param percentile
+     *            percentile of response times after which to hedge, e.g. 95
+     * @param budget
+     *            maximum fraction of requests that may be hedged, e.g. 0.05
+     */
+    public HedgingPolicy(final double percentile, final double budget) {
+        checkArgument(percentile > 0 && percentile < 100, () -> "percentile out of range: " + percentile);
+        checkArgument(budget > 0 && budget <= 1, () -> "budget out of range: " + budget);
+        this.percentile = percentile;
+        this.budgetPerRequest = (long) (budget * BUDGET_UNIT);
+    }
+
+    /**
+     * @return number of hedges sent so far
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * Called for each request that may be hedged.
+     *
+     * @return nanoseconds to wait before hedging, or -1 if not enough response times have been observed
+     */
+    long onRequest() {
+        budget.accumulateAndGet(budgetPerRequest, (b, x) -> Math.min(b + x, MAX_BUDGET));
+        final Histogram previous = previousLatencies;
+        final Histogram estimate = previous != null ? previous : latencies;
+        if (estimate.getCount() < MIN_SAMPLES)
+            return -1;
+        return estimate.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * @return whether a hedge may be sent
+     */
+    boolean tryAcquireHedge() {
+        while (true) {
+            final long current = budget.get();
+            if (current < BUDGET_UNIT)
+                return false;
+            if (budget.compareAndSet(current, current - BUDGET_UNIT)) {
+                hedgeCount.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    void recordLatency(final long nanos) {
+        final Histogram latencies = this.latencies;
+        latencies.record(nanos);
+        // estimate from a sliding window, so that the delay follows the upstream
+        if (latencies.getCount() == WINDOW_SAMPLES) {
+            previousLatencies = latencies;
+            this.latencies = new Histogram();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static de.schildbach.pte.util.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * Lock-free histogram of non-negative values, e.g. durations in nanoseconds.
+ * </p>
+ *
+ * <p>
+ * Buckets are log-linear like in HdrHistogram: each power of two is split into 16 linear sub-buckets, so recorded
+ * values are kept with a relative error of at most 1/16. Values are clamped to 2<sup>40</sup>, which is about 18
+ * minutes in nanoseconds. Recording is wait-free; reading while recording yields a slightly inconsistent view, which
+ * is fine for monitoring.
+ * </p>
+ */
+public final class Histogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 40;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    private static final int NUM_BUCKETS = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(final long value) {
+        checkArgument(value >= 0, () -> "negative value: " + value);
+        final long clamped = Math.min(value, MAX_VALUE);
+        counts.incrementAndGet(bucket(clamped));
+        count.incrementAndGet();
+        total.addAndGet(clamped);
+        max.accumulateAndGet(clamped, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        final long count = getCount();
+        return count > 0 ? (double) getTotal() / count : 0;
+    }
+
+    /**
+     * @param percentile
+     *            between 0 and 100
+     * @return highest value of the bucket that contains the given percentile, or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, () -> "percentile out of range: " + percentile);
+        long remaining = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++)
+            remaining += counts.get(i);
+        if (remaining == 0)
+            return 0;
+        final long rank = Math.max((long) Math.ceil(percentile / 100 * remaining), 1);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(highestValue(i), getMax());
+        }
+        return getMax();
+    }
+
+    static int bucket(final long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    static long highestValue(final int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "Histogram{count=" + getCount() + ",mean=" + (long) getMean() + ",p50=" + getValueAtPercentile(50)
+                + ",p99=" + getValueAtPercentile(99) + ",max=" + getMax() + "}";
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import javax.annotation.Nullable;
+
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * <p>
+ * Archive of HTTP responses, keyed on request method, URL and request body. Use {@link #recordInterceptor()} to
+ * capture responses of a live provider, and {@link #replayInterceptor()} to serve them again without network, e.g.
+ * for load tests of complete provider call paths. Both are meant for {@link HttpClient#setInterceptor(Interceptor)}.
+ * </p>
+ *
+ * <p>
+ * Status code, message, headers and body are archived as received, so redirects, session cookies and expired
+ * sessions replay like the original. Request headers are not part of the key, in particular the session cookie a
+ * request carries. If the same request was recorded several times, the responses are served in turn.
+ * </p>
+ *
+ * <p>
+ * If backed by a file, existing records are loaded on construction and new records are appended as they are
+ * captured, so several providers or test runs may record into the same file.
+ * </p>
+ */
+public final class HttpArchive {
+    private static final int MAGIC = 0x50544548; // PTEH
+    private static final int VERSION = 1;
+
+    private final @Nullable File file;
+    private final Map<String, Responses> entries = new ConcurrentHashMap<>();
+    private final Set<String> ignoredQueryParameters = new CopyOnWriteArraySet<>();
+
+    private static final class Record {
+        final int code;
+        final String message;
+        final Headers headers;
+        final byte[] body;
+
+        Record(final int code, final String message, final Headers headers, final byte[] body) {
+            this.code = code;
+            this.message = message;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    private static final class Responses {
+        private final List<Record> records = new ArrayList<>();
+        private int next = 0;
+
+        synchronized void add(final Record record) {
+            records.add(record);
+        }
+
+        synchronized int size() {
+            return records.size();
+        }
+
+        synchronized Record next() {
+            final Record record = records.get(next);
+            next = (next + 1) % records.size();
+            return record;
+        }
+    }
+
+    /**
+     * Creates an archive that is kept in memory only.
+     */
+    public HttpArchive() {
+        this.file = null;
+    }
+
+    /**
+     * Creates an archive backed by the given file, which does not need to exist yet.
+     */
+    public HttpArchive(final File file) throws IOException {
+        this.file = requireNonNull(file);
+        if (file.exists()) {
+            try (final InputStream is = new FileInputStream(file)) {
+                load(is, file.toString());
+            }
+        }
+    }
+
+    /**
+     * Creates an archive that is kept in memory only, with the records read from the given stream, e.g. a
+     * resource that was recorded into a file before.
+     */
+    public HttpArchive(final InputStream is) throws IOException {
+        this.file = null;
+        load(is, "stream");
+    }
+
+    /**
+     * Leaves out the given query parameter from the key, for parameters that change with every request like
+     * nonces or client timestamps. Must be set before any records are added.
+     */
+    public HttpArchive ignoreQueryParameter(final String name) {
+        ignoredQueryParameters.add(requireNonNull(name));
+        return this;
+    }
+
+    /**
+     * @return whether a response to the given request has been recorded
+     */
+    public boolean contains(final Request request) throws IOException {
+        return entries.containsKey(key(request));
+    }
+
+    public int size() {
+        int size = 0;
+        for (final Responses responses : entries.values())
+            size += responses.size();
+        return size;
+    }
+
+    /**
+     * Returns an interceptor that passes requests on and archives their responses.
+     */
+    public Interceptor recordInterceptor() {
+        return chain -> {
+            final Request request = chain.request();
+            final Response response = chain.proceed(request);
+            final ResponseBody body = requireNonNull(response.body());
+            final MediaType contentType = body.contentType();
+            final byte[] bytes = body.bytes();
+            final String key = key(request);
+            final Record record = new Record(response.code(), response.message(), response.headers(), bytes);
+            add(key, record);
+            if (file != null)
+                append(key, record);
+            return response.newBuilder().body(ResponseBody.create(bytes, contentType)).build();
+        };
+    }
+
+    /**
+     * Returns an interceptor that answers requests from this archive, without passing them on. Requests that have
+     * not been recorded fail with an {@link IOException}.
+     */
+    public Interceptor replayInterceptor() {
+        return chain -> {
+            final Request request = chain.request();
+            final Responses responses = entries.get(key(request));
+            if (responses == null)
+                throw new IOException("not in archive: " + request.method() + " " + request.url());
+            final Record record = responses.next();
+            final String contentType = record.headers.get("Content-Type");
+            return new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(record.code)
+                    .message(record.message).headers(record.headers).body(ResponseBody
+                            .create(record.body, contentType != null ? MediaType.parse(contentType) : null))
+                    .build();
+        };
+    }
+
+    private void add(final String key, final Record record) {
+        entries.computeIfAbsent(key, k -> new Responses()).add(record);
+    }
+
+    private String key(final Request request) throws IOException {
+        HttpUrl url = request.url();
+        if (!ignoredQueryParameters.isEmpty()) {
+            final HttpUrl.Builder builder = url.newBuilder();
+            for (final String name : ignoredQueryParameters)
+                builder.removeAllQueryParameters(name);
+            url = builder.build();
+        }
+        final StringBuilder key = new StringBuilder(request.method()).append(' ').append(url);
+        final RequestBody requestBody = request.body();
+        if (requestBody != null) {
+            final Buffer buffer = new Buffer();
+            requestBody.writeTo(buffer);
+            key.append(' ').append(buffer.readByteString().sha1().hex());
+        }
+        return key.toString();
+    }
+
+    private synchronized void append(final String key, final Record record) throws IOException {
+        try (final DataOutputStream os = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            writeBytes(os, ByteString.encodeUtf8(key).toByteArray());
+            os.writeInt(record.code);
+            os.writeUTF(record.message);
+            os.writeInt(record.headers.size());
+            for (int i = 0; i < record.headers.size(); i++) {
+                os.writeUTF(record.headers.name(i));
+                os.writeUTF(record.headers.value(i));
+            }
+            writeBytes(os, record.body);
+        }
+    }
+
+    private void load(final InputStream in, final String source) throws IOException {
+        try (final DataInputStream is = new DataInputStream(new BufferedInputStream(in))) {
+            while (true) {
+                final int magic;
+                try {
+                    magic = is.readInt();
+                } catch (final EOFException x) {
+                    return;
+                }
+                if (magic != MAGIC)
+                    throw new IOException("not an archive: " + source);
+                final int version = is.readInt();
+                if (version != VERSION)
+                    throw new IOException("unsupported archive version " + version + ": " + source);
+                final String key = ByteString.of(readBytes(is)).utf8();
+                final int code = is.readInt();
+                final String message = is.readUTF();
+                final Headers.Builder headers = new Headers.Builder();
+                for (int i = is.readInt(); i > 0; i--)
+                    headers.addUnsafeNonAscii(is.readUTF(), is.readUTF());
+                add(key, new Record(code, message, headers.build(), readBytes(is)));
+            }
+        }
+    }
+
+    private static void writeBytes(final DataOutputStream os, final byte[] bytes) throws IOException {
+        os.writeInt(bytes.length);
+        os.write(bytes);
+    }
+
+    private static byte[] readBytes(final DataInputStream is) throws IOException {
+        final byte[] bytes = new byte[is.readInt()];
+        is.readFully(bytes);
+        return bytes;
+    }
+}
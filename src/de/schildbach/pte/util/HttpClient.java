@@ -21,14 +21,19 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.Proxy;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -47,6 +52,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.schildbach.pte.exception.BlockedException;
+import de.schildbach.pte.exception.CircuitOpenException;
 import de.schildbach.pte.exception.InternalErrorException;
 import de.schildbach.pte.exception.NotFoundException;
 import de.schildbach.pte.exception.SessionExpiredException;
@@ -54,18 +60,24 @@ import de.schildbach.pte.exception.UnexpectedRedirectException;
 
 import okhttp3.Call;
 import okhttp3.CertificatePinner;
+import okhttp3.ConnectionPool;
 import okhttp3.Cookie;
+import okhttp3.Dispatcher;
 import okhttp3.Headers;
 import okhttp3.HttpUrl;
 import okhttp3.Interceptor;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.Response.Builder;
 import okhttp3.ResponseBody;
 import okhttp3.logging.HttpLoggingInterceptor;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
 
 import static java.util.Objects.requireNonNull;
 
@@ -74,23 +86,33 @@ import static java.util.Objects.requireNonNull;
  */
 public final class HttpClient {
     @Nullable
-    private String userAgent = null;
-    private Map<String, String> headers = new HashMap<>();
+    private volatile String userAgent = null;
+    private volatile Map<String, String> headers = Collections.emptyMap();
     @Nullable
-    private String sessionCookieName = null;
+    private volatile String sessionCookieName = null;
     @Nullable
-    private Cookie sessionCookie = null;
+    private volatile Cookie sessionCookie = null;
     @Nullable
-    private Proxy proxy = null;
-    private boolean trustAllCertificates = false;
+    private volatile Proxy proxy = null;
+    private volatile boolean trustAllCertificates = false;
     @Nullable
-    private byte[] clientCertificate = null;
+    private volatile byte[] clientCertificate = null;
     @Nullable
-    private CertificatePinner certificatePinner = null;
+    private volatile CertificatePinner certificatePinner = null;
+    private volatile boolean http2Enabled = true;
+    private volatile @Nullable Interceptor interceptor = null;
+    private volatile @Nullable RateLimiter rateLimiter = null;
+    private volatile @Nullable CircuitBreaker circuitBreaker = null;
+    private volatile @Nullable HedgingPolicy hedgingPolicy = null;
+    private volatile RetryPolicy retryPolicy = new RetryPolicy();
+    @Nullable
+    private volatile OkHttpClient okHttpClient = null;
+    @Nullable
+    private volatile OkHttpClient okHttpClientBase = null;
 
     private static final Set<Integer> RESPONSE_CODES_BLOCKED =
             Stream.of(HttpURLConnection.HTTP_BAD_REQUEST, HttpURLConnection.HTTP_UNAUTHORIZED,
-                            HttpURLConnection.HTTP_FORBIDDEN, HttpURLConnection.HTTP_NOT_ACCEPTABLE,
+                            HttpURLConnection.HTTP_FORBIDDEN, HttpURLConnection.HTTP_NOT_ACCEPTABLE, 429,
                             HttpURLConnection.HTTP_UNAVAILABLE)
                     .collect(Collectors.toSet());
     private static final Set<Integer> RESPONSE_CODES_NOT_FOUND =
@@ -102,8 +124,12 @@ public final class HttpClient {
     private static final Set<Integer> RESPONSE_CODES_INTERNAL_ERROR =
             Stream.of(HttpURLConnection.HTTP_INTERNAL_ERROR, HttpURLConnection.HTTP_BAD_GATEWAY)
                     .collect(Collectors.toSet());
+    private static final Set<Integer> RESPONSE_CODES_OVERLOADED =
+            Stream.of(429, HttpURLConnection.HTTP_BAD_GATEWAY, HttpURLConnection.HTTP_UNAVAILABLE,
+                            HttpURLConnection.HTTP_GATEWAY_TIMEOUT)
+                    .collect(Collectors.toSet());
 
-    private static final OkHttpClient OKHTTP_CLIENT;
+    private static volatile OkHttpClient OKHTTP_CLIENT;
     static {
         final HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor(
                 new HttpLoggingInterceptor.Logger() {
@@ -143,34 +169,21 @@ public final class HttpClient {
             }
         };
 
-        final Interceptor retryInterceptor = new Interceptor() {
-            @Override
-            public Response intercept(final Chain chain) throws IOException {
-                final Request request = chain.request();
-                Response response = null;
-                try {
-                    response = chain.proceed(request);
-                } catch (final IOException x) {
-                    throw x;
-                }
-                if (response.isSuccessful() && response.peekBody(1).bytes().length == 0) {
-                    log.info("Got empty response, retrying {}", request.url());
-                    response.close();
-                    return chain.proceed(request); // retry
-                }
-                return response;
-            }
-        };
+        // asynchronous queries wait in the dispatcher rather than on threads, so allow more than OkHttp does
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(256);
+        dispatcher.setMaxRequestsPerHost(64);
 
         final OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        builder.dispatcher(dispatcher);
         builder.followRedirects(false);
         builder.followSslRedirects(true);
         builder.connectTimeout(15, TimeUnit.SECONDS);
         builder.writeTimeout(30, TimeUnit.SECONDS);
         builder.readTimeout(30, TimeUnit.SECONDS);
         builder.addNetworkInterceptor(loggingInterceptor);
-        builder.addInterceptor(retryInterceptor);
         builder.addInterceptor(xmlEncodingInterceptor);
+        builder.eventListenerFactory(QueryTrace.EVENT_LISTENER_FACTORY);
         OKHTTP_CLIENT = builder.build();
     }
 
@@ -187,130 +200,561 @@ public final class HttpClient {
         this.userAgent = userAgent;
     }
 
-    public void setHeader(final String headerName, final String headerValue) {
-        this.headers.put(headerName, headerValue);
+    /**
+     * Sets a header that is sent with every request. Headers that vary per request should be passed via
+     * {@link RequestOptions} instead.
+     */
+    public synchronized void setHeader(final String headerName, final String headerValue) {
+        final Map<String, String> headers = new HashMap<>(this.headers);
+        headers.put(headerName, headerValue);
+        this.headers = Collections.unmodifiableMap(headers);
     }
 
     public void setSessionCookieName(final String sessionCookieName) {
         this.sessionCookieName = sessionCookieName;
     }
 
-    public void setProxy(final Proxy proxy) {
+    public synchronized void setProxy(final Proxy proxy) {
         this.proxy = proxy;
+        this.okHttpClient = null;
     }
 
-    public void setTrustAllCertificates(final boolean trustAllCertificates) {
+    public synchronized void setTrustAllCertificates(final boolean trustAllCertificates) {
         this.trustAllCertificates = trustAllCertificates;
+        this.okHttpClient = null;
     }
 
-    public void setClientCertificate(final byte[] clientCertificate) {
+    public synchronized void setClientCertificate(final byte[] clientCertificate) {
         this.clientCertificate = clientCertificate;
+        this.okHttpClient = null;
     }
 
-    public void setCertificatePin(final String host, final String... hashes) {
+    public synchronized void setCertificatePin(final String host, final String... hashes) {
         this.certificatePinner = new CertificatePinner.Builder().add(host, hashes).build();
+        this.okHttpClient = null;
+    }
+
+    /**
+     * Enables or disables negotiating HTTP/2, which multiplexes concurrent requests to the same host over one
+     * connection. Enabled by default.
+     */
+    public synchronized void setHttp2Enabled(final boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+        this.okHttpClient = null;
+    }
+
+    /**
+     * Sets an application interceptor for the requests of this instance, e.g. to serve recorded responses in
+     * tests and benchmarks. It runs after the built-in interceptors.
+     */
+    public synchronized void setInterceptor(final @Nullable Interceptor interceptor) {
+        this.interceptor = interceptor;
+        this.okHttpClient = null;
+    }
+
+    /**
+     * Sets a rate limiter for the requests of this instance. It may be shared with other instances that talk to the
+     * same upstream. Responses that signal overload, i.e. 429, 502, 503 and 504, make it back off.
+     */
+    public void setRateLimiter(final @Nullable RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Sets a circuit breaker for the requests of this instance. It may be shared with other instances that talk to
+     * the same upstream. Responses that signal overload as well as failed or timed out connections count as failures,
+     * but not calls that were given up because their query was cancelled or ran out of time. While it is open,
+     * requests fail with {@link CircuitOpenException}.
+     */
+    public void setCircuitBreaker(final @Nullable CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Sets the policy for hedging requests of this instance that are marked via
+     * {@link RequestOptions#withHedgeable(boolean)}. If not set, no requests are hedged.
+     */
+    public void setHedgingPolicy(final @Nullable HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    /**
+     * Sets the policy for retrying failed requests of this instance. GET requests and requests marked via
+     * {@link RequestOptions#withIdempotent(boolean)} or {@link RequestOptions#withHedgeable(boolean)} are considered
+     * idempotent.
+     */
+    public void setRetryPolicy(final RetryPolicy retryPolicy) {
+        this.retryPolicy = requireNonNull(retryPolicy);
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Replaces the connection pool that is shared by all instances. The previous pool is evicted.
+     *
+     * @param maxIdleConnections
+     *            maximum number of idle connections to keep
+     * @param keepAliveDuration
+     *            time an idle connection is kept alive
+     */
+    public static synchronized void setConnectionPool(final int maxIdleConnections, final long keepAliveDuration,
+            final TimeUnit timeUnit) {
+        final OkHttpClient previous = OKHTTP_CLIENT;
+        OKHTTP_CLIENT = previous.newBuilder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveDuration, timeUnit)).build();
+        previous.connectionPool().evictAll();
+    }
+
+    /**
+     * Sets the maximum number of concurrent requests enqueued to the OkHttp dispatcher, shared by all instances.
+     * Defaults to 256. Only the calls of asynchronous queries, see {@link AsyncQuery}, and hedges are enqueued;
+     * calls made on the thread of a blocking query are not limited.
+     */
+    public static void setMaxRequests(final int maxRequests) {
+        OKHTTP_CLIENT.dispatcher().setMaxRequests(maxRequests);
+    }
+
+    /**
+     * Sets the maximum number of concurrent requests per host enqueued to the OkHttp dispatcher, shared by all
+     * instances. Defaults to 64. Like {@link #setMaxRequests(int)}, this does not limit the calls of blocking queries.
+     */
+    public static void setMaxRequestsPerHost(final int maxRequestsPerHost) {
+        OKHTTP_CLIENT.dispatcher().setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
+    /**
+     * Returns the client configured for this instance. It is derived from the shared client, so that all
+     * instances use the same connection pool and dispatcher, and built only once per configuration so that
+     * connections and TLS sessions can be reused.
+     */
+    private OkHttpClient okHttpClient() {
+        final OkHttpClient base = OKHTTP_CLIENT;
+        final OkHttpClient okHttpClient = this.okHttpClient;
+        if (okHttpClient != null && okHttpClientBase == base)
+            return okHttpClient;
+
+        synchronized (this) {
+            if (this.okHttpClient == null || okHttpClientBase != base) {
+                if (proxy != null || trustAllCertificates || certificatePinner != null || clientCertificate != null
+                        || !http2Enabled || interceptor != null) {
+                    final OkHttpClient.Builder builder = base.newBuilder();
+                    if (proxy != null)
+                        builder.proxy(proxy);
+                    if (trustAllCertificates || clientCertificate != null)
+                        configureSSL(builder, clientCertificate);
+                    if (certificatePinner != null)
+                        builder.certificatePinner(certificatePinner);
+                    if (!http2Enabled)
+                        builder.protocols(Collections.singletonList(Protocol.HTTP_1_1));
+                    if (interceptor != null)
+                        builder.addInterceptor(interceptor);
+                    this.okHttpClient = builder.build();
+                } else {
+                    this.okHttpClient = base;
+                }
+                this.okHttpClientBase = base;
+            }
+            return this.okHttpClient;
+        }
     }
 
     public CharSequence get(final HttpUrl url) throws IOException {
-        return get(url, null, null);
+        return get(url, null, RequestOptions.NONE);
     }
 
     public CharSequence get(final HttpUrl url, final String postRequest, final String requestContentType)
             throws IOException {
-        final StringBuilder buffer = new StringBuilder();
-        final Callback callback = (bodyPeek, body) -> buffer.append(body.string());
-        getInputStream(callback, url, postRequest, requestContentType, null);
-        return buffer;
+        return get(url, postRequest, RequestOptions.NONE.withContentType(requestContentType));
+    }
+
+    public CharSequence get(final HttpUrl url, final @Nullable String postRequest, final RequestOptions options)
+            throws IOException {
+        // the decoded string is the only copy of the body
+        final CharSequence[] result = new CharSequence[1];
+        final Callback callback = (bodyPeek, body) -> result[0] = body.string();
+        getInputStream(callback, url, postRequest, options);
+        return result[0];
     }
 
+    /**
+     * Immutable options that apply to a single request only, so that one instance of {@link HttpClient} can be
+     * shared by concurrent requests.
+     */
+    public static final class RequestOptions {
+        public static final RequestOptions NONE = new RequestOptions(Collections.emptyMap(),
+                Collections.emptyList(), null, null, false, false);
+
+        private final Map<String, String> headers;
+        private final List<Cookie> cookies;
+        private final @Nullable String referer;
+        private final @Nullable String contentType;
+        private final boolean idempotent;
+        private final boolean hedgeable;
+
+        private RequestOptions(final Map<String, String> headers, final List<Cookie> cookies,
+                final @Nullable String referer, final @Nullable String contentType, final boolean idempotent,
+                final boolean hedgeable) {
+            this.headers = headers;
+            this.cookies = cookies;
+            this.referer = referer;
+            this.contentType = contentType;
+            this.idempotent = idempotent;
+            this.hedgeable = hedgeable;
+        }
+
+        /** Adds a header, overriding any header of the same name set via {@link HttpClient#setHeader}. */
+        public RequestOptions withHeader(final String headerName, final String headerValue) {
+            final Map<String, String> headers = new HashMap<>(this.headers);
+            headers.put(requireNonNull(headerName), requireNonNull(headerValue));
+            return new RequestOptions(Collections.unmodifiableMap(headers), cookies, referer, contentType,
+                    idempotent, hedgeable);
+        }
+
+        public RequestOptions withCookie(final Cookie cookie) {
+            final List<Cookie> cookies = new ArrayList<>(this.cookies);
+            cookies.add(requireNonNull(cookie));
+            return new RequestOptions(headers, Collections.unmodifiableList(cookies), referer, contentType,
+                    idempotent, hedgeable);
+        }
+
+        public RequestOptions withReferer(final @Nullable String referer) {
+            return new RequestOptions(headers, cookies, referer, contentType, idempotent, hedgeable);
+        }
+
+        /** Sets the media type of the POST request body. */
+        public RequestOptions withContentType(final @Nullable String contentType) {
+            return new RequestOptions(headers, cookies, referer, contentType, idempotent, hedgeable);
+        }
+
+        /**
+         * Marks the request as safe to be sent more than once, which allows retrying it on any retryable failure.
+         * Requests that do not change state on the server are idempotent, e.g. looking up stations or trips. GET
+         * requests are always considered idempotent.
+         */
+        public RequestOptions withIdempotent(final boolean idempotent) {
+            return new RequestOptions(headers, cookies, referer, contentType, idempotent, hedgeable);
+        }
+
+        /**
+         * Marks the request as cheap enough to be hedged, i.e. sent a second time while the first one is still in
+         * flight. This implies that it is idempotent.
+         */
+        public RequestOptions withHedgeable(final boolean hedgeable) {
+            return new RequestOptions(headers, cookies, referer, contentType, idempotent, hedgeable);
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        public List<Cookie> getCookies() {
+            return cookies;
+        }
+
+        public @Nullable String getReferer() {
+            return referer;
+        }
+
+        public @Nullable String getContentType() {
+            return contentType;
+        }
+
+        public boolean isIdempotent() {
+            return idempotent || hedgeable;
+        }
+
+        public boolean isHedgeable() {
+            return hedgeable;
+        }
+    }
+
+    /**
+     * <p>
+     * Receives successful responses. The body can be streamed via {@link ResponseBody#source()}, without reading it
+     * into memory as a whole.
+     * </p>
+     *
+     * <p>
+     * The body peek holds the start of the body and is meant for error messages. It is only decoded when used.
+     * </p>
+     */
     public interface Callback {
         void onSuccessful(CharSequence bodyPeek, ResponseBody body) throws IOException;
     }
 
+    /**
+     * Like {@link Callback}, but also receives the session cookie set by this very response, so that it can be kept
+     * with the state of a query and passed with follow-up requests via {@link RequestOptions#withCookie(Cookie)}.
+     */
+    public interface SessionCallback {
+        void onSuccessful(CharSequence bodyPeek, ResponseBody body, @Nullable Cookie sessionCookie) throws IOException;
+    }
+
     public void getInputStream(final Callback callback, final HttpUrl url) throws IOException {
         getInputStream(callback, url, null);
     }
 
     public void getInputStream(final Callback callback, final HttpUrl url, final String referer) throws IOException {
-        getInputStream(callback, url, null, null, referer);
+        getInputStream(callback, url, null, RequestOptions.NONE.withReferer(referer));
     }
 
     public void getInputStream(final Callback callback, final HttpUrl url, final String postRequest,
             final String requestContentType, final String referer) throws IOException {
+        getInputStream(callback, url, postRequest,
+                RequestOptions.NONE.withContentType(requestContentType).withReferer(referer));
+    }
+
+    public void getInputStream(final Callback callback, final HttpUrl url, final @Nullable String postRequest,
+            final RequestOptions options) throws IOException {
+        requireNonNull(callback);
+        getInputStream((SessionCallback) (bodyPeek, body, sessionCookie) -> callback.onSuccessful(bodyPeek, body),
+                url, postRequest, options);
+    }
+
+    /**
+     * A session cookie among the cookies of the given options replaces the one shared by all requests.
+     */
+    public void getInputStream(final SessionCallback callback, final HttpUrl url, final @Nullable String postRequest,
+            final RequestOptions options) throws IOException {
         requireNonNull(callback);
         requireNonNull(url);
+        requireNonNull(options);
+
+        final QueryTrace trace = QueryTrace.current();
+        final long startNanoTime = System.nanoTime();
+        if (trace != null)
+            trace.onHttpCallStart(startNanoTime);
 
         final Request.Builder request = new Request.Builder();
         request.url(url);
         request.headers(Headers.of(headers));
+        for (final Map.Entry<String, String> header : options.headers.entrySet())
+            request.header(header.getKey(), header.getValue());
         if (postRequest != null) {
-            final MediaType m = requestContentType != null ? MediaType.parse(requestContentType) : null;
+            final MediaType m = options.contentType != null ? MediaType.parse(options.contentType) : null;
             request.post(RequestBody.create(m, postRequest));
         }
+        final String userAgent = this.userAgent;
         if (userAgent != null)
             request.header("User-Agent", userAgent);
-        if (referer != null)
-            request.header("Referer", referer);
+        if (options.referer != null)
+            request.header("Referer", options.referer);
+        final String sessionCookieName = this.sessionCookieName;
         final Cookie sessionCookie = this.sessionCookie;
-        if (sessionCookie != null && sessionCookie.name().equals(sessionCookieName))
-            request.header("Cookie", sessionCookie.toString());
-
-        final OkHttpClient okHttpClient;
-        if (proxy != null || trustAllCertificates || certificatePinner != null || clientCertificate != null) {
-            final OkHttpClient.Builder builder = OKHTTP_CLIENT.newBuilder();
-            if (proxy != null)
-                builder.proxy(proxy);
-            if (trustAllCertificates || clientCertificate != null)
-                configureSSL(builder);
-            if (certificatePinner != null)
-                builder.certificatePinner(certificatePinner);
-            okHttpClient = builder.build();
-        } else {
-            okHttpClient = OKHTTP_CLIENT;
+        final StringBuilder cookieHeader = new StringBuilder();
+        if (sessionCookie != null && sessionCookie.name().equals(sessionCookieName)
+                && options.cookies.stream().noneMatch(cookie -> cookie.name().equals(sessionCookieName)))
+            cookieHeader.append(sessionCookie.toString());
+        for (final Cookie cookie : options.cookies) {
+            if (cookieHeader.length() > 0)
+                cookieHeader.append("; ");
+            cookieHeader.append(cookie.name()).append('=').append(cookie.value());
         }
-
-        final Call call = okHttpClient.newCall(request.build());
-        try (final Response response = call.execute()) {
+        if (cookieHeader.length() > 0)
+            request.header("Cookie", cookieHeader.toString());
+
+        final Call call = okHttpClient().newCall(request.build());
+        final boolean idempotent = options.isIdempotent() || "GET".equals(call.request().method());
+        final CallControl callControl = CallControl.current();
+        final AsyncQuery<?> asyncQuery = callControl != null ? callControl.asyncQuery() : null;
+        final CircuitBreaker circuitBreaker = this.circuitBreaker;
+        final RateLimiter rateLimiter = this.rateLimiter;
+        final HedgingPolicy hedgingPolicy = options.hedgeable ? this.hedgingPolicy : null;
+        final RetryingCall retryingCall = new RetryingCall(call, retryPolicy, idempotent, callControl);
+        try (final Response response = asyncQuery != null
+                ? enqueue(asyncQuery, call, postRequest, idempotent, callControl, rateLimiter, circuitBreaker)
+                : retryingCall.execute(attempt -> {
+                    if (circuitBreaker != null && !circuitBreaker.tryAcquire())
+                        throw new CircuitOpenException(url, circuitBreaker.getRetryAfterMillis());
+                    if (rateLimiter != null)
+                        rateLimiter.acquire(callControl);
+                    return execute(attempt, hedgingPolicy, callControl, rateLimiter, circuitBreaker);
+                })) {
             final int responseCode = response.code();
-            final String bodyPeek = response.peekBody(SCRAPE_PEEK_SIZE).string().replaceAll("\\p{C}", "");
+            final ResponseBody body = response.body();
+            final BodyPeek bodyPeek = new BodyPeek(body);
             if (responseCode == HttpURLConnection.HTTP_OK) {
 
-                final HttpUrl redirectUrl = testRedirect(url, bodyPeek);
-                if (redirectUrl != null)
-                    throw new UnexpectedRedirectException(url, redirectUrl);
+                // captive portals and error pages are HTML, so don't scrape data responses
+                if (isScrapable(body.contentType())) {
+                    final String content = bodyPeek.toString();
 
-                if (testExpired(bodyPeek))
-                    throw new SessionExpiredException();
-                if (testInternalError(bodyPeek))
-                    throw new InternalErrorException(url, bodyPeek);
+                    final HttpUrl redirectUrl = testRedirect(url, content);
+                    if (redirectUrl != null)
+                        throw new UnexpectedRedirectException(url, redirectUrl);
+
+                    if (testExpired(content))
+                        throw new SessionExpiredException();
+                    if (testInternalError(content))
+                        throw new InternalErrorException(url, content);
+                }
 
                 // save cookie
+                Cookie responseSessionCookie = null;
                 if (sessionCookieName != null) {
                     final List<Cookie> cookies = Cookie.parseAll(url, response.headers());
                     for (final Iterator<Cookie> i = cookies.iterator(); i.hasNext();) {
                         final Cookie cookie = i.next();
                         if (cookie.name().equals(sessionCookieName)) {
                             this.sessionCookie = cookie;
+                            responseSessionCookie = cookie;
                             break;
                         }
                     }
                 }
 
-                callback.onSuccessful(bodyPeek, response.body());
+                final Cookie receivedSessionCookie = responseSessionCookie;
+                if (trace != null)
+                    trace.onSuccessful((peek, b) -> callback.onSuccessful(peek, b, receivedSessionCookie), bodyPeek,
+                            body);
+                else
+                    callback.onSuccessful(bodyPeek, body, receivedSessionCookie);
                 return;
             } else if (RESPONSE_CODES_BLOCKED.contains(responseCode)) {
-                throw new BlockedException(url, bodyPeek);
+                throw new BlockedException(url, bodyPeek.toString());
             } else if (RESPONSE_CODES_NOT_FOUND.contains(responseCode)) {
-                throw new NotFoundException(url, bodyPeek);
+                throw new NotFoundException(url, bodyPeek.toString());
             } else if (RESPONSE_CODES_REDIRECT.contains(responseCode)) {
                 throw new UnexpectedRedirectException(url, HttpUrl.parse(response.header("Location")));
             } else if (RESPONSE_CODES_INTERNAL_ERROR.contains(responseCode)) {
-                throw new InternalErrorException(url, bodyPeek);
+                throw new InternalErrorException(url, bodyPeek.toString());
             } else {
                 final String message = "got response: " + responseCode + " " + response.message();
                 throw new IOException(message + ": " + url);
             }
+        } finally {
+            retryingCall.detach();
+            if (trace != null)
+                trace.onHttpCallEnd(startNanoTime);
+        }
+    }
+
+    private static Response execute(final Call call, final @Nullable HedgingPolicy hedgingPolicy,
+            final @Nullable CallControl callControl, final @Nullable RateLimiter rateLimiter,
+            final @Nullable CircuitBreaker circuitBreaker) throws IOException {
+        final Response response;
+        try {
+            if (hedgingPolicy != null)
+                response = new HedgedCall(call, hedgingPolicy, callControl, rateLimiter, circuitBreaker).execute();
+            else
+                response = call.execute();
+        } catch (final IOException x) {
+            onFailure(call, callControl, circuitBreaker);
+            throw x;
+        }
+        onResponse(response.code(), rateLimiter, circuitBreaker);
+        return response;
+    }
+
+    /**
+     * Enqueues the call of an asynchronous query, or replays its response if a previous run of the query has already
+     * received it. The query is suspended until the response has arrived.
+     */
+    private Response enqueue(final AsyncQuery<?> asyncQuery, final Call call, final @Nullable String postRequest,
+            final boolean idempotent, final CallControl callControl, final @Nullable RateLimiter rateLimiter,
+            final @Nullable CircuitBreaker circuitBreaker) throws IOException {
+        final Request request = call.request();
+        final Object key = asyncQuery.stepKey(request.method() + ' ' + request.url() + '\n' + postRequest);
+        CompletableFuture<AsyncCall.BufferedResponse> response = asyncQuery.getStep(key);
+        if (response == null) {
+            response = new AsyncCall(call, retryPolicy, idempotent, callControl, rateLimiter, circuitBreaker).start();
+            asyncQuery.putStep(key, response);
+        }
+        return asyncQuery.await(response).newResponse();
+    }
+
+    static void onResponse(final int responseCode, final @Nullable RateLimiter rateLimiter,
+            final @Nullable CircuitBreaker circuitBreaker) {
+        final boolean overloaded = RESPONSE_CODES_OVERLOADED.contains(responseCode);
+        if (rateLimiter != null)
+            rateLimiter.onResponse(overloaded);
+        if (circuitBreaker != null) {
+            if (overloaded)
+                circuitBreaker.onFailure();
+            else
+                circuitBreaker.onSuccess();
+        }
+    }
+
+    static void onFailure(final Call call, final @Nullable CallControl callControl,
+            final @Nullable CircuitBreaker circuitBreaker) {
+        if (circuitBreaker != null && !isGivenUp(call, callControl))
+            circuitBreaker.onFailure();
+    }
+
+    /**
+     * Whether a call failed because its query was cancelled or ran out of time, rather than because of the upstream.
+     */
+    private static boolean isGivenUp(final Call call, final @Nullable CallControl callControl) {
+        if (call.isCanceled())
+            return true;
+        return callControl != null && (callControl.isCancelled() || callControl.isExpired());
+    }
+
+    static boolean isScrapable(final @Nullable MediaType contentType) {
+        if (contentType == null)
+            return true;
+        final String type = contentType.type() + '/' + contentType.subtype();
+        return type.equalsIgnoreCase("text/html") || type.equalsIgnoreCase("application/xhtml+xml");
+    }
+
+    /**
+     * Start of a response body, decoded and stripped of control characters only on first access. The bytes are
+     * shared with the buffer of the body rather than copied, so that they stay valid while the body is consumed.
+     */
+    static final class BodyPeek implements CharSequence {
+        private final ByteString bytes;
+        private final Charset charset;
+        private String string = null;
+
+        BodyPeek(final ResponseBody body) throws IOException {
+            final BufferedSource source = body.source();
+            source.request(SCRAPE_PEEK_SIZE);
+            final Buffer buffer = source.getBuffer();
+            this.bytes = buffer.snapshot((int) Math.min(buffer.size(), SCRAPE_PEEK_SIZE));
+            final MediaType contentType = body.contentType();
+            this.charset = contentType != null ? contentType.charset(StandardCharsets.UTF_8) : StandardCharsets.UTF_8;
+        }
+
+        @Override
+        public int length() {
+            return toString().length();
+        }
+
+        @Override
+        public char charAt(final int index) {
+            return toString().charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            if (string == null)
+                string = stripControlCharacters(bytes.string(charset));
+            return string;
+        }
+    }
+
+    /**
+     * Same as {@code s.replaceAll("\\p{C}", "")}, without the cost of a regular expression.
+     */
+    static String stripControlCharacters(final String s) {
+        final StringBuilder builder = new StringBuilder(s.length());
+        for (int i = 0; i < s.length();) {
+            final int codePoint = s.codePointAt(i);
+            final int type = Character.getType(codePoint);
+            if (type != Character.CONTROL && type != Character.FORMAT && type != Character.PRIVATE_USE
+                    && type != Character.SURROGATE && type != Character.UNASSIGNED)
+                builder.appendCodePoint(codePoint);
+            i += Character.charCount(codePoint);
         }
+        return builder.length() == s.length() ? s : builder.toString();
     }
 
     private static final Pattern P_REDIRECT_HTTP_EQUIV = Pattern.compile(
@@ -358,7 +802,8 @@ public final class HttpClient {
         return false;
     }
 
-    private void configureSSL(final OkHttpClient.Builder okHttpClientBuilder) {
+    private static void configureSSL(final OkHttpClient.Builder okHttpClientBuilder,
+            final @Nullable byte[] clientCertificate) {
         try {
             final SSLContext sslContext = SSLContext.getInstance("SSL");
             KeyManager[] keyManagers = null;
@@ -0,0 +1,514 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import de.schildbach.pte.exception.ParserException;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+
+/**
+ * <p>
+ * Pull parser for UTF-8 encoded JSON, reading tokens directly from a {@link BufferedSource}, e.g. the body of a
+ * response. Unlike parsing into a tree, neither the document nor the values that are skipped are ever held in
+ * memory as a whole.
+ * </p>
+ *
+ * <p>
+ * The API follows {@code android.util.JsonReader}: objects and arrays are entered and left explicitly, and values
+ * are consumed in document order. Numbers are returned as their literal text by {@link #nextString()}, so that
+ * callers can decide about their type. Malformed documents fail with a {@link ParserException}.
+ * </p>
+ */
+public final class JsonReader implements Closeable {
+    public enum Token {
+        BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private static final ByteString STRING_SPECIAL = ByteString.encodeUtf8("\"\\");
+    private static final ByteString TRUE = ByteString.encodeUtf8("true");
+    private static final ByteString FALSE = ByteString.encodeUtf8("false");
+    private static final ByteString NULL = ByteString.encodeUtf8("null");
+
+    private final BufferedSource source;
+    private final Buffer buffer;
+    private int[] stack = new int[32];
+    private int stackSize = 0;
+    private Token peeked = null;
+
+    public JsonReader(final BufferedSource source) {
+        this.source = source;
+        this.buffer = source.getBuffer();
+        push(EMPTY_DOCUMENT);
+    }
+
+    /**
+     * @return type of the next token, without consuming it
+     */
+    public Token peek() throws IOException {
+        if (peeked == null)
+            peeked = doPeek();
+        return peeked;
+    }
+
+    /**
+     * @return true if the current array or object has another element
+     */
+    public boolean hasNext() throws IOException {
+        final Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+        peeked = null;
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        stackSize--;
+        peeked = null;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+        peeked = null;
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        stackSize--;
+        peeked = null;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        peeked = null;
+        return readQuoted();
+    }
+
+    /**
+     * @return the next string, or the literal text of the next number
+     */
+    public String nextString() throws IOException {
+        final Token token = peek();
+        final String value;
+        if (token == Token.STRING)
+            value = readQuoted();
+        else if (token == Token.NUMBER)
+            value = buffer.readUtf8(literalLength());
+        else
+            throw unexpected(token, "string");
+        peeked = null;
+        return value;
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        final boolean value;
+        if (source.rangeEquals(0, TRUE)) {
+            buffer.skip(TRUE.size());
+            value = true;
+        } else if (source.rangeEquals(0, FALSE)) {
+            buffer.skip(FALSE.size());
+            value = false;
+        } else {
+            throw new ParserException("malformed literal");
+        }
+        peeked = null;
+        return value;
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+        if (!source.rangeEquals(0, NULL))
+            throw new ParserException("malformed literal");
+        buffer.skip(NULL.size());
+        peeked = null;
+    }
+
+    /**
+     * @return the next number, or the next string parsed as a number
+     */
+    public long nextLong() throws IOException {
+        final String value = nextString();
+        try {
+            return Long.parseLong(value);
+        } catch (final NumberFormatException x) {
+            final double d = parseDouble(value);
+            final long l = (long) d;
+            if (l != d)
+                throw new ParserException("not a long: " + value);
+            return l;
+        }
+    }
+
+    /**
+     * @return the next number, or the next string parsed as a number
+     */
+    public int nextInt() throws IOException {
+        final long value = nextLong();
+        if (value != (int) value)
+            throw new ParserException("not an int: " + value);
+        return (int) value;
+    }
+
+    /**
+     * @return the next number, or the next string parsed as a number
+     */
+    public double nextDouble() throws IOException {
+        return parseDouble(nextString());
+    }
+
+    /**
+     * Skips the next value, including all nested values of an array or object.
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            final Token token = peek();
+            switch (token) {
+            case BEGIN_ARRAY:
+                beginArray();
+                depth++;
+                break;
+            case BEGIN_OBJECT:
+                beginObject();
+                depth++;
+                break;
+            case END_ARRAY:
+                endArray();
+                depth--;
+                break;
+            case END_OBJECT:
+                endObject();
+                depth--;
+                break;
+            case NAME:
+                skipQuoted();
+                peeked = null;
+                break;
+            case STRING:
+                skipQuoted();
+                peeked = null;
+                break;
+            case NUMBER:
+                buffer.skip(literalLength());
+                peeked = null;
+                break;
+            case BOOLEAN:
+                nextBoolean();
+                break;
+            case NULL:
+                nextNull();
+                break;
+            default:
+                throw unexpected(token, "value");
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Moves the next value, including all nested values of an array or object, to the given sink as JSON text. A
+     * reader on the sink can read the value later, without it being parsed into a tree in the meantime.
+     */
+    public void copyValue(final Buffer sink) throws IOException {
+        int depth = 0;
+        do {
+            final Token token = peek();
+            if (token != Token.END_ARRAY && token != Token.END_OBJECT && sink.size() > 0) {
+                final byte last = sink.getByte(sink.size() - 1);
+                if (last != '[' && last != '{' && last != ':')
+                    sink.writeByte(',');
+            }
+            switch (token) {
+            case BEGIN_ARRAY:
+                beginArray();
+                sink.writeByte('[');
+                depth++;
+                break;
+            case BEGIN_OBJECT:
+                beginObject();
+                sink.writeByte('{');
+                depth++;
+                break;
+            case END_ARRAY:
+                endArray();
+                sink.writeByte(']');
+                depth--;
+                break;
+            case END_OBJECT:
+                endObject();
+                sink.writeByte('}');
+                depth--;
+                break;
+            case NAME:
+                copyQuoted(sink);
+                sink.writeByte(':');
+                peeked = null;
+                break;
+            case STRING:
+                copyQuoted(sink);
+                peeked = null;
+                break;
+            case NUMBER:
+                buffer.read(sink, literalLength());
+                peeked = null;
+                break;
+            case BOOLEAN:
+                sink.writeUtf8(nextBoolean() ? "true" : "false");
+                break;
+            case NULL:
+                nextNull();
+                sink.writeUtf8("null");
+                break;
+            default:
+                throw unexpected(token, "value");
+            }
+        } while (depth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    private Token doPeek() throws IOException {
+        final int scope = stack[stackSize - 1];
+        if (scope == EMPTY_ARRAY) {
+            stack[stackSize - 1] = NONEMPTY_ARRAY;
+            if (nextNonWhitespace() == ']') {
+                buffer.skip(1);
+                return Token.END_ARRAY;
+            }
+        } else if (scope == NONEMPTY_ARRAY) {
+            final int c = nextNonWhitespace();
+            if (c != ',' && c != ']')
+                throw syntaxError(c, "',' or ']'");
+            buffer.skip(1);
+            if (c == ']')
+                return Token.END_ARRAY;
+        } else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+            stack[stackSize - 1] = DANGLING_NAME;
+            int c = nextNonWhitespace();
+            if (c == '}') {
+                buffer.skip(1);
+                return Token.END_OBJECT;
+            }
+            if (scope == NONEMPTY_OBJECT) {
+                if (c != ',')
+                    throw syntaxError(c, "',' or '}'");
+                buffer.skip(1);
+                c = nextNonWhitespace();
+            }
+            if (c != '"')
+                throw syntaxError(c, "name");
+            buffer.skip(1);
+            return Token.NAME;
+        } else if (scope == DANGLING_NAME) {
+            stack[stackSize - 1] = NONEMPTY_OBJECT;
+            final int c = nextNonWhitespace();
+            if (c != ':')
+                throw syntaxError(c, "':'");
+            buffer.skip(1);
+        } else if (scope == EMPTY_DOCUMENT) {
+            stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+        } else {
+            final int c = nextNonWhitespace();
+            if (c != -1)
+                throw syntaxError(c, "end of document");
+            return Token.END_DOCUMENT;
+        }
+
+        final int c = nextNonWhitespace();
+        switch (c) {
+        case '{':
+            buffer.skip(1);
+            return Token.BEGIN_OBJECT;
+        case '[':
+            buffer.skip(1);
+            return Token.BEGIN_ARRAY;
+        case '"':
+            buffer.skip(1);
+            return Token.STRING;
+        case 't':
+        case 'f':
+            return Token.BOOLEAN;
+        case 'n':
+            return Token.NULL;
+        default:
+            if (c == '-' || (c >= '0' && c <= '9'))
+                return Token.NUMBER;
+            throw syntaxError(c, "value");
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (source.request(1)) {
+            final byte b = buffer.getByte(0);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t')
+                return b;
+            buffer.skip(1);
+        }
+        return -1;
+    }
+
+    private long literalLength() throws IOException {
+        long length = 0;
+        while (source.request(length + 1)) {
+            final byte b = buffer.getByte(length);
+            if ((b < '0' || b > '9') && b != '-' && b != '+' && b != '.' && b != 'e' && b != 'E')
+                break;
+            length++;
+        }
+        return length;
+    }
+
+    private String readQuoted() throws IOException {
+        StringBuilder builder = null;
+        while (true) {
+            final long index = source.indexOfElement(STRING_SPECIAL);
+            if (index == -1)
+                throw new ParserException("unterminated string");
+            final boolean escape = buffer.getByte(index) == '\\';
+            if (!escape && builder == null) {
+                final String value = buffer.readUtf8(index);
+                buffer.skip(1);
+                return value;
+            }
+            if (builder == null)
+                builder = new StringBuilder();
+            builder.append(buffer.readUtf8(index));
+            buffer.skip(1);
+            if (!escape)
+                return builder.toString();
+            builder.append(readEscape());
+        }
+    }
+
+    private void skipQuoted() throws IOException {
+        while (true) {
+            final long index = source.indexOfElement(STRING_SPECIAL);
+            if (index == -1)
+                throw new ParserException("unterminated string");
+            final boolean escape = buffer.getByte(index) == '\\';
+            buffer.skip(index + 1);
+            if (!escape)
+                return;
+            readEscape();
+        }
+    }
+
+    private void copyQuoted(final Buffer sink) throws IOException {
+        sink.writeByte('"');
+        while (true) {
+            final long index = source.indexOfElement(STRING_SPECIAL);
+            if (index == -1)
+                throw new ParserException("unterminated string");
+            final boolean escape = buffer.getByte(index) == '\\';
+            buffer.read(sink, index + 1);
+            if (!escape)
+                return;
+            if (!source.request(1))
+                throw new ParserException("unterminated escape sequence");
+            final long length = buffer.getByte(0) == 'u' ? 5 : 1;
+            if (!source.request(length))
+                throw new ParserException("unterminated escape sequence");
+            buffer.read(sink, length);
+        }
+    }
+
+    private char readEscape() throws IOException {
+        if (!source.request(1))
+            throw new ParserException("unterminated escape sequence");
+        final byte c = buffer.readByte();
+        switch (c) {
+        case 'u':
+            if (!source.request(4))
+                throw new ParserException("unterminated escape sequence");
+            final String hex = buffer.readUtf8(4);
+            try {
+                return (char) Integer.parseInt(hex, 16);
+            } catch (final NumberFormatException x) {
+                throw new ParserException("malformed escape sequence: \\u" + hex);
+            }
+        case 'b':
+            return '\b';
+        case 'f':
+            return '\f';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 't':
+            return '\t';
+        case '"':
+        case '\\':
+        case '/':
+            return (char) c;
+        default:
+            throw new ParserException("malformed escape sequence: \\" + (char) c);
+        }
+    }
+
+    private static double parseDouble(final String value) throws ParserException {
+        try {
+            return Double.parseDouble(value);
+        } catch (final NumberFormatException x) {
+            throw new ParserException("not a number: " + value);
+        }
+    }
+
+    private void expect(final Token expected) throws IOException {
+        final Token token = peek();
+        if (token != expected)
+            throw unexpected(token, expected.name());
+    }
+
+    private void push(final int scope) {
+        if (stackSize == stack.length) {
+            final int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private static ParserException unexpected(final Token token, final String expected) {
+        return new ParserException("expected " + expected + " but was " + token);
+    }
+
+    private static ParserException syntaxError(final int c, final String expected) {
+        return new ParserException(
+                "expected " + expected + " but was " + (c == -1 ? "end of document" : "'" + (char) c + "'"));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static de.schildbach.pte.util.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+import javax.annotation.Nullable;
+
+/**
+ * <p>
+ * Thread-safe cache with least-recently-used eviction and a time to live.
+ * </p>
+ *
+ * <p>
+ * Each value is assigned a weight by a weigher function; the least recently used entries are evicted as soon as
+ * the total weight exceeds the configured maximum. Entries older than the time to live are never returned.
+ * </p>
+ */
+public final class LruCache<K, V> {
+    private final long maxWeight;
+    private final long ttlNanos;
+    private final ToIntFunction<? super V> weigher;
+    private final CacheStats stats = new CacheStats();
+    private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+
+    private static final class Entry<V> {
+        final V value;
+        final int weight;
+        final long createdNanoTime;
+
+        Entry(final V value, final int weight, final long createdNanoTime) {
+            this.value = value;
+            this.weight = weight;
+            this.createdNanoTime = createdNanoTime;
+        }
+    }
+
+    public LruCache(final long maxWeight, final long ttl, final TimeUnit unit,
+            final ToIntFunction<? super V> weigher) {
+        checkArgument(maxWeight > 0, () -> "maxWeight must be positive");
+        checkArgument(ttl > 0, () -> "ttl must be positive");
+        this.maxWeight = maxWeight;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.weigher = requireNonNull(weigher);
+    }
+
+    /**
+     * Looks up a value without recording a hit or miss, as only the caller can decide if the value is usable.
+     *
+     * @return cached value, or {@code null} if there is none or it has expired
+     */
+    public synchronized @Nullable V get(final K key) {
+        final Entry<V> entry = map.get(key);
+        if (entry == null)
+            return null;
+        if (System.nanoTime() - entry.createdNanoTime >= ttlNanos) {
+            map.remove(key);
+            weight -= entry.weight;
+            return null;
+        }
+        return entry.value;
+    }
+
+    public synchronized void put(final K key, final V value) {
+        final int valueWeight = weigher.applyAsInt(value);
+        final Entry<V> previous = map.put(key, new Entry<>(value, valueWeight, System.nanoTime()));
+        if (previous != null)
+            weight -= previous.weight;
+        weight += valueWeight;
+
+        for (final Iterator<Map.Entry<K, Entry<V>>> i = map.entrySet().iterator(); weight > maxWeight
+                && i.hasNext();) {
+            final Entry<V> eldest = i.next().getValue();
+            i.remove();
+            weight -= eldest.weight;
+            stats.recordEviction();
+        }
+    }
+
+    public synchronized void remove(final K key) {
+        final Entry<V> entry = map.remove(key);
+        if (entry != null)
+            weight -= entry.weight;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public CacheStats stats() {
+        return stats;
+    }
+}
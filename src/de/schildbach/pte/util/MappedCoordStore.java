@@ -0,0 +1,140 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static de.schildbach.pte.util.Preconditions.checkArgument;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.pte.dto.Point;
+
+/**
+ * <p>
+ * {@link CoordStore} backed by a memory-mapped file, so that coordinates survive restarts of the application.
+ * </p>
+ *
+ * <p>
+ * The file is a fixed-size open addressing hash table. Keys are not stored, only a 64-bit hash of them; collisions
+ * are improbable enough for a cache. Once all slots near a key's home slot are taken, the home slot is overwritten,
+ * so the store never grows beyond its capacity. A file written with a different capacity is discarded.
+ * </p>
+ */
+public final class MappedCoordStore implements CoordStore, Closeable {
+    private static final int MAGIC = 0x50544543; // PTEC
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 24;
+    private static final int MAX_PROBES = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int mask;
+
+    /**
+     * @param capacity
+     *            number of slots, rounded up to the next power of two
+     */
+    public MappedCoordStore(final File file, final int capacity) throws IOException {
+        checkArgument(capacity > 0 && capacity <= 1 << 24, () -> "capacity out of range: " + capacity);
+        final int slots = capacity > 1 ? Integer.highestOneBit(capacity - 1) << 1 : 1;
+        this.mask = slots - 1;
+        final long size = HEADER_SIZE + (long) slots * SLOT_SIZE;
+
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            final boolean valid = channel.size() == size && header.getInt(0) == MAGIC
+                    && header.getInt(4) == VERSION && header.getInt(8) == slots;
+            if (!valid)
+                channel.truncate(0); // mapping will fill the file with zeros
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (!valid) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, slots);
+            }
+        } catch (final IOException | RuntimeException x) {
+            channel.close();
+            throw x;
+        }
+    }
+
+    @Override
+    public synchronized @Nullable Point get(final String key) {
+        final long hash = hash(key);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            final int offset = offset(hash, probe);
+            final long slotHash = buffer.getLong(offset);
+            if (slotHash == 0)
+                return null;
+            if (slotHash == hash)
+                return Point.fromDouble(buffer.getDouble(offset + 8), buffer.getDouble(offset + 16));
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void put(final String key, final Point coord) {
+        final long hash = hash(key);
+        int offset = offset(hash, 0);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            final int probeOffset = offset(hash, probe);
+            final long slotHash = buffer.getLong(probeOffset);
+            if (slotHash == 0 || slotHash == hash) {
+                offset = probeOffset;
+                break;
+            }
+        }
+        buffer.putDouble(offset + 8, coord.getLatAsDouble());
+        buffer.putDouble(offset + 16, coord.getLonAsDouble());
+        buffer.putLong(offset, hash);
+    }
+
+    /**
+     * Writes pending changes to disk and releases the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private int offset(final long hash, final int probe) {
+        return HEADER_SIZE + (((int) hash + probe) & mask) * SLOT_SIZE;
+    }
+
+    private static long hash(final String key) {
+        // FNV-1a, with zero reserved for empty slots
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash != 0 ? hash : 1;
+    }
+}
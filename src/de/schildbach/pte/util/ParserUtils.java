@@ -129,42 +129,19 @@ public final class ParserUtils {
         return builder.toString();
     }
 
-    private static final Pattern P_ISO_DATE = Pattern.compile("(\\d{4})-?(\\d{2})-?(\\d{2})");
-    private static final Pattern P_ISO_DATE_REVERSE = Pattern.compile("(\\d{2})[-\\.](\\d{2})[-\\.](\\d{4})");
-
     public static final void parseIsoDate(final Calendar calendar, final CharSequence str) {
-        final Matcher mIso = P_ISO_DATE.matcher(str);
-        if (mIso.matches()) {
-            calendar.set(Calendar.YEAR, Integer.parseInt(mIso.group(1)));
-            calendar.set(Calendar.MONTH, Integer.parseInt(mIso.group(2)) - 1);
-            calendar.set(Calendar.DAY_OF_MONTH, Integer.parseInt(mIso.group(3)));
-            return;
-        }
-
-        final Matcher mIsoReverse = P_ISO_DATE_REVERSE.matcher(str);
-        if (mIsoReverse.matches()) {
-            calendar.set(Calendar.YEAR, Integer.parseInt(mIsoReverse.group(3)));
-            calendar.set(Calendar.MONTH, Integer.parseInt(mIsoReverse.group(2)) - 1);
-            calendar.set(Calendar.DAY_OF_MONTH, Integer.parseInt(mIsoReverse.group(1)));
-            return;
-        }
-
-        throw new RuntimeException("cannot parse: '" + str + "'");
+        final long civil = DateTimes.civil(DateTimes.parseIsoDate(str));
+        calendar.set(Calendar.YEAR, (int) (civil >> 16));
+        calendar.set(Calendar.MONTH, (int) (civil >> 8 & 0xff) - 1);
+        calendar.set(Calendar.DAY_OF_MONTH, (int) (civil & 0xff));
     }
 
-    private static final Pattern P_ISO_TIME = Pattern.compile("(\\d{2})[-:]?(\\d{2})([-:]?(\\d{2}))?");
-
     public static final void parseIsoTime(final Calendar calendar, final CharSequence str) {
-        final Matcher mIso = P_ISO_TIME.matcher(str);
-        if (mIso.matches()) {
-            calendar.set(Calendar.HOUR_OF_DAY, Integer.parseInt(mIso.group(1)));
-            calendar.set(Calendar.MINUTE, Integer.parseInt(mIso.group(2)));
-            calendar.set(Calendar.SECOND, mIso.group(4) != null ? Integer.parseInt(mIso.group(4)) : 0);
-            calendar.set(Calendar.MILLISECOND, 0);
-            return;
-        }
-
-        throw new RuntimeException("cannot parse: '" + str + "'");
+        final int secondOfDay = DateTimes.parseIsoTime(str);
+        calendar.set(Calendar.HOUR_OF_DAY, secondOfDay / 3600);
+        calendar.set(Calendar.MINUTE, secondOfDay / 60 % 60);
+        calendar.set(Calendar.SECOND, secondOfDay % 60);
+        calendar.set(Calendar.MILLISECOND, 0);
     }
 
     public static final void parseIsoDateTime(final Calendar calendar, final CharSequence str) {
@@ -17,10 +17,7 @@
 
 package de.schildbach.pte.util;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import de.schildbach.pte.dto.Point;
+import de.schildbach.pte.dto.PointArray;
 
 /**
  * <p>
@@ -32,9 +29,24 @@ import de.schildbach.pte.dto.Point;
  * @author Andreas Schildbach
  */
 public final class PolylineFormat {
-    public static List<Point> decode(final String encodedPolyline) {
+    public static PointArray decode(final String encodedPolyline) {
+        final PointArray.Builder path = PointArray.builder(0);
+        decode(encodedPolyline, path);
+        return path.build();
+    }
+
+    /**
+     * Decodes the given polyline, appending its points to the given builder.
+     */
+    public static void decode(final String encodedPolyline, final PointArray.Builder path) {
         final int len = encodedPolyline.length();
-        final List<Point> path = new ArrayList<>(len / 2);
+
+        // each value ends with a character without continuation bit, and each point consists of two values
+        int numValues = 0;
+        for (int i = 0; i < len; i++)
+            if (encodedPolyline.charAt(i) - 63 < 0x20)
+                numValues++;
+        path.ensureCapacity(path.size() + numValues / 2);
 
         int lat = 0;
         int lon = 0;
@@ -60,8 +72,7 @@ public final class PolylineFormat {
             } while (lonB >= 0x1f);
             lon += (lonResult & 1) != 0 ? ~(lonResult >> 1) : (lonResult >> 1);
 
-            path.add(Point.from1E5(lat, lon));
+            path.add1E5(lat, lon);
         }
-        return path;
     }
 }
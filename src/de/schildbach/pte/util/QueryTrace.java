@@ -0,0 +1,238 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nullable;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.ResponseBody;
+
+/**
+ * <p>
+ * Time spent in the phases of one provider query. While a query is run via {@link #call(CallControl.IOCallable)},
+ * {@link HttpClient} adds the phases of each of its calls to this trace.
+ * </p>
+ *
+ * <p>
+ * Phases are summed over all HTTP calls of the query. Phases that did not occur, e.g. connecting if a pooled
+ * connection was reused, are reported as -1.
+ * </p>
+ */
+public final class QueryTrace {
+    public enum Phase {
+        /** from start of the query until its first HTTP call */
+        BUILD_REQUEST,
+        /** resolving host names */
+        DNS,
+        /** opening TCP connections, excluding TLS */
+        CONNECT,
+        /** TLS handshakes */
+        TLS,
+        /** from sending request headers until receiving response headers */
+        TIME_TO_FIRST_BYTE,
+        /** from receiving the first until the last byte of response bodies */
+        DOWNLOAD,
+        /**
+         * handling of streamed responses, except waiting for the network, and parsing of responses that have been read
+         * completely
+         */
+        PARSE,
+        /** remaining time outside of HTTP calls, e.g. constructing result objects */
+        PROCESS,
+        /** the whole query */
+        TOTAL
+    }
+
+    private static final ThreadLocal<QueryTrace> CURRENT = new ThreadLocal<>();
+    private static final Phase[] PHASES = Phase.values();
+
+    private final AtomicLongArray nanos = new AtomicLongArray(PHASES.length);
+    private final AtomicLong httpNanos = new AtomicLong();
+    private final AtomicLong detachedParseNanos = new AtomicLong();
+    private volatile long startNanoTime = 0;
+
+    public QueryTrace() {
+        for (int i = 0; i < PHASES.length; i++)
+            nanos.set(i, -1);
+    }
+
+    /**
+     * Runs the given query on the current thread and traces it.
+     */
+    public <T> T call(final CallControl.IOCallable<T> callable) throws IOException {
+        final QueryTrace previous = CURRENT.get();
+        CURRENT.set(this);
+        startNanoTime = System.nanoTime();
+        try {
+            return callable.call();
+        } finally {
+            final long total = System.nanoTime() - startNanoTime;
+            add(Phase.TOTAL, total);
+            add(Phase.PROCESS, total - Math.max(nanos(Phase.BUILD_REQUEST), 0) - httpNanos.get()
+                    - detachedParseNanos.get());
+            if (previous != null)
+                CURRENT.set(previous);
+            else
+                CURRENT.remove();
+        }
+    }
+
+    /**
+     * @return time spent in the given phase, or -1 if it did not occur
+     */
+    public long nanos(final Phase phase) {
+        return nanos.get(phase.ordinal());
+    }
+
+    /**
+     * Runs the given parser of a response that has been read completely, e.g. via {@link HttpClient#get(okhttp3.HttpUrl)},
+     * and adds the time it takes to the query traced on the current thread, if any.
+     */
+    public static <T, X extends Exception> T parse(final Parser<T, X> parser) throws X {
+        final QueryTrace trace = CURRENT.get();
+        if (trace == null)
+            return parser.parse();
+        final long startNanoTime = System.nanoTime();
+        try {
+            return parser.parse();
+        } finally {
+            final long parseNanos = System.nanoTime() - startNanoTime;
+            trace.add(Phase.PARSE, parseNanos);
+            trace.detachedParseNanos.addAndGet(parseNanos);
+        }
+    }
+
+    public interface Parser<T, X extends Exception> {
+        T parse() throws X;
+    }
+
+    static @Nullable QueryTrace current() {
+        return CURRENT.get();
+    }
+
+    void add(final Phase phase, final long nanos) {
+        this.nanos.accumulateAndGet(phase.ordinal(), Math.max(nanos, 0),
+                (previous, delta) -> previous < 0 ? delta : previous + delta);
+    }
+
+    void onHttpCallStart(final long nanoTime) {
+        if (nanos(Phase.BUILD_REQUEST) < 0)
+            add(Phase.BUILD_REQUEST, nanoTime - startNanoTime);
+    }
+
+    void onSuccessful(final HttpClient.Callback callback, final CharSequence bodyPeek, final ResponseBody body)
+            throws IOException {
+        // the callback consumes the body, so subtract the time spent waiting for it
+        final long downloadNanos = Math.max(nanos(Phase.DOWNLOAD), 0);
+        final long startNanoTime = System.nanoTime();
+        callback.onSuccessful(bodyPeek, body);
+        add(Phase.PARSE, System.nanoTime() - startNanoTime - (Math.max(nanos(Phase.DOWNLOAD), 0) - downloadNanos));
+    }
+
+    void onHttpCallEnd(final long startNanoTime) {
+        httpNanos.addAndGet(System.nanoTime() - startNanoTime);
+    }
+
+    /**
+     * Creates listeners for calls issued while a query is traced. Calls are created on the querying thread.
+     */
+    static final EventListener.Factory EVENT_LISTENER_FACTORY = call -> {
+        final QueryTrace trace = CURRENT.get();
+        return trace != null ? new Listener(trace) : EventListener.NONE;
+    };
+
+    private static final class Listener extends EventListener {
+        private final QueryTrace trace;
+        private long dnsStart, connectStart, secureConnectStart, requestHeadersStart, responseBodyStart;
+
+        Listener(final QueryTrace trace) {
+            this.trace = trace;
+        }
+
+        @Override
+        public void dnsStart(final Call call, final String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(final Call call, final String domainName, final List<InetAddress> inetAddressList) {
+            trace.add(Phase.DNS, System.nanoTime() - dnsStart);
+        }
+
+        @Override
+        public void connectStart(final Call call, final InetSocketAddress inetSocketAddress, final Proxy proxy) {
+            connectStart = System.nanoTime();
+            secureConnectStart = 0;
+        }
+
+        @Override
+        public void secureConnectStart(final Call call) {
+            secureConnectStart = System.nanoTime();
+            trace.add(Phase.CONNECT, secureConnectStart - connectStart);
+        }
+
+        @Override
+        public void secureConnectEnd(final Call call, final @Nullable Handshake handshake) {
+            trace.add(Phase.TLS, System.nanoTime() - secureConnectStart);
+        }
+
+        @Override
+        public void connectEnd(final Call call, final InetSocketAddress inetSocketAddress, final Proxy proxy,
+                final @Nullable Protocol protocol) {
+            if (secureConnectStart == 0)
+                trace.add(Phase.CONNECT, System.nanoTime() - connectStart);
+        }
+
+        @Override
+        public void connectFailed(final Call call, final InetSocketAddress inetSocketAddress, final Proxy proxy,
+                final @Nullable Protocol protocol, final IOException ioe) {
+            connectEnd(call, inetSocketAddress, proxy, protocol);
+        }
+
+        @Override
+        public void requestHeadersStart(final Call call) {
+            requestHeadersStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseHeadersStart(final Call call) {
+            trace.add(Phase.TIME_TO_FIRST_BYTE, System.nanoTime() - requestHeadersStart);
+        }
+
+        @Override
+        public void responseBodyStart(final Call call) {
+            responseBodyStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseBodyEnd(final Call call, final long byteCount) {
+            trace.add(Phase.DOWNLOAD, System.nanoTime() - responseBodyStart);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static de.schildbach.pte.util.Preconditions.checkArgument;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nullable;
+
+/**
+ * <p>
+ * Token bucket that limits the rate of requests to an upstream, adapting the rate to how the upstream copes.
+ * </p>
+ *
+ * <p>
+ * The rate starts at its maximum. It is halved whenever the upstream signals overload, but at most once per second,
+ * because a burst of concurrent requests reports the same overload several times. Each successful response increases
+ * it by a fiftieth of the maximum rate again. The bucket holds up to one second worth of requests, so short bursts
+ * pass without delay.
+ * </p>
+ *
+ * <p>
+ * A request never waits past the deadline of its query: if its token would not be available in time, it fails right
+ * away without taking the token.
+ * </p>
+ */
+public final class RateLimiter {
+    private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double MIN_RATE_FRACTION = 1.0 / 64;
+    private static final double INCREASE_FRACTION = 1.0 / 50;
+
+    private final LongSupplier nanoTime;
+    private double maxRate;
+    private double rate;
+    private double tokens;
+    private long lastRefillNanoTime;
+    private long lastDecreaseNanoTime;
+
+    /**
+     * @param maxRate
+     *            maximum number of requests per second
+     */
+    public RateLimiter(final double maxRate) {
+        this(maxRate, System::nanoTime);
+    }
+
+    RateLimiter(final double maxRate, final LongSupplier nanoTime) {
+        checkArgument(maxRate > 0, () -> "maxRate must be positive: " + maxRate);
+        this.nanoTime = nanoTime;
+        this.maxRate = maxRate;
+        this.rate = maxRate;
+        this.tokens = capacity();
+        this.lastRefillNanoTime = nanoTime.getAsLong();
+        this.lastDecreaseNanoTime = lastRefillNanoTime - DECREASE_INTERVAL_NANOS;
+    }
+
+    public synchronized void setMaxRate(final double maxRate) {
+        checkArgument(maxRate > 0, () -> "maxRate must be positive: " + maxRate);
+        this.maxRate = maxRate;
+        this.rate = Math.min(rate, maxRate);
+    }
+
+    /**
+     * @return current number of requests per second
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Takes a token, waiting for it if the bucket is empty. The wait is bounded by the deadline of the
+     * {@link CallControl} of the current query, and ends early if the query is cancelled.
+     *
+     * @throws InterruptedIOException
+     *             if the token would not be available before the deadline, or the query was cancelled while waiting
+     */
+    public void acquire() throws InterruptedIOException {
+        acquire(CallControl.current());
+    }
+
+    void acquire(final @Nullable CallControl callControl) throws InterruptedIOException {
+        if (callControl != null && callControl.isCancelled())
+            throw new InterruptedIOException("cancelled");
+        final long waitNanos = reserve(callControl != null ? callControl.remainingNanos() : Long.MAX_VALUE);
+        if (waitNanos < 0)
+            throw new InterruptedIOException("deadline exceeded while waiting for rate limit");
+        if (waitNanos == 0)
+            return;
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final Runnable onCancel = cancelled::countDown;
+        if (callControl != null)
+            callControl.addCancelListener(onCancel);
+        try {
+            if (cancelled.await(waitNanos, TimeUnit.NANOSECONDS)) {
+                release();
+                throw new InterruptedIOException("cancelled");
+            }
+        } catch (final InterruptedException x) {
+            release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for rate limit");
+        } finally {
+            if (callControl != null)
+                callControl.removeCancelListener(onCancel);
+        }
+    }
+
+    /**
+     * Takes a token, even if it is not available yet.
+     *
+     * @return nanoseconds to wait until the token becomes available
+     */
+    long reserve() {
+        return reserve(Long.MAX_VALUE);
+    }
+
+    /**
+     * Takes a token if it becomes available within the given time.
+     *
+     * @return nanoseconds to wait until the token becomes available, or -1 if no token was taken because it would
+     *         not be available in time
+     */
+    synchronized long reserve(final long maxWaitNanos) {
+        refill();
+        final long waitNanos = tokens >= 1 ? 0 : (long) ((1 - tokens) / rate * 1e9);
+        if (waitNanos > maxWaitNanos)
+            return -1;
+        tokens -= 1;
+        return waitNanos;
+    }
+
+    /**
+     * Gives back a token that was taken but not used.
+     */
+    synchronized void release() {
+        refill();
+        tokens = Math.min(tokens + 1, capacity());
+    }
+
+    /**
+     * Adapts the rate to a response of the upstream.
+     *
+     * @param overloaded
+     *            whether the upstream signalled overload, e.g. by blocking or failing the request
+     */
+    public synchronized void onResponse(final boolean overloaded) {
+        refill();
+        if (overloaded) {
+            final long now = nanoTime.getAsLong();
+            if (now - lastDecreaseNanoTime >= DECREASE_INTERVAL_NANOS) {
+                rate = Math.max(rate / 2, maxRate * MIN_RATE_FRACTION);
+                tokens = Math.min(tokens, capacity());
+                lastDecreaseNanoTime = now;
+            }
+        } else {
+            rate = Math.min(rate + maxRate * INCREASE_FRACTION, maxRate);
+        }
+    }
+
+    private double capacity() {
+        return Math.max(rate, 1);
+    }
+
+    private void refill() {
+        final long now = nanoTime.getAsLong();
+        tokens = Math.min(tokens + (now - lastRefillNanoTime) / 1e9 * rate, capacity());
+        lastRefillNanoTime = now;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static de.schildbach.pte.util.Preconditions.checkArgument;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import okhttp3.Response;
+
+/**
+ * <p>
+ * Decides whether and when a failed request is sent again.
+ * </p>
+ *
+ * <p>
+ * Failures are exceptions of one of the retryable classes, responses with a retryable status code, and successful
+ * responses with an empty body. Empty bodies are retried for any request. Otherwise, requests that are not idempotent
+ * are only retried if they certainly did not reach the server, i.e. if no connection could be established. Between
+ * attempts, the policy waits a random time up to an exponentially growing backoff ("full jitter").
+ * </p>
+ *
+ * <p>
+ * Retries never outlast the query: a request is not retried if its query has been cancelled or would run out of time
+ * during the wait, and the wait ends as soon as the query is cancelled.
+ * </p>
+ *
+ * <p>
+ * By default, requests are tried up to three times, with backoffs of up to 250 and 500 milliseconds. Timeouts,
+ * connection problems and 502 and 504 responses are retried.
+ * </p>
+ */
+public final class RetryPolicy {
+    private static final List<Class<? extends IOException>> SAFE_EXCEPTIONS = Arrays.asList(ConnectException.class,
+            NoRouteToHostException.class, UnknownHostException.class);
+
+    private volatile int maxAttempts = 3;
+    private volatile long initialBackoffMillis = 250;
+    private volatile long maxBackoffMillis = 4000;
+    private volatile List<Class<? extends IOException>> retryableExceptions = Arrays.asList(
+            SocketTimeoutException.class, SocketException.class, UnknownHostException.class, EOFException.class);
+    private volatile Set<Integer> retryableStatusCodes = Collections
+            .unmodifiableSet(new HashSet<>(Arrays.asList(502, 504)));
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong exhaustedCount = new AtomicLong();
+
+    /**
+     * @param maxAttempts
+     *            maximum number of attempts including the first one, 1 disables retrying
+     */
+    public RetryPolicy setMaxAttempts(final int maxAttempts) {
+        checkArgument(maxAttempts > 0, () -> "maxAttempts must be positive: " + maxAttempts);
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param initialBackoff
+     *            maximum wait before the first retry, doubled for each further retry
+     * @param maxBackoff
+     *            upper bound of the maximum wait
+     */
+    public RetryPolicy setBackoff(final long initialBackoff, final long maxBackoff, final TimeUnit unit) {
+        checkArgument(initialBackoff >= 0 && maxBackoff >= initialBackoff,
+                () -> "illegal backoff: " + initialBackoff + ", " + maxBackoff);
+        this.initialBackoffMillis = unit.toMillis(initialBackoff);
+        this.maxBackoffMillis = unit.toMillis(maxBackoff);
+        return this;
+    }
+
+    public RetryPolicy setRetryableExceptions(final List<Class<? extends IOException>> exceptions) {
+        this.retryableExceptions = Collections.unmodifiableList(new ArrayList<>(exceptions));
+        return this;
+    }
+
+    public RetryPolicy setRetryableStatusCodes(final Integer... statusCodes) {
+        this.retryableStatusCodes = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(statusCodes)));
+        return this;
+    }
+
+    /**
+     * @return number of retries so far
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * @return number of requests that still failed after their last attempt
+     */
+    public long getExhaustedCount() {
+        return exhaustedCount.get();
+    }
+
+    /**
+     * @return nanoseconds to wait before retrying after the given failed attempt, or -1 if it is not retried
+     */
+    long retryDelayNanos(final int attempt, final IOException x, final boolean idempotent,
+            final @Nullable CallControl callControl) {
+        if (!isInstance(retryableExceptions, x))
+            return -1;
+        if (!idempotent && !isInstance(SAFE_EXCEPTIONS, x))
+            return -1;
+        return checkAttempt(attempt, callControl);
+    }
+
+    /**
+     * @return nanoseconds to wait before retrying after the given response, or -1 if it is not retried
+     */
+    long retryDelayNanos(final int attempt, final Response response, final boolean idempotent,
+            final @Nullable CallControl callControl) throws IOException {
+        if (response.isSuccessful()) {
+            if (response.peekBody(1).bytes().length > 0)
+                return -1;
+        } else if (!idempotent || !retryableStatusCodes.contains(response.code())) {
+            return -1;
+        }
+        return checkAttempt(attempt, callControl);
+    }
+
+    /**
+     * Waits before a retry. The wait ends early if the query is cancelled.
+     *
+     * @throws InterruptedIOException
+     *             if the query was cancelled while waiting
+     */
+    static void backoff(final long delayNanos, final @Nullable CallControl callControl)
+            throws InterruptedIOException {
+        if (delayNanos <= 0)
+            return;
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final Runnable onCancel = cancelled::countDown;
+        if (callControl != null)
+            callControl.addCancelListener(onCancel);
+        try {
+            if (cancelled.await(delayNanos, TimeUnit.NANOSECONDS))
+                throw new InterruptedIOException("cancelled during backoff");
+        } catch (final InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted during backoff");
+        } finally {
+            if (callControl != null)
+                callControl.removeCancelListener(onCancel);
+        }
+    }
+
+    private long checkAttempt(final int attempt, final @Nullable CallControl callControl) {
+        if (attempt >= maxAttempts) {
+            if (maxAttempts > 1)
+                exhaustedCount.incrementAndGet();
+            return -1;
+        }
+        final long maxNanos = TimeUnit.MILLISECONDS
+                .toNanos(Math.min(initialBackoffMillis << Math.min(attempt - 1, 20), maxBackoffMillis));
+        final long delayNanos = maxNanos > 0 ? ThreadLocalRandom.current().nextLong(maxNanos + 1) : 0;
+        // don't retry if the query is given up before the retry could be sent
+        if (callControl != null && (callControl.isCancelled() || delayNanos >= callControl.remainingNanos())) {
+            exhaustedCount.incrementAndGet();
+            return -1;
+        }
+        retryCount.incrementAndGet();
+        return delayNanos;
+    }
+
+    private static boolean isInstance(final List<Class<? extends IOException>> classes, final IOException x) {
+        for (final Class<? extends IOException> clazz : classes)
+            if (clazz.isInstance(x))
+                return true;
+        return false;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import okhttp3.Call;
+import okhttp3.Response;
+
+/**
+ * Executes a call as often as the {@link RetryPolicy} permits. Each attempt is a fresh clone of the call, attached
+ * to the {@link CallControl} of the query. The call of the last attempt stays attached until {@link #detach()}, so
+ * that reading the response body can be cancelled as well.
+ */
+final class RetryingCall {
+    interface Attempt {
+        Response execute(Call call) throws IOException;
+    }
+
+    private final RetryPolicy policy;
+    private final boolean idempotent;
+    private final @Nullable CallControl callControl;
+    private Call call;
+
+    private static final Logger log = LoggerFactory.getLogger(RetryingCall.class);
+
+    RetryingCall(final Call call, final RetryPolicy policy, final boolean idempotent,
+            final @Nullable CallControl callControl) {
+        this.call = call;
+        this.policy = policy;
+        this.idempotent = idempotent;
+        this.callControl = callControl;
+    }
+
+    Response execute(final Attempt attempt) throws IOException {
+        for (int number = 1;; number++) {
+            if (callControl != null)
+                callControl.attach(call);
+            final Response response;
+            try {
+                response = attempt.execute(call);
+            } catch (final IOException x) {
+                if (call.isCanceled())
+                    throw x;
+                final long delayNanos = policy.retryDelayNanos(number, x, idempotent, callControl);
+                if (delayNanos < 0)
+                    throw x;
+                log.info("Got {}, retrying {}", x.toString(), call.request().url());
+                retry(delayNanos);
+                continue;
+            }
+            final long delayNanos = policy.retryDelayNanos(number, response, idempotent, callControl);
+            if (delayNanos < 0)
+                return response;
+            log.info("Got {} response, retrying {}", response.code(), call.request().url());
+            response.close();
+            retry(delayNanos);
+        }
+    }
+
+    private void retry(final long delayNanos) throws InterruptedIOException {
+        detach();
+        RetryPolicy.backoff(delayNanos, callControl);
+        call = call.clone();
+    }
+
+    void detach() {
+        if (callControl != null)
+            callControl.detach(call);
+    }
+}
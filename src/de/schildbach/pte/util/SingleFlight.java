@@ -0,0 +1,200 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nullable;
+
+/**
+ * <p>
+ * Coalesces concurrent identical requests: while a call for a given key is in flight, further calls for the
+ * same key wait for it and share its result (or its exception) rather than issuing their own.
+ * </p>
+ *
+ * <p>
+ * Each waiting caller is still governed by its own {@link CallControl}: it stops waiting once it is cancelled or
+ * its deadline is exceeded. If the call in flight fails because its own caller was cancelled or ran out of time,
+ * that failure is not shared; instead one of the waiting callers issues the call again. Asynchronous queries, see
+ * {@link AsyncQuery}, wait without occupying a thread.
+ * </p>
+ *
+ * <p>
+ * Nothing is cached beyond the duration of the call, so this does not add any staleness. Note that all callers
+ * receive the same result instance.
+ * </p>
+ */
+public final class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public V call(final K key, final CallControl.IOCallable<V> callable) throws IOException {
+        final CallControl callControl = CallControl.current();
+        final AsyncQuery<?> asyncQuery = callControl != null ? callControl.asyncQuery() : null;
+        if (asyncQuery != null)
+            return callAsync(key, callable, asyncQuery, callControl);
+        while (true) {
+            final CompletableFuture<V> future = new CompletableFuture<>();
+            final CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+            if (existing != null) {
+                try {
+                    return await(existing, callControl);
+                } catch (final Abandoned x) {
+                    continue;
+                }
+            }
+
+            try {
+                final V value = callable.call();
+                inFlight.remove(key, future);
+                future.complete(value);
+                return value;
+            } catch (final Throwable x) {
+                inFlight.remove(key, future);
+                if (x instanceof InterruptedIOException && callControl != null
+                        && (callControl.isCancelled() || callControl.isExpired()))
+                    future.completeExceptionally(new Abandoned());
+                else
+                    future.completeExceptionally(x);
+                throw x;
+            }
+        }
+    }
+
+    /**
+     * Variant of {@link #call(Object, CallControl.IOCallable)} for asynchronous queries, which are run again after
+     * each suspension. Whether the query leads or joins the call is remembered across runs, and a leading query keeps
+     * the call in flight while it is suspended.
+     */
+    private V callAsync(final K key, final CallControl.IOCallable<V> callable, final AsyncQuery<?> asyncQuery,
+            final CallControl callControl) throws IOException {
+        final Object stepKey = asyncQuery.stepKey(Arrays.asList(this, key));
+        while (true) {
+            Flight<V> flight = asyncQuery.getStep(stepKey);
+            if (flight == null) {
+                final CompletableFuture<V> future = new CompletableFuture<>();
+                final CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+                flight = existing != null ? new Flight<>(existing, false) : new Flight<>(future, true);
+                asyncQuery.putStep(stepKey, flight);
+                if (flight.leading)
+                    asyncQuery.whenDone(() -> abandon(key, future));
+            }
+            if (!flight.leading || flight.future.isDone()) {
+                try {
+                    return asyncQuery.await(flight.future);
+                } catch (final Abandoned x) {
+                    asyncQuery.removeStep(stepKey);
+                    continue;
+                }
+            }
+
+            try {
+                final V value = callable.call();
+                inFlight.remove(key, flight.future);
+                flight.future.complete(value);
+                return value;
+            } catch (final Throwable x) {
+                if (AsyncQuery.isSuspension(x))
+                    throw x;
+                inFlight.remove(key, flight.future);
+                if (x instanceof InterruptedIOException && (callControl.isCancelled() || callControl.isExpired()))
+                    flight.future.completeExceptionally(new Abandoned());
+                else
+                    flight.future.completeExceptionally(x);
+                throw x;
+            }
+        }
+    }
+
+    /**
+     * Gives up leading the given call if its query ended without completing it, e.g. because the query was cancelled
+     * while suspended.
+     */
+    private void abandon(final K key, final CompletableFuture<V> future) {
+        if (inFlight.remove(key, future))
+            future.completeExceptionally(new Abandoned());
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private static <V> V await(final CompletableFuture<V> future, final @Nullable CallControl callControl)
+            throws IOException {
+        final CompletableFuture<V> waiter = new CompletableFuture<>();
+        future.whenComplete((value, x) -> {
+            if (x == null)
+                waiter.complete(value);
+            else
+                waiter.completeExceptionally(x);
+        });
+        final Runnable onCancel = () -> waiter.completeExceptionally(new InterruptedIOException("cancelled"));
+        if (callControl != null)
+            callControl.addCancelListener(onCancel);
+        try {
+            final long remainingNanos = callControl != null ? callControl.remainingNanos() : Long.MAX_VALUE;
+            if (remainingNanos <= 0)
+                throw new InterruptedIOException("deadline exceeded");
+            return remainingNanos == Long.MAX_VALUE ? waiter.get() : waiter.get(remainingNanos, TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException x) {
+            throw new InterruptedIOException("deadline exceeded");
+        } catch (final InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for coalesced request");
+        } catch (final ExecutionException x) {
+            final Throwable cause = x.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        } finally {
+            if (callControl != null)
+                callControl.removeCancelListener(onCancel);
+        }
+    }
+
+    private static final class Flight<V> {
+        final CompletableFuture<V> future;
+        final boolean leading;
+
+        Flight(final CompletableFuture<V> future, final boolean leading) {
+            this.future = future;
+            this.leading = leading;
+        }
+    }
+
+    /**
+     * Signals waiting callers that the call in flight was given up by its own caller.
+     */
+    private static final class Abandoned extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Abandoned() {
+            super(null, null, false, false);
+        }
+    }
+}
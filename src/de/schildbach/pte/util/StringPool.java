@@ -0,0 +1,106 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static de.schildbach.pte.util.Preconditions.checkArgument;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Pool of decoded strings, looked up by their encoded bytes. Decoding bytes that are already in the pool returns the
+ * pooled instance without allocating, so strings that recur across responses, like station names and line labels,
+ * are decoded once and shared.
+ * </p>
+ *
+ * <p>
+ * The pool is direct-mapped: each slot holds the string most recently decoded into it, so memory is bounded by the
+ * number of slots and frequent strings tend to stay. Strings longer than {@value #MAX_LENGTH} bytes are decoded but
+ * never pooled. Slots hold immutable entries and are replaced as a whole, so the pool is thread-safe without locking;
+ * concurrent decoding at worst misses.
+ * </p>
+ */
+public final class StringPool {
+    public static final int MAX_LENGTH = 128;
+
+    private final Entry[] entries;
+    private final int mask;
+    private final CacheStats stats = new CacheStats();
+
+    private static final class Entry {
+        final byte[] bytes;
+        final Charset charset;
+        final String value;
+
+        Entry(final byte[] bytes, final Charset charset, final String value) {
+            this.bytes = bytes;
+            this.charset = charset;
+            this.value = value;
+        }
+    }
+
+    /**
+     * @param size
+     *            number of slots, must be a power of two
+     */
+    public StringPool(final int size) {
+        checkArgument(size > 0 && Integer.bitCount(size) == 1, () -> "size must be a power of two: " + size);
+        this.entries = new Entry[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Decodes the given range of bytes, or returns the pooled string for them.
+     */
+    public String decode(final byte[] bytes, final int offset, final int length, final Charset charset) {
+        if (length > MAX_LENGTH)
+            return new String(bytes, offset, length, charset);
+
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++)
+            hash = 31 * hash + bytes[i];
+        final int index = (hash ^ (hash >>> 16)) & mask;
+
+        final Entry entry = entries[index];
+        if (entry != null && entry.charset.equals(charset) && rangeEquals(entry.bytes, bytes, offset, length)) {
+            stats.recordHit();
+            return entry.value;
+        }
+
+        stats.recordMiss();
+        if (entry != null)
+            stats.recordEviction();
+        final String value = new String(bytes, offset, length, charset);
+        entries[index] = new Entry(Arrays.copyOfRange(bytes, offset, offset + length), charset, value);
+        return value;
+    }
+
+    public CacheStats stats() {
+        return stats;
+    }
+
+    private static boolean rangeEquals(final byte[] pooled, final byte[] bytes, final int offset, final int length) {
+        if (pooled.length != length)
+            return false;
+        for (int i = 0; i < length; i++)
+            if (pooled[i] != bytes[offset + i])
+                return false;
+        return true;
+    }
+}
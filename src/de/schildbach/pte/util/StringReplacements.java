@@ -0,0 +1,328 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static de.schildbach.pte.util.Preconditions.checkArgument;
+import static de.schildbach.pte.util.Preconditions.checkState;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Replaces strings in a stream of characters, with the same result as a chain of {@link StringReplaceReader}s: pairs
+ * are applied in the order they were added, each one to the result of the previous ones, and each one replaces
+ * non-overlapping occurrences from left to right.
+ * </p>
+ *
+ * <p>
+ * Instead of one pass per pair, consecutive pairs that cannot affect each other are matched at once by an
+ * Aho-Corasick automaton. Pairs affect each other if their patterns overlap, or if a replacement can form a later
+ * pattern together with its surrounding text. Only such pairs need to be separated into subsequent automatons, so
+ * typically each character passes few automatons. Runs of characters that cannot start a match are copied in bulk.
+ * </p>
+ *
+ * <p>
+ * Pairs are added up front; the automatons are built once on first use and shared by all readers, which makes
+ * instances safe to be used by multiple threads from then on.
+ * </p>
+ */
+public final class StringReplacements {
+    private final List<String> patterns = new ArrayList<>();
+    private final List<String> replacements = new ArrayList<>();
+    private Automaton[] automatons = null;
+
+    /**
+     * Adds a pattern-replacement pair. All occurrences of the pattern will be replaced by the replacement.
+     */
+    public synchronized StringReplacements replace(final String pattern, final String replacement) {
+        checkState(automatons == null, () -> "already in use");
+        checkArgument(!pattern.isEmpty(), () -> "empty pattern");
+        patterns.add(pattern);
+        replacements.add(replacement);
+        return this;
+    }
+
+    /**
+     * @return reader that applies all replacements to the given reader
+     */
+    public Reader filter(final Reader in) {
+        return new FilterReader(in, automatons());
+    }
+
+    private synchronized Automaton[] automatons() {
+        if (automatons == null) {
+            final List<Automaton> list = new ArrayList<>();
+            int first = 0;
+            for (int i = 1; i <= patterns.size(); i++) {
+                if (i == patterns.size() || dependsOnPrevious(first, i)) {
+                    list.add(new Automaton(patterns.subList(first, i), replacements.subList(first, i)));
+                    first = i;
+                }
+            }
+            automatons = list.toArray(new Automaton[0]);
+        }
+        return automatons;
+    }
+
+    /**
+     * @return true if the given pair cannot be matched together with the pairs from {@code first}
+     */
+    private boolean dependsOnPrevious(final int first, final int index) {
+        final String pattern = patterns.get(index);
+        for (int i = first; i < index; i++) {
+            final String replacement = replacements.get(i);
+            if (overlaps(patterns.get(i), pattern) || replacement.isEmpty() || overlaps(replacement, pattern))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if an occurrence of one string can share characters with an occurrence of the other
+     */
+    static boolean overlaps(final String a, final String b) {
+        if (a.contains(b) || b.contains(a))
+            return true;
+        for (int n = 1; n < Math.min(a.length(), b.length()); n++)
+            if (a.regionMatches(a.length() - n, b, 0, n) || b.regionMatches(b.length() - n, a, 0, n))
+                return true;
+        return false;
+    }
+
+    int numAutomatons() {
+        return automatons().length;
+    }
+
+    /**
+     * Trie of patterns that neither overlap nor contain each other, so each terminal node is a leaf and matches
+     * never conflict.
+     */
+    private static final class Automaton {
+        private static final char[] NO_CHARS = new char[0];
+
+        final char[][] paths; // characters from the root to each node
+        final char[][] replacements; // for terminal nodes, otherwise null
+        final char[][] childChars;
+        final int[][] childNodes;
+        final int[] fail;
+        final int[][] asciiNext; // transitions for ASCII characters, including those via failure links
+
+        Automaton(final List<String> patterns, final List<String> replacements) {
+            final List<char[]> paths = new ArrayList<>();
+            final List<char[]> nodeReplacements = new ArrayList<>();
+            final List<StringBuilder> childChars = new ArrayList<>();
+            final List<List<Integer>> childNodes = new ArrayList<>();
+            paths.add(NO_CHARS);
+            nodeReplacements.add(null);
+            childChars.add(new StringBuilder());
+            childNodes.add(new ArrayList<>());
+
+            for (int i = 0; i < patterns.size(); i++) {
+                final String pattern = patterns.get(i);
+                int node = 0;
+                for (int depth = 0; depth < pattern.length(); depth++) {
+                    final int index = childChars.get(node).indexOf(String.valueOf(pattern.charAt(depth)));
+                    if (index >= 0) {
+                        node = childNodes.get(node).get(index);
+                    } else {
+                        final int child = paths.size();
+                        paths.add(pattern.substring(0, depth + 1).toCharArray());
+                        nodeReplacements.add(null);
+                        childChars.add(new StringBuilder());
+                        childNodes.add(new ArrayList<>());
+                        childChars.get(node).append(pattern.charAt(depth));
+                        childNodes.get(node).add(child);
+                        node = child;
+                    }
+                }
+                nodeReplacements.set(node, replacements.get(i).toCharArray());
+            }
+
+            final int numNodes = paths.size();
+            this.paths = paths.toArray(new char[0][]);
+            this.replacements = nodeReplacements.toArray(new char[0][]);
+            this.childChars = new char[numNodes][];
+            this.childNodes = new int[numNodes][];
+            for (int node = 0; node < numNodes; node++) {
+                this.childChars[node] = childChars.get(node).toString().toCharArray();
+                this.childNodes[node] = childNodes.get(node).stream().mapToInt(Integer::intValue).toArray();
+            }
+
+            // failure links and transitions, breadth first so they are known for all shallower nodes
+            this.fail = new int[numNodes];
+            this.asciiNext = new int[numNodes][128];
+            final ArrayDeque<Integer> queue = new ArrayDeque<>();
+            queue.add(0);
+            while (!queue.isEmpty()) {
+                final int node = queue.remove();
+                for (int c = 0; c < 128; c++) {
+                    final int child = child(node, (char) c);
+                    asciiNext[node][c] = child >= 0 ? child : node != 0 ? asciiNext[fail[node]][c] : 0;
+                }
+                for (int i = 0; i < this.childChars[node].length; i++) {
+                    final int child = this.childNodes[node][i];
+                    fail[child] = node != 0 ? next(fail[node], this.childChars[node][i]) : 0;
+                    queue.add(child);
+                }
+            }
+        }
+
+        int child(final int node, final char c) {
+            final char[] chars = childChars[node];
+            for (int i = 0; i < chars.length; i++)
+                if (chars[i] == c)
+                    return childNodes[node][i];
+            return -1;
+        }
+
+        int next(int node, final char c) {
+            if (c < 128)
+                return asciiNext[node][c];
+            while (node != 0) {
+                final int child = child(node, c);
+                if (child >= 0)
+                    return child;
+                node = fail[node];
+            }
+            return Math.max(child(0, c), 0);
+        }
+    }
+
+    private static final class FilterReader extends Reader {
+        private final Reader in;
+        private final Automaton[] automatons;
+        private final int[] states;
+        private final char[][] buffers; // input of each automaton, the last one holding the output
+        private final int[] lengths;
+        private int outputStart = 0;
+        private boolean eof = false;
+
+        FilterReader(final Reader in, final Automaton[] automatons) {
+            this.in = in;
+            this.automatons = automatons;
+            this.states = new int[automatons.length];
+            this.buffers = new char[automatons.length + 1][];
+            for (int i = 0; i < buffers.length; i++)
+                buffers[i] = new char[2048];
+            this.lengths = new int[automatons.length + 1];
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) throws IOException {
+            if (len == 0)
+                return 0;
+            final int last = automatons.length;
+            while (outputStart == lengths[last]) {
+                if (eof)
+                    return -1;
+                outputStart = 0;
+                final int read = in.read(buffers[0], 0, buffers[0].length);
+                if (read == -1)
+                    eof = true;
+                lengths[0] = Math.max(read, 0);
+                for (int i = 0; i < last; i++) {
+                    lengths[i + 1] = 0;
+                    filter(i);
+                    if (eof) {
+                        final char[] path = automatons[i].paths[states[i]];
+                        states[i] = 0;
+                        append(i + 1, path);
+                    }
+                }
+            }
+            final int n = Math.min(len, lengths[last] - outputStart);
+            System.arraycopy(buffers[last], outputStart, cbuf, off, n);
+            outputStart += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        /**
+         * Runs the input of the given automaton through it, appending to the input of the next one.
+         */
+        private void filter(final int index) {
+            final Automaton automaton = automatons[index];
+            final int[] asciiRoot = automaton.asciiNext[0];
+            final char[] input = buffers[index];
+            final int length = lengths[index];
+            char[] output = buffers[index + 1];
+            int outputLength = lengths[index + 1];
+            int node = states[index];
+            int i = 0;
+            while (i < length) {
+                if (node == 0) {
+                    // fast path for characters that cannot start a match
+                    if (output.length - outputLength < length - i)
+                        output = grow(index + 1, outputLength + length - i);
+                    final int from = i;
+                    char c;
+                    while (i < length && (c = input[i]) < 128 && asciiRoot[c] == 0)
+                        i++;
+                    System.arraycopy(input, from, output, outputLength, i - from);
+                    outputLength += i - from;
+                    if (i == length)
+                        break;
+                }
+
+                final char c = input[i++];
+                final int next = automaton.next(node, c);
+                final char[] path = automaton.paths[node];
+                final char[] replacement = automaton.replacements[next];
+
+                // pass on all characters that can no longer be part of a match
+                final int pass = path.length + 1 - automaton.paths[next].length;
+                final int required = pass + (replacement != null ? replacement.length : 0);
+                if (output.length - outputLength < required)
+                    output = grow(index + 1, outputLength + required);
+                for (int j = 0; j < pass; j++)
+                    output[outputLength++] = j < path.length ? path[j] : c;
+
+                if (replacement != null) {
+                    node = 0;
+                    for (final char r : replacement)
+                        output[outputLength++] = r;
+                } else {
+                    node = next;
+                }
+            }
+            lengths[index + 1] = outputLength;
+            states[index] = node;
+        }
+
+        private void append(final int index, final char[] chars) {
+            final int length = lengths[index];
+            if (buffers[index].length - length < chars.length)
+                grow(index, length + chars.length);
+            System.arraycopy(chars, 0, buffers[index], length, chars.length);
+            lengths[index] = length + chars.length;
+        }
+
+        private char[] grow(final int index, final int minCapacity) {
+            return buffers[index] = Arrays.copyOf(buffers[index], Math.max(buffers[index].length * 2, minCapacity));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.Reader;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/**
+ * <p>
+ * Pull parsers for the XML based providers. The parser factory is looked up once, and each thread keeps one parser
+ * that is reset for each input, so parsing a response neither does the factory's reflective lookup nor allocates a
+ * parser with its buffers.
+ * </p>
+ *
+ * <p>
+ * Parsers are leased for the duration of parsing one input, preferably via try-with-resources. If the thread's
+ * parser is already leased, e.g. because parsing one response triggers parsing of another, a new parser is created
+ * and discarded afterwards.
+ * </p>
+ */
+public final class XmlPullParserPool {
+    private static final XmlPullParserFactory FACTORY;
+    private static final ThreadLocal<Lease> LEASES = new ThreadLocal<>();
+
+    static {
+        try {
+            FACTORY = XmlPullParserFactory.newInstance(System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
+        } catch (final XmlPullParserException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    private XmlPullParserPool() {
+    }
+
+    public static final class Lease implements AutoCloseable {
+        public final XmlPullParser parser;
+        private final boolean pooled;
+        private boolean leased = false;
+
+        private Lease(final XmlPullParser parser, final boolean pooled) {
+            this.parser = parser;
+            this.pooled = pooled;
+        }
+
+        /**
+         * Returns the parser to the pool, releasing its input.
+         */
+        @Override
+        public void close() {
+            if (!pooled)
+                return;
+            try {
+                parser.setInput(null);
+                leased = false;
+            } catch (final XmlPullParserException x) {
+                // cannot be reset, so replace it
+                LEASES.remove();
+            }
+        }
+    }
+
+    /**
+     * Leases a parser and sets its input.
+     */
+    public static Lease acquire(final Reader reader) throws XmlPullParserException {
+        Lease lease = LEASES.get();
+        if (lease == null) {
+            lease = new Lease(FACTORY.newPullParser(), true);
+            LEASES.set(lease);
+        } else if (lease.leased) {
+            lease = new Lease(FACTORY.newPullParser(), false);
+        }
+        lease.parser.setInput(reader);
+        lease.leased = true;
+        return lease;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import de.schildbach.pte.dto.SuggestLocationsResult;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Cancellation, deadlines and concurrency of queries issued via {@link AsyncNetworkProvider}, against a local server
+ * that does not answer until released.
+ */
+public class AsyncNetworkProviderTest {
+    private HttpServer server;
+    private final CountDownLatch received = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger requests = new AtomicInteger();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private AbstractEfaProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/efa/XML_STOPFINDER_REQUEST", exchange -> {
+            requests.incrementAndGet();
+            received.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException x) {
+                Thread.currentThread().interrupt();
+            }
+            final byte[] bytes = "{\"stopFinder\":{}}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (final OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            } catch (final Exception x) {
+                // client has gone away
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        final HttpUrl baseUrl = HttpUrl.parse("http://127.0.0.1:" + server.getAddress().getPort() + "/efa/");
+        provider = new AbstractEfaProvider(NetworkId.VRR, baseUrl) {
+        };
+        provider.setAsyncExecutor(executor);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void cancelAbortsCallAndFreesThread() throws Exception {
+        final CompletableFuture<SuggestLocationsResult> future = provider.suggestLocationsAsync("Term", null, 0);
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+
+        // the only thread of the executor is available again long before the server answers
+        final CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void waitingForNetworkDoesNotOccupyExecutor() throws Exception {
+        final List<CompletableFuture<SuggestLocationsResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            futures.add(provider.suggestLocationsAsync("Term " + i, null, 0));
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (requests.get() < futures.size() && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertEquals(futures.size(), requests.get());
+
+        // all queries are in flight, but the only thread of the executor is available
+        final CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+
+        release.countDown();
+        for (final CompletableFuture<SuggestLocationsResult> future : futures)
+            assertEquals(SuggestLocationsResult.Status.OK, future.get(5, TimeUnit.SECONDS).status);
+    }
+
+    @Test
+    public void cancelBeforeStartSkipsQuery() throws Exception {
+        final CountDownLatch blocker = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                blocker.await();
+            } catch (final InterruptedException x) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        final CompletableFuture<SuggestLocationsResult> future = provider.suggestLocationsAsync("Term", null, 0);
+        future.cancel(true);
+        blocker.countDown();
+
+        final CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals(0, requests.get());
+    }
+
+    @Test
+    public void deadlineAbortsCall() throws Exception {
+        final long start = System.nanoTime();
+        final CompletableFuture<SuggestLocationsResult> future = provider.withTimeout(200, TimeUnit.MILLISECONDS)
+                .suggestLocationsAsync("Term", null, 0);
+        assertDeadlineExceeded(future);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        assertTrue(requests.get() >= 1);
+    }
+
+    @Test
+    public void deadlineIncludesWaitingForThread() throws Exception {
+        final CountDownLatch blocker = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                blocker.await();
+            } catch (final InterruptedException x) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        final CompletableFuture<SuggestLocationsResult> future = provider.withTimeout(100, TimeUnit.MILLISECONDS)
+                .suggestLocationsAsync("Term", null, 0);
+        Thread.sleep(300);
+        blocker.countDown();
+        assertDeadlineExceeded(future);
+        assertEquals(0, requests.get());
+    }
+
+    private static void assertDeadlineExceeded(final CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("expected deadline to be exceeded");
+        } catch (final ExecutionException x) {
+            assertTrue(x.getCause().toString(), x.getCause() instanceof InterruptedIOException);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.schildbach.pte.dto.Departure;
+import de.schildbach.pte.dto.Line;
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.NearbyLocationsResult;
+import de.schildbach.pte.dto.Point;
+import de.schildbach.pte.dto.Product;
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.dto.QueryTripsContext;
+import de.schildbach.pte.dto.QueryTripsResult;
+import de.schildbach.pte.dto.StationDepartures;
+import de.schildbach.pte.dto.SuggestLocationsResult;
+import de.schildbach.pte.dto.SuggestedLocation;
+import de.schildbach.pte.dto.TripOptions;
+
+public class CachingNetworkProviderTest {
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long NOW = 1_800_000_000_000L - 1_800_000_000_000L % MINUTE;
+
+    private static final List<String> STATION_NAMES = Arrays.asList("Hauptbahnhof", "Hauptwache", "Hansaplatz",
+            "Am Hafen", "Bahnhof Hausen", "Zoo");
+    private static final Point ORIGIN = Point.fromDouble(50.0, 8.0);
+
+    private int numQueries;
+    private CachingNetworkProvider provider;
+
+    @Before
+    public void setUp() {
+        numQueries = 0;
+        provider = new CachingNetworkProvider(new StubProvider()).setDeparturesCache(1, TimeUnit.MINUTES, 1000)
+                .setSuggestLocationsCache(1, TimeUnit.MINUTES, 1000)
+                .setNearbyLocationsCache(1, TimeUnit.MINUTES, 500, 1000);
+    }
+
+    @Test
+    public void departuresSliceSmallerRequest() throws Exception {
+        assertEquals(20, departures(provider.queryDepartures("1", new Date(NOW), 20, false)).size());
+        final List<Departure> departures = departures(provider.queryDepartures("1", new Date(NOW + 10), 5, false));
+        assertEquals(5, departures.size());
+        assertEquals(NOW, departures.get(0).getTime().getTime());
+        assertEquals(1, numQueries);
+        assertEquals(1, provider.getDeparturesCacheStats().getHitCount());
+    }
+
+    @Test
+    public void departuresSliceLaterRequest() throws Exception {
+        provider.queryDepartures("1", new Date(NOW), 20, false);
+        final List<Departure> departures = departures(
+                provider.queryDepartures("1", new Date(NOW + 3 * MINUTE), 10, false));
+        assertEquals(10, departures.size());
+        assertEquals(NOW + 3 * MINUTE, departures.get(0).getTime().getTime());
+        assertEquals(1, numQueries);
+    }
+
+    @Test
+    public void departuresMissIfTooFewRemaining() throws Exception {
+        provider.queryDepartures("1", new Date(NOW), 20, false);
+        provider.queryDepartures("1", new Date(NOW + 15 * MINUTE), 10, false);
+        provider.queryDepartures("1", new Date(NOW), 30, false);
+        provider.queryDepartures("1", new Date(NOW), 20, true);
+        assertEquals(4, numQueries);
+        assertEquals(4, provider.getDeparturesCacheStats().getMissCount());
+    }
+
+    @Test
+    public void departuresKeepSuperset() throws Exception {
+        final DeparturesCache cache = new DeparturesCache(1, TimeUnit.MINUTES, 1000);
+        final StubProvider stub = new StubProvider();
+        cache.put("1", new Date(NOW), 20, false, stub.queryDepartures("1", new Date(NOW), 20, false));
+        // a smaller request for the same minute that completes later
+        cache.put("1", new Date(NOW), 5, false, stub.queryDepartures("1", new Date(NOW), 5, false));
+        assertEquals(20, departures(cache.get("1", new Date(NOW), 20, false)).size());
+        assertEquals(15, departures(cache.get("1", new Date(NOW + 5 * MINUTE), 15, false)).size());
+    }
+
+    @Test
+    public void suggestionsFilteredFromCompleteShorterConstraint() throws Exception {
+        assertEquals(5, provider.suggestLocations("Ha", null, 10).suggestedLocations.size());
+        final List<Location> locations = provider.suggestLocations("hau", null, 10).getLocations();
+        assertEquals(3, locations.size());
+        assertEquals("Hauptbahnhof", locations.get(0).name);
+        assertEquals(2, provider.suggestLocations("Haupt", null, 2).suggestedLocations.size());
+        assertEquals(1, provider.suggestLocations("Hausen", null, 10).suggestedLocations.size());
+        assertEquals(1, numQueries);
+        assertEquals(3, provider.getSuggestLocationsCacheStats().getHitCount());
+    }
+
+    @Test
+    public void suggestionsMissIfShorterConstraintIncomplete() throws Exception {
+        provider.suggestLocations("Ha", null, 5);
+        provider.suggestLocations("Hau", null, 10);
+        provider.suggestLocations("Ha", null, 10);
+        provider.suggestLocations("Hau", EnumSet.of(LocationType.STATION), 10);
+        assertEquals(4, numQueries);
+        assertEquals(4, provider.getSuggestLocationsCacheStats().getMissCount());
+    }
+
+    @Test
+    public void suggestionsExactWithSmallerLimit() throws Exception {
+        provider.suggestLocations("Ha", null, 5);
+        assertEquals(3, provider.suggestLocations("ha", null, 3).suggestedLocations.size());
+        assertEquals(1, numQueries);
+    }
+
+    @Test
+    public void suggestionsNormalize() {
+        assertEquals("zurich hb", SuggestLocationsCache.normalize("  Zürich,HB "));
+        assertEquals("", SuggestLocationsCache.normalize("--"));
+    }
+
+    @Test
+    public void nearbyFilteredFromCoveringQuery() throws Exception {
+        final Set<LocationType> types = EnumSet.of(LocationType.STATION);
+        assertEquals(10, provider.queryNearbyLocations(types, Location.coord(ORIGIN), 1000, 50).locations.size());
+        // 50 meters north, only stations up to 300 meters away in a row to the east
+        final List<Location> locations = provider.queryNearbyLocations(types,
+                Location.coord(Point.from1E6(ORIGIN.getLatAs1E6() + 450, ORIGIN.getLonAs1E6())), 300, 2).locations;
+        assertEquals(2, locations.size());
+        assertEquals("0", locations.get(0).id);
+        assertEquals("1", locations.get(1).id);
+        assertEquals(1, numQueries);
+        assertEquals(1, provider.getNearbyLocationsCacheStats().getHitCount());
+    }
+
+    @Test
+    public void nearbyMissIfNotCovered() throws Exception {
+        final Set<LocationType> types = EnumSet.of(LocationType.STATION);
+        provider.queryNearbyLocations(types, Location.coord(ORIGIN), 1000, 50);
+        provider.queryNearbyLocations(types, Location.coord(ORIGIN), 2000, 50);
+        provider.queryNearbyLocations(types, Location.coord(ORIGIN), 500, 5);
+        provider.queryNearbyLocations(types, Location.coord(ORIGIN), 800, 50);
+        provider.queryNearbyLocations(types, new Location(LocationType.STATION, "0", ORIGIN), 100, 50);
+        assertEquals(3, numQueries);
+    }
+
+    private static List<Departure> departures(final QueryDeparturesResult result) {
+        return result.stationDepartures.get(0).departures;
+    }
+
+    private class StubProvider extends AbstractNetworkProvider {
+        StubProvider() {
+            super(NetworkId.DB);
+        }
+
+        @Override
+        protected boolean hasCapability(final Capability capability) {
+            return true;
+        }
+
+        @Override
+        public QueryDeparturesResult queryDepartures(final String stationId, final @Nullable Date time,
+                final int maxDepartures, final boolean equivs) {
+            numQueries++;
+            final List<Departure> departures = new ArrayList<>();
+            final Line line = new Line(null, null, Product.BUS, "1");
+            for (int i = 0; i < maxDepartures; i++)
+                departures.add(new Departure(new Date(time.getTime() + i * MINUTE), null, line, null, null, null,
+                        null));
+            final QueryDeparturesResult result = new QueryDeparturesResult(null);
+            result.stationDepartures
+                    .add(new StationDepartures(new Location(LocationType.STATION, stationId), departures, null));
+            return result;
+        }
+
+        @Override
+        public NearbyLocationsResult queryNearbyLocations(final Set<LocationType> types, final Location location,
+                final int maxDistance, final int maxLocations) {
+            numQueries++;
+            // a row of stations every 100 meters to the east
+            final List<Location> locations = new ArrayList<>();
+            for (int i = 0; i < 20 && locations.size() < maxLocations; i++) {
+                final Point coord = Point.fromDouble(ORIGIN.getLatAsDouble(),
+                        ORIGIN.getLonAsDouble() + i * 0.0014);
+                if (LocationUtils.computeDistance(location.coord, coord) <= maxDistance)
+                    locations.add(new Location(LocationType.STATION, Integer.toString(i), coord));
+            }
+            return new NearbyLocationsResult(null, locations);
+        }
+
+        @Override
+        public SuggestLocationsResult suggestLocations(final CharSequence constraint,
+                final @Nullable Set<LocationType> types, final int maxLocations) {
+            numQueries++;
+            final String[] tokens = SuggestLocationsCache.normalize(constraint).split(" ");
+            final List<SuggestedLocation> locations = new ArrayList<>();
+            for (final String name : STATION_NAMES) {
+                final List<String> words = Arrays.asList(name.toLowerCase().split(" "));
+                if (Arrays.stream(tokens).allMatch(t -> words.stream().anyMatch(w -> w.startsWith(t)))
+                        && locations.size() < maxLocations)
+                    locations.add(new SuggestedLocation(new Location(LocationType.STATION, name, null, name)));
+            }
+            return new SuggestLocationsResult(null, locations);
+        }
+
+        @Override
+        public QueryTripsResult queryTrips(final Location from, final @Nullable Location via, final Location to,
+                final Date date, final boolean dep, final @Nullable TripOptions options) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public QueryTripsResult queryMoreTrips(final QueryTripsContext context, final boolean later)
+                throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
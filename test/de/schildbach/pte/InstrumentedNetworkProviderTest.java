@@ -0,0 +1,153 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.NearbyLocationsResult;
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.dto.QueryTripsContext;
+import de.schildbach.pte.dto.QueryTripsResult;
+import de.schildbach.pte.dto.SuggestLocationsResult;
+import de.schildbach.pte.dto.TripOptions;
+import de.schildbach.pte.exception.BlockedException;
+import de.schildbach.pte.util.Histogram;
+import de.schildbach.pte.util.QueryTrace;
+import de.schildbach.pte.util.QueryTrace.Phase;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class InstrumentedNetworkProviderTest {
+    private static final HttpUrl BASE = HttpUrl.get("http://example.com/");
+
+    private HistogramInstrumentation instrumentation;
+    private InstrumentedNetworkProvider provider;
+
+    @Before
+    public void setUp() {
+        instrumentation = new HistogramInstrumentation();
+        provider = new InstrumentedNetworkProvider(new StubProvider(), instrumentation);
+    }
+
+    @Test
+    public void recordsPhasesOfSuccessfulQuery() throws Exception {
+        provider.queryDepartures("ok", null, 10, false);
+        provider.queryDepartures("ok", null, 10, false);
+        for (final Phase phase : new Phase[] { Phase.BUILD_REQUEST, Phase.PARSE, Phase.PROCESS, Phase.TOTAL })
+            assertEquals(phase.name(), 2, histogram("queryDepartures", Instrumentation.OUTCOME_OK, phase).getCount());
+        // answered by an application interceptor, so no connection has been made
+        assertNull(histogram("queryDepartures", Instrumentation.OUTCOME_OK, Phase.CONNECT));
+        final Histogram total = histogram("queryDepartures", Instrumentation.OUTCOME_OK, Phase.TOTAL);
+        assertTrue(total.getMax() >= histogram("queryDepartures", Instrumentation.OUTCOME_OK, Phase.PARSE).getMax());
+    }
+
+    @Test
+    public void recordsParsingOfCompletelyReadResponse() throws Exception {
+        provider.suggestLocations("ok", null, 0);
+        assertEquals(1, histogram("suggestLocations", Instrumentation.OUTCOME_OK, Phase.PARSE).getCount());
+    }
+
+    @Test
+    public void recordsOutcomeOfFailedQuery() throws Exception {
+        try {
+            provider.queryDepartures("blocked", null, 10, false);
+            fail();
+        } catch (final BlockedException x) {
+            // expected
+        }
+        assertNotNull(histogram("queryDepartures", "BlockedException", Phase.TOTAL));
+        assertNull(histogram("queryDepartures", "BlockedException", Phase.PARSE));
+        assertFalse(instrumentation.getHistograms().keySet().stream()
+                .anyMatch(series -> series.outcome.equals(Instrumentation.OUTCOME_OK)));
+    }
+
+    private @Nullable Histogram histogram(final String method, final String outcome, final Phase phase) {
+        return instrumentation.getHistograms()
+                .get(new HistogramInstrumentation.Series(NetworkId.DB, method, outcome, phase));
+    }
+
+    private static class StubProvider extends AbstractNetworkProvider {
+        StubProvider() {
+            super(NetworkId.DB);
+            setHttpInterceptor(chain -> {
+                final boolean blocked = chain.request().url().encodedPath().equals("/blocked");
+                return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1)
+                        .code(blocked ? 403 : 200).message(blocked ? "Forbidden" : "OK")
+                        .body(ResponseBody.create("departures", MediaType.get("text/plain"))).build();
+            });
+        }
+
+        @Override
+        protected boolean hasCapability(final Capability capability) {
+            return true;
+        }
+
+        @Override
+        public QueryDeparturesResult queryDepartures(final String stationId, final @Nullable Date time,
+                final int maxDepartures, final boolean equivs) throws IOException {
+            httpClient.getInputStream((bodyPeek, body) -> body.string(), BASE.resolve(stationId));
+            return new QueryDeparturesResult(null);
+        }
+
+        @Override
+        public NearbyLocationsResult queryNearbyLocations(final Set<LocationType> types, final Location location,
+                final int maxDistance, final int maxLocations) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SuggestLocationsResult suggestLocations(final CharSequence constraint,
+                final @Nullable Set<LocationType> types, final int maxLocations) throws IOException {
+            final CharSequence page = httpClient.get(BASE.resolve(constraint.toString()));
+            QueryTrace.parse(() -> page.toString().trim());
+            return new SuggestLocationsResult(null, Collections.emptyList());
+        }
+
+        @Override
+        public QueryTripsResult queryTrips(final Location from, final @Nullable Location via, final Location to,
+                final Date date, final boolean dep, final @Nullable TripOptions options) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public QueryTripsResult queryMoreTrips(final QueryTripsContext context, final boolean later) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.schildbach.pte.dto.Line;
+import de.schildbach.pte.dto.Product;
+import de.schildbach.pte.dto.Style;
+
+public class LineCacheTest {
+    private final AtomicInteger numStyled = new AtomicInteger();
+    private final LineCache.Styler styler = (network, product, label) -> {
+        numStyled.incrementAndGet();
+        return new Style("S1".equals(label) ? Style.GREEN : Style.GRAY, Style.WHITE);
+    };
+
+    @Test
+    public void hit() {
+        final LineCache cache = new LineCache(16, styler);
+        final Line line = cache.get("id", "net", Product.SUBURBAN_TRAIN, "S1", null, null, null);
+        assertEquals(Style.GREEN, line.style.backgroundColor);
+        assertSame(line, cache.get("id", "net", Product.SUBURBAN_TRAIN, "S1", null, null, null));
+        assertEquals(1, numStyled.get());
+        assertEquals(1, cache.stats().getHitCount());
+        assertEquals(1, cache.stats().getMissCount());
+    }
+
+    @Test
+    public void differentArguments() {
+        final LineCache cache = new LineCache(16, styler);
+        final Line line = cache.get("id", "net", Product.SUBURBAN_TRAIN, "S1", null, null, null);
+        assertNotSame(line, cache.get("id2", "net", Product.SUBURBAN_TRAIN, "S1", null, null, null));
+        assertNotSame(line, cache.get("id", "net", Product.SUBURBAN_TRAIN, "S1", "name", null, null));
+        assertNotSame(line, cache.get("id", "net", Product.SUBURBAN_TRAIN, "S1", null, null, "message"));
+        assertNotSame(line, cache.get("id", "net", Product.SUBURBAN_TRAIN, "S1", null, new HashSet<>(), null));
+        assertEquals(0, cache.stats().getHitCount());
+    }
+
+    @Test
+    public void attrs() {
+        final LineCache cache = new LineCache(16, styler);
+        final Set<Line.Attr> attrs = new HashSet<>();
+        attrs.add(Line.Attr.WHEEL_CHAIR_ACCESS);
+        final Line line = cache.get(null, "net", Product.BUS, "1", null, attrs, null);
+        attrs.add(Line.Attr.BICYCLE_CARRIAGE);
+        assertEquals(EnumSet.of(Line.Attr.WHEEL_CHAIR_ACCESS), line.attrs);
+        assertSame(line, cache.get(null, "net", Product.BUS, "1", null,
+                EnumSet.of(Line.Attr.WHEEL_CHAIR_ACCESS), null));
+        assertNotSame(line, cache.get(null, "net", Product.BUS, "1", null, attrs, null));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void attrsUnmodifiable() {
+        final LineCache cache = new LineCache(16, styler);
+        final Line line = cache.get(null, "net", Product.BUS, "1", null, new HashSet<>(), null);
+        line.attrs.add(Line.Attr.WHEEL_CHAIR_ACCESS);
+    }
+
+    @Test
+    public void evict() {
+        final LineCache cache = new LineCache(2, styler);
+        final Line line = cache.get(null, "net", Product.BUS, "1", null, null, null);
+        cache.get(null, "net", Product.BUS, "2", null, null, null);
+        assertSame(line, cache.get(null, "net", Product.BUS, "1", null, null, null));
+        cache.get(null, "net", Product.BUS, "3", null, null, null);
+        assertEquals(2, cache.size());
+        assertSame(line, cache.get(null, "net", Product.BUS, "1", null, null, null));
+        cache.get(null, "net", Product.BUS, "2", null, null, null);
+        assertEquals(4, numStyled.get());
+        assertEquals(2, cache.stats().getEvictionCount());
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        final LineCache cache = new LineCache(64, styler);
+        final Line shared = cache.get(null, "net", Product.BUS, "shared", null, null, null);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final Future<?>[] futures = new Future<?>[8];
+        for (int t = 0; t < futures.length; t++) {
+            final int thread = t;
+            futures[t] = executor.submit(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    assertSame(shared, cache.get(null, "net", Product.BUS, "shared", null, null, null));
+                    final String label = Integer.toString(thread * 100 + i % 100);
+                    assertEquals(label, cache.get(null, "net", Product.BUS, label, null, null, null).label);
+                }
+            });
+        }
+        for (final Future<?> future : futures)
+            future.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertTrue(cache.size() <= 64 + futures.length);
+        assertTrue(cache.stats().getEvictionCount() > 0);
+    }
+}
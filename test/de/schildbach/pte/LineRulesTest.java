@@ -0,0 +1,81 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import static de.schildbach.pte.LineRules.HAS_TRAIN_NUM;
+import static de.schildbach.pte.LineRules.SYMBOL_LABEL;
+import static de.schildbach.pte.LineRules.label;
+import static de.schildbach.pte.LineRules.trainName;
+import static de.schildbach.pte.LineRules.trainNumLabel;
+import static de.schildbach.pte.LineRules.trainType;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import de.schildbach.pte.dto.Line;
+import de.schildbach.pte.dto.Product;
+
+public class LineRulesTest {
+    private static final LineRules RULES = LineRules.builder() //
+            .mot(null) //
+            .rule(trainName("Stadtbus")).then(Product.BUS, label("bus")) //
+            .mot("0") //
+            .rule(trainType("IC"), trainName("InterCity")).and(HAS_TRAIN_NUM)
+            .then(Product.HIGH_SPEED_TRAIN, trainNumLabel("IC")) //
+            .rule().and(in -> "IC".equals(in.symbol)).then(Product.REGIONAL_TRAIN, SYMBOL_LABEL) //
+            .rule(trainType("IC")).then(Product.HIGH_SPEED_TRAIN, label("IC")) //
+            .rule(trainType("RE"), trainName("Regional-Express")).then(Product.REGIONAL_TRAIN, trainNumLabel("RE")) //
+            .build();
+
+    @Test
+    public void firstMatchingRule() {
+        assertLine(Product.HIGH_SPEED_TRAIN, "IC2013", classify("0", "IC", null, "IC", "2013", "InterCity"));
+        assertLine(Product.REGIONAL_TRAIN, "RE1", classify("0", null, null, "RE", "1", "Regional-Express"));
+    }
+
+    @Test
+    public void ruleWithoutKeyInBetween() {
+        assertLine(Product.REGIONAL_TRAIN, "IC", classify("0", "IC", null, "IC", null, null));
+        assertLine(Product.HIGH_SPEED_TRAIN, "IC", classify("0", null, null, "IC", null, null));
+    }
+
+    @Test
+    public void conditionNotMet() {
+        assertNull(classify("0", null, null, null, null, "InterCity"));
+    }
+
+    @Test
+    public void mot() {
+        assertLine(Product.BUS, "bus", classify(null, null, "12", null, null, "Stadtbus"));
+        assertNull(classify("5", null, "12", null, null, "Stadtbus"));
+        assertNull(classify("0", null, "12", null, null, "Stadtbus"));
+    }
+
+    private static Line classify(final String mot, final String symbol, final String name, final String trainType,
+            final String trainNum, final String trainName) {
+        return RULES.classify("id", "network", mot, symbol, name, null, trainType, trainNum, trainName);
+    }
+
+    private static void assertLine(final Product product, final String label, final Line line) {
+        assertEquals("id", line.id);
+        assertEquals("network", line.network);
+        assertEquals(product, line.product);
+        assertEquals(label, line.label);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.dto.QueryTripsResult;
+import de.schildbach.pte.dto.SuggestLocationsResult;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Stress tests sharing one provider instance between many threads, against a local server that rejects
+ * requests carrying headers of some other request.
+ */
+public class ProviderConcurrencyTest {
+    private static final int NUM_THREADS = 64;
+    private static final int NUM_REQUESTS_PER_THREAD = 16;
+
+    private static final String DB_LOCATION_TYPE = "application/x.db.vendo.mob.location.v3+json";
+    private static final String DB_DEPARTURES_TYPE = "application/x.db.vendo.mob.bahnhofstafeln.v2+json";
+    private static final Pattern P_SEARCH_TERM = Pattern.compile("\"searchTerm\": \"([^\"]*)\"");
+    private static final Pattern P_STATION_ID = Pattern.compile("@L=(\\d+)@");
+
+    private HttpServer server;
+    private HttpUrl baseUrl;
+    private final Set<String> correlationIds = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger efaSessions = new AtomicInteger();
+    private final Set<String> efaFollowUpSessions = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), NUM_THREADS);
+        server.createContext("/db/location/search", exchange -> {
+            final String body = readBody(exchange);
+            if (!checkDbHeaders(exchange, DB_LOCATION_TYPE))
+                return;
+            final Matcher m = P_SEARCH_TERM.matcher(body);
+            m.find();
+            respond(exchange, 200, "[{\"locationId\":\"A=1@O=" + m.group(1) + "@L=8000001@\",\"evaNr\":\"8000001\","
+                    + "\"name\":\"" + m.group(1) + "\"}]");
+        });
+        server.createContext("/db/bahnhofstafel/abfahrt", exchange -> {
+            final String body = readBody(exchange);
+            if (!checkDbHeaders(exchange, DB_DEPARTURES_TYPE))
+                return;
+            final Matcher m = P_STATION_ID.matcher(body);
+            m.find();
+            final String stationId = m.group(1);
+            respond(exchange, 200, "{\"bahnhofstafelAbfahrtPositionen\":[{\"abfrageOrt\":{\"locationId\":\"A=1@O=X@L="
+                    + stationId + "@\",\"evaNr\":\"" + stationId + "\",\"name\":\"X\"},\"zuglaufId\":\"1\","
+                    + "\"produktGattung\":\"ICE\",\"mitteltext\":\"ICE " + stationId + "\","
+                    + "\"abgangsDatum\":\"2026-10-17T12:00:00+02:00\",\"richtung\":\"Y\"}]}");
+        });
+        server.createContext("/efa/XML_STOPFINDER_REQUEST", exchange -> {
+            readBody(exchange);
+            final String name = queryParameter(exchange, "name_sf");
+            exchange.getResponseHeaders().add("Set-Cookie", "SIDefa=" + name + "; path=/");
+            respond(exchange, 200, "{\"stopFinder\":{\"points\":{\"point\":{\"type\":\"stop\",\"stateless\":\"1\","
+                    + "\"name\":\"" + name + "\",\"object\":\"" + name + "\",\"quality\":1000,"
+                    + "\"ref\":{\"id\":\"1\",\"place\":\"\"}}}}}");
+        });
+        server.createContext("/efa/XSLT_TRIP_REQUEST2", exchange -> {
+            readBody(exchange);
+            final String sessionId;
+            if (queryParameter(exchange, "command") == null) {
+                // a new session, pinned by its cookie
+                sessionId = "S" + efaSessions.incrementAndGet();
+                exchange.getResponseHeaders().add("Set-Cookie", "SIDefa=" + sessionId + "; path=/");
+            } else {
+                // follow-ups must carry the cookie of their own session
+                sessionId = queryParameter(exchange, "sessionID");
+                if (!("SIDefa=" + sessionId).equals(exchange.getRequestHeaders().getFirst("Cookie"))
+                        || !efaFollowUpSessions.add(sessionId)) {
+                    respond(exchange, 400, "wrong session");
+                    return;
+                }
+            }
+            respond(exchange, 200, "<itdRequest sessionID=\"" + sessionId + "\"><itdTripRequest requestID=\"1\">"
+                    + "<itdTripDateTime><itdDateTime><itdDate/></itdDateTime></itdTripDateTime><itdTripOptions/>"
+                    + "<itdItinerary/></itdTripRequest></itdRequest>");
+        });
+        server.setExecutor(Executors.newFixedThreadPool(NUM_THREADS));
+        server.start();
+        baseUrl = HttpUrl.parse("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void dbProvider() throws Exception {
+        final DbProvider provider = new DbProvider(baseUrl.resolve("/db/"));
+        runConcurrently((thread, request) -> {
+            if (request % 2 == 0) {
+                final String term = "Term" + thread + "x" + request;
+                final SuggestLocationsResult result = provider.suggestLocations(term, null, 0);
+                assertEquals(SuggestLocationsResult.Status.OK, result.status);
+                assertEquals(term, result.getLocations().get(0).name);
+            } else {
+                final String stationId = Integer.toString(thread * 1000 + request);
+                final QueryDeparturesResult result = provider.queryDepartures(stationId, new Date(), 0, true);
+                assertEquals(QueryDeparturesResult.Status.OK, result.status);
+                assertEquals(stationId, result.stationDepartures.get(0).location.id);
+            }
+        });
+        assertEquals(NUM_THREADS * NUM_REQUESTS_PER_THREAD, correlationIds.size());
+    }
+
+    @Test
+    public void efaProvider() throws Exception {
+        final AbstractEfaProvider provider = new AbstractEfaProvider(NetworkId.VRR, baseUrl.resolve("/efa/")) {
+            {
+                setSessionCookieName("SIDefa");
+            }
+        };
+        runConcurrently((thread, request) -> {
+            if (request % 2 == 0) {
+                final String name = "Name" + thread + "x" + request;
+                final SuggestLocationsResult result = provider.suggestLocations(name, null, 0);
+                assertEquals(SuggestLocationsResult.Status.OK, result.status);
+                assertEquals(name, result.getLocations().get(0).name);
+            } else {
+                final QueryTripsResult result = provider.queryTrips(new Location(LocationType.STATION, "1"), null,
+                        new Location(LocationType.STATION, "2"), new Date(), true, null);
+                assertEquals(QueryTripsResult.Status.OK, result.status);
+                assertEquals(QueryTripsResult.Status.OK, provider.queryMoreTrips(result.context, true).status);
+            }
+        });
+        assertEquals(NUM_THREADS * NUM_REQUESTS_PER_THREAD / 2, efaFollowUpSessions.size());
+    }
+
+    private interface Query {
+        void run(int thread, int request) throws Exception;
+    }
+
+    private void runConcurrently(final Query query) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Void>> futures = new ArrayList<>();
+        for (int t = 0; t < NUM_THREADS; t++) {
+            final int thread = t;
+            futures.add(executor.submit((Callable<Void>) () -> {
+                start.await();
+                for (int r = 0; r < NUM_REQUESTS_PER_THREAD; r++)
+                    query.run(thread, r);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (final Future<Void> future : futures)
+            future.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private boolean checkDbHeaders(final HttpExchange exchange, final String contentType) throws IOException {
+        final String correlationId = exchange.getRequestHeaders().getFirst("X-Correlation-ID");
+        if (!contentType.equals(exchange.getRequestHeaders().getFirst("Accept"))
+                || !contentType.equals(exchange.getRequestHeaders().getFirst("Content-Type"))
+                || correlationId == null || !correlationIds.add(correlationId)) {
+            respond(exchange, 400, "wrong headers");
+            return false;
+        }
+        return true;
+    }
+
+    private static String queryParameter(final HttpExchange exchange, final String name) throws IOException {
+        for (final String param : exchange.getRequestURI().getRawQuery().split("&")) {
+            final String[] keyValue = param.split("=", 2);
+            if (keyValue[0].equals(name))
+                return URLDecoder.decode(keyValue[1], "ISO-8859-1");
+        }
+        return null;
+    }
+
+    private static String readBody(final HttpExchange exchange) throws IOException {
+        final byte[] buffer = new byte[4096];
+        final StringBuilder body = new StringBuilder();
+        int read;
+        while ((read = exchange.getRequestBody().read(buffer)) != -1)
+            body.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+        return body.toString();
+    }
+
+    private static void respond(final HttpExchange exchange, final int code, final String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (final OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
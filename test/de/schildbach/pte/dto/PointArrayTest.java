@@ -0,0 +1,130 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.dto;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class PointArrayTest {
+    @Test
+    public void builder() {
+        final PointArray path = PointArray.builder(1).add1E5(4820783, 1637117).add1E6(-48207830, 16371170)
+                .addDouble(48.2078300, -16.37117).add(Point.from1E7(1, 2)).build();
+        assertEquals(4, path.size());
+        assertEquals(Point.fromDouble(48.20783, 16.37117), path.get(0));
+        assertEquals(Point.fromDouble(-48.20783, 16.37117), path.get(1));
+        assertEquals(Point.fromDouble(48.20783, -16.37117), path.get(2));
+        assertEquals(482078300, path.getLatAs1E7(2));
+        assertEquals(-163711700, path.getLonAs1E7(2));
+        assertEquals(Point.from1E7(1, 2), path.get(3));
+    }
+
+    @Test
+    public void addAll() {
+        final PointArray first = PointArray.builder().add1E7(1, 2).add1E7(3, 4).build();
+        final List<Point> second = Arrays.asList(Point.from1E7(5, 6));
+        final PointArray path = PointArray.builder(0).addAll(first).addAll(second).addAll(first).build();
+        assertEquals(Arrays.asList(Point.from1E7(1, 2), Point.from1E7(3, 4), Point.from1E7(5, 6),
+                Point.from1E7(1, 2), Point.from1E7(3, 4)), path);
+    }
+
+    @Test
+    public void equalsAndHashCode() {
+        final PointArray path = PointArray.builder().add1E7(1, 2).add1E7(-3, 4).build();
+        final List<Point> list = Arrays.asList(Point.from1E7(1, 2), Point.from1E7(-3, 4));
+        assertEquals(list, path);
+        assertEquals(path, list);
+        assertEquals(list.hashCode(), path.hashCode());
+        assertEquals(path, PointArray.builder().addAll(list).build());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void indexOutOfBounds() {
+        PointArray.builder().add1E7(1, 2).build().getLatAs1E7(1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutable() {
+        PointArray.builder().build().add(Point.from1E7(1, 2));
+    }
+
+    @Test
+    public void lazy() {
+        final AtomicInteger numDecoded = new AtomicInteger();
+        final List<Point> path = PointArray.lazy(() -> {
+            numDecoded.incrementAndGet();
+            return PointArray.builder().add1E7(1, 2).add1E7(3, 4).build();
+        });
+        assertEquals(0, numDecoded.get());
+        assertEquals(2, path.size());
+        assertEquals(Point.from1E7(3, 4), path.get(1));
+        assertEquals(PointArray.builder().add1E7(1, 2).add1E7(3, 4).build(), path);
+        assertEquals(path, PointArray.builder().addAll(path).build());
+        assertEquals(1, numDecoded.get());
+    }
+
+    @Test
+    public void pointRounding() {
+        final Point point = Point.from1E7(-482078350, 163711750);
+        assertEquals(-48207835, point.getLatAs1E6());
+        assertEquals(16371175, point.getLonAs1E6());
+        assertEquals(-4820783, point.getLatAs1E5());
+        assertEquals(1637118, point.getLonAs1E5());
+        assertEquals(Point.from1E6(52520008, 13404954), Point.fromDouble(52.520008, 13.404954));
+        assertEquals("52.5200080/13.4049540", Point.from1E6(52520008, 13404954).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pointOutOfRange() {
+        Point.fromDouble(0, 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void point1E6OutOfRange() {
+        Point.from1E6(0, Integer.MAX_VALUE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pointNaN() {
+        Point.fromDouble(Double.NaN, 0);
+    }
+
+    @Test
+    public void serialization() throws IOException, ClassNotFoundException {
+        final Point point = Point.fromDouble(52.520008, -13.404954);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream os = new ObjectOutputStream(bytes)) {
+            os.writeObject(point);
+            os.writeObject(PointArray.builder().add(point).build());
+        }
+        try (final ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(point, is.readObject());
+            assertEquals(Arrays.asList(point), is.readObject());
+        }
+    }
+}
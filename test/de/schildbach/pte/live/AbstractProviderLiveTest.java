@@ -19,6 +19,7 @@ package de.schildbach.pte.live;
 
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Date;
@@ -28,6 +29,7 @@ import java.util.Set;
 
 import javax.annotation.Nullable;
 
+import de.schildbach.pte.AbstractNetworkProvider;
 import de.schildbach.pte.NetworkProvider;
 import de.schildbach.pte.dto.Location;
 import de.schildbach.pte.dto.LocationType;
@@ -37,6 +39,7 @@ import de.schildbach.pte.dto.QueryTripsContext;
 import de.schildbach.pte.dto.QueryTripsResult;
 import de.schildbach.pte.dto.SuggestLocationsResult;
 import de.schildbach.pte.dto.TripOptions;
+import de.schildbach.pte.util.HttpArchive;
 
 /**
  * @author Andreas Schildbach
@@ -44,8 +47,29 @@ import de.schildbach.pte.dto.TripOptions;
 public abstract class AbstractProviderLiveTest {
     protected final NetworkProvider provider;
 
+    // set to a file name to record all responses, e.g. -Dpte.recordHttpArchive=build/live.archive
+    private static final String RECORD_HTTP_ARCHIVE_PROPERTY = "pte.recordHttpArchive";
+    private static HttpArchive httpArchive = null;
+
     public AbstractProviderLiveTest(final NetworkProvider provider) {
         this.provider = provider;
+        final HttpArchive httpArchive = httpArchive();
+        if (httpArchive != null && provider instanceof AbstractNetworkProvider)
+            ((AbstractNetworkProvider) provider).setHttpInterceptor(httpArchive.recordInterceptor());
+    }
+
+    private static synchronized @Nullable HttpArchive httpArchive() {
+        final String filename = System.getProperty(RECORD_HTTP_ARCHIVE_PROPERTY);
+        if (filename == null)
+            return null;
+        if (httpArchive == null) {
+            try {
+                httpArchive = new HttpArchive(new File(filename));
+            } catch (final IOException x) {
+                throw new RuntimeException(x);
+            }
+        }
+        return httpArchive;
     }
 
     protected final void print(final NearbyLocationsResult result) {
@@ -0,0 +1,161 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.schildbach.pte.exception.BlockedException;
+import de.schildbach.pte.exception.CircuitOpenException;
+import de.schildbach.pte.exception.InternalErrorException;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class CircuitBreakerTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private long now;
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        circuitBreaker = new CircuitBreaker(3, 10, TimeUnit.SECONDS, () -> now);
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+        now += 4 * SECOND;
+        assertEquals(6000, circuitBreaker.getRetryAfterMillis());
+    }
+
+    @Test
+    public void halfOpenProbe() {
+        for (int i = 0; i < 3; i++)
+            circuitBreaker.onFailure();
+        now += 10 * SECOND;
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        // only one probe at a time
+        assertFalse(circuitBreaker.tryAcquire());
+        circuitBreaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        now += 10 * SECOND;
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void lostProbeIsReplaced() {
+        for (int i = 0; i < 3; i++)
+            circuitBreaker.onFailure();
+        now += 10 * SECOND;
+        assertTrue(circuitBreaker.tryAcquire());
+        now += 10 * SECOND;
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void httpClientFailsFast() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        final HttpClient httpClient = new HttpClient();
+        httpClient.setCircuitBreaker(circuitBreaker);
+        httpClient.setRetryPolicy(new RetryPolicy().setMaxAttempts(1));
+        httpClient.setInterceptor(chain -> {
+            requests.incrementAndGet();
+            return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1).code(502)
+                    .message("Bad Gateway").body(ResponseBody.create("", MediaType.get("text/plain"))).build();
+        });
+        final HttpUrl url = HttpUrl.get("http://example.com/");
+        for (int i = 0; i < 3; i++) {
+            try {
+                httpClient.get(url);
+                fail();
+            } catch (final InternalErrorException x) {
+                // expected
+            }
+        }
+        try {
+            httpClient.get(url);
+            fail();
+        } catch (final CircuitOpenException x) {
+            assertEquals(10000, x.getRetryAfterMillis());
+        }
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void clientErrorsAndGivenUpCallsDoNotCount() throws Exception {
+        final HttpClient httpClient = new HttpClient();
+        httpClient.setCircuitBreaker(circuitBreaker);
+        httpClient.setRetryPolicy(new RetryPolicy().setMaxAttempts(1));
+        httpClient.setInterceptor(chain -> {
+            if (chain.request().url().pathSegments().contains("slow")) {
+                try {
+                    Thread.sleep(500);
+                } catch (final InterruptedException x) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1).code(400)
+                    .message("Bad Request").body(ResponseBody.create("", MediaType.get("text/plain"))).build();
+        });
+        for (int i = 0; i < 5; i++) {
+            try {
+                httpClient.get(HttpUrl.get("http://example.com/"));
+                fail();
+            } catch (final BlockedException x) {
+                // expected
+            }
+        }
+        for (int i = 0; i < 5; i++) {
+            try {
+                new CallControl(50, TimeUnit.MILLISECONDS)
+                        .call(() -> httpClient.get(HttpUrl.get("http://example.com/slow")));
+                fail();
+            } catch (final InterruptedIOException x) {
+                // expected
+            }
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class DateTimesTest {
+    @Test
+    public void epochDay() {
+        assertEquals(0, DateTimes.epochDay(1970, 1, 1));
+        assertEquals(-1, DateTimes.epochDay(1969, 12, 31));
+        assertEquals(11016, DateTimes.epochDay(2000, 2, 29));
+        assertEquals(DateTimes.epochDay(2027, 1, 1), DateTimes.epochDay(2026, 13, 1));
+        assertEquals(DateTimes.epochDay(2026, 3, 1), DateTimes.epochDay(2026, 2, 29));
+        assertEquals(DateTimes.epochDay(1980, 2, 1), DateTimes.epochDay(1980, 1, 32));
+        for (int epochDay = -800000; epochDay < 800000; epochDay += 7) {
+            final long civil = DateTimes.civil(epochDay);
+            assertEquals(epochDay,
+                    DateTimes.epochDay((int) (civil >> 16), (int) (civil >> 8 & 0xff), (int) (civil & 0xff)));
+        }
+    }
+
+    @Test
+    public void timeMatchesCalendar() {
+        for (final String timeZoneId : new String[] { "CET", "Europe/London", "America/New_York",
+                "Australia/Lord_Howe", "Asia/Kolkata" }) {
+            final TimeZone timeZone = TimeZone.getTimeZone(timeZoneId);
+            final DateTimes dateTimes = new DateTimes(timeZone);
+            final Calendar calendar = new GregorianCalendar(timeZone);
+            final int firstDay = DateTimes.epochDay(2025, 1, 1);
+            for (int epochDay = firstDay; epochDay < firstDay + 730; epochDay++) {
+                for (int minuteOfDay = 0; minuteOfDay < 26 * 60; minuteOfDay += 15) {
+                    final long civil = DateTimes.civil(epochDay);
+                    calendar.clear();
+                    calendar.set((int) (civil >> 16), (int) (civil >> 8 & 0xff) - 1, (int) (civil & 0xff));
+                    calendar.set(Calendar.HOUR_OF_DAY, minuteOfDay / 60);
+                    calendar.set(Calendar.MINUTE, minuteOfDay % 60);
+                    final long time = dateTimes.time(epochDay, minuteOfDay / 60, minuteOfDay % 60, 0);
+                    assertEquals(timeZoneId + " " + calendar.getTime(), calendar.getTimeInMillis(), time);
+                    if (minuteOfDay < 24 * 60)
+                        assertEquals(timeZoneId + " " + calendar.getTime(), epochDay, dateTimes.epochDay(time));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parseIsoDate() {
+        final int expected = DateTimes.epochDay(2026, 10, 17);
+        assertEquals(expected, DateTimes.parseIsoDate("2026-10-17"));
+        assertEquals(expected, DateTimes.parseIsoDate("20261017"));
+        assertEquals(expected, DateTimes.parseIsoDate("2026-1017"));
+        assertEquals(expected, DateTimes.parseIsoDate("202610-17"));
+        assertEquals(expected, DateTimes.parseIsoDate("17-10-2026"));
+        assertEquals(expected, DateTimes.parseIsoDate("17.10.2026"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseIsoDateInvalid() {
+        DateTimes.parseIsoDate("2026/10/17");
+    }
+
+    @Test
+    public void parseIsoTime() {
+        assertEquals(8 * 3600 + 15 * 60, DateTimes.parseIsoTime("08:15"));
+        assertEquals(8 * 3600 + 15 * 60, DateTimes.parseIsoTime("0815"));
+        assertEquals(8 * 3600 + 15 * 60 + 30, DateTimes.parseIsoTime("08:15:30"));
+        assertEquals(8 * 3600 + 15 * 60 + 30, DateTimes.parseIsoTime("08-15-30"));
+        assertEquals(8 * 3600 + 15 * 60 + 30, DateTimes.parseIsoTime("081530"));
+        assertEquals(8 * 3600 + 15 * 60 + 30, DateTimes.parseIsoTime("08:1530"));
+        assertEquals(8 * 3600 + 15 * 60 + 30, DateTimes.parseIsoTime("0815:30"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseIsoTimeInvalid() {
+        DateTimes.parseIsoTime("8:15");
+    }
+
+    @Test
+    public void parseEuropeanTime() {
+        assertEquals(8 * 3600 + 15 * 60, DateTimes.parseEuropeanTime("8:15"));
+        assertEquals(8 * 3600 + 15 * 60, DateTimes.parseEuropeanTime("08:15"));
+        assertEquals(8 * 3600 + 15 * 60 + 30, DateTimes.parseEuropeanTime("8:15:30"));
+        assertEquals(18 * 3600 + 15 * 60 + 30, DateTimes.parseEuropeanTime("18:15:30"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseEuropeanTimeInvalid() {
+        DateTimes.parseEuropeanTime("0815");
+    }
+
+    @Test
+    public void parseIsoDateTimeWithOffset() {
+        final long expected = DateTimes.epochDay(2026, 10, 17) * DateTimes.DAY_MILLIS + 6 * 3600000L + 15 * 60000L;
+        assertEquals(expected, DateTimes.parseIsoDateTimeWithOffset("2026-10-17T08:15:00+02:00"));
+        assertEquals(expected, DateTimes.parseIsoDateTimeWithOffset("2026-10-17T08:15:00+0200"));
+        assertEquals(expected, DateTimes.parseIsoDateTimeWithOffset("2026-10-17T06:15:00Z"));
+        assertEquals(expected, DateTimes.parseIsoDateTimeWithOffset("2026-10-17T00:45:00-05:30"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseIsoDateTimeWithoutOffset() {
+        DateTimes.parseIsoDateTimeWithOffset("2026-10-17T08:15:00");
+    }
+}
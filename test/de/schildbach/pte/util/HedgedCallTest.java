@@ -0,0 +1,206 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+
+public class HedgedCallTest {
+    private static final HttpUrl URL = HttpUrl.get("http://example.com/");
+    private static final long DELAY = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicBoolean primaryCancelled = new AtomicBoolean();
+    private HedgingPolicy policy;
+    private HttpClient httpClient;
+
+    @Before
+    public void setUp() {
+        policy = new HedgingPolicy(95, 1);
+        for (int i = 0; i < 20; i++)
+            policy.recordLatency(DELAY);
+        httpClient = new HttpClient();
+        httpClient.setHedgingPolicy(policy);
+        // the first request hangs until cancelled, all later ones are answered at once
+        httpClient.setInterceptor(chain -> {
+            if (requests.getAndIncrement() == 0)
+                return hangingPrimary(chain);
+            return response(chain, "hedge");
+        });
+    }
+
+    @Test
+    public void hedgeWinsAndCancelsPrimary() throws Exception {
+        final long start = System.nanoTime();
+        assertEquals("hedge", httpClient.get(URL, null, HttpClient.RequestOptions.NONE.withHedgeable(true))
+                .toString());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertTrue(primaryCancelled.get());
+        assertEquals(2, requests.get());
+        assertEquals(1, policy.getHedgeCount());
+    }
+
+    @Test
+    public void cancelAbortsWinningHedgeWhileReadingBody() throws Exception {
+        final AtomicBoolean hedgeCancelled = new AtomicBoolean();
+        // the hedge answers at once, but its body hangs until cancelled
+        httpClient.setInterceptor(chain -> {
+            if (requests.getAndIncrement() == 0)
+                return hangingPrimary(chain);
+            final Source body = new Source() {
+                @Override
+                public long read(final Buffer sink, final long byteCount) throws IOException {
+                    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                    while (System.nanoTime() < deadline) {
+                        if (chain.call().isCanceled()) {
+                            hedgeCancelled.set(true);
+                            throw new IOException("Canceled");
+                        }
+                        sleep();
+                    }
+                    return -1;
+                }
+
+                @Override
+                public Timeout timeout() {
+                    return Timeout.NONE;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1).code(200)
+                    .message("OK").body(ResponseBody.create(Okio.buffer(body), MediaType.get("text/plain"), -1))
+                    .build();
+        });
+        final CallControl callControl = new CallControl();
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        executor.schedule(callControl::cancel, 300, TimeUnit.MILLISECONDS);
+        final long start = System.nanoTime();
+        try {
+            callControl.call(() -> httpClient.get(URL, null, HttpClient.RequestOptions.NONE.withHedgeable(true)));
+            fail();
+        } catch (final IOException x) {
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(primaryCancelled.get());
+        assertTrue(hedgeCancelled.get());
+        assertEquals(1, policy.getHedgeCount());
+    }
+
+    @Test
+    public void onlyHedgeableRequestsAreHedged() throws Exception {
+        httpClient.setInterceptor(slowPrimary());
+        assertEquals("primary", httpClient.get(URL).toString());
+        assertEquals("primary", httpClient.get(URL, "query",
+                HttpClient.RequestOptions.NONE.withContentType("text/plain").withIdempotent(true)).toString());
+        assertEquals(2, requests.get());
+        assertEquals(0, policy.getHedgeCount());
+    }
+
+    @Test
+    public void hedgeNeedsRateLimiterToken() throws Exception {
+        httpClient.setRateLimiter(new RateLimiter(1));
+        httpClient.setInterceptor(slowPrimary());
+        assertEquals("primary", httpClient.get(URL, null, HttpClient.RequestOptions.NONE.withHedgeable(true))
+                .toString());
+        assertEquals(1, requests.get());
+        assertEquals(0, policy.getHedgeCount());
+    }
+
+    @Test
+    public void noDelayWithoutEnoughSamples() {
+        assertEquals(-1, new HedgingPolicy(95, 1).onRequest());
+        assertTrue(policy.onRequest() >= DELAY);
+    }
+
+    @Test
+    public void budgetLimitsHedges() {
+        final HedgingPolicy policy = new HedgingPolicy(95, 0.5);
+        policy.onRequest();
+        assertFalse(policy.tryAcquireHedge());
+        policy.onRequest();
+        assertTrue(policy.tryAcquireHedge());
+        assertFalse(policy.tryAcquireHedge());
+        assertEquals(1, policy.getHedgeCount());
+    }
+
+    private Response hangingPrimary(final Interceptor.Chain chain) throws IOException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            if (chain.call().isCanceled()) {
+                primaryCancelled.set(true);
+                throw new IOException("Canceled");
+            }
+            sleep();
+        }
+        return response(chain, "primary");
+    }
+
+    // every request takes ten times the hedging delay
+    private Interceptor slowPrimary() {
+        return chain -> {
+            requests.incrementAndGet();
+            try {
+                Thread.sleep(TimeUnit.NANOSECONDS.toMillis(DELAY * 10));
+            } catch (final InterruptedException x) {
+                throw new IOException(x);
+            }
+            return response(chain, "primary");
+        };
+    }
+
+    private static Response response(final Interceptor.Chain chain, final String body) {
+        return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1).code(200).message("OK")
+                .body(ResponseBody.create(body, MediaType.get("text/plain"))).build();
+    }
+
+    private static void sleep() throws IOException {
+        try {
+            Thread.sleep(5);
+        } catch (final InterruptedException x) {
+            throw new IOException(x);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+    @Test
+    public void bucketsCoverValuesWithBoundedError() {
+        for (long value = 0; value < 1L << 40; value = value * 3 / 2 + 1) {
+            final int bucket = Histogram.bucket(value);
+            final long highest = Histogram.highestValue(bucket);
+            assertTrue(value + " > " + highest, value <= highest);
+            assertTrue(value + " <= " + Histogram.highestValue(bucket - 1),
+                    bucket == 0 || value > Histogram.highestValue(bucket - 1));
+            assertTrue(highest - value <= value / 16);
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        final Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        for (int i = 1; i <= 1000; i++)
+            histogram.record(i * 1000L);
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getMean(), 0.1);
+        assertEquals(1000000, histogram.getMax());
+        assertWithin(500000, histogram.getValueAtPercentile(50));
+        assertWithin(990000, histogram.getValueAtPercentile(99));
+        assertEquals(1000000, histogram.getValueAtPercentile(100));
+        assertWithin(1000, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void clampsHugeValues() {
+        final Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals((1L << 40) - 1, histogram.getMax());
+        assertEquals((1L << 40) - 1, histogram.getValueAtPercentile(50));
+    }
+
+    private static void assertWithin(final long expected, final long actual) {
+        assertTrue(expected + " vs " + actual, actual >= expected && actual - expected <= expected / 16);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.schildbach.pte.exception.SessionExpiredException;
+import de.schildbach.pte.exception.UnexpectedRedirectException;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+public class HttpArchiveTest {
+    private static final HttpUrl BASE = HttpUrl.get("http://example.com/");
+    private static final MediaType TEXT = MediaType.get("text/plain");
+
+    private File file;
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("http", ".archive");
+        file.delete();
+        record();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void replaySessionCookie() throws Exception {
+        final HttpArchive archive = new HttpArchive(file);
+        final HttpClient httpClient = new HttpClient();
+        httpClient.setSessionCookieName("session");
+        final AtomicReference<String> cookie = new AtomicReference<>();
+        final Interceptor replayInterceptor = archive.replayInterceptor();
+        httpClient.setInterceptor(chain -> {
+            cookie.set(chain.request().header("Cookie"));
+            return replayInterceptor.intercept(chain);
+        });
+        assertEquals("hello", httpClient.get(BASE.resolve("hello")).toString());
+        assertNull(cookie.get());
+        assertEquals("hello", httpClient.get(BASE.resolve("hello")).toString());
+        assertEquals("session=1234; path=/", cookie.get());
+        assertEquals(0, upstreamCalls.get());
+    }
+
+    @Test
+    public void replayRedirect() throws Exception {
+        try {
+            replayingClient().get(BASE.resolve("moved"));
+            fail();
+        } catch (final UnexpectedRedirectException x) {
+            assertEquals(BASE.resolve("new"), x.getRedirectedUrl());
+        }
+    }
+
+    @Test
+    public void replayInTurn() throws Exception {
+        final HttpClient httpClient = replayingClient();
+        try {
+            httpClient.get(BASE.resolve("session"));
+            fail();
+        } catch (final SessionExpiredException x) {
+            // expected
+        }
+        assertEquals("fresh", httpClient.get(BASE.resolve("session")).toString());
+    }
+
+    @Test
+    public void replayByBodyAndIgnoredParameter() throws Exception {
+        final HttpClient httpClient = replayingClient();
+        assertEquals("echo a", httpClient.get(BASE.resolve("echo?nonce=3"), "a", "text/plain").toString());
+        assertEquals("echo b", httpClient.get(BASE.resolve("echo"), "b", "text/plain").toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void replayMiss() throws Exception {
+        replayingClient().get(BASE.resolve("unknown"));
+    }
+
+    @Test
+    public void loadFromStream() throws Exception {
+        final HttpArchive archive;
+        try (final InputStream is = new FileInputStream(file)) {
+            archive = new HttpArchive(is);
+        }
+        assertEquals(6, archive.size());
+        assertTrue(archive.contains(new Request.Builder().url(BASE.resolve("hello")).build()));
+        assertFalse(archive.contains(new Request.Builder().url(BASE.resolve("unknown")).build()));
+        final HttpClient httpClient = new HttpClient();
+        httpClient.setInterceptor(archive.replayInterceptor());
+        assertEquals("hello", httpClient.get(BASE.resolve("hello")).toString());
+    }
+
+    private HttpClient replayingClient() throws IOException {
+        final HttpArchive archive = new HttpArchive(file).ignoreQueryParameter("nonce");
+        assertEquals(6, archive.size());
+        final HttpClient httpClient = new HttpClient();
+        httpClient.setInterceptor(archive.replayInterceptor());
+        return httpClient;
+    }
+
+    private void record() throws IOException {
+        final HttpArchive archive = new HttpArchive(file).ignoreQueryParameter("nonce");
+        final OkHttpClient client = new OkHttpClient.Builder().followRedirects(false)
+                .addInterceptor(archive.recordInterceptor()).addInterceptor(chain -> upstream(chain.request()))
+                .build();
+        execute(client, new Request.Builder().url(BASE.resolve("hello")));
+        execute(client, new Request.Builder().url(BASE.resolve("moved")));
+        execute(client, new Request.Builder().url(BASE.resolve("session")));
+        execute(client, new Request.Builder().url(BASE.resolve("session")));
+        execute(client, new Request.Builder().url(BASE.resolve("echo?nonce=1")).post(RequestBody.create("a", TEXT)));
+        execute(client, new Request.Builder().url(BASE.resolve("echo?nonce=2")).post(RequestBody.create("b", TEXT)));
+        upstreamCalls.set(0);
+    }
+
+    private static void execute(final OkHttpClient client, final Request.Builder request) throws IOException {
+        client.newCall(request.build()).execute().close();
+    }
+
+    private Response upstream(final Request request) throws IOException {
+        final int call = upstreamCalls.getAndIncrement();
+        final Response.Builder response = new Response.Builder().request(request).protocol(Protocol.HTTP_1_1)
+                .code(200).message("OK");
+        final String path = request.url().encodedPath();
+        final String body;
+        if (path.equals("/hello")) {
+            response.header("Set-Cookie", "session=1234; Path=/");
+            body = "hello";
+        } else if (path.equals("/moved")) {
+            response.code(302).message("Found").header("Location", BASE.resolve("new").toString());
+            body = "";
+        } else if (path.equals("/session")) {
+            body = call == 2 ? "<div>Your session has expired.</div>" : "fresh";
+        } else {
+            final Buffer buffer = new Buffer();
+            request.body().writeTo(buffer);
+            body = "echo " + buffer.readUtf8();
+        }
+        return response.body(ResponseBody.create(body, TEXT)).build();
+    }
+}
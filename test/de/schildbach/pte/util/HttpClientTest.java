@@ -20,11 +20,21 @@ package de.schildbach.pte.util;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import de.schildbach.pte.exception.InternalErrorException;
+
 import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 /**
  * @author Andreas Schildbach
@@ -103,4 +113,41 @@ public class HttpClientTest {
         assertTrue(HttpClient.testInternalError(
                 "<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.01 Transitional//EN\"><html><head><title>VRN - Keine Verbindung zum Server möglich</title></head><body><center><table border=\"0\" width=\"450\" cellpadding=\"5\"><tr><td height=\"50\">&nbsp;</td></tr><tr><td align=\"center\"><img src=\"/vrn/ExceptionFiles/cookies.jpg\"></td></tr></table></center></body></html>"));
     }
+
+    @Test
+    public void scrapeHtmlOnly() throws Exception {
+        final String errorPage = "<html><body><div>Internal Error</div></body></html>";
+        try {
+            respondingClient("text/html; charset=utf-8", errorPage).get(base);
+            fail();
+        } catch (final InternalErrorException x) {
+            // expected
+        }
+        assertEquals(errorPage, respondingClient("application/xml", errorPage).get(base).toString());
+    }
+
+    @Test
+    public void bodyPeek() throws Exception {
+        final StringBuilder body = new StringBuilder("\u200b\u00e4\r\n\ud83d\ude8b");
+        while (body.length() < 20000)
+            body.append("0123456789");
+        final AtomicReference<CharSequence> peek = new AtomicReference<>();
+        final AtomicReference<String> read = new AtomicReference<>();
+        respondingClient("application/json; charset=utf-8", body.toString()).getInputStream((bodyPeek, b) -> {
+            peek.set(bodyPeek);
+            read.set(b.string());
+        }, base, null);
+        assertEquals(body.toString(), read.get());
+        final String expected = new String(body.toString().getBytes(StandardCharsets.UTF_8), 0, 8192,
+                StandardCharsets.UTF_8).replaceAll("\\p{C}", "");
+        assertEquals(expected, peek.get().toString());
+        assertTrue(peek.get().toString().startsWith("\u00e4\ud83d\ude8b0123"));
+    }
+
+    private static HttpClient respondingClient(final String contentType, final String body) {
+        final HttpClient httpClient = new HttpClient();
+        httpClient.setInterceptor(chain -> new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1)
+                .code(200).message("OK").body(ResponseBody.create(body, MediaType.get(contentType))).build());
+        return httpClient;
+    }
 }
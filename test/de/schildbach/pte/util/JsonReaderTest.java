@@ -0,0 +1,160 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.schildbach.pte.exception.ParserException;
+
+import okio.Buffer;
+
+public class JsonReaderTest {
+    @Test
+    public void tokens() throws Exception {
+        final JsonReader reader = reader(" {\"a\": [1, -2.5e1, \"x\", true, false, null], \"b\": {}, \"c\": []}\n");
+        reader.beginObject();
+        assertEquals("a", reader.nextName());
+        reader.beginArray();
+        assertEquals(JsonReader.Token.NUMBER, reader.peek());
+        assertEquals(1, reader.nextInt());
+        assertEquals(-25.0, reader.nextDouble(), 0);
+        assertEquals("x", reader.nextString());
+        assertTrue(reader.nextBoolean());
+        assertFalse(reader.nextBoolean());
+        assertEquals(JsonReader.Token.NULL, reader.peek());
+        reader.nextNull();
+        assertFalse(reader.hasNext());
+        reader.endArray();
+        assertEquals("b", reader.nextName());
+        reader.beginObject();
+        reader.endObject();
+        assertEquals("c", reader.nextName());
+        reader.beginArray();
+        reader.endArray();
+        reader.endObject();
+        assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void numbers() throws Exception {
+        final JsonReader reader = reader("[12345678901, \"42\", 3.0, 1e2]");
+        reader.beginArray();
+        assertEquals(12345678901L, reader.nextLong());
+        assertEquals(42, reader.nextInt());
+        assertEquals(3, reader.nextInt());
+        assertEquals("1e2", reader.nextString());
+        reader.endArray();
+    }
+
+    @Test
+    public void escapes() throws Exception {
+        final JsonReader reader = reader("[\"a\\\"b\\\\c\\/d\\n\\u00e4\\ud83d\\ude8b\", \"Stra\u00dfe\"]");
+        reader.beginArray();
+        assertEquals("a\"b\\c/d\n\u00e4\ud83d\ude8b", reader.nextString());
+        assertEquals("Stra\u00dfe", reader.nextString());
+        reader.endArray();
+    }
+
+    @Test
+    public void skipValue() throws Exception {
+        final JsonReader reader = reader(
+                "{\"skip\": {\"a\": [1, {\"b\": \"\\\"]}\"}], \"c\": null, \"d\": true}, \"keep\": 7}");
+        reader.beginObject();
+        assertEquals("skip", reader.nextName());
+        reader.skipValue();
+        assertEquals("keep", reader.nextName());
+        assertEquals(7, reader.nextInt());
+        reader.endObject();
+    }
+
+    @Test
+    public void copyValue() throws Exception {
+        final JsonReader reader = reader(
+                "{\"copy\": {\"a\": [1, {\"b\": \"\\\"]}\\u00e4\"}, []], \"c\": null, \"d\": true}, \"keep\": 7}");
+        reader.beginObject();
+        assertEquals("copy", reader.nextName());
+        final Buffer copy = new Buffer();
+        reader.copyValue(copy);
+        assertEquals("{\"a\":[1,{\"b\":\"\\\"]}\\u00e4\"},[]],\"c\":null,\"d\":true}", copy.clone().readUtf8());
+        assertEquals("keep", reader.nextName());
+        assertEquals(7, reader.nextInt());
+        reader.endObject();
+
+        final JsonReader copyReader = new JsonReader(copy);
+        copyReader.beginObject();
+        assertEquals("a", copyReader.nextName());
+        copyReader.beginArray();
+        assertEquals(1, copyReader.nextInt());
+        copyReader.beginObject();
+        assertEquals("b", copyReader.nextName());
+        assertEquals("\"]}\u00e4", copyReader.nextString());
+        copyReader.endObject();
+        copyReader.skipValue();
+        copyReader.endArray();
+        copyReader.skipValue();
+        copyReader.skipValue();
+        copyReader.skipValue();
+        copyReader.skipValue();
+        copyReader.endObject();
+        assertEquals(JsonReader.Token.END_DOCUMENT, copyReader.peek());
+    }
+
+    @Test
+    public void longString() throws Exception {
+        final StringBuilder value = new StringBuilder();
+        while (value.length() < 100000)
+            value.append("0123456789\u00e4");
+        final JsonReader reader = reader("[\"" + value + "\", \"" + value + "\\n\"]");
+        reader.beginArray();
+        assertEquals(value.toString(), reader.nextString());
+        assertEquals(value + "\n", reader.nextString());
+        reader.endArray();
+    }
+
+    @Test(expected = ParserException.class)
+    public void missingComma() throws Exception {
+        final JsonReader reader = reader("[1 2]");
+        reader.beginArray();
+        reader.nextInt();
+        reader.nextInt();
+    }
+
+    @Test(expected = ParserException.class)
+    public void unterminatedString() throws Exception {
+        final JsonReader reader = reader("{\"a\": \"b");
+        reader.beginObject();
+        reader.nextName();
+        reader.nextString();
+    }
+
+    @Test(expected = ParserException.class)
+    public void unexpectedToken() throws Exception {
+        final JsonReader reader = reader("{\"a\": 1}");
+        reader.beginArray();
+    }
+
+    private static JsonReader reader(final String json) throws IOException {
+        return new JsonReader(new Buffer().writeUtf8(json));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.schildbach.pte.dto.Point;
+
+public class MappedCoordStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void persistsAcrossReopen() throws Exception {
+        final File file = new File(folder.getRoot(), "coords");
+        try (final MappedCoordStore store = new MappedCoordStore(file, 100)) {
+            store.put("VRS/1", Point.fromDouble(50.94, 6.96));
+            store.put("VRS/2", Point.fromDouble(50.73, 7.10));
+            store.put("VRS/1", Point.fromDouble(50.95, 6.97));
+        }
+        try (final MappedCoordStore store = new MappedCoordStore(file, 100)) {
+            assertEquals(Point.fromDouble(50.95, 6.97), store.get("VRS/1"));
+            assertEquals(Point.fromDouble(50.73, 7.10), store.get("VRS/2"));
+            assertNull(store.get("VRS/3"));
+        }
+    }
+
+    @Test
+    public void discardsFileOfOtherCapacity() throws Exception {
+        final File file = new File(folder.getRoot(), "coords");
+        try (final MappedCoordStore store = new MappedCoordStore(file, 16)) {
+            store.put("VRS/1", Point.fromDouble(50.94, 6.96));
+        }
+        try (final MappedCoordStore store = new MappedCoordStore(file, 64)) {
+            assertNull(store.get("VRS/1"));
+        }
+    }
+
+    @Test
+    public void overwritesWhenFull() throws Exception {
+        try (final MappedCoordStore store = new MappedCoordStore(new File(folder.getRoot(), "coords"), 4)) {
+            for (int i = 0; i < 100; i++)
+                store.put("VRS/" + i, Point.fromDouble(50, i / 10.0));
+            assertEquals(Point.fromDouble(50, 9.9), store.get("VRS/99"));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RateLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private long now;
+    private RateLimiter rateLimiter;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        rateLimiter = new RateLimiter(10, () -> now);
+    }
+
+    @Test
+    public void burstThenSpaced() {
+        for (int i = 0; i < 10; i++)
+            assertEquals(0, rateLimiter.reserve());
+        assertEquals(SECOND / 10, rateLimiter.reserve());
+        assertEquals(2 * SECOND / 10, rateLimiter.reserve());
+        now += SECOND;
+        assertEquals(0, rateLimiter.reserve());
+    }
+
+    @Test
+    public void multiplicativeDecreaseAdditiveIncrease() {
+        rateLimiter.onResponse(true);
+        assertEquals(5, rateLimiter.getRate(), 0.001);
+        // concurrent overload signals count once
+        rateLimiter.onResponse(true);
+        assertEquals(5, rateLimiter.getRate(), 0.001);
+        now += SECOND;
+        rateLimiter.onResponse(true);
+        assertEquals(2.5, rateLimiter.getRate(), 0.001);
+        for (int i = 0; i < 10; i++)
+            rateLimiter.onResponse(false);
+        assertEquals(4.5, rateLimiter.getRate(), 0.001);
+        for (int i = 0; i < 100; i++)
+            rateLimiter.onResponse(false);
+        assertEquals(10, rateLimiter.getRate(), 0.001);
+    }
+
+    @Test
+    public void backedOffRateSpacesRequests() {
+        rateLimiter.onResponse(true);
+        for (int i = 0; i < 5; i++)
+            assertEquals(0, rateLimiter.reserve());
+        assertEquals(SECOND / 5, rateLimiter.reserve());
+    }
+
+    @Test
+    public void failsFastIfTokenNotAvailableBeforeDeadline() throws Exception {
+        for (int i = 0; i < 10; i++)
+            rateLimiter.reserve();
+        final long start = System.nanoTime();
+        try {
+            new CallControl(50, TimeUnit.MILLISECONDS).call(() -> {
+                rateLimiter.acquire();
+                return null;
+            });
+            fail();
+        } catch (final InterruptedIOException x) {
+            // expected
+        }
+        assertTrue(System.nanoTime() - start < SECOND / 2);
+        // the token was not taken
+        assertEquals(SECOND / 10, rateLimiter.reserve());
+    }
+
+    @Test
+    public void cancelWhileWaitingGivesBackToken() throws Exception {
+        for (int i = 0; i < 10; i++)
+            rateLimiter.reserve();
+        final CallControl callControl = new CallControl();
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        executor.schedule(callControl::cancel, 50, TimeUnit.MILLISECONDS);
+        final long start = System.nanoTime();
+        try {
+            rateLimiter.acquire(callControl);
+            fail();
+        } catch (final InterruptedIOException x) {
+            assertEquals("cancelled", x.getMessage());
+        }
+        assertTrue(System.nanoTime() - start < SECOND / 2);
+        assertEquals(SECOND / 10, rateLimiter.reserve());
+        executor.shutdown();
+    }
+}
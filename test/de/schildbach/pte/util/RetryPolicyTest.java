@@ -0,0 +1,181 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.schildbach.pte.exception.InternalErrorException;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class RetryPolicyTest {
+    private static final HttpUrl URL = HttpUrl.get("http://example.com/");
+
+    private final Deque<Object> outcomes = new ArrayDeque<>();
+    private int requests;
+    private RetryPolicy retryPolicy;
+    private HttpClient httpClient;
+
+    @Before
+    public void setUp() {
+        requests = 0;
+        retryPolicy = new RetryPolicy().setBackoff(0, 0, TimeUnit.MILLISECONDS);
+        httpClient = new HttpClient();
+        httpClient.setRetryPolicy(retryPolicy);
+        // answers with the queued outcomes, which are either exceptions or status codes with a body
+        httpClient.setInterceptor(chain -> {
+            requests++;
+            final Object outcome = outcomes.isEmpty() ? "200 ok" : outcomes.remove();
+            if (outcome instanceof IOException)
+                throw (IOException) outcome;
+            final String[] status = ((String) outcome).split(" ", 2);
+            return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1)
+                    .code(Integer.parseInt(status[0])).message(status[0])
+                    .body(ResponseBody.create(status[1], MediaType.get("text/plain"))).build();
+        });
+    }
+
+    @Test
+    public void retriesGetOnRetryableStatusAndEmptyBody() throws Exception {
+        outcomes.addAll(Arrays.asList("502 ", "200 "));
+        assertEquals("ok", httpClient.get(URL).toString());
+        assertEquals(3, requests);
+        assertEquals(2, retryPolicy.getRetryCount());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws Exception {
+        outcomes.addAll(Arrays.asList("502 a", "502 b", "502 c", "200 d"));
+        try {
+            httpClient.get(URL);
+            fail();
+        } catch (final InternalErrorException x) {
+            assertEquals("c", x.getBodyPeek());
+        }
+        assertEquals(3, requests);
+        assertEquals(1, retryPolicy.getExhaustedCount());
+    }
+
+    @Test
+    public void retriesNonIdempotentPostOnlyIfNotSent() throws Exception {
+        outcomes.add(new ConnectException("refused"));
+        assertEquals("ok", httpClient.get(URL, "query", "text/plain").toString());
+        assertEquals(2, requests);
+
+        outcomes.add(new SocketTimeoutException("read timed out"));
+        try {
+            httpClient.get(URL, "query", "text/plain");
+            fail();
+        } catch (final SocketTimeoutException x) {
+            // expected
+        }
+        assertEquals(3, requests);
+    }
+
+    @Test
+    public void retriesNonIdempotentPostOnEmptyBody() throws Exception {
+        outcomes.add("200 ");
+        assertEquals("ok", httpClient.get(URL, "query", "text/plain").toString());
+        assertEquals(2, requests);
+
+        outcomes.add("502 bad gateway");
+        try {
+            httpClient.get(URL, "query", "text/plain");
+            fail();
+        } catch (final InternalErrorException x) {
+            // expected
+        }
+        assertEquals(3, requests);
+    }
+
+    @Test
+    public void retriesIdempotentPost() throws Exception {
+        outcomes.addAll(Arrays.asList(new SocketTimeoutException("read timed out"), "502 "));
+        assertEquals("ok", httpClient.get(URL, "query",
+                HttpClient.RequestOptions.NONE.withContentType("text/plain").withIdempotent(true)).toString());
+        assertEquals(3, requests);
+    }
+
+    @Test
+    public void doesNotRetryOtherExceptions() throws Exception {
+        outcomes.add(new IOException("other"));
+        try {
+            httpClient.get(URL);
+            fail();
+        } catch (final IOException x) {
+            assertEquals("other", x.getMessage());
+        }
+        assertEquals(1, requests);
+        assertEquals(0, retryPolicy.getRetryCount());
+    }
+
+    @Test
+    public void retriesConfiguredExceptions() throws Exception {
+        retryPolicy.setRetryableExceptions(Collections.singletonList(IOException.class));
+        outcomes.add(new IOException("other"));
+        assertEquals("ok", httpClient.get(URL).toString());
+        assertEquals(2, requests);
+    }
+
+    @Test
+    public void doesNotRetryPastDeadline() throws Exception {
+        final CallControl callControl = new CallControl(1, TimeUnit.MILLISECONDS);
+        Thread.sleep(5);
+        final SocketTimeoutException x = new SocketTimeoutException("read timed out");
+        assertEquals(-1, retryPolicy.retryDelayNanos(1, x, true, callControl));
+        assertEquals(0, retryPolicy.retryDelayNanos(1, x, true, new CallControl()));
+        assertEquals(1, retryPolicy.getExhaustedCount());
+    }
+
+    @Test
+    public void backoffEndsOnCancel() throws Exception {
+        final CallControl callControl = new CallControl();
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        executor.schedule(callControl::cancel, 100, TimeUnit.MILLISECONDS);
+        final long start = System.nanoTime();
+        try {
+            RetryPolicy.backoff(TimeUnit.SECONDS.toNanos(30), callControl);
+            fail();
+        } catch (final InterruptedIOException x) {
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SingleFlightTest {
+    @Test
+    public void coalesceConcurrentCalls() throws Exception {
+        final SingleFlight<String, Object> flight = new SingleFlight<>();
+        final AtomicInteger numCalls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Object value = new Object();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        final Future<Object> leader = executor.submit(() -> flight.call("key", () -> {
+            numCalls.incrementAndGet();
+            try {
+                release.await();
+            } catch (final InterruptedException x) {
+                throw new RuntimeException(x);
+            }
+            return value;
+        }));
+        while (flight.inFlight() == 0)
+            Thread.yield();
+        final Future<Object> follower = executor.submit(() -> flight.call("key", () -> {
+            numCalls.incrementAndGet();
+            return new Object();
+        }));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertSame(value, leader.get(5, TimeUnit.SECONDS));
+        assertSame(value, follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, numCalls.get());
+        assertEquals(0, flight.inFlight());
+        executor.shutdown();
+    }
+
+    @Test
+    public void sequentialCallsAreNotCached() throws Exception {
+        final SingleFlight<String, Integer> flight = new SingleFlight<>();
+        final AtomicInteger numCalls = new AtomicInteger();
+        assertEquals(1, (int) flight.call("key", numCalls::incrementAndGet));
+        assertEquals(2, (int) flight.call("key", numCalls::incrementAndGet));
+    }
+
+    @Test
+    public void propagateException() throws Exception {
+        final SingleFlight<String, Integer> flight = new SingleFlight<>();
+        try {
+            flight.call("key", () -> {
+                throw new IOException("failed");
+            });
+            fail();
+        } catch (final IOException x) {
+            assertEquals("failed", x.getMessage());
+        }
+        assertEquals(0, flight.inFlight());
+    }
+
+    @Test
+    public void followerStopsWaitingAtOwnDeadline() throws Exception {
+        final SingleFlight<String, Object> flight = new SingleFlight<>();
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final Future<Object> leader = executor.submit(() -> flight.call("key", () -> {
+            awaitUninterruptibly(release);
+            return new Object();
+        }));
+        while (flight.inFlight() == 0)
+            Thread.yield();
+
+        final long start = System.nanoTime();
+        final CallControl callControl = new CallControl(100, TimeUnit.MILLISECONDS);
+        try {
+            callControl.call(() -> flight.call("key", Object::new));
+            fail();
+        } catch (final InterruptedIOException x) {
+            assertEquals("deadline exceeded", x.getMessage());
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        release.countDown();
+        leader.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+
+    @Test
+    public void followerStopsWaitingWhenCancelled() throws Exception {
+        final SingleFlight<String, Object> flight = new SingleFlight<>();
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final Future<Object> leader = executor.submit(() -> flight.call("key", () -> {
+            awaitUninterruptibly(release);
+            return new Object();
+        }));
+        while (flight.inFlight() == 0)
+            Thread.yield();
+
+        final CallControl callControl = new CallControl();
+        final Future<Object> follower = executor.submit(() -> callControl.call(() -> flight.call("key",
+                Object::new)));
+        Thread.sleep(100);
+        callControl.cancel();
+        try {
+            follower.get(2, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException x) {
+            assertEquals("cancelled", x.getCause().getMessage());
+        }
+        release.countDown();
+        leader.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+
+    @Test
+    public void leaderCancellationIsNotShared() throws Exception {
+        final SingleFlight<String, Object> flight = new SingleFlight<>();
+        final AtomicInteger numCalls = new AtomicInteger();
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final Object value = new Object();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        final CallControl leaderControl = new CallControl();
+        final Future<Object> leader = executor.submit(() -> leaderControl.call(() -> flight.call("key", () -> {
+            numCalls.incrementAndGet();
+            awaitUninterruptibly(cancelled);
+            throw new InterruptedIOException("cancelled");
+        })));
+        while (flight.inFlight() == 0)
+            Thread.yield();
+        final Future<Object> follower = executor.submit(() -> flight.call("key", () -> {
+            numCalls.incrementAndGet();
+            return value;
+        }));
+        Thread.sleep(100);
+        leaderControl.cancel();
+        cancelled.countDown();
+
+        try {
+            leader.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException x) {
+            assertEquals("cancelled", x.getCause().getMessage());
+        }
+        assertSame(value, follower.get(5, TimeUnit.SECONDS));
+        assertEquals(2, numCalls.get());
+        assertEquals(0, flight.inFlight());
+        executor.shutdown();
+    }
+
+    private static void awaitUninterruptibly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    @Test
+    public void coalesceAsyncQueriesWithoutBlocking() throws Exception {
+        final SingleFlight<String, Object> flight = new SingleFlight<>();
+        final AtomicInteger numFollowerCalls = new AtomicInteger();
+        final CompletableFuture<Object> response = new CompletableFuture<>();
+        final Object value = new Object();
+        // one thread runs both queries, which only works if waiting does not block it
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        final CompletableFuture<Object> leader = AsyncQuery.start(
+                () -> flight.call("key", () -> CallControl.current().asyncQuery().await(response)), 0, executor);
+        while (flight.inFlight() == 0)
+            Thread.yield();
+        final CompletableFuture<Object> follower = AsyncQuery.start(() -> flight.call("key", () -> {
+            numFollowerCalls.incrementAndGet();
+            return new Object();
+        }), 0, executor);
+        Thread.sleep(100);
+        assertEquals(1, flight.inFlight());
+        response.complete(value);
+
+        assertSame(value, leader.get(5, TimeUnit.SECONDS));
+        assertSame(value, follower.get(5, TimeUnit.SECONDS));
+        assertEquals(0, numFollowerCalls.get());
+        assertEquals(0, flight.inFlight());
+        executor.shutdown();
+    }
+
+    @Test
+    public void cancelledAsyncLeaderHandsOver() throws Exception {
+        final SingleFlight<String, Object> flight = new SingleFlight<>();
+        final Object value = new Object();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        final CompletableFuture<Object> leader = AsyncQuery.start(() -> flight.call("key",
+                () -> CallControl.current().asyncQuery().await(new CompletableFuture<>())), 0, executor);
+        while (flight.inFlight() == 0)
+            Thread.yield();
+        final Future<Object> follower = executor.submit(() -> flight.call("key", () -> value));
+        Thread.sleep(100);
+        leader.cancel(true);
+
+        assertSame(value, follower.get(5, TimeUnit.SECONDS));
+        assertEquals(0, flight.inFlight());
+        executor.shutdown();
+    }
+}
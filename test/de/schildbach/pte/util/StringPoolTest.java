@@ -0,0 +1,77 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class StringPoolTest {
+    @Test
+    public void hit() {
+        final StringPool pool = new StringPool(16);
+        final byte[] bytes = "xxAmsterdam Centraalxx".getBytes(StandardCharsets.ISO_8859_1);
+        final String first = pool.decode(bytes, 2, 18, StandardCharsets.ISO_8859_1);
+        assertEquals("Amsterdam Centraal", first);
+        final byte[] other = "Amsterdam Centraal".getBytes(StandardCharsets.ISO_8859_1);
+        assertSame(first, pool.decode(other, 0, other.length, StandardCharsets.ISO_8859_1));
+        assertEquals(1, pool.stats().getHitCount());
+        assertEquals(1, pool.stats().getMissCount());
+    }
+
+    @Test
+    public void charset() {
+        final StringPool pool = new StringPool(16);
+        final byte[] bytes = "Stra\u00dfe".getBytes(StandardCharsets.UTF_8);
+        assertEquals("Stra\u00dfe", pool.decode(bytes, 0, bytes.length, StandardCharsets.UTF_8));
+        assertEquals("Stra\u00c3\u009fe", pool.decode(bytes, 0, bytes.length, StandardCharsets.ISO_8859_1));
+        assertEquals("Stra\u00dfe", pool.decode(bytes, 0, bytes.length, StandardCharsets.UTF_8));
+        assertEquals(0, pool.stats().getHitCount());
+    }
+
+    @Test
+    public void replace() {
+        final StringPool pool = new StringPool(1);
+        final byte[] a = "a".getBytes(StandardCharsets.US_ASCII);
+        final byte[] b = "b".getBytes(StandardCharsets.US_ASCII);
+        final String first = pool.decode(a, 0, 1, StandardCharsets.US_ASCII);
+        assertEquals("b", pool.decode(b, 0, 1, StandardCharsets.US_ASCII));
+        assertNotSame(first, pool.decode(a, 0, 1, StandardCharsets.US_ASCII));
+        assertEquals(2, pool.stats().getEvictionCount());
+    }
+
+    @Test
+    public void tooLong() {
+        final StringPool pool = new StringPool(16);
+        final byte[] bytes = new byte[StringPool.MAX_LENGTH + 1];
+        Arrays.fill(bytes, (byte) 'x');
+        final String first = pool.decode(bytes, 0, bytes.length, StandardCharsets.US_ASCII);
+        assertNotSame(first, pool.decode(bytes, 0, bytes.length, StandardCharsets.US_ASCII));
+        assertEquals(0, pool.stats().getMissCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeNotPowerOfTwo() {
+        new StringPool(1000);
+    }
+}
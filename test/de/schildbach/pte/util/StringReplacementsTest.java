@@ -0,0 +1,136 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StringReplacementsTest {
+    private static final String[][] STATION_BOARD = { { " & ", " &amp; " }, { "<b>", " " }, { "</b>", " " },
+            { "<u>", " " }, { "</u>", " " }, { "<i>", " " }, { "</i>", " " }, { "<br />", " " },
+            { " ->", " &#x2192;" }, { " <-", " &#x2190;" }, { " <> ", " &#x2194; " } };
+
+    @Test
+    public void stationBoard() throws IOException {
+        assertReplacesLikeChain(STATION_BOARD, "<b>Werkzaamheden</b> tussen Utrecht & Amersfoort -> Zwolle");
+        assertReplacesLikeChain(STATION_BOARD, "<b>-> & <-</b>");
+        assertReplacesLikeChain(STATION_BOARD, " & -> <> <- <br /><br />");
+        assertReplacesLikeChain(STATION_BOARD, "a<b><u>->");
+        assertReplacesLikeChain(STATION_BOARD, "<b<b>>");
+        assertReplacesLikeChain(STATION_BOARD, "trailing <");
+    }
+
+    @Test
+    public void overlappingPatterns() throws IOException {
+        assertReplacesLikeChain(new String[][] { { "aa", "b" } }, "aaaaa");
+        assertReplacesLikeChain(new String[][] { { "aa", "b" }, { "ab", "c" } }, "aaaab");
+        assertReplacesLikeChain(new String[][] { { "abc", "x" }, { "bd", "y" } }, "abdabcd");
+        assertReplacesLikeChain(new String[][] { { "b", "" }, { "ac", "x" } }, "abc");
+        assertReplacesLikeChain(new String[][] { { "x", "ab" }, { "abc", "y" } }, "xc");
+    }
+
+    @Test
+    public void bufferBoundaries() throws IOException {
+        final StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            input.append("foo <b>bar</b> -> ");
+        assertReplacesLikeChain(STATION_BOARD, input.toString());
+    }
+
+    @Test
+    public void random() throws IOException {
+        final Random random = new Random(0);
+        for (int round = 0; round < 500; round++) {
+            final String[][] pairs = new String[1 + random.nextInt(5)][];
+            for (int i = 0; i < pairs.length; i++)
+                pairs[i] = new String[] { randomString(random, 1 + random.nextInt(3)),
+                        randomString(random, random.nextInt(3)) };
+            assertReplacesLikeChain(pairs, randomString(random, random.nextInt(40)));
+        }
+    }
+
+    @Test
+    public void numAutomatons() {
+        assertEquals(1, replacements(new String[][] { { "<b>", " " }, { "</b>", " " }, { "<i>", " " } })
+                .numAutomatons());
+        assertEquals(2, replacements(new String[][] { { "<b>", " " }, { "<br />", " " } }).numAutomatons());
+        assertEquals(2, replacements(new String[][] { { "<b>", " " }, { " ->", "" } }).numAutomatons());
+        assertEquals(2, replacements(new String[][] { { "ab", "x" }, { "bc", "y" } }).numAutomatons());
+        assertEquals(2, replacements(new String[][] { { "bc", "x" }, { "ab", "y" }, { "cd", "z" } }).numAutomatons());
+    }
+
+    @Test
+    public void overlaps() {
+        assertTrue(StringReplacements.overlaps("abc", "b"));
+        assertTrue(StringReplacements.overlaps("abc", "cd"));
+        assertTrue(StringReplacements.overlaps("cd", "abc"));
+        assertTrue(StringReplacements.overlaps("aa", "aa"));
+        assertFalse(StringReplacements.overlaps("<b>", "</b>"));
+        assertFalse(StringReplacements.overlaps("abc", "bd"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void replaceAfterUse() {
+        final StringReplacements replacements = new StringReplacements().replace("a", "b");
+        replacements.filter(new StringReader(""));
+        replacements.replace("b", "c");
+    }
+
+    private static void assertReplacesLikeChain(final String[][] pairs, final String input) throws IOException {
+        StringReplaceReader chain = null;
+        for (final String[] pair : pairs) {
+            if (chain == null)
+                chain = new StringReplaceReader(input, pair[0], pair[1]);
+            else
+                chain.replace(pair[0], pair[1]);
+        }
+        assertEquals(input, readFully(chain), readFully(replacements(pairs).filter(new StringReader(input))));
+    }
+
+    private static StringReplacements replacements(final String[][] pairs) {
+        final StringReplacements replacements = new StringReplacements();
+        for (final String[] pair : pairs)
+            replacements.replace(pair[0], pair[1]);
+        return replacements;
+    }
+
+    private static String randomString(final Random random, final int length) {
+        final StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            builder.append((char) ('a' + random.nextInt(3)));
+        return builder.toString();
+    }
+
+    private static String readFully(final Reader reader) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        final char[] buf = new char[7];
+        int read;
+        while ((read = reader.read(buf)) != -1)
+            builder.append(buf, 0, read);
+        reader.close();
+        return builder.toString();
+    }
+}
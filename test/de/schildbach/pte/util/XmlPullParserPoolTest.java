@@ -0,0 +1,76 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+
+public class XmlPullParserPoolTest {
+    @Test
+    public void reuse() throws Exception {
+        final XmlPullParser first;
+        try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(new StringReader("<a><b/></a>"))) {
+            first = lease.parser;
+            XmlPullUtil.enter(first, "a");
+            // abandon in the middle of the document
+        }
+        try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(new StringReader("<c x=\"1\"/>"))) {
+            assertSame(first, lease.parser);
+            XmlPullUtil.require(lease.parser, "c");
+            assertEquals("1", XmlPullUtil.attr(lease.parser, "x"));
+        }
+    }
+
+    @Test
+    public void nested() throws Exception {
+        try (final XmlPullParserPool.Lease outer = XmlPullParserPool.acquire(new StringReader("<a/>"))) {
+            try (final XmlPullParserPool.Lease inner = XmlPullParserPool.acquire(new StringReader("<b/>"))) {
+                assertNotSame(outer.parser, inner.parser);
+                XmlPullUtil.require(inner.parser, "b");
+            }
+            XmlPullUtil.require(outer.parser, "a");
+        }
+    }
+
+    @Test
+    public void perThread() throws Exception {
+        final XmlPullParser parser;
+        try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(new StringReader("<a/>"))) {
+            parser = lease.parser;
+        }
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final XmlPullParser other = executor.submit(() -> {
+                try (final XmlPullParserPool.Lease lease = XmlPullParserPool.acquire(new StringReader("<a/>"))) {
+                    return lease.parser;
+                }
+            }).get();
+            assertNotSame(parser, other);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}